@@ -14,12 +14,15 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.ImportResource;
 import org.springframework.jms.annotation.EnableJms;
+import org.springframework.jms.config.DefaultJmsListenerContainerFactory;
 import org.springframework.jms.support.converter.MappingJackson2MessageConverter;
 import org.springframework.jms.support.converter.MessageConverter;
 import org.springframework.jms.support.converter.MessageType;
 
 import java.util.TimeZone;
 
+import javax.jms.ConnectionFactory;
+
 @SpringBootApplication
 @ImportResource("classpath:services-context.xml")
 @ComponentScan(basePackages = {"org.ihtsdo.termserver.job", "org.ihtsdo.termserver.scripting", "org.snomed.otf.scheduler.domain"})
@@ -47,6 +50,15 @@ public class Application  {
 		return converter;
 	}
 	
+	@Bean // Control messages are published to a topic, so that every worker receives them
+	public DefaultJmsListenerContainerFactory controlListenerFactory(ConnectionFactory connectionFactory) {
+		DefaultJmsListenerContainerFactory factory = new DefaultJmsListenerContainerFactory();
+		factory.setConnectionFactory(connectionFactory);
+		factory.setMessageConverter(jacksonJmsMessageConverter());
+		factory.setPubSubDomain(true);
+		return factory;
+	}
+	
 	@Bean
 	public ActiveMQConnectionFactoryForAutoscaling autoScalingFactory() {
 		return new ActiveMQConnectionFactoryForAutoscaling();
@@ -1,11 +1,13 @@
 package org.ihtsdo.termserver.job;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import javax.annotation.PostConstruct;
 
 //import org.ihtsdo.otf.resourcemanager.*;
 import org.ihtsdo.termserver.job.mq.Transmitter;
+import org.ihtsdo.termserver.job.mq.WhiteListCache;
 import org.ihtsdo.termserver.scripting.JobClass;
 import org.ihtsdo.termserver.scripting.TermServerScript;
 import org.reflections.Reflections;
@@ -13,6 +15,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.otf.scheduler.domain.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.info.BuildProperties;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
@@ -28,6 +31,18 @@ public class JobManager {
 	Map<String, Class<? extends JobClass>> knownJobs = new HashMap<>();
 	Map<String, JobType> knownJobTypes = new HashMap<>();
 	
+	//The job this worker is running, so that it can be cancelled
+	Map<UUID, JobClass> runningJobs = new ConcurrentHashMap<>();
+	
+	//Runs cancelled before they reached us, which may yet arrive
+	Set<UUID> cancelledRuns = Collections.newSetFromMap(Collections.synchronizedMap(new LinkedHashMap<UUID, Boolean>() {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<UUID, Boolean> eldest) {
+			return size() > 1000;
+		}
+	}));
+	
 	@Autowired(required = false)
 	private BuildProperties buildProperties;
 	String buildVersion = "<Version Unknown>";
@@ -35,8 +50,17 @@ public class JobManager {
 	@Autowired
 	Transmitter transmitter;
 	
+	@Autowired
+	WhiteListCache whiteListCache;
+	
 	@Autowired 
 	private ApplicationContext applicationContext;
+	
+	//Sent whether or not the job has made progress, so that a worker which has died can be told from one that's busy
+	@Value("${schedule.manager.heartbeat.seconds:60}")
+	int heartbeatSeconds;
+	
+	private ScheduledExecutorService heartbeat;
 
 	@PostConstruct
 	public void init(){
@@ -69,6 +93,26 @@ public class JobManager {
 		if (buildProperties != null) {
 			buildVersion = buildProperties.getVersion();
 		}
+		
+		heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "job-heartbeat");
+			t.setDaemon(true);
+			return t;
+		});
+		heartbeat.scheduleAtFixedRate(this::sendHeartbeats, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+	}
+	
+	private void sendHeartbeats() {
+		try {
+			for (Map.Entry<UUID, JobClass> runningJob : runningJobs.entrySet()) {
+				if (runningJob.getValue() instanceof TermServerScript) {
+					transmitter.send(runningJob.getKey(), ((TermServerScript)runningJob.getValue()).getProgress());
+				}
+			}
+		} catch (Exception e) {
+			//Don't let one failure stop all future heartbeats
+			logger.error("Failed to send heartbeat", e);
+		}
 	}
 	
 	public Job getJob (String jobName) {
@@ -84,7 +128,10 @@ public class JobManager {
 		return null;
 	}
 
-	public void run(JobRun jobRun) {
+	/**
+	 * @param whiteListVersion the version of the whitelist that applies to this run, or null if none does
+	 */
+	public void run(JobRun jobRun, String whiteListVersion) {
 		boolean metadataRequest = false;
 		try {
 			//Is this a special metadata request?
@@ -100,10 +147,26 @@ public class JobManager {
 				} else if (jobClass == null) {
 					jobRun.setStatus(JobStatus.Failed);
 					jobRun.setDebugInfo("Job '" + jobRun.getJobName() + "' not known to Reporting Engine Worker - " + buildVersion);
+				} else if (jobRun.getId() != null && cancelledRuns.remove(jobRun.getId())) {
+					jobRun.setStatus(JobStatus.Failed);
+					jobRun.setDebugInfo("Job cancelled before it started");
 				} else {
 					try {
 						if (ensureJobValid(jobRun, jobClass.newInstance().getJob())) {
 							JobClass thisJob = jobClass.newInstance();
+							if (thisJob instanceof TermServerScript) {
+								((TermServerScript)thisJob).setProgressListener(progress -> transmitter.send(jobRun.getId(), progress));
+								if (whiteListVersion != null) {
+									((TermServerScript)thisJob).setWhiteListedIds(whiteListCache.getSctIds(whiteListVersion));
+								}
+							}
+							if (jobRun.getId() != null) {
+								runningJobs.put(jobRun.getId(), thisJob);
+								//In case the cancellation arrived while we were getting started
+								if (cancelledRuns.remove(jobRun.getId())) {
+									cancel(jobRun.getId());
+								}
+							}
 							jobRun.setStatus(JobStatus.Running);
 							transmitter.send(jobRun);
 							thisJob.instantiate(jobRun, applicationContext);
@@ -113,7 +176,11 @@ public class JobManager {
 					} catch (Exception e) {
 						jobRun.setStatus(JobStatus.Failed);
 						jobRun.setDebugInfo("Job '" + jobRun.getJobName() + "' failed due to: '" + e + "'");
-					} 
+					} finally {
+						if (jobRun.getId() != null) {
+							runningJobs.remove(jobRun.getId());
+						}
+					}
 				}
 			}
 		} finally {
@@ -124,6 +191,22 @@ public class JobManager {
 		}
 	}
 
+	/**
+	 * Cancellation is broadcast to all workers, so most will not be running the job.
+	 * Those that aren't remember it in case the run is still waiting in the queue.
+	 */
+	public void cancel(UUID runId) {
+		JobClass runningJob = runningJobs.get(runId);
+		if (runningJob instanceof TermServerScript) {
+			logger.info("Cancelling run {}", runId);
+			((TermServerScript)runningJob).cancel();
+		} else if (runningJob == null) {
+			cancelledRuns.add(runId);
+		} else {
+			logger.warn("Run {} is not able to be cancelled", runId);
+		}
+	}
+
 	private boolean ensureJobValid(JobRun jobRun, Job job) {
 		if (StringUtils.isEmpty(jobRun.getAuthToken())) {
 			jobRun.setStatus(JobStatus.Failed);
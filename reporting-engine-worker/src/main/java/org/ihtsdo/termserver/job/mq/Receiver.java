@@ -1,25 +1,40 @@
 package org.ihtsdo.termserver.job.mq;
 
+import java.util.Map;
+import java.util.UUID;
+
 import org.ihtsdo.termserver.job.JobManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.otf.scheduler.domain.JobRun;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jms.annotation.JmsListener;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Service;
 
 @Service
 public class Receiver {
 	
+	public static final String WHITE_LIST_VERSION = "whiteListVersion";
+	
 	@Autowired
 	JobManager jobManager;
 	
 	protected Logger logger = LoggerFactory.getLogger(this.getClass());
 	
 	@JmsListener(destination = "${schedule.manager.queue.request}")
-	public void receiveMessage(JobRun jobRun) {
+	public void receiveMessage(JobRun jobRun, @Header(name = WHITE_LIST_VERSION, required = false) String whiteListVersion) {
 		logger.info("Received request to run {} with parameters: {} ", jobRun, jobRun.getParameters());
-		jobManager.run(jobRun);
+		jobManager.run(jobRun, whiteListVersion);
+	}
+	
+	//Control messages are broadcast to every worker, on their own thread so they arrive while a job is running
+	@JmsListener(destination = "${schedule.manager.topic.control:schedule_manager_control}", containerFactory = "controlListenerFactory")
+	public void receiveControl(Map<String, Object> control) {
+		logger.info("Received control message: {}", control);
+		if ("cancel".equals(control.get("action")) && control.get("runId") != null) {
+			jobManager.cancel(UUID.fromString(control.get("runId").toString()));
+		}
 	}
 
 }
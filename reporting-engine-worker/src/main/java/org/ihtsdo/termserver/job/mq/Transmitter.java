@@ -6,6 +6,7 @@ import java.util.concurrent.*;
 import javax.annotation.PostConstruct;
 
 import org.ihtsdo.termserver.job.JobManager;
+import org.ihtsdo.termserver.scripting.JobProgress;
 import org.ihtsdo.termserver.scripting.TermServerScript;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,6 +33,9 @@ public class Transmitter {
 	@Value("${schedule.manager.queue.metadata}")
 	String metadataQueueName;
 	
+	@Value("${schedule.manager.queue.progress:schedule_manager_progress}")
+	String progressQueueName;
+	
 	ExecutorService executorService;
 	
 	@PostConstruct
@@ -70,6 +74,24 @@ public class Transmitter {
 		});
 	}
 	
+	/**
+	 * Progress doubles as the heartbeat for a running job, so is sent even when nothing has changed
+	 */
+	public void send (UUID runId, JobProgress progress) {
+		Map<String, Object> message = new HashMap<>();
+		message.put("runId", runId.toString());
+		message.put("phase", progress.getPhase());
+		message.put("itemsProcessed", progress.getItemsProcessed());
+		message.put("rowsWritten", progress.getRowsWritten());
+		message.put("itemsPerSecond", progress.getItemsPerSecond());
+		message.put("rowsPerSecond", progress.getRowsPerSecond());
+		message.put("elapsedMillis", progress.getElapsedMillis());
+		executorService.execute(() -> {
+				logger.debug("Transmitting progress for {}: {}", runId, progress);
+				jmsTemplate.convertAndSend(progressQueueName, message);
+		});
+	}
+	
 	public void send (JobMetadata metadata) {
 		logger.info("Transmitting metadata for " + metadata.getJobTypes().size() + " job types:");
 		for (JobType type : metadata.getJobTypes()) {
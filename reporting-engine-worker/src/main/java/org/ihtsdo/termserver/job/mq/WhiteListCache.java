@@ -0,0 +1,90 @@
+package org.ihtsdo.termserver.job.mq;
+
+import java.util.*;
+
+import javax.annotation.PostConstruct;
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Holds the whitelist versions this worker has used recently.  Versions never change,
+ * so each only has to be fetched from the schedule manager once.
+ */
+@Component
+public class WhiteListCache {
+
+	@Autowired
+	private JmsTemplate jmsTemplate;
+
+	@Value("${schedule.manager.queue.whitelist:schedule_manager_whitelist}")
+	String whiteListQueueName;
+
+	@Value("${schedule.manager.whitelist.timeout.seconds:30}")
+	int timeoutSeconds;
+
+	@Value("${schedule.manager.whitelist.cache.size:50}")
+	int cacheSize;
+
+	protected Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	private JmsTemplate requestTemplate;
+
+	private Map<String, Set<String>> versions;
+
+	@PostConstruct
+	public void init() {
+		//The shared template would wait forever for a reply
+		requestTemplate = new JmsTemplate(jmsTemplate.getConnectionFactory());
+		requestTemplate.setMessageConverter(jmsTemplate.getMessageConverter());
+		requestTemplate.setReceiveTimeout(timeoutSeconds * 1000L);
+
+		versions = Collections.synchronizedMap(new LinkedHashMap<String, Set<String>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Set<String>> eldest) {
+				return size() > cacheSize;
+			}
+		});
+	}
+
+	/**
+	 * @return the SCTIDs in the given whitelist version
+	 */
+	public Set<String> getSctIds(String version) {
+		Set<String> sctIds = versions.get(version);
+		if (sctIds == null) {
+			sctIds = fetch(version);
+			versions.put(version, sctIds);
+		}
+		return sctIds;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Set<String> fetch(String version) {
+		logger.info("Requesting whitelist version {}", version);
+		Message reply = requestTemplate.sendAndReceive(whiteListQueueName,
+				session -> requestTemplate.getMessageConverter().toMessage(version, session));
+		if (reply == null) {
+			throw new IllegalStateException("No response to request for whitelist version " + version + " after " + timeoutSeconds + "s");
+		}
+		try {
+			Collection<String> sctIds = (Collection<String>)requestTemplate.getMessageConverter().fromMessage(reply);
+			//Versions are only made for whitelists with content
+			if (sctIds == null || sctIds.isEmpty()) {
+				throw new IllegalStateException("Whitelist version " + version + " not known to schedule manager");
+			}
+			logger.info("Received whitelist version {} of {} concepts", version, sctIds.size());
+			return Collections.unmodifiableSet(new HashSet<>(sctIds));
+		} catch (JMSException e) {
+			throw new IllegalStateException("Unable to read whitelist version " + version, e);
+		}
+	}
+
+}
@@ -28,7 +28,7 @@ import static springfox.documentation.builders.PathSelectors.regex;
 
 @SpringBootApplication
 @ImportResource("classpath:services-context.xml")
-@EntityScan({"org.snomed.otf.scheduler.domain"})
+@EntityScan({"org.snomed.otf.scheduler.domain", "org.ihtsdo.snowowl.authoring.scheduler.api.domain"})
 @EnableJms
 @EnableSwagger2
 public class Application {
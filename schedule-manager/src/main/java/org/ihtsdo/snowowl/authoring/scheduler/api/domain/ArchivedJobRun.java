@@ -0,0 +1,91 @@
+package org.ihtsdo.snowowl.authoring.scheduler.api.domain;
+
+import java.util.Date;
+import java.util.UUID;
+
+import javax.persistence.*;
+
+import org.snomed.otf.scheduler.domain.JobRun;
+import org.snomed.otf.scheduler.domain.JobStatus;
+
+/**
+ * A job run that has been moved out of the JobRun table by the retention policy.
+ * The columns needed to find it are kept as they were, while the run itself, including
+ * its parameters and results, is held as compressed json.
+ */
+@Entity
+@Table(indexes = {@Index(name = "idx_archivedjobrun_job_user_project", columnList = "jobName, user, project")})
+public class ArchivedJobRun {
+
+	@Id
+	private UUID id;
+
+	private String jobName;
+
+	private String project;
+
+	private String user;
+
+	@Enumerated(EnumType.STRING)
+	private JobStatus status;
+
+	private Date requestTime;
+
+	private Date resultTime;
+
+	private Date archivedTime;
+
+	@Lob
+	private byte[] content;
+
+	protected ArchivedJobRun() {
+	}
+
+	public ArchivedJobRun(JobRun jobRun, byte[] content) {
+		this.id = jobRun.getId();
+		this.jobName = jobRun.getJobName();
+		this.project = jobRun.getProject();
+		this.user = jobRun.getUser();
+		this.status = jobRun.getStatus();
+		this.requestTime = jobRun.getRequestTime();
+		this.resultTime = jobRun.getResultTime();
+		this.archivedTime = new Date();
+		this.content = content;
+	}
+
+	public UUID getId() {
+		return id;
+	}
+
+	public String getJobName() {
+		return jobName;
+	}
+
+	public String getProject() {
+		return project;
+	}
+
+	public String getUser() {
+		return user;
+	}
+
+	public JobStatus getStatus() {
+		return status;
+	}
+
+	public Date getRequestTime() {
+		return requestTime;
+	}
+
+	public Date getResultTime() {
+		return resultTime;
+	}
+
+	public Date getArchivedTime() {
+		return archivedTime;
+	}
+
+	public byte[] getContent() {
+		return content;
+	}
+}
@@ -0,0 +1,133 @@
+package org.ihtsdo.snowowl.authoring.scheduler.api.domain;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * The latest progress reported by the worker for a run that is in progress, which also
+ * serves as its heartbeat.  Removed once the run reaches a final status.
+ */
+@Entity
+@Table(indexes = {@Index(name = "idx_jobrunprogress_heartbeat", columnList = "lastHeartbeat")})
+public class JobRunProgress {
+
+	@Id
+	private UUID runId;
+
+	private String phase;
+
+	private long itemsProcessed;
+
+	private long rowsWritten;
+
+	private double itemsPerSecond;
+
+	private double rowsPerSecond;
+
+	//When we last heard anything from the worker
+	private Date lastHeartbeat;
+
+	//When the phase or counts last changed
+	private Date lastProgress;
+
+	private boolean stalled;
+
+	protected JobRunProgress() {
+	}
+
+	public JobRunProgress(UUID runId) {
+		this.runId = runId;
+	}
+
+	/**
+	 * @param message as transmitted by the worker
+	 */
+	public static JobRunProgress fromMessage(Map<String, Object> message) {
+		JobRunProgress progress = new JobRunProgress(UUID.fromString(message.get("runId").toString()));
+		progress.phase = Objects.toString(message.get("phase"), null);
+		progress.itemsProcessed = toNumber(message.get("itemsProcessed")).longValue();
+		progress.rowsWritten = toNumber(message.get("rowsWritten")).longValue();
+		progress.itemsPerSecond = toNumber(message.get("itemsPerSecond")).doubleValue();
+		progress.rowsPerSecond = toNumber(message.get("rowsPerSecond")).doubleValue();
+		return progress;
+	}
+
+	private static Number toNumber(Object value) {
+		return value instanceof Number ? (Number)value : 0;
+	}
+
+	/**
+	 * Takes on the latest report, noting whether anything has moved on since the last one
+	 */
+	public void update(JobRunProgress latest, Date received) {
+		if (lastProgress == null || !Objects.equals(phase, latest.phase)
+				|| itemsProcessed != latest.itemsProcessed || rowsWritten != latest.rowsWritten) {
+			lastProgress = received;
+			stalled = false;
+		}
+		phase = latest.phase;
+		itemsProcessed = latest.itemsProcessed;
+		rowsWritten = latest.rowsWritten;
+		itemsPerSecond = latest.itemsPerSecond;
+		rowsPerSecond = latest.rowsPerSecond;
+		heartbeat(received);
+	}
+
+	public void heartbeat(Date received) {
+		lastHeartbeat = received;
+		if (lastProgress == null) {
+			lastProgress = received;
+		}
+	}
+
+	public UUID getRunId() {
+		return runId;
+	}
+
+	public String getPhase() {
+		return phase;
+	}
+
+	public void setPhase(String phase) {
+		this.phase = phase;
+	}
+
+	public long getItemsProcessed() {
+		return itemsProcessed;
+	}
+
+	public long getRowsWritten() {
+		return rowsWritten;
+	}
+
+	public double getItemsPerSecond() {
+		return itemsPerSecond;
+	}
+
+	public double getRowsPerSecond() {
+		return rowsPerSecond;
+	}
+
+	public Date getLastHeartbeat() {
+		return lastHeartbeat;
+	}
+
+	public Date getLastProgress() {
+		return lastProgress;
+	}
+
+	public boolean isStalled() {
+		return stalled;
+	}
+
+	public void setStalled(boolean stalled) {
+		this.stalled = stalled;
+	}
+}
@@ -0,0 +1,36 @@
+package org.ihtsdo.snowowl.authoring.scheduler.api.domain;
+
+import java.util.UUID;
+
+import javax.persistence.*;
+
+/**
+ * The version of the whitelist that applied to a run when it was requested.  Runs come
+ * from otf-common and have no field for this, and the version only travels to the worker
+ * on the request message, so it's recorded here to be able to say what a run used.
+ */
+@Entity
+public class JobRunWhiteList {
+
+	@Id
+	private UUID runId;
+
+	@Column(length = 64)
+	private String version;
+
+	protected JobRunWhiteList() {
+	}
+
+	public JobRunWhiteList(UUID runId, String version) {
+		this.runId = runId;
+		this.version = version;
+	}
+
+	public UUID getRunId() {
+		return runId;
+	}
+
+	public String getVersion() {
+		return version;
+	}
+}
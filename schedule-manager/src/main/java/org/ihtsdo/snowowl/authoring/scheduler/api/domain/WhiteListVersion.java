@@ -0,0 +1,52 @@
+package org.ihtsdo.snowowl.authoring.scheduler.api.domain;
+
+import java.util.Date;
+
+import javax.persistence.*;
+
+/**
+ * An immutable set of whitelisted concepts, identified by a hash of its content.
+ * Job runs refer to the version of the whitelist that applies to them, so that workers
+ * can fetch each version once and cache it, rather than receive the concepts with every run.
+ */
+@Entity
+public class WhiteListVersion {
+
+	@Id
+	@Column(length = 64)
+	private String version;
+
+	private int size;
+
+	private Date created;
+
+	//The sorted SCTIDs, one per line, gzipped
+	@Lob
+	private byte[] content;
+
+	protected WhiteListVersion() {
+	}
+
+	public WhiteListVersion(String version, int size, byte[] content) {
+		this.version = version;
+		this.size = size;
+		this.created = new Date();
+		this.content = content;
+	}
+
+	public String getVersion() {
+		return version;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public Date getCreated() {
+		return created;
+	}
+
+	public byte[] getContent() {
+		return content;
+	}
+}
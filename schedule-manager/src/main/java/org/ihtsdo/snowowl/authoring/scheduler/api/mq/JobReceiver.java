@@ -1,6 +1,10 @@
 package org.ihtsdo.snowowl.authoring.scheduler.api.mq;
 
+import java.util.*;
+
+import org.ihtsdo.snowowl.authoring.scheduler.api.domain.JobRunProgress;
 import org.ihtsdo.snowowl.authoring.scheduler.api.service.ScheduleService;
+import org.ihtsdo.snowowl.authoring.scheduler.api.service.WhiteListService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.otf.scheduler.domain.JobRun;
@@ -15,9 +19,33 @@ public class JobReceiver {
 	
 	@Autowired
 	ScheduleService service;
+	
+	@Autowired
+	WhiteListService whiteListService;
 
 	@JmsListener(destination = "${schedule.manager.queue.response}")
 	public void receiveMessage(JobRun jobRun) {
 		service.processResponse(jobRun);
 	}
+	
+	@JmsListener(destination = "${schedule.manager.queue.progress}")
+	public void receiveProgress(Map<String, Object> progress) {
+		try {
+			service.processProgress(JobRunProgress.fromMessage(progress));
+		} catch (Exception e) {
+			logger.error("Unable to process progress {}", progress, e);
+		}
+	}
+	
+	//Workers ask for each whitelist version they don't yet hold, and the reply goes to their JMSReplyTo
+	@JmsListener(destination = "${schedule.manager.queue.whitelist}")
+	public List<String> receiveWhiteListRequest(String version) {
+		Set<String> sctIds = whiteListService.getSctIds(version);
+		if (sctIds == null) {
+			//Versions are never made for empty whitelists, so the worker will know this is an error
+			logger.error("Worker requested unknown whitelist version {}", version);
+			return Collections.emptyList();
+		}
+		return new ArrayList<>(sctIds);
+	}
 }
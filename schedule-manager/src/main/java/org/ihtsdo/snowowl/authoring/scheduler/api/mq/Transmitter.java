@@ -1,5 +1,11 @@
 package org.ihtsdo.snowowl.authoring.scheduler.api.mq;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.activemq.command.ActiveMQTopic;
 import org.snomed.otf.scheduler.domain.JobRun;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -9,14 +15,57 @@ import org.springframework.stereotype.Component;
 @Component
 public class Transmitter {
 	
+	public static final String WHITE_LIST_VERSION = "whiteListVersion";
+
 	@Autowired
 	private JmsTemplate jmsTemplate;
-	
+
 	@Value("${schedule.manager.queue.request}")
 	String requestQueueName;
-	
+
+	@Value("${schedule.manager.topic.control}")
+	String controlTopicName;
+
+	//Priority is a property of the producer rather than the message, so each priority needs its own template
+	private final Map<Integer, JmsTemplate> priorityTemplates = new ConcurrentHashMap<>();
+
 	public void send (JobRun run) {
 		jmsTemplate.convertAndSend(requestQueueName, run);
 	}
 
+	/**
+	 * Sends the run with the given JMS priority (0-9, higher first), which the broker uses
+	 * to order the request queue when it is configured with prioritizedMessages.
+	 * The whitelist version, if any, travels as a message property for the worker to resolve.
+	 */
+	public void send (JobRun run, int priority, String whiteListVersion) {
+		priorityTemplates.computeIfAbsent(priority, this::createTemplate)
+			.convertAndSend(requestQueueName, run, message -> {
+				if (whiteListVersion != null) {
+					message.setStringProperty(WHITE_LIST_VERSION, whiteListVersion);
+				}
+				return message;
+			});
+	}
+
+	/**
+	 * Asks whichever worker is running the job to stop.  This is broadcast, since we
+	 * don't know which worker has it.
+	 */
+	public void sendCancel(UUID runId) {
+		Map<String, Object> control = new HashMap<>();
+		control.put("action", "cancel");
+		control.put("runId", runId.toString());
+		jmsTemplate.convertAndSend(new ActiveMQTopic(controlTopicName), control);
+	}
+
+	private JmsTemplate createTemplate(int priority) {
+		JmsTemplate template = new JmsTemplate(jmsTemplate.getConnectionFactory());
+		template.setMessageConverter(jmsTemplate.getMessageConverter());
+		template.setExplicitQosEnabled(true);
+		template.setDeliveryPersistent(true);
+		template.setPriority(priority);
+		return template;
+	}
+
 }
@@ -0,0 +1,87 @@
+package org.ihtsdo.snowowl.authoring.scheduler.api.repository;
+
+import java.sql.*;
+import java.util.*;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+/**
+ * JobRun is mapped in otf-common, so we can't declare indexes on the entity itself.
+ * Instead, the composite indexes that back the run listing queries are created on
+ * startup if the schema doesn't already have them, once Hibernate has updated the schema.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class JobRunIndexes {
+
+	static final String TABLE = "JobRun";
+
+	static final Map<String, String[]> INDEXES = new LinkedHashMap<>();
+	static {
+		INDEXES.put("idx_jobrun_job_project_time", new String[] {"jobName", "project", "requestTime"});
+		INDEXES.put("idx_jobrun_job_user_project", new String[] {"jobName", "user", "project"});
+	}
+
+	@Autowired
+	DataSource dataSource;
+
+	protected Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	@PostConstruct
+	public void ensureIndexes() {
+		try (Connection conn = dataSource.getConnection()) {
+			DatabaseMetaData metadata = conn.getMetaData();
+			String table = findTable(metadata);
+			if (table == null) {
+				logger.warn("Table {} not found, unable to check its indexes", TABLE);
+				return;
+			}
+			Set<String> existing = getIndexNames(metadata, table);
+			for (Map.Entry<String, String[]> index : INDEXES.entrySet()) {
+				if (!existing.contains(index.getKey().toLowerCase())) {
+					String ddl = "CREATE INDEX " + index.getKey() + " ON " + table + " (" + String.join(", ", index.getValue()) + ")";
+					logger.info("Creating index: {}", ddl);
+					try (Statement stmt = conn.createStatement()) {
+						stmt.execute(ddl);
+					}
+				}
+			}
+		} catch (SQLException e) {
+			//Listing will still work, just more slowly
+			logger.error("Unable to ensure indexes on {}", TABLE, e);
+		}
+	}
+
+	private String findTable(DatabaseMetaData metadata) throws SQLException {
+		//The case the table name is stored in depends on the database
+		try (ResultSet rs = metadata.getTables(null, null, "%", new String[] {"TABLE"})) {
+			while (rs.next()) {
+				String name = rs.getString("TABLE_NAME");
+				if (name.equalsIgnoreCase(TABLE)) {
+					return name;
+				}
+			}
+		}
+		return null;
+	}
+
+	static Set<String> getIndexNames(DatabaseMetaData metadata, String table) throws SQLException {
+		Set<String> names = new HashSet<>();
+		try (ResultSet rs = metadata.getIndexInfo(null, null, table, false, true)) {
+			while (rs.next()) {
+				String name = rs.getString("INDEX_NAME");
+				if (name != null) {
+					names.add(name.toLowerCase());
+				}
+			}
+		}
+		return names;
+	}
+}
@@ -0,0 +1,20 @@
+package org.ihtsdo.snowowl.authoring.scheduler.api.repository;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import org.ihtsdo.snowowl.authoring.scheduler.api.domain.JobRunProgress;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+public interface JobRunProgressRepository extends CrudRepository<JobRunProgress, UUID> {
+
+	//Runs not yet flagged which have either gone quiet, or are still talking but getting nowhere,
+	//plus any, flagged or not, whose worker has been quiet for so long that it must have died
+	@Query("select p from JobRunProgress p where (p.stalled = false and (p.lastHeartbeat < :heartbeatCutoff or p.lastProgress < :progressCutoff))"
+			+ " or p.lastHeartbeat < :deadCutoff")
+	List<JobRunProgress> findStalled(@Param("heartbeatCutoff") Date heartbeatCutoff, @Param("progressCutoff") Date progressCutoff, @Param("deadCutoff") Date deadCutoff);
+
+}
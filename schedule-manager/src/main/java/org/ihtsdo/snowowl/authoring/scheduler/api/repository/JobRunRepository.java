@@ -1,8 +1,16 @@
 package org.ihtsdo.snowowl.authoring.scheduler.api.repository;
 
 import org.snomed.otf.scheduler.domain.JobRun;
+import org.snomed.otf.scheduler.domain.JobStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -12,8 +20,42 @@ public interface JobRunRepository extends CrudRepository<JobRun, UUID> {
 
 	Optional<JobRun> findById(UUID id);
 	
+	List<JobRun> findByStatus(JobStatus status);
+	
 	List<JobRun> findByJobNameAndProjectInOrderByRequestTimeDesc(String jobName, Set<String> projects);
 	
 	List<JobRun> findByJobNameAndUserAndProjectIn(String jobName, String user, Set<String> projects);
+	
+	//Slices rather than pages, so no count query is needed and each page costs the same however many runs there are
+	Slice<JobRunSummary> findSummariesByJobNameAndProjectIn(String jobName, Set<String> projects, Pageable pageable);
+	
+	Slice<JobRunSummary> findSummariesByJobNameAndUserAndProjectIn(String jobName, String user, Set<String> projects, Pageable pageable);
+	
+	/**
+	 * Compare-and-set on the status, so that a run which has already reached one of the
+	 * given statuses is left alone.  Must be called within a transaction, which will then
+	 * hold the row until it completes.
+	 * @return the number of runs updated, 0 if the run is unknown or already at one of the statuses
+	 */
+	@Modifying(clearAutomatically = true)
+	@Query("update JobRun j set j.status = :status where j.id = :id and j.status not in :finalStatuses")
+	int updateStatusUnlessIn(@Param("id") UUID id, @Param("status") JobStatus status, @Param("finalStatuses") Collection<JobStatus> finalStatuses);
+	
+	//Each distinct job name, user and project, which is the unit the retention policy works on
+	@Query("select distinct j.jobName, j.user, j.project from JobRun j")
+	List<Object[]> findRunGroups();
+	
+	@Query("select j.requestTime from JobRun j where j.jobName = :jobName"
+			+ " and (j.user = :user or (:user is null and j.user is null))"
+			+ " and (j.project = :project or (:project is null and j.project is null))"
+			+ " and j.requestTime is not null order by j.requestTime desc")
+	List<Date> findRequestTimesInGroup(@Param("jobName") String jobName, @Param("user") String user, @Param("project") String project, Pageable pageable);
+	
+	@Query("select j.id from JobRun j where j.jobName = :jobName"
+			+ " and (j.user = :user or (:user is null and j.user is null))"
+			+ " and (j.project = :project or (:project is null and j.project is null))"
+			+ " and j.requestTime < :before and j.status in :statuses order by j.requestTime")
+	List<UUID> findIdsInGroupBefore(@Param("jobName") String jobName, @Param("user") String user, @Param("project") String project,
+			@Param("before") Date before, @Param("statuses") Collection<JobStatus> statuses, Pageable pageable);
 
 }
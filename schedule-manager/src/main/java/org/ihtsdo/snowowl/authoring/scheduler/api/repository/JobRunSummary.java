@@ -0,0 +1,31 @@
+package org.ihtsdo.snowowl.authoring.scheduler.api.repository;
+
+import java.util.Date;
+import java.util.UUID;
+
+import org.snomed.otf.scheduler.domain.JobStatus;
+
+/**
+ * The parts of a JobRun needed to list runs.  Only these columns are selected, so
+ * parameters, whitelists and debug info are never loaded.
+ */
+public interface JobRunSummary {
+
+	UUID getId();
+
+	String getJobName();
+
+	String getProject();
+
+	String getUser();
+
+	JobStatus getStatus();
+
+	Date getRequestTime();
+
+	Date getResultTime();
+
+	String getResultUrl();
+
+	Integer getIssuesReported();
+}
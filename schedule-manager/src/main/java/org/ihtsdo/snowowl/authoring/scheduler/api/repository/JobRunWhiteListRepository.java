@@ -0,0 +1,10 @@
+package org.ihtsdo.snowowl.authoring.scheduler.api.repository;
+
+import java.util.UUID;
+
+import org.ihtsdo.snowowl.authoring.scheduler.api.domain.JobRunWhiteList;
+import org.springframework.data.repository.CrudRepository;
+
+public interface JobRunWhiteListRepository extends CrudRepository<JobRunWhiteList, UUID> {
+
+}
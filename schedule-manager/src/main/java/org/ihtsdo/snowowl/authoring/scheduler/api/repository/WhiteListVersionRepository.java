@@ -0,0 +1,8 @@
+package org.ihtsdo.snowowl.authoring.scheduler.api.repository;
+
+import org.ihtsdo.snowowl.authoring.scheduler.api.domain.WhiteListVersion;
+import org.springframework.data.repository.CrudRepository;
+
+public interface WhiteListVersionRepository extends CrudRepository<WhiteListVersion, String> {
+
+}
@@ -4,17 +4,27 @@ import io.swagger.annotations.*;
 
 import org.ihtsdo.otf.rest.exception.BusinessServiceException;
 import org.ihtsdo.snowowl.authoring.scheduler.api.configuration.WebSecurityConfig;
+import org.ihtsdo.snowowl.authoring.scheduler.api.domain.JobRunProgress;
+import org.ihtsdo.snowowl.authoring.scheduler.api.repository.JobRunSummary;
 import org.ihtsdo.snowowl.authoring.scheduler.api.service.AccessControlService;
 import org.ihtsdo.snowowl.authoring.scheduler.api.service.ScheduleService;
+import org.ihtsdo.snowowl.authoring.scheduler.api.service.dao.ArbitraryFileService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.otf.scheduler.domain.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.web.PageableDefault;
 import org.springframework.http.*;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
 import java.util.*;
 
 import javax.servlet.http.HttpServletRequest;
@@ -33,6 +43,12 @@ public class SchedulerController {
 	@Autowired
 	WebSecurityConfig config;
 	
+	@Autowired
+	ArbitraryFileService fileService;
+	
+	@Autowired
+	StoredFileResponder storedFileResponder;
+	
 	@Value("${schedule.manager.terminoloy.server.uri}")
 	String terminologyServerUrl;
 	
@@ -82,6 +98,20 @@ public class SchedulerController {
 		return scheduleService.listJobsRun(typeName, jobName, user, getVisibleProjects(request));
 	}
 	
+	@ApiOperation(value="List jobs run, a page at a time, without their parameters")
+	@ApiResponses({
+			@ApiResponse(code = 200, message = "OK")
+	})
+	@RequestMapping(value="/jobs/{typeName}/{jobName}/runs/summaries", method= RequestMethod.GET)
+	public Slice<JobRunSummary> listJobRunSummaries(HttpServletRequest request,
+			@PathVariable final String typeName,
+			@PathVariable final String jobName,
+			@RequestParam(required=false) final String user,
+			@PageableDefault(size=50, sort="requestTime", direction=Sort.Direction.DESC) Pageable pageable) throws BusinessServiceException {
+		
+		return scheduleService.listJobRunSummaries(typeName, jobName, user, getVisibleProjects(request), pageable);
+	}
+	
 	private Set<String> getVisibleProjects(HttpServletRequest request) throws BusinessServiceException {
 		String authToken = request.getHeader(X_AUTH_TOK);
 		String username = request.getHeader(X_AUTH_USER);
@@ -145,6 +175,81 @@ public class SchedulerController {
 		return scheduleService.getJobRun(typeName, jobName, runId);
 	}
 	
+	@ApiOperation(value="Get whitelist of job run", notes="The SCTIDs whitelisted for the job when the run was requested")
+	@ApiResponses({
+			@ApiResponse(code = 200, message = "OK"),
+			@ApiResponse(code = 404, message = "No whitelist applied to the run")
+	})
+	@RequestMapping(value="/jobs/{typeName}/{jobName}/runs/{runId}/whitelist", method= RequestMethod.GET)
+	public ResponseEntity<Set<String>> getJobRunWhiteList(@PathVariable final String typeName,
+			@PathVariable final String jobName,
+			@PathVariable final UUID runId) {
+		Set<String> whiteList = scheduleService.getJobRunWhiteList(typeName, jobName, runId);
+		if (whiteList == null) {
+			return new ResponseEntity<Set<String>>(HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<Set<String>>(whiteList, HttpStatus.OK);
+	}
+	
+	@ApiOperation(value="Get result of job run", notes="Results held remotely are redirected to, results stored as files are streamed")
+	@ApiResponses({
+			@ApiResponse(code = 200, message = "OK"),
+			@ApiResponse(code = 206, message = "Partial content, for range requests"),
+			@ApiResponse(code = 302, message = "Result is held remotely"),
+			@ApiResponse(code = 304, message = "Not modified"),
+			@ApiResponse(code = 404, message = "Run or result not found")
+	})
+	@RequestMapping(value="/jobs/{typeName}/{jobName}/runs/{runId}/result", method= RequestMethod.GET, produces=MediaType.ALL_VALUE)
+	public ResponseEntity<?> getJobRunResult(@PathVariable final String typeName,
+			@PathVariable final String jobName,
+			@PathVariable final UUID runId,
+			@RequestHeader HttpHeaders headers) throws IOException {
+		JobRun jobRun = scheduleService.getJobRun(typeName, jobName, runId);
+		if (jobRun == null || StringUtils.isEmpty(jobRun.getResultUrl())) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		String resultUrl = jobRun.getResultUrl();
+		if (resultUrl.startsWith("http://") || resultUrl.startsWith("https://")) {
+			return ResponseEntity.status(HttpStatus.FOUND).location(URI.create(resultUrl)).build();
+		}
+		//Otherwise the result was written as a file, relative to the stored file location
+		File file = fileService.getExistingFile(resultUrl);
+		MediaType contentType = file == null ? null : MediaTypeFactory.getMediaType(file.getName()).orElse(MediaType.APPLICATION_OCTET_STREAM);
+		return storedFileResponder.respond(file, contentType, headers);
+	}
+	
+	@ApiOperation(value="Get progress of job run", notes="Only available while the job is running")
+	@ApiResponses({
+			@ApiResponse(code = 200, message = "OK"),
+			@ApiResponse(code = 404, message = "Run not in progress")
+	})
+	@RequestMapping(value="/jobs/{typeName}/{jobName}/runs/{runId}/progress", method= RequestMethod.GET)
+	public ResponseEntity<JobRunProgress> getJobRunProgress(@PathVariable final String typeName,
+			@PathVariable final String jobName,
+			@PathVariable final UUID runId) {
+		JobRunProgress progress = scheduleService.getJobRunProgress(typeName, jobName, runId);
+		if (progress == null) {
+			return new ResponseEntity<JobRunProgress>(HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<JobRunProgress>(progress, HttpStatus.OK);
+	}
+	
+	@ApiOperation(value="Cancel job run", notes="Running jobs stop at their next safe point, and are then reported as failed")
+	@ApiResponses({
+			@ApiResponse(code = 202, message = "Cancellation requested"),
+			@ApiResponse(code = 404, message = "Run not found or already finished")
+	})
+	@RequestMapping(value="/jobs/{typeName}/{jobName}/runs/{runId}/cancel", method= RequestMethod.POST)
+	public ResponseEntity<?> cancelJobRun(@PathVariable final String typeName,
+			@PathVariable final String jobName,
+			@PathVariable final UUID runId) {
+		boolean cancelled = scheduleService.cancelJobRun(typeName, jobName, runId);
+		if (!cancelled) {
+			return new ResponseEntity<JobRun>(HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<JobRun>(HttpStatus.ACCEPTED);
+	}
+	
 	@ApiOperation(value="Delete job run")
 	@RequestMapping(value = "/jobs/{typeName}/{jobName}/runs/{runId}", method = RequestMethod.DELETE)
 	public ResponseEntity<?> deleteJobRun(@PathVariable final String typeName,
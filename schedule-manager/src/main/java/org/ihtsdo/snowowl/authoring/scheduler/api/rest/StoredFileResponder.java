@@ -0,0 +1,102 @@
+package org.ihtsdo.snowowl.authoring.scheduler.api.rest;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.*;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * Builds the response for a stored file, such as a report output, so that controllers
+ * returning stored results never hold the file in memory.
+ *
+ * The file is streamed from disk.  Range requests are answered by Spring with the requested
+ * regions of the file.  Other requests for text are gzipped on the fly for clients that
+ * accept it.  The ETag is taken from the file's size and modification time, so it costs
+ * nothing to work out, and lets clients revalidate a result they already hold.
+ */
+@Component
+public class StoredFileResponder {
+
+	//Smaller files gain little from compression
+	static final long MIN_GZIP_BYTES = 1024;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final List<MediaType> COMPRESSIBLE = Arrays.asList(
+			MediaType.parseMediaType("text/*"),
+			MediaType.APPLICATION_JSON,
+			MediaType.APPLICATION_XML);
+
+	public ResponseEntity<?> respond(File file, MediaType contentType, HttpHeaders requestHeaders) {
+		if (file == null || !file.isFile()) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		boolean gzip = !requestHeaders.containsKey(HttpHeaders.RANGE)
+				&& acceptsGzip(requestHeaders)
+				&& isCompressible(contentType)
+				&& file.length() >= MIN_GZIP_BYTES;
+		//Each encoding is a different representation, so needs its own tag
+		String tag = Long.toHexString(file.lastModified()) + "-" + Long.toHexString(file.length());
+		String eTag = "\"" + tag + (gzip ? "-gz" : "") + "\"";
+
+		if (isNotModified(requestHeaders, eTag)) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+					.eTag(eTag)
+					.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+					.build();
+		}
+
+		ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+				.contentType(contentType)
+				.eTag(eTag)
+				.lastModified(file.lastModified())
+				.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+		if (gzip) {
+			StreamingResponseBody body = out -> {
+				try (InputStream in = Files.newInputStream(file.toPath());
+						GZIPOutputStream gzipOut = new GZIPOutputStream(out, BUFFER_SIZE)) {
+					StreamUtils.copy(in, gzipOut);
+				}
+			};
+			return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(body);
+		}
+		//Spring answers Range requests for a resource with just the regions asked for,
+		//and sets the length of whatever it sends
+		return response.header(HttpHeaders.ACCEPT_RANGES, "bytes")
+				.body(new FileSystemResource(file));
+	}
+
+	private static boolean acceptsGzip(HttpHeaders requestHeaders) {
+		for (String acceptEncoding : requestHeaders.getOrEmpty(HttpHeaders.ACCEPT_ENCODING)) {
+			for (String coding : acceptEncoding.split(",")) {
+				String[] parts = coding.trim().split(";");
+				if (parts[0].trim().equalsIgnoreCase("gzip")) {
+					return parts.length == 1 || !parts[1].trim().replace(" ", "").matches("q=0(\\.0*)?");
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean isCompressible(MediaType contentType) {
+		return contentType != null && COMPRESSIBLE.stream().anyMatch(type -> type.includes(contentType));
+	}
+
+	private static boolean isNotModified(HttpHeaders requestHeaders, String eTag) {
+		for (String match : requestHeaders.getIfNoneMatch()) {
+			if (match.equals("*") || match.equals(eTag) || match.equals("W/" + eTag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
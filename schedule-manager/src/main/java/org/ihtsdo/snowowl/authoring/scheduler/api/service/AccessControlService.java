@@ -1,84 +1,142 @@
 package org.ihtsdo.snowowl.authoring.scheduler.api.service;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
-import org.apache.commons.lang.time.DateUtils;
+import javax.annotation.PreDestroy;
+
 import org.ihtsdo.otf.rest.client.authoringservices.AuthoringServicesClient;
 import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Project;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
-@Service	
+/**
+ * Caches the projects each user can see.  Only one request per user goes to the authoring
+ * service at a time, however many requests are waiting on it, and entries are refreshed in
+ * the background shortly before they expire, so that users who are active don't wait at all.
+ */
+@Service
 public class AccessControlService {
-	
+
 	private static int cacheTimeoutMins = 30;
-	
-	private Map<String, UserProjects> cache = new HashMap<>();
-	
-	AuthoringServicesClient authoringServices;
-	
+
+	//How long before expiry a request will trigger a background refresh
+	private static int refreshAheadMins = 5;
+
+	//How long to keep a result that looks like a configuration problem before asking again
+	private static int suspectResultMins = 1;
+
+	private static int refreshThreads = 4;
+
+	private final Map<String, UserProjects> cache = new ConcurrentHashMap<>();
+
+	private final Map<String, CompletableFuture<UserProjects>> loading = new ConcurrentHashMap<>();
+
+	private final ExecutorService refreshExecutor = Executors.newFixedThreadPool(refreshThreads, r -> {
+		Thread t = new Thread(r, "project-access-refresh");
+		t.setDaemon(true);
+		return t;
+	});
+
 	protected Logger logger = LoggerFactory.getLogger(this.getClass());
-	
+
 	public Set<String> getProjects(String username, String serverUrl, String authToken) {
-		if (!cache.containsKey(username) || cache.get(username).isExpired()) {
-			UserProjects userProjects = getUserProjects(username, serverUrl, authToken);
-			logger.info("Caching {}'s access to projects {}", username, userProjects.getProjects());
-			cache.put(username, userProjects);
-			//If the list of projects is only 1 long (ie MAIN) then we've probably a problem with 
-			//configuration for that user.  Force expiry of the visible project list in this case
-			if (userProjects.size() <= 1) {
-				logger.info("User has access to {} projects.  Suspected configuration issue.  Expiring cache.", userProjects.size());
-				userProjects.expire();
+		UserProjects userProjects = cache.get(username);
+		if (userProjects != null && !userProjects.isExpired()) {
+			if (userProjects.isDueForRefresh()) {
+				//Carry on with what we have, the next request will see the refreshed list
+				load(username, serverUrl, authToken);
 			}
+			return userProjects.getProjects();
+		}
+
+		try {
+			return load(username, serverUrl, authToken).join().getProjects();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException)e.getCause();
+			}
+			throw e;
 		}
-		UserProjects userProjects = cache.get(username);
-		return userProjects.getProjects();
+	}
+
+	/**
+	 * Starts loading the user's projects, unless that's already in progress, in which
+	 * case the caller shares the result of the existing load.
+	 */
+	private CompletableFuture<UserProjects> load(String username, String serverUrl, String authToken) {
+		CompletableFuture<UserProjects> future = new CompletableFuture<>();
+		CompletableFuture<UserProjects> inProgress = loading.putIfAbsent(username, future);
+		if (inProgress != null) {
+			return inProgress;
+		}
+		refreshExecutor.execute(() -> {
+			try {
+				UserProjects userProjects = getUserProjects(username, serverUrl, authToken);
+				cache.put(username, userProjects);
+				future.complete(userProjects);
+			} catch (RuntimeException e) {
+				logger.error("Unable to obtain {}'s access to projects", username, e);
+				future.completeExceptionally(e);
+			} finally {
+				loading.remove(username, future);
+			}
+		});
+		return future;
 	}
 
 	private UserProjects getUserProjects(String username, String serverUrl, String authToken) {
-		prepareAuthServices(serverUrl, authToken);
+		//Each call uses the token of the request that made it, rather than sharing one client
+		AuthoringServicesClient authoringServices = new AuthoringServicesClient(serverUrl, authToken);
 		List<Project> projects = authoringServices.listProjects();
 		Set<String> projectStrs = projects.stream().map(p -> p.getKey())
 				.collect(Collectors.toSet());
 		//MAIN is not a project in Jira.  OK to add since MS generally doesn't use this
 		projectStrs.add("MAIN");
-		return new UserProjects(projectStrs);
-	}
 
-	private void prepareAuthServices(String serverUrl, String authToken) {
-		//Is this our first call?  Create AuthServices if so, else update 
-		if (authoringServices == null) {
-			authoringServices = new AuthoringServicesClient(serverUrl, authToken);
+		//If the list of projects is only 1 long (ie MAIN) then we've probably a problem with
+		//configuration for that user.  Only keep the visible project list briefly in this case
+		int timeoutMins = cacheTimeoutMins;
+		if (projectStrs.size() <= 1) {
+			logger.info("User {} has access to {} projects.  Suspected configuration issue.  Caching for {} min only.", username, projectStrs.size(), suspectResultMins);
+			timeoutMins = suspectResultMins;
 		} else {
-			authoringServices.updateAuthToken(authToken);
+			logger.info("Caching {}'s access to projects {}", username, projectStrs);
 		}
+		return new UserProjects(projectStrs, timeoutMins);
 	}
 
-	private class UserProjects {
-		Date created;
-		Set<String> projects;
-		
-		public UserProjects(Set<String> projects) {
-			this.projects = projects;
-			created = new Date();
-		}
-		
-		public int size() {
-			return projects == null ? 0 : projects.size();
+	@PreDestroy
+	public void shutdown() {
+		refreshExecutor.shutdownNow();
+	}
+
+	private static class UserProjects {
+		final long created;
+		final long refreshAfter;
+		final long expires;
+		final Set<String> projects;
+
+		public UserProjects(Set<String> projects, int timeoutMins) {
+			this.projects = Collections.unmodifiableSet(projects);
+			created = System.currentTimeMillis();
+			expires = created + TimeUnit.MINUTES.toMillis(timeoutMins);
+			//Short lived entries are simply reloaded once they expire
+			refreshAfter = timeoutMins > refreshAheadMins ? expires - TimeUnit.MINUTES.toMillis(refreshAheadMins) : expires;
 		}
-		
+
 		public Set<String> getProjects() {
 			return projects;
 		}
-		
+
 		public boolean isExpired() {
-			return DateUtils.addMinutes(created, cacheTimeoutMins).before(new Date());
+			return System.currentTimeMillis() >= expires;
 		}
-		
-		public void expire() {
-			created = DateUtils.addMinutes(created, (-1 * cacheTimeoutMins));
+
+		public boolean isDueForRefresh() {
+			return System.currentTimeMillis() >= refreshAfter;
 		}
 	}
 }
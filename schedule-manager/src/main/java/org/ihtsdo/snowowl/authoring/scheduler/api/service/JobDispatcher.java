@@ -0,0 +1,246 @@
+package org.ihtsdo.snowowl.authoring.scheduler.api.service;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.ihtsdo.snowowl.authoring.scheduler.api.mq.Transmitter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.otf.scheduler.domain.Job;
+import org.snomed.otf.scheduler.domain.JobRun;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Decides when, and with what priority, job runs are passed to the request queue.
+ *
+ * Each run is given a lane, which the broker turns into a JMS priority so that workers
+ * take interactive runs ahead of scheduled ones, and scheduled runs ahead of bulk ones.
+ * Within each lane, a user may only have so many runs waiting on or being run by the
+ * workers.  Further runs are held here and released, in the order they were requested,
+ * as that user's earlier runs complete, so that no one user can fill the queue.
+ *
+ * Held runs are kept in memory only, so they are passed to the queue on shutdown rather
+ * than being lost.
+ */
+@Service
+public class JobDispatcher {
+
+	public enum Lane {
+		INTERACTIVE(7), SCHEDULED(4), BULK(1);
+
+		final int priority;
+
+		Lane(int priority) {
+			this.priority = priority;
+		}
+
+		public int getPriority() {
+			return priority;
+		}
+	}
+
+	@Autowired
+	Transmitter transmitter;
+
+	@Value("${schedule.manager.dispatch.max.per.user:2}")
+	int maxPerUser;
+
+	//Runs that never report back, eg because the worker died, stop counting against the user after this long
+	@Value("${schedule.manager.dispatch.inflight.timeout.mins:720}")
+	int inFlightTimeoutMins;
+
+	@Value("${schedule.manager.dispatch.bulk.jobs:}")
+	String[] bulkJobs;
+
+	@Value("${schedule.manager.dispatch.bulk.categories:}")
+	String[] bulkCategories;
+
+	private final Map<UUID, InFlightRun> inFlight = new HashMap<>();
+
+	private final Map<String, EnumMap<Lane, Deque<Dispatch>>> held = new HashMap<>();
+
+	protected Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	public Lane getLane(Job job, boolean isScheduled) {
+		if (Arrays.asList(bulkJobs).contains(job.getName())
+				|| (job.getCategory() != null && Arrays.asList(bulkCategories).contains(job.getCategory().getName()))) {
+			return Lane.BULK;
+		}
+		return isScheduled ? Lane.SCHEDULED : Lane.INTERACTIVE;
+	}
+
+	/**
+	 * @param whiteListVersion the version of the whitelist that applies to the run, or null if none does
+	 */
+	public void dispatch(JobRun jobRun, Lane lane, String whiteListVersion) {
+		List<Dispatch> toSend;
+		synchronized (this) {
+			held.computeIfAbsent(getUser(jobRun), k -> new EnumMap<>(Lane.class))
+				.computeIfAbsent(lane, k -> new ArrayDeque<>())
+				.add(new Dispatch(jobRun, lane, whiteListVersion));
+			toSend = release();
+		}
+		if (toSend.stream().noneMatch(d -> d.jobRun == jobRun)) {
+			logger.info("Holding {} run {} for {}, who already has {} runs in that lane", lane, jobRun.getId(), getUser(jobRun), maxPerUser);
+		}
+		send(toSend, jobRun);
+	}
+
+	/**
+	 * Called once a run has finished, freeing its place for the user's next run
+	 */
+	public void complete(UUID runId) {
+		List<Dispatch> toSend;
+		synchronized (this) {
+			if (inFlight.remove(runId) == null) {
+				return;
+			}
+			toSend = release();
+		}
+		send(toSend, null);
+	}
+
+	/**
+	 * Removes a run that has not yet been passed to the queue
+	 * @return true if the run was being held
+	 */
+	public synchronized boolean withdraw(UUID runId) {
+		for (EnumMap<Lane, Deque<Dispatch>> userLanes : held.values()) {
+			for (Deque<Dispatch> lane : userLanes.values()) {
+				if (lane.removeIf(d -> runId.equals(d.jobRun.getId()))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the number of runs passed to the queue that have not yet reported a final status
+	 */
+	public synchronized int getInFlightCount() {
+		expireInFlight();
+		return inFlight.size();
+	}
+
+	public synchronized int getHeldCount() {
+		return held.values().stream()
+				.flatMap(userLanes -> userLanes.values().stream())
+				.mapToInt(Deque::size)
+				.sum();
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		List<Dispatch> toSend = new ArrayList<>();
+		synchronized (this) {
+			for (EnumMap<Lane, Deque<Dispatch>> userLanes : held.values()) {
+				for (Deque<Dispatch> lane : userLanes.values()) {
+					toSend.addAll(lane);
+				}
+			}
+			held.clear();
+		}
+		if (!toSend.isEmpty()) {
+			logger.info("Passing {} held runs to the queue before shutdown", toSend.size());
+			send(toSend, null);
+		}
+	}
+
+	/**
+	 * Moves held runs to in flight for every user with room in the lane.  Must hold the lock.
+	 */
+	private List<Dispatch> release() {
+		expireInFlight();
+		Map<String, EnumMap<Lane, Integer>> counts = new HashMap<>();
+		for (InFlightRun run : inFlight.values()) {
+			counts.computeIfAbsent(run.user, k -> new EnumMap<>(Lane.class)).merge(run.lane, 1, Integer::sum);
+		}
+		List<Dispatch> toSend = new ArrayList<>();
+		for (Iterator<Map.Entry<String, EnumMap<Lane, Deque<Dispatch>>>> users = held.entrySet().iterator(); users.hasNext(); ) {
+			Map.Entry<String, EnumMap<Lane, Deque<Dispatch>>> user = users.next();
+			for (Map.Entry<Lane, Deque<Dispatch>> lane : user.getValue().entrySet()) {
+				int count = counts.getOrDefault(user.getKey(), new EnumMap<>(Lane.class)).getOrDefault(lane.getKey(), 0);
+				while (count < maxPerUser && !lane.getValue().isEmpty()) {
+					Dispatch dispatch = lane.getValue().poll();
+					inFlight.put(dispatch.jobRun.getId(), new InFlightRun(user.getKey(), lane.getKey()));
+					toSend.add(dispatch);
+					count++;
+				}
+			}
+			user.getValue().values().removeIf(Deque::isEmpty);
+			if (user.getValue().isEmpty()) {
+				users.remove();
+			}
+		}
+		return toSend;
+	}
+
+	private void expireInFlight() {
+		long expiry = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(inFlightTimeoutMins);
+		for (Iterator<Map.Entry<UUID, InFlightRun>> runs = inFlight.entrySet().iterator(); runs.hasNext(); ) {
+			Map.Entry<UUID, InFlightRun> run = runs.next();
+			if (run.getValue().dispatched < expiry) {
+				logger.warn("No final response for run {} after {} minutes, no longer counting it against {}", run.getKey(), inFlightTimeoutMins, run.getValue().user);
+				runs.remove();
+			}
+		}
+	}
+
+	/**
+	 * A failure to send the run just requested is passed back to the caller, while any
+	 * other run that can't be sent is logged, since there's no one waiting on it.
+	 */
+	private void send(List<Dispatch> toSend, JobRun requested) {
+		RuntimeException failure = null;
+		for (Dispatch dispatch : toSend) {
+			logger.debug("Dispatching {} run {} for {}", dispatch.lane, dispatch.jobRun.getId(), getUser(dispatch.jobRun));
+			try {
+				transmitter.send(dispatch.jobRun, dispatch.lane.getPriority(), dispatch.whiteListVersion);
+			} catch (RuntimeException e) {
+				synchronized (this) {
+					inFlight.remove(dispatch.jobRun.getId());
+				}
+				if (dispatch.jobRun == requested) {
+					failure = e;
+				} else {
+					logger.error("Unable to dispatch run {}", dispatch.jobRun.getId(), e);
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private static String getUser(JobRun jobRun) {
+		return jobRun.getUser() == null ? "" : jobRun.getUser();
+	}
+
+	private static class InFlightRun {
+		final String user;
+		final Lane lane;
+		final long dispatched = System.currentTimeMillis();
+
+		InFlightRun(String user, Lane lane) {
+			this.user = user;
+			this.lane = lane;
+		}
+	}
+
+	private static class Dispatch {
+		final JobRun jobRun;
+		final Lane lane;
+		final String whiteListVersion;
+
+		Dispatch(JobRun jobRun, Lane lane, String whiteListVersion) {
+			this.jobRun = jobRun;
+			this.lane = lane;
+			this.whiteListVersion = whiteListVersion;
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package org.ihtsdo.snowowl.authoring.scheduler.api.service;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.PostConstruct;
+
+import org.ihtsdo.snowowl.authoring.scheduler.api.domain.ArchivedJobRun;
+import org.ihtsdo.snowowl.authoring.scheduler.api.repository.ArchivedJobRunRepository;
+import org.ihtsdo.snowowl.authoring.scheduler.api.repository.JobRunRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.otf.scheduler.domain.JobRun;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Keeps the JobRun table small by moving all but the latest runs for each job, user and
+ * project into the ArchivedJobRun table, where they can still be retrieved by id.
+ * Only completed or failed runs are archived.  Runs are moved a batch at a time, each in
+ * its own short transaction, so that the hot table is never locked for long.
+ */
+@Service
+public class JobRunArchiveService {
+
+	@Autowired
+	JobRunRepository jobRunRepository;
+
+	@Autowired
+	ArchivedJobRunRepository archivedJobRunRepository;
+
+	@Autowired
+	ObjectMapper objectMapper;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	@Autowired
+	TaskScheduler engineScheduler;
+
+	@Value("${schedule.manager.retention.enabled:true}")
+	boolean retentionEnabled;
+
+	@Value("${schedule.manager.retention.runs.kept:100}")
+	int runsKept;
+
+	@Value("${schedule.manager.retention.batch.size:200}")
+	int batchSize;
+
+	@Value("${schedule.manager.retention.cron:0 30 2 * * *}")
+	String retentionCron;
+
+	private TransactionTemplate transactionTemplate;
+
+	private final AtomicBoolean isArchiving = new AtomicBoolean();
+
+	protected Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	@PostConstruct
+	public void init() {
+		transactionTemplate = new TransactionTemplate(transactionManager);
+		if (retentionEnabled) {
+			logger.info("Archiving all but the latest {} runs of each job per user and project, on schedule '{}'", runsKept, retentionCron);
+			engineScheduler.schedule(this::archiveOldRuns, new CronTrigger(retentionCron));
+		}
+	}
+
+	/**
+	 * @return the number of runs archived, or 0 if archiving is already in progress
+	 */
+	public int archiveOldRuns() {
+		if (!isArchiving.compareAndSet(false, true)) {
+			logger.warn("Archiving of old job runs already in progress");
+			return 0;
+		}
+		int archived = 0;
+		try {
+			for (Object[] group : jobRunRepository.findRunGroups()) {
+				archived += archiveOldRuns((String)group[0], (String)group[1], (String)group[2]);
+			}
+			logger.info("Archived {} job runs", archived);
+		} catch (Exception e) {
+			logger.error("Archiving of old job runs failed after {} runs", archived, e);
+		} finally {
+			isArchiving.set(false);
+		}
+		return archived;
+	}
+
+	private int archiveOldRuns(String jobName, String user, String project) {
+		//Anything older than the last run we're keeping can go
+		List<Date> oldestKept = jobRunRepository.findRequestTimesInGroup(jobName, user, project, PageRequest.of(Math.max(runsKept, 1) - 1, 1));
+		if (oldestKept.isEmpty()) {
+			return 0;
+		}
+		Date before = oldestKept.get(0);
+		int archived = 0;
+		List<UUID> batch;
+		do {
+			batch = jobRunRepository.findIdsInGroupBefore(jobName, user, project, before, ScheduleServiceImpl.finalStatuses, PageRequest.of(0, batchSize));
+			if (!batch.isEmpty()) {
+				archiveBatch(batch);
+				archived += batch.size();
+			}
+		} while (batch.size() == batchSize);
+		if (archived > 0) {
+			logger.info("Archived {} runs of {} for {} in {}", archived, jobName, user, project);
+		}
+		return archived;
+	}
+
+	private void archiveBatch(List<UUID> ids) {
+		transactionTemplate.execute(status -> {
+			List<JobRun> jobRuns = new ArrayList<>();
+			List<ArchivedJobRun> archivedRuns = new ArrayList<>();
+			for (JobRun jobRun : jobRunRepository.findAllById(ids)) {
+				//There's no call to keep credentials beyond the run
+				jobRun.setAuthToken(null);
+				jobRuns.add(jobRun);
+				archivedRuns.add(new ArchivedJobRun(jobRun, compress(jobRun)));
+			}
+			archivedJobRunRepository.saveAll(archivedRuns);
+			jobRunRepository.deleteAll(jobRuns);
+			return null;
+		});
+	}
+
+	/**
+	 * @return the archived run with the given id, or null if it has not been archived
+	 */
+	public JobRun getArchivedJobRun(UUID runId) {
+		return archivedJobRunRepository.findById(runId)
+				.map(archivedRun -> decompress(archivedRun.getContent()))
+				.orElse(null);
+	}
+
+	public boolean deleteArchivedJobRun(UUID runId) {
+		if (!archivedJobRunRepository.existsById(runId)) {
+			return false;
+		}
+		archivedJobRunRepository.deleteById(runId);
+		return true;
+	}
+
+	private byte[] compress(JobRun jobRun) {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (OutputStream os = new GZIPOutputStream(baos)) {
+			objectMapper.writeValue(os, jobRun);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to archive job run " + jobRun.getId(), e);
+		}
+		return baos.toByteArray();
+	}
+
+	private JobRun decompress(byte[] content) {
+		try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(content))) {
+			return objectMapper.readValue(is, JobRun.class);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to read archived job run", e);
+		}
+	}
+}
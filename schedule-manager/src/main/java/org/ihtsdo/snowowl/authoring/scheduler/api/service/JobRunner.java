@@ -1,25 +1,20 @@
 package org.ihtsdo.snowowl.authoring.scheduler.api.service;
 
-import org.ihtsdo.otf.rest.exception.BusinessServiceException;
 import org.snomed.otf.scheduler.domain.*;
 
 public class JobRunner implements Runnable {
 
-	JobRun jobRun;
-	ScheduleService service;
+	JobSchedule jobSchedule;
+	ScheduleServiceImpl service;
 	
-	JobRunner(ScheduleService service, JobRun jobRun) {
+	JobRunner(ScheduleServiceImpl service, JobSchedule jobSchedule) {
 		this.service = service;
-		this.jobRun = jobRun;
+		this.jobSchedule = jobSchedule;
 	}
 
 	@Override
 	public void run() {
-		try {
-			service.runJob(jobRun);
-		} catch (BusinessServiceException e) {
-			e.printStackTrace();
-		}
+		service.runScheduledJob(jobSchedule);
 	}
 
 }
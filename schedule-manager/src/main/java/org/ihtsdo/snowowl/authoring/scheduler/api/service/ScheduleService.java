@@ -3,7 +3,11 @@ package org.ihtsdo.snowowl.authoring.scheduler.api.service;
 import java.util.*;
 
 import org.ihtsdo.otf.rest.exception.BusinessServiceException;
+import org.ihtsdo.snowowl.authoring.scheduler.api.domain.JobRunProgress;
+import org.ihtsdo.snowowl.authoring.scheduler.api.repository.JobRunSummary;
 import org.snomed.otf.scheduler.domain.*;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -16,6 +20,8 @@ public interface ScheduleService {
 	public Job getJob(String jobName);
 	
 	List<JobRun> listJobsRun(String typeName, String jobName, String user, Set<String> projects);
+	
+	Slice<JobRunSummary> listJobRunSummaries(String typeName, String jobName, String user, Set<String> projects, Pageable pageable);
 
 	public JobRun runJob(String jobType, String jobName, JobRun jobRun) throws BusinessServiceException;
 
@@ -26,6 +32,11 @@ public interface ScheduleService {
 	public void deleteSchedule(String jobType, String jobName, UUID scheduleId);
 
 	public JobRun getJobRun(String typeName, String jobName, UUID runId);
+	
+	/**
+	 * @return the SCTIDs whitelisted for the run when it was requested, or null if none were
+	 */
+	public Set<String> getJobRunWhiteList(String typeName, String jobName, UUID runId);
 
 	public void initialise();
 
@@ -33,6 +44,12 @@ public interface ScheduleService {
 
 	public void processMetadata(JobMetadata metadata);
 
+	public void processProgress(JobRunProgress progress);
+
+	public JobRunProgress getJobRunProgress(String typeName, String jobName, UUID runId);
+
+	public boolean cancelJobRun(String typeName, String jobName, UUID runId);
+
 	public boolean deleteJobRun(String typeName, String jobName, UUID runId);
 
 	public Set<WhiteListedConcept> getWhiteList(String typeName, String platformIdentifier, String jobName);
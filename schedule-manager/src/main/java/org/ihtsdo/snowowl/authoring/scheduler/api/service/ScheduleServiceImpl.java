@@ -1,13 +1,24 @@
 package org.ihtsdo.snowowl.authoring.scheduler.api.service;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.apache.commons.lang.StringUtils;
+import org.hibernate.Hibernate;
 import org.ihtsdo.otf.rest.exception.BusinessServiceException;
 import org.ihtsdo.otf.rest.exception.ResourceNotFoundException;
 import org.ihtsdo.snowowl.authoring.scheduler.api.AuthenticationService;
+import org.ihtsdo.snowowl.authoring.scheduler.api.domain.JobRunProgress;
+import org.ihtsdo.snowowl.authoring.scheduler.api.domain.JobRunWhiteList;
 import org.ihtsdo.snowowl.authoring.scheduler.api.mq.Transmitter;
 import org.ihtsdo.snowowl.authoring.scheduler.api.repository.*;
 import org.ihtsdo.sso.integration.SecurityUtil;
@@ -16,9 +27,15 @@ import org.slf4j.LoggerFactory;
 import org.snomed.otf.scheduler.domain.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.scheduling.TaskScheduler;
-import org.springframework.scheduling.Trigger;
 import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 public class ScheduleServiceImpl implements ScheduleService {
 	
@@ -40,6 +57,21 @@ public class ScheduleServiceImpl implements ScheduleService {
 	@Autowired
 	WhiteListRepository whiteListRepository;
 	
+	@Autowired
+	WhiteListService whiteListService;
+	
+	@Autowired
+	JobRunArchiveService jobRunArchiveService;
+	
+	@Autowired
+	JobDispatcher jobDispatcher;
+	
+	@Autowired
+	JobRunProgressRepository jobRunProgressRepository;
+	
+	@Autowired
+	JobRunWhiteListRepository jobRunWhiteListRepository;
+	
 	@Autowired
 	TaskScheduler engineScheduler;
 	
@@ -49,21 +81,93 @@ public class ScheduleServiceImpl implements ScheduleService {
 	@Autowired
 	AuthenticationService authenticationService;
 	
+	@Autowired
+	PlatformTransactionManager transactionManager;
+	
+	@Autowired
+	ObjectMapper objectMapper;
+	
 	@Value("${schedule.manager.terminoloy.server.uri}")
 	String terminologyServerUrl;
 	
+	@Value("${schedule.manager.response.threads:8}")
+	int responseThreads;
+	
+	//How long to wait on shutdown for responses already received to be saved
+	@Value("${schedule.manager.response.shutdown.timeout.seconds:30}")
+	int responseShutdownTimeoutSeconds;
+	
+	//Scheduled runs are deferred while at least this many runs are in progress
+	@Value("${schedule.manager.schedule.capacity:4}")
+	int scheduledCapacity;
+	
+	@Value("${schedule.manager.schedule.stagger.window.mins:10}")
+	int staggerWindowMins;
+	
+	//Scheduled runs are only staggered while more than this many runs are in progress
+	@Value("${schedule.manager.schedule.stagger.above:0}")
+	int staggerAbove;
+	
+	@Value("${schedule.manager.schedule.defer.interval.mins:5}")
+	int deferIntervalMins;
+	
+	@Value("${schedule.manager.schedule.defer.max.mins:60}")
+	int maxDeferralMins;
+	
+	//A scheduled run not picked up by a worker within this long of being requested is failed
+	@Value("${schedule.manager.schedule.orphan.mins:720}")
+	int orphanMins;
+	
+	@Value("${schedule.manager.progress.heartbeat.timeout.mins:5}")
+	int heartbeatTimeoutMins;
+	
+	@Value("${schedule.manager.progress.stall.mins:60}")
+	int stallMins;
+	
+	@Value("${schedule.manager.progress.dead.mins:60}")
+	int deadMins;
+	
 	static final JobRun metadataRequest = JobRun.create("METADATA", null);
 	
+	static final Set<JobStatus> finalStatuses = EnumSet.of(JobStatus.Complete, JobStatus.Failed);
+	
+	static final String DEFERRED = "Deferred ";
+	
+	private static final Pattern DEFERRALS = Pattern.compile("^" + DEFERRED + "(\\d+) time");
+	
+	//Responses for the same run are always processed on the same thread, so stay in order,
+	//while responses for different runs are processed concurrently
+	private ExecutorService[] responseLanes;
+	
+	//The latest response for each run that is waiting to be saved
+	private final Map<UUID, JobRun> pendingResponses = new ConcurrentHashMap<>();
+	
+	//Jobs by name, read through from the repository and cleared when the metadata changes
+	private final Map<String, Job> jobCatalogue = new ConcurrentHashMap<>();
+	
+	private TransactionTemplate transactionTemplate;
+	
 	protected Logger logger = LoggerFactory.getLogger(this.getClass());
 
 	@PostConstruct
 	public void init() {
+		transactionTemplate = new TransactionTemplate(transactionManager);
+		responseLanes = new ExecutorService[responseThreads];
+		for (int i = 0; i < responseThreads; i++) {
+			String threadName = "job-response-" + i;
+			responseLanes[i] = Executors.newSingleThreadExecutor(r -> new Thread(r, threadName));
+		}
+		
 		logger.info("Recovering previously saved Job Schedules from repository");
 		//Schedule all known cron jobs in memory
 		for (JobSchedule jobSchedule : jobScheduleRepository.findAll()) {
 			scheduleJob(jobSchedule);
 		}
 		
+		engineScheduler.scheduleWithFixedDelay(this::flagStalledRuns, TimeUnit.MINUTES.toMillis(1));
+		
+		recoverScheduledRuns();
+		
 		//Always refresh list of known jobs on startup
 		initialise();
 	}
@@ -87,7 +191,27 @@ public class ScheduleServiceImpl implements ScheduleService {
 
 	@Override
 	public Job getJob(String jobName) {
-		return jobRepository.findByName(jobName);
+		if (jobName == null) {
+			return null;
+		}
+		//Unknown jobs are not cached, so that they'll be found once the metadata arrives
+		return jobCatalogue.computeIfAbsent(jobName, this::loadJob);
+	}
+	
+	private Job loadJob(String jobName) {
+		return transactionTemplate.execute(status -> {
+			Job job = jobRepository.findByName(jobName);
+			if (job != null) {
+				//Cached jobs are used outside of the session that loaded them,
+				//so fetch everything needed to run the job now
+				Hibernate.initialize(job.getParameters());
+				Hibernate.initialize(job.getWhiteListMap());
+				for (WhiteList whiteList : job.getWhiteListMap().values()) {
+					Hibernate.initialize(whiteList.getConcepts());
+				}
+			}
+			return job;
+		});
 	}
 
 	@Override
@@ -99,6 +223,15 @@ public class ScheduleServiceImpl implements ScheduleService {
 		}
 	}
 
+	@Override
+	public Slice<JobRunSummary> listJobRunSummaries(String typeName, String jobName, String user, Set<String> projects, Pageable pageable) {
+		if (user != null && !user.isEmpty()) {
+			return jobRunRepository.findSummariesByJobNameAndUserAndProjectIn(jobName, user, projects, pageable);
+		} else {
+			return jobRunRepository.findSummariesByJobNameAndProjectIn(jobName, projects, pageable);
+		}
+	}
+
 	@Override
 	public JobRun runJob(String jobType, String jobName, JobRun jobRun) throws BusinessServiceException {
 		//Make sure we know what this job is before we run it!
@@ -106,7 +239,7 @@ public class ScheduleServiceImpl implements ScheduleService {
 		if (job == null) {
 			throw new ResourceNotFoundException("Unknown job : '" + jobType + "/" + jobName + "'");
 		}
-		return runJob(jobRun);
+		return runJob(job, jobRun, false);
 	}
 	
 	public JobRun runJob(JobRun jobRun) throws BusinessServiceException {
@@ -115,12 +248,20 @@ public class ScheduleServiceImpl implements ScheduleService {
 		if (job == null) {
 			throw new ResourceNotFoundException("Job unknown to Schedule Service: '" + jobRun.getJobName() +"' If job exists and is active, re-run initialise.");
 		}
-		
+		//Runs without a job type come from the job schedules
+		return runJob(job, jobRun, true);
+	}
+	
+	private JobRun runJob(Job job, JobRun jobRun, boolean isScheduled) throws BusinessServiceException {
 		jobRun.setRequestTime(new Date());
 		jobRun.setStatus(JobStatus.Scheduled);
 		jobRun.setTerminologyServerUrl(terminologyServerUrl);
-		jobRun.setWhiteList(job.getWhiteListConcepts(jobRun.getcodeSystemShortname()));
-		logger.info("Whitelisting {} concepts for {} in codeSystem", jobRun.getWhiteList().size(), jobRun.getJobName(), jobRun.getcodeSystemShortname());
+		//The run carries only the version of the whitelist, which workers fetch and cache
+		jobRun.setWhiteList(null);
+		String whiteListVersion = whiteListService.getVersion(job, jobRun.getcodeSystemShortname());
+		if (whiteListVersion != null) {
+			logger.info("Whitelist version {} applies to {} in codeSystem {}", whiteListVersion, jobRun.getJobName(), jobRun.getcodeSystemShortname());
+		}
 		populateAuthenticationDetails(jobRun);
 		
 		//We protect the json from having parent links and redundant keys, 
@@ -152,8 +293,12 @@ public class ScheduleServiceImpl implements ScheduleService {
 		}
 		
 		jobRun = jobRunRepository.save(jobRun);
-		logger.info("Running job: {}", jobRun);
-		transmitter.send(jobRun);
+		if (whiteListVersion != null) {
+			jobRunWhiteListRepository.save(new JobRunWhiteList(jobRun.getId(), whiteListVersion));
+		}
+		JobDispatcher.Lane lane = jobDispatcher.getLane(job, isScheduled);
+		logger.info("Running job in {} lane: {}", lane, jobRun);
+		jobDispatcher.dispatch(jobRun, lane, whiteListVersion);
 		return jobRun;
 	}
 
@@ -180,10 +325,113 @@ public class ScheduleServiceImpl implements ScheduleService {
 	
 	
 	private void scheduleJob(JobSchedule jobSchedule) {
-		Trigger trigger = new CronTrigger(jobSchedule.getSchedule());
+		JobRunner runner = new JobRunner (this, jobSchedule);
+		engineScheduler.schedule(runner, new CronTrigger(jobSchedule.getSchedule()));
+	}
+	
+	/**
+	 * Called each time a schedule fires.  If workers are already busy, the run is put back
+	 * by an offset within the stagger window, always the same for each schedule, so that
+	 * schedules sharing a cron time, typically the top of the hour, don't all land together.
+	 */
+	void runScheduledJob(JobSchedule jobSchedule) {
+		//Each firing is a run in its own right
 		JobRun jobRun = JobRun.create(jobSchedule);
-		JobRunner runner = new JobRunner (this, jobRun);
-		engineScheduler.schedule(runner, trigger);
+		Date due = new Date();
+		long staggerMillis = TimeUnit.MINUTES.toMillis(staggerWindowMins);
+		long offset = staggerMillis <= 0 ? 0 : Math.floorMod((long)jobSchedule.getId().hashCode(), staggerMillis);
+		int inFlight = jobDispatcher.getInFlightCount();
+		if (offset > 0 && inFlight > staggerAbove) {
+			logger.info("Staggering {} by {}s as {} runs are in progress", jobRun.getJobName(), TimeUnit.MILLISECONDS.toSeconds(offset), inFlight);
+			engineScheduler.schedule(() -> runScheduledJob(jobRun, due, 0), new Date(due.getTime() + offset));
+		} else {
+			runScheduledJob(jobRun, due, 0);
+		}
+	}
+	
+	/**
+	 * Scheduled runs give way to interactive ones.  While too many runs are in progress,
+	 * a scheduled run is put back by the deferral interval, recording this on the run,
+	 * until it has waited as long as it's allowed to, after which it's run regardless.
+	 */
+	private void runScheduledJob(JobRun jobRun, Date due, int deferrals) {
+		try {
+			int inFlight = jobDispatcher.getInFlightCount();
+			long deferredMins = TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis() - due.getTime());
+			if (inFlight >= scheduledCapacity && deferredMins + deferIntervalMins <= maxDeferralMins) {
+				int deferral = deferrals + 1;
+				String reason = DEFERRED + deferral + " time(s) since " + due + " as " + inFlight + " runs were in progress";
+				logger.info("{}: {}", jobRun.getJobName(), reason);
+				jobRun.setStatus(JobStatus.Scheduled);
+				jobRun.setRequestTime(due);
+				jobRun.setDebugInfo(reason);
+				//We protect the json from having parent links and redundant keys, 
+				//but these are needed when saving to the database
+				for (String parameterKey : jobRun.getParameters().keySet()) {
+					jobRun.getParameters().get(parameterKey).setParentParams(jobRun.getParameters());
+					jobRun.getParameters().get(parameterKey).setParamKey(parameterKey);
+				}
+				JobRun deferredRun = jobRunRepository.save(jobRun);
+				Date retry = new Date(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(deferIntervalMins));
+				engineScheduler.schedule(() -> runScheduledJob(deferredRun, due, deferral), retry);
+				return;
+			}
+			if (deferrals > 0) {
+				logger.info("Running {} after {} deferral(s), {} runs in progress", jobRun.getJobName(), deferrals, inFlight);
+				//No longer deferred, so must not be run again should we restart before a worker picks it up
+				jobRun.setDebugInfo("Dispatched after " + deferrals + " deferral(s) since " + due);
+			}
+			runJob(jobRun);
+		} catch (Exception e) {
+			logger.error("Unable to run scheduled job {}", jobRun.getJobName(), e);
+			if (jobRun.getId() != null) {
+				//Already saved, so would otherwise be left as Scheduled
+				jobRun.setStatus(JobStatus.Failed);
+				jobRun.setDebugInfo("Unable to run scheduled job: " + e.getMessage());
+				jobRun.setResultTime(new Date());
+				processResponse(jobRun);
+			}
+		}
+	}
+	
+	/**
+	 * Runs left as Scheduled by a previous instance are either being deferred, which was
+	 * only tracked in memory, so the deferral is resumed, or have been passed to the queue.
+	 * Those on the queue are left for a worker to pick up, but failed if none has done so
+	 * within the orphan time, since they may have been held in memory and lost.
+	 */
+	void recoverScheduledRuns() {
+		try {
+			List<JobRun> scheduledRuns = jobRunRepository.findByStatus(JobStatus.Scheduled);
+			if (!scheduledRuns.isEmpty()) {
+				logger.info("Recovering {} runs left as Scheduled", scheduledRuns.size());
+			}
+			for (JobRun jobRun : scheduledRuns) {
+				Date requested = jobRun.getRequestTime() == null ? new Date() : jobRun.getRequestTime();
+				Matcher deferrals = DEFERRALS.matcher(StringUtils.defaultString(jobRun.getDebugInfo()));
+				if (deferrals.find()) {
+					int deferred = Integer.parseInt(deferrals.group(1));
+					engineScheduler.schedule(() -> runScheduledJob(jobRun, requested, deferred), new Date());
+				} else {
+					Date orphaned = new Date(requested.getTime() + TimeUnit.MINUTES.toMillis(orphanMins));
+					engineScheduler.schedule(() -> failIfNotStarted(jobRun.getId()), orphaned);
+				}
+			}
+		} catch (Exception e) {
+			logger.error("Unable to recover scheduled runs", e);
+		}
+	}
+	
+	private void failIfNotStarted(UUID runId) {
+		Optional<JobRun> result = jobRunRepository.findById(runId);
+		if (result.isPresent() && result.get().getStatus() == JobStatus.Scheduled) {
+			JobRun jobRun = result.get();
+			logger.warn("Run {} of {} was not picked up by a worker within {} minutes, failing", runId, jobRun.getJobName(), orphanMins);
+			jobRun.setStatus(JobStatus.Failed);
+			jobRun.setDebugInfo("Not picked up by a worker within " + orphanMins + " minutes of being requested");
+			jobRun.setResultTime(new Date());
+			processResponse(jobRun);
+		}
 	}
 
 	@Override
@@ -194,7 +442,15 @@ public class ScheduleServiceImpl implements ScheduleService {
 	@Override
 	public JobRun getJobRun(String typeName, String jobName, UUID runId) {
 		Optional<JobRun> result = jobRunRepository.findById(runId);
-		return result.orElse(null);
+		//Older runs may have been moved to the archive
+		return result.orElseGet(() -> jobRunArchiveService.getArchivedJobRun(runId));
+	}
+
+	@Override
+	public Set<String> getJobRunWhiteList(String typeName, String jobName, UUID runId) {
+		return jobRunWhiteListRepository.findById(runId)
+				.map(runWhiteList -> whiteListService.getSctIds(runWhiteList.getVersion()))
+				.orElse(null);
 	}
 
 	@Override
@@ -203,12 +459,74 @@ public class ScheduleServiceImpl implements ScheduleService {
 		transmitter.send(metadataRequest);
 	}
 
+	@PreDestroy
+	public void shutdown() {
+		for (ExecutorService lane : responseLanes) {
+			lane.shutdown();
+		}
+		//Responses already received would otherwise be lost, leaving their runs in progress forever
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(responseShutdownTimeoutSeconds);
+		try {
+			for (ExecutorService lane : responseLanes) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0 || !lane.awaitTermination(remaining, TimeUnit.MILLISECONDS)) {
+					break;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		int unsaved = 0;
+		for (ExecutorService lane : responseLanes) {
+			unsaved += lane.shutdownNow().size();
+		}
+		if (unsaved > 0 || !pendingResponses.isEmpty()) {
+			logger.warn("Shut down with {} responses and progress updates still to be saved, including for runs {}", unsaved, pendingResponses.keySet());
+		}
+	}
+
 	@Override
-	public synchronized void processResponse(JobRun jobRun) {
+	public void processResponse(JobRun jobRun) {
+		UUID id = jobRun.getId();
+		if (id == null) {
+			logger.error("Unable to process response without a run id: {}", jobRun);
+			return;
+		}
+		if (finalStatuses.contains(jobRun.getStatus())) {
+			//Let the user's next run go
+			jobDispatcher.complete(id);
+		}
+		//If a response for this run is already waiting, the later one replaces it, so we only save
+		//once, unless the waiting response was final, which must not be lost.
+		boolean[] isQueued = new boolean[1];
+		pendingResponses.compute(id, (k, pending) -> {
+			if (pending == null) {
+				isQueued[0] = true;
+				return jobRun;
+			}
+			if (finalStatuses.contains(pending.getStatus()) && !finalStatuses.contains(jobRun.getStatus())) {
+				logger.warn("Run {} already has a pending {} response, ignoring {}", id, pending.getStatus(), jobRun.getStatus());
+				return pending;
+			}
+			logger.debug("Run {} response {} superseded by {}", id, pending.getStatus(), jobRun.getStatus());
+			return jobRun;
+		});
+		if (isQueued[0]) {
+			getLane(id).execute(() -> {
+				JobRun latest = pendingResponses.remove(id);
+				if (latest != null) {
+					saveResponse(latest);
+				}
+			});
+		}
+	}
+	
+	private ExecutorService getLane(UUID runId) {
+		return responseLanes[Math.floorMod(runId.hashCode(), responseLanes.length)];
+	}
+	
+	private void saveResponse(JobRun jobRun) {
 		try {
-			//If we already know about this jobRun, don't allow the status to be reverted
-			Optional<JobRun> savedJob = jobRunRepository.findById(jobRun.getId());
-			
 			//We protect the json from having parent links in them, but this is needed 
 			//when saving to the database
 			for (String parameterKey : jobRun.getParameters().keySet()) {
@@ -216,90 +534,280 @@ public class ScheduleServiceImpl implements ScheduleService {
 				jobRun.getParameters().get(parameterKey).setParentParams(jobRun.getParameters());
 			}
 			
-			if (savedJob.isPresent()) {
-				JobStatus existingStatus = savedJob.get().getStatus();
-				if (existingStatus.equals(JobStatus.Complete) || existingStatus.equals(JobStatus.Failed)) {
-					logger.error("Job already at status {}, ignoring response {}", existingStatus, jobRun);
-					return;
+			transactionTemplate.execute(status -> {
+				//If we already know about this jobRun, don't allow the status to be reverted.
+				//The conditional update also locks the row until we've saved the rest of the response
+				int updated = jobRunRepository.updateStatusUnlessIn(jobRun.getId(), jobRun.getStatus(), finalStatuses);
+				if (updated == 0) {
+					Optional<JobRun> savedJob = jobRunRepository.findById(jobRun.getId());
+					if (savedJob.isPresent()) {
+						logger.error("Job already at status {}, ignoring response {}", savedJob.get().getStatus(), jobRun);
+						return null;
+					}
+				} else {
+					//We need to grab the ID of the saved parameters objects 
+					//so we can update the correct one in the db, otherwise we save a fresh copy
+					jobRunRepository.findById(jobRun.getId())
+						.ifPresent(savedJob -> jobRun.getParameters().setId(savedJob.getParameters().getId()));
 				}
-				//We need to grab the ID of the saved parameters objects 
-				//so we can update the correct one in the db, otherwise we save a fresh copy
-				jobRun.getParameters().setId(savedJob.get().getParameters().getId());
-			}
-			logger.info("Saving job response: {}", jobRun);
-			jobRunRepository.save(jobRun);
+				logger.info("Saving job response: {}", jobRun);
+				jobRunRepository.save(jobRun);
+				
+				//Any response is as good as a heartbeat, and once the run is over there's nothing to track
+				UUID id = jobRun.getId();
+				if (finalStatuses.contains(jobRun.getStatus())) {
+					if (jobRunProgressRepository.existsById(id)) {
+						jobRunProgressRepository.deleteById(id);
+					}
+				} else if (jobRun.getStatus() == JobStatus.Running) {
+					JobRunProgress progress = jobRunProgressRepository.findById(id).orElseGet(() -> new JobRunProgress(id));
+					progress.heartbeat(new Date());
+					jobRunProgressRepository.save(progress);
+				}
+				return null;
+			});
 		} catch (Exception e) {
 			logger.error("Unable to process response for jobRun '{}'", jobRun, e);
 		}
 	}
+	
+	@Override
+	public void processProgress(JobRunProgress progress) {
+		//Same lane as the run's responses, so progress can't overtake its final status
+		getLane(progress.getRunId()).execute(() -> saveProgress(progress));
+	}
+	
+	private void saveProgress(JobRunProgress latest) {
+		try {
+			transactionTemplate.execute(status -> {
+				UUID id = latest.getRunId();
+				Optional<JobRun> jobRun = jobRunRepository.findById(id);
+				if (!jobRun.isPresent() || finalStatuses.contains(jobRun.get().getStatus())) {
+					logger.debug("Ignoring progress for run {} which is not in progress", id);
+					return null;
+				}
+				JobRunProgress progress = jobRunProgressRepository.findById(id).orElseGet(() -> new JobRunProgress(id));
+				progress.update(latest, new Date());
+				jobRunProgressRepository.save(progress);
+				return null;
+			});
+		} catch (Exception e) {
+			logger.error("Unable to save progress for run {}", latest.getRunId(), e);
+		}
+	}
+	
+	private void flagStalledRuns() {
+		try {
+			long now = System.currentTimeMillis();
+			Date heartbeatCutoff = new Date(now - TimeUnit.MINUTES.toMillis(heartbeatTimeoutMins));
+			Date progressCutoff = new Date(now - TimeUnit.MINUTES.toMillis(stallMins));
+			Date deadCutoff = new Date(now - TimeUnit.MINUTES.toMillis(deadMins));
+			for (JobRunProgress progress : jobRunProgressRepository.findStalled(heartbeatCutoff, progressCutoff, deadCutoff)) {
+				Optional<JobRun> jobRun = jobRunRepository.findById(progress.getRunId());
+				if (!jobRun.isPresent() || finalStatuses.contains(jobRun.get().getStatus())) {
+					jobRunProgressRepository.deleteById(progress.getRunId());
+					continue;
+				}
+				if (progress.getLastHeartbeat().before(deadCutoff)) {
+					//The worker is gone, so no final status will ever arrive for this run
+					logger.warn("Run {} of {} has failed, nothing heard from its worker since {}", progress.getRunId(), jobRun.get().getJobName(), progress.getLastHeartbeat());
+					jobRunProgressRepository.deleteById(progress.getRunId());
+					JobRun deadRun = jobRun.get();
+					deadRun.setStatus(JobStatus.Failed);
+					deadRun.setDebugInfo("Nothing heard from worker since " + progress.getLastHeartbeat());
+					deadRun.setResultTime(new Date());
+					processResponse(deadRun);
+					continue;
+				}
+				if (progress.getLastHeartbeat().before(heartbeatCutoff)) {
+					logger.warn("Run {} of {} has stalled, nothing heard from its worker since {}", progress.getRunId(), jobRun.get().getJobName(), progress.getLastHeartbeat());
+				} else {
+					logger.warn("Run {} of {} has stalled, no progress since {} while {}", progress.getRunId(), jobRun.get().getJobName(), progress.getLastProgress(), progress.getPhase());
+				}
+				progress.setStalled(true);
+				jobRunProgressRepository.save(progress);
+			}
+		} catch (Exception e) {
+			logger.error("Unable to check for stalled runs", e);
+		}
+	}
+	
+	@Override
+	public JobRunProgress getJobRunProgress(String typeName, String jobName, UUID runId) {
+		return jobRunProgressRepository.findById(runId).orElse(null);
+	}
+	
+	@Override
+	public boolean cancelJobRun(String typeName, String jobName, UUID runId) {
+		Optional<JobRun> result = jobRunRepository.findById(runId);
+		if (!result.isPresent() || finalStatuses.contains(result.get().getStatus())) {
+			logger.info("Unable to cancel JobRun {}, not found or already finished", runId);
+			return false;
+		}
+		JobRun jobRun = result.get();
+		if (jobDispatcher.withdraw(runId)) {
+			//It never reached a worker, so nothing else will report on it
+			jobRun.setStatus(JobStatus.Failed);
+			jobRun.setDebugInfo("Cancelled before it was dispatched");
+			jobRun.setResultTime(new Date());
+			processResponse(jobRun);
+		} else {
+			//The worker will report the run as failed once it stops
+			logger.info("Requesting cancellation of JobRun {}", runId);
+			transmitter.sendCancel(runId);
+		}
+		return true;
+	}
 
 	@Override
 	public void processMetadata(JobMetadata metadata) {
 		logger.info("Processing metadata for {} job types",metadata.getJobTypes().size());
+		try {
+			transactionTemplate.execute(status -> {
+				applyMetadata(metadata);
+				return null;
+			});
+		} catch (Exception e) {
+			logger.error("Unable to process metadata", e);
+		} finally {
+			//Whether or not the update succeeded, what we hold in memory may now be out of date
+			jobCatalogue.clear();
+			whiteListService.clear();
+		}
+		logger.info("Metadata processing complete");
+	}
+	
+	/**
+	 * Loads everything we already know about once, works out the differences from the
+	 * metadata in memory, and then saves only what is new or has changed, in batches.
+	 */
+	private void applyMetadata(JobMetadata metadata) {
+		Map<String, JobType> knownTypes = indexByName(jobTypeRepository.findAll(), JobType::getName);
+		Map<String, JobCategory> knownCategories = indexByName(jobCategoryRepository.findAll(), JobCategory::getName);
+		Map<String, Job> knownJobs = indexByName(jobRepository.findAll(), Job::getName);
+		
+		List<JobType> newTypes = new ArrayList<>();
+		List<JobCategory> newCategories = new ArrayList<>();
 		for (JobType jobType : metadata.getJobTypes()) {
-			try {
-				//Do we know about this jobType?
-				JobType knownType = jobTypeRepository.findByName(jobType.getName());
-				if (knownType == null) {
-					jobTypeRepository.save(jobType);
+			if (!knownTypes.containsKey(jobType.getName())) {
+				newTypes.add(jobType);
+				knownTypes.put(jobType.getName(), jobType);
+			}
+			for (JobCategory jobCategory : jobType.getCategories()) {
+				jobCategory.setType(jobType);
+				if (!knownCategories.containsKey(jobCategory.getName())) {
+					newCategories.add(jobCategory);
+					knownCategories.put(jobCategory.getName(), jobCategory);
 				}
-				
-				//What categories are contained?
-				logger.info("Processing metadata for {} categories in type '{}'",jobType.getCategories().size(), jobType.getName());
-				for (JobCategory jobCategory : jobType.getCategories()) {
-					//Do we know about this job category?
-					String categoryName = jobCategory.getName();
-					jobCategory.setType (jobType);
-					JobCategory knownCategory = jobCategoryRepository.findByName(categoryName);
-					if (knownCategory == null) {
-						knownCategory = jobCategoryRepository.save(jobCategory);
+			}
+		}
+		logger.info("Saving {} new job types and {} new categories", newTypes.size(), newCategories.size());
+		jobTypeRepository.saveAll(newTypes);
+		for (JobCategory savedCategory : jobCategoryRepository.saveAll(newCategories)) {
+			knownCategories.put(savedCategory.getName(), savedCategory);
+		}
+		
+		List<Job> changedJobs = new ArrayList<>();
+		Set<String> offeredJobs = new HashSet<>();
+		for (JobType jobType : metadata.getJobTypes()) {
+			logger.info("Processing metadata for {} categories in type '{}'",jobType.getCategories().size(), jobType.getName());
+			for (JobCategory jobCategory : jobType.getCategories()) {
+				JobCategory knownCategory = knownCategories.get(jobCategory.getName());
+				logger.info("Processing metadata for {} jobs in category '{}'",jobCategory.getJobs().size(), jobCategory.getName());
+				for (Job job : jobCategory.getJobs()) {
+					offeredJobs.add(job.getName());
+					job.setCategory(knownCategory);
+					
+					//We protect the json from having parent links and redundant keys, 
+					//but these are needed  when saving to the database
+					for (String parameterKey : job.getParameters().keySet()) {
+						job.getParameters().get(parameterKey).setParentParams(job.getParameters());
+						job.getParameters().get(parameterKey).setParamKey(parameterKey);
 					}
 					
-					logger.info("Processing metadata for {} jobs in category '{}'",jobCategory.getJobs().size(), jobCategory.getName());
-					for (Job job : jobCategory.getJobs()) {
-						job.setCategory(knownCategory);
-
-						//Do we know about this job already
-						Job knownJob = jobRepository.findByName(job.getName());
-						if (knownJob == null) {
-							logger.info("Saving job: " + job);
+					//Do we know about this job already
+					Job knownJob = knownJobs.get(job.getName());
+					if (knownJob == null) {
+						logger.info("Saving job: " + job);
+						changedJobs.add(job);
+					} else {
+						job.setId(knownJob.getId());
+						//Update the existing parameters rather than saving a fresh copy
+						if (knownJob.getParameters() != null) {
+							job.getParameters().setId(knownJob.getParameters().getId());
+						}
+						//Whitelists are maintained by schedule manager, so retain
+						job.setWhiteListMap(knownJob.getWhiteListMap());
+						if (isSameDefinition(job, knownJob)) {
+							logger.debug("Job unchanged: {}", job.getName());
 						} else {
-							job.setId(knownJob.getId());
-							//Whitelists are maintained by schedule manager, so retain
-							job.setWhiteListMap(knownJob.getWhiteListMap());
 							logger.info("Updating job: " + job);
+							changedJobs.add(job);
 						}
-						
-						//We protect the json from having parent links and redundant keys, 
-						//but these are needed  when saving to the database
-						for (String parameterKey : job.getParameters().keySet()) {
-							job.getParameters().get(parameterKey).setParentParams(job.getParameters());
-							job.getParameters().get(parameterKey).setParamKey(parameterKey);
-						}
-						jobRepository.save(job);
-					}
-					
-					//Do we have to remove any jobs that have been withdrawn?
-					List<Job> savedJobs = jobRepository.findByCategoryId(knownCategory.getId());
-					savedJobs.removeAll(jobCategory.getJobs());
-					//All the jobs we're left with were not represented in the metadata, so hide
-					for (Job withdrawnJob : savedJobs) {
-						logger.info("Marking job as withdrawn/hidden: {}", withdrawnJob);
-						withdrawnJob.setProductionStatus(Job.ProductionStatus.HIDEME);
-						jobRepository.save(withdrawnJob);
 					}
 				}
-			} catch (Exception e) {
-				logger.error("Unable to process metadata", e);
 			}
 		}
-		logger.info("Metadata processing complete");
+		
+		//Any job we hold that was not represented in the metadata has been withdrawn, so hide.
+		//Only the categories offered are considered, as before.
+		Set<Long> offeredCategoryIds = new HashSet<>();
+		for (JobType jobType : metadata.getJobTypes()) {
+			for (JobCategory jobCategory : jobType.getCategories()) {
+				offeredCategoryIds.add(knownCategories.get(jobCategory.getName()).getId());
+			}
+		}
+		for (Job savedJob : knownJobs.values()) {
+			if (!offeredJobs.contains(savedJob.getName())
+					&& savedJob.getCategory() != null
+					&& offeredCategoryIds.contains(savedJob.getCategory().getId())
+					&& savedJob.getProductionStatus() != Job.ProductionStatus.HIDEME) {
+				logger.info("Marking job as withdrawn/hidden: {}", savedJob);
+				savedJob.setProductionStatus(Job.ProductionStatus.HIDEME);
+				changedJobs.add(savedJob);
+			}
+		}
+		
+		logger.info("Saving {} new or changed jobs out of {} offered", changedJobs.size(), offeredJobs.size());
+		jobRepository.saveAll(changedJobs);
+	}
+	
+	private static <T> Map<String, T> indexByName(Iterable<T> items, Function<T, String> getName) {
+		Map<String, T> index = new HashMap<>();
+		for (T item : items) {
+			index.put(getName.apply(item), item);
+		}
+		return index;
+	}
+	
+	/**
+	 * Jobs are compared as they would be presented, which covers every detail the
+	 * worker can change.  If in doubt, the job is treated as changed.
+	 */
+	private boolean isSameDefinition(Job job, Job knownJob) {
+		try {
+			return objectMapper.writeValueAsString(job).equals(objectMapper.writeValueAsString(knownJob));
+		} catch (JsonProcessingException e) {
+			logger.debug("Unable to compare job definitions for {}", job.getName(), e);
+			return false;
+		}
 	}
 
 	@Override
 	public boolean deleteJobRun(String typeName, String jobName, UUID runId) {
 		//Do we have this job?
-		JobRun jobRun = getJobRun(typeName, jobName, runId);
+		Optional<JobRun> result = jobRunRepository.findById(runId);
+		if (jobDispatcher.withdraw(runId)) {
+			logger.info("Withdrew JobRun {} before it was dispatched", runId);
+		}
+		if (jobRunWhiteListRepository.existsById(runId)) {
+			jobRunWhiteListRepository.deleteById(runId);
+		}
+		if (!result.isPresent() && jobRunArchiveService.deleteArchivedJobRun(runId)) {
+			logger.info("Deleted archived JobRun {}", runId);
+			return true;
+		}
+		JobRun jobRun = result.orElse(null);
 		if (jobRun == null) {
 			logger.error("Unable to delete. JobRun with id {} not found.", runId);
 			return false;
@@ -321,8 +829,8 @@ public class ScheduleServiceImpl implements ScheduleService {
 
 	@Override
 	public void setWhiteList(String typeName, String jobName, String codeSystemShortname, Set<WhiteListedConcept> whiteListConcepts) throws ResourceNotFoundException {
-		//Do we know about this job?
-		Job job = getJob(jobName);
+		//Do we know about this job?  Work on a fresh copy, since the cached one may be in use
+		Job job = jobRepository.findByName(jobName);
 		if (job == null) {
 			throw new ResourceNotFoundException("Job unknown to Schedule Service: '" + jobName +"' If job exists and is active, re-run initialise.");
 		}
@@ -340,17 +848,51 @@ public class ScheduleServiceImpl implements ScheduleService {
 				whiteList = whiteListRepository.save(whiteList);
 				logger.info("Provisional save of whitelist {}", whiteList.getId());
 				whiteList.setConcepts(whiteListConcepts);
-			} else {
-				whiteList.getConcepts().retainAll(whiteListConcepts);
-				whiteList.getConcepts().addAll(whiteListConcepts);
-			} 
-			//To keep hibernate happy, we need to tell each concept in this list about its parent
-			for (WhiteListedConcept whiteListedConcept : whiteListConcepts) {
-				whiteListedConcept.setWhiteList(whiteList);
+				//To keep hibernate happy, we need to tell each concept in this list about its parent
+				for (WhiteListedConcept whiteListedConcept : whiteListConcepts) {
+					whiteListedConcept.setWhiteList(whiteList);
+				}
+			} else if (!applyWhiteListChanges(whiteList, whiteListConcepts)) {
+				logger.info("Whitelist for job {} in {} is unchanged", jobName, codeSystemShortname);
+				return;
 			}
 		}
 		job.setWhiteList(codeSystemShortname, whiteList);
 		jobRepository.save(job);
+		jobCatalogue.remove(jobName);
+		whiteListService.evict(jobName);
+	}
+	
+	/**
+	 * Removes and adds only those concepts that have changed, so that the concepts
+	 * already saved are left alone rather than being deleted and inserted again.
+	 * @return true if the whitelist was changed
+	 */
+	private boolean applyWhiteListChanges(WhiteList whiteList, Set<WhiteListedConcept> whiteListConcepts) {
+		Map<String, WhiteListedConcept> requested = new HashMap<>();
+		for (WhiteListedConcept whiteListedConcept : whiteListConcepts) {
+			requested.put(whiteListedConcept.getSctId(), whiteListedConcept);
+		}
+		Set<String> existing = new HashSet<>();
+		int removed = 0;
+		for (Iterator<WhiteListedConcept> concepts = whiteList.getConcepts().iterator(); concepts.hasNext(); ) {
+			String sctId = concepts.next().getSctId();
+			if (requested.containsKey(sctId) && existing.add(sctId)) {
+				continue;
+			}
+			concepts.remove();
+			removed++;
+		}
+		int added = 0;
+		for (Map.Entry<String, WhiteListedConcept> concept : requested.entrySet()) {
+			if (!existing.contains(concept.getKey())) {
+				concept.getValue().setWhiteList(whiteList);
+				whiteList.getConcepts().add(concept.getValue());
+				added++;
+			}
+		}
+		logger.info("Whitelist {}: {} concepts added, {} removed", whiteList.getId(), added, removed);
+		return added > 0 || removed > 0;
 	}
 	
 }
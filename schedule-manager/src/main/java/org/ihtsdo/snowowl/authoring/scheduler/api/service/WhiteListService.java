@@ -0,0 +1,134 @@
+package org.ihtsdo.snowowl.authoring.scheduler.api.service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.ihtsdo.snowowl.authoring.scheduler.api.domain.WhiteListVersion;
+import org.ihtsdo.snowowl.authoring.scheduler.api.repository.WhiteListVersionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.otf.scheduler.domain.Job;
+import org.snomed.otf.scheduler.domain.WhiteListedConcept;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+/**
+ * Stores whitelists as versions identified by a hash of their content, so that a run
+ * only needs to carry the version, and identical whitelists are only stored once.
+ */
+@Service
+public class WhiteListService {
+
+	@Autowired
+	WhiteListVersionRepository whiteListVersionRepository;
+
+	//The current version for each job and code system, empty where there's no whitelist
+	private final Map<String, Optional<String>> currentVersions = new ConcurrentHashMap<>();
+
+	protected Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	/**
+	 * @return the version of the job's whitelist for the code system, or null if it has none
+	 */
+	public String getVersion(Job job, String codeSystemShortname) {
+		return currentVersions.computeIfAbsent(getKey(job.getName(), codeSystemShortname),
+				k -> Optional.ofNullable(saveVersion(toSctIds(job.getWhiteListConcepts(codeSystemShortname)))))
+				.orElse(null);
+	}
+
+	/**
+	 * @return the SCTIDs in the given version, or null if the version is not known
+	 */
+	public Set<String> getSctIds(String version) {
+		return whiteListVersionRepository.findById(version)
+				.map(whiteListVersion -> decompress(whiteListVersion.getContent()))
+				.orElse(null);
+	}
+
+	/**
+	 * Called when a job's whitelist changes, so that its next run picks up the new version
+	 */
+	public void evict(String jobName) {
+		String prefix = getKey(jobName, "");
+		currentVersions.keySet().removeIf(key -> key.startsWith(prefix));
+	}
+
+	public void clear() {
+		currentVersions.clear();
+	}
+
+	private static SortedSet<String> toSctIds(Collection<WhiteListedConcept> concepts) {
+		if (concepts == null) {
+			return new TreeSet<>();
+		}
+		return concepts.stream()
+				.map(WhiteListedConcept::getSctId)
+				.filter(Objects::nonNull)
+				.collect(Collectors.toCollection(TreeSet::new));
+	}
+
+	/**
+	 * @return the version of the given set of SCTIDs, which is saved if it's not already known
+	 */
+	String saveVersion(SortedSet<String> sctIds) {
+		if (sctIds == null || sctIds.isEmpty()) {
+			return null;
+		}
+		String content = String.join("\n", sctIds);
+		String version = hash(content);
+		if (!whiteListVersionRepository.existsById(version)) {
+			try {
+				whiteListVersionRepository.save(new WhiteListVersion(version, sctIds.size(), compress(content)));
+				logger.info("Saved whitelist version {} of {} concepts", version, sctIds.size());
+			} catch (DataIntegrityViolationException e) {
+				//Saved at the same time by another request, and the content is the same either way
+				logger.debug("Whitelist version {} already saved", version);
+			}
+		}
+		return version;
+	}
+
+	private static String getKey(String jobName, String codeSystemShortname) {
+		return jobName + "|" + codeSystemShortname;
+	}
+
+	private static String hash(String content) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder();
+			for (byte b : digest) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 not available", e);
+		}
+	}
+
+	private static byte[] compress(String content) {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (OutputStream os = new GZIPOutputStream(baos)) {
+			os.write(content.getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to compress whitelist", e);
+		}
+		return baos.toByteArray();
+	}
+
+	private static Set<String> decompress(byte[] content) {
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new GZIPInputStream(new ByteArrayInputStream(content)), StandardCharsets.UTF_8))) {
+			return reader.lines().collect(Collectors.toCollection(HashSet::new));
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to read whitelist version", e);
+		}
+	}
+}
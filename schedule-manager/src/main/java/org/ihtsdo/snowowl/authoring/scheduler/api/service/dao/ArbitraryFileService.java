@@ -6,8 +6,11 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
 public class ArbitraryFileService {
 
@@ -24,6 +27,24 @@ public class ArbitraryFileService {
 		Files.write(getFile(path), data.getBytes(UTF_8));
 	}
 
+	/**
+	 * Streams the data to the file, via a temporary file so that readers never see it half written.
+	 */
+	public void write(String path, InputStream data) throws IOException {
+		Path target = getFile(path);
+		Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+		try {
+			Files.copy(data, temp, StandardCopyOption.REPLACE_EXISTING);
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Reads the whole file into memory, so only suitable for small files.
+	 * Use {@link #read(String, OutputStream)} or {@link #getExistingFile(String)} for results.
+	 */
 	public String read(String path) throws IOException {
 		return new String(Files.readAllBytes(getFile(path)), UTF_8);
 	}
@@ -32,8 +53,27 @@ public class ArbitraryFileService {
 		return new String(Files.readAllBytes(file.toPath()), UTF_8);
 	}
 
+	/**
+	 * Streams the file to the given output without holding it in memory
+	 */
+	public void read(String path, OutputStream out) throws IOException {
+		File file = getExistingFile(path);
+		if (file == null) {
+			throw new IOException("File not found: " + path);
+		}
+		Files.copy(file.toPath(), out);
+	}
+
+	/**
+	 * @return the file at the given path, or null if there isn't one
+	 */
+	public File getExistingFile(String relativePath) throws IOException {
+		File file = resolve(relativePath);
+		return file.isFile() ? file : null;
+	}
+
 	private Path getFile(String relativePath) throws IOException {
-		File file = new File(baseDirectory, relativePath);
+		File file = resolve(relativePath);
 		File parentDirectory = file.getParentFile();
 		if (!parentDirectory.isDirectory()) {
 			if (!parentDirectory.mkdirs()) {
@@ -46,8 +86,17 @@ public class ArbitraryFileService {
 		return file.toPath();
 	}
 
-	public void delete(String relativePath) {
-		final File file = new File(baseDirectory, relativePath);
+	//Paths may come from requests, so don't let them escape the base directory
+	private File resolve(String relativePath) throws IOException {
+		File file = new File(baseDirectory, relativePath).getCanonicalFile();
+		if (!file.toPath().startsWith(baseDirectory.getCanonicalFile().toPath())) {
+			throw new IOException("Path is outside of the base directory: " + relativePath);
+		}
+		return file;
+	}
+
+	public void delete(String relativePath) throws IOException {
+		final File file = resolve(relativePath);
 		if (file.isFile() && !file.delete()) {
 			logger.warn("Failed to delete file {}", file.getAbsolutePath());
 		}
@@ -0,0 +1,48 @@
+package org.ihtsdo.snowowl.authoring.scheduler.api.domain;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+public class JobRunProgressTest {
+
+	private static final UUID RUN_ID = UUID.randomUUID();
+
+	@Test
+	public void messageFromWorkerIsRead() {
+		JobRunProgress progress = JobRunProgress.fromMessage(message("Running", 1500, 42));
+		assertEquals(RUN_ID, progress.getRunId());
+		assertEquals("Running", progress.getPhase());
+		assertEquals(1500, progress.getItemsProcessed());
+		assertEquals(42, progress.getRowsWritten());
+		assertEquals(12.5d, progress.getItemsPerSecond(), 0.001);
+	}
+
+	@Test
+	public void heartbeatWithoutProgressDoesNotMoveLastProgress() {
+		JobRunProgress progress = new JobRunProgress(RUN_ID);
+		progress.update(JobRunProgress.fromMessage(message("Running", 10, 1)), new Date(1000));
+		progress.update(JobRunProgress.fromMessage(message("Running", 10, 1)), new Date(2000));
+		assertEquals(new Date(2000), progress.getLastHeartbeat());
+		assertEquals(new Date(1000), progress.getLastProgress());
+
+		progress.setStalled(true);
+		progress.update(JobRunProgress.fromMessage(message("Running", 11, 1)), new Date(3000));
+		assertEquals(new Date(3000), progress.getLastProgress());
+		assertFalse(progress.isStalled());
+	}
+
+	private Map<String, Object> message(String phase, long items, long rows) {
+		Map<String, Object> message = new HashMap<>();
+		message.put("runId", RUN_ID.toString());
+		message.put("phase", phase);
+		//Numbers arrive as whatever size json gives them
+		message.put("itemsProcessed", (int)items);
+		message.put("rowsWritten", rows);
+		message.put("itemsPerSecond", 12.5d);
+		message.put("rowsPerSecond", 0.5d);
+		return message;
+	}
+}
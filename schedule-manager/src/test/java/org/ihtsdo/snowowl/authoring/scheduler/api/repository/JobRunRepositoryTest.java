@@ -0,0 +1,114 @@
+package org.ihtsdo.snowowl.authoring.scheduler.api.repository;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.util.*;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.snomed.otf.scheduler.domain.JobRun;
+import org.snomed.otf.scheduler.domain.JobStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest(properties = "spring.jpa.hibernate.naming.physical-strategy=org.hibernate.boot.model.naming.PhysicalNamingStrategyStandardImpl")
+public class JobRunRepositoryTest {
+
+	private static final String JOB_NAME = "Test Report";
+	private static final Set<String> PROJECTS = new HashSet<>(Arrays.asList("MAIN", "MAIN/PROJECT"));
+
+	@Configuration
+	@EntityScan({"org.snomed.otf.scheduler.domain"})
+	@EnableJpaRepositories(basePackageClasses = JobRunRepository.class)
+	@Import(JobRunIndexes.class)
+	static class TestConfig {
+	}
+
+	@Autowired
+	JobRunRepository jobRunRepository;
+
+	@Autowired
+	DataSource dataSource;
+
+	@Before
+	public void setUp() {
+		for (int i = 0; i < 25; i++) {
+			save(JOB_NAME, "MAIN", i % 2 == 0 ? "alice" : "bob", i);
+		}
+		save(JOB_NAME, "MAIN/HIDDEN", "alice", 100);
+		save("Other Report", "MAIN", "alice", 200);
+	}
+
+	@Test
+	public void summariesArePagedNewestFirst() {
+		PageRequest firstPage = PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, "requestTime"));
+		Slice<JobRunSummary> page = jobRunRepository.findSummariesByJobNameAndProjectIn(JOB_NAME, PROJECTS, firstPage);
+		assertEquals(10, page.getNumberOfElements());
+		assertTrue(page.hasNext());
+		assertEquals(new Date(24000), page.getContent().get(0).getRequestTime());
+		assertEquals(JobStatus.Complete, page.getContent().get(0).getStatus());
+
+		Slice<JobRunSummary> lastPage = jobRunRepository.findSummariesByJobNameAndProjectIn(JOB_NAME, PROJECTS, firstPage.withPage(2));
+		assertEquals(5, lastPage.getNumberOfElements());
+		assertFalse(lastPage.hasNext());
+		assertEquals(new Date(0), lastPage.getContent().get(4).getRequestTime());
+	}
+
+	@Test
+	public void summariesCanBeFilteredByUser() {
+		PageRequest pageRequest = PageRequest.of(0, 50, Sort.by(Sort.Direction.ASC, "requestTime"));
+		Slice<JobRunSummary> page = jobRunRepository.findSummariesByJobNameAndUserAndProjectIn(JOB_NAME, "bob", PROJECTS, pageRequest);
+		assertEquals(12, page.getNumberOfElements());
+		for (JobRunSummary summary : page) {
+			assertEquals("bob", summary.getUser());
+			assertEquals(JOB_NAME, summary.getJobName());
+		}
+	}
+
+	@Test
+	public void statusIsNotMovedOutOfFinalStatus() {
+		Set<JobStatus> finalStatuses = EnumSet.of(JobStatus.Complete, JobStatus.Failed);
+		JobRun complete = save(JOB_NAME, "MAIN", "alice", 300);
+		assertEquals(0, jobRunRepository.updateStatusUnlessIn(complete.getId(), JobStatus.Running, finalStatuses));
+		assertEquals(JobStatus.Complete, jobRunRepository.findById(complete.getId()).get().getStatus());
+
+		JobRun running = save(JOB_NAME, "MAIN", "alice", 301);
+		running.setStatus(JobStatus.Running);
+		jobRunRepository.save(running);
+		assertEquals(1, jobRunRepository.updateStatusUnlessIn(running.getId(), JobStatus.Failed, finalStatuses));
+		assertEquals(JobStatus.Failed, jobRunRepository.findById(running.getId()).get().getStatus());
+	}
+
+	@Test
+	public void listingIndexesAreCreated() throws Exception {
+		try (Connection conn = dataSource.getConnection()) {
+			String table = conn.getMetaData().storesUpperCaseIdentifiers() ? JobRunIndexes.TABLE.toUpperCase() : JobRunIndexes.TABLE;
+			Set<String> indexNames = JobRunIndexes.getIndexNames(conn.getMetaData(), table);
+			for (String index : JobRunIndexes.INDEXES.keySet()) {
+				assertTrue("Missing index " + index, indexNames.contains(index.toLowerCase()));
+			}
+		}
+	}
+
+	private JobRun save(String jobName, String project, String user, int second) {
+		JobRun jobRun = JobRun.create(jobName, null);
+		jobRun.setProject(project);
+		jobRun.setUser(user);
+		jobRun.setStatus(JobStatus.Complete);
+		jobRun.setRequestTime(new Date(second * 1000L));
+		return jobRunRepository.save(jobRun);
+	}
+}
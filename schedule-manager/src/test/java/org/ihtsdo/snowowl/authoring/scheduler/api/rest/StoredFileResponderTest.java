@@ -0,0 +1,96 @@
+package org.ihtsdo.snowowl.authoring.scheduler.api.rest;
+
+import static org.junit.Assert.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.http.*;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.bind.annotation.*;
+
+public class StoredFileResponderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private MockMvc mockMvc;
+
+	private String content;
+
+	@RestController
+	static class ResultController {
+		File file;
+		StoredFileResponder responder = new StoredFileResponder();
+
+		@GetMapping("/result")
+		public ResponseEntity<?> getResult(@RequestHeader HttpHeaders headers) {
+			return responder.respond(file, MediaType.TEXT_PLAIN, headers);
+		}
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append("Row ").append(i).append("\n");
+		}
+		content = sb.toString();
+		ResultController controller = new ResultController();
+		controller.file = folder.newFile("result.txt");
+		Files.write(controller.file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+	}
+
+	@Test
+	public void fileIsServedWithItsTag() throws Exception {
+		MvcResult result = mockMvc.perform(get("/result"))
+				.andExpect(status().isOk())
+				.andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+				.andReturn();
+		assertEquals(content, result.getResponse().getContentAsString());
+		String eTag = result.getResponse().getHeader(HttpHeaders.ETAG);
+		assertNotNull(eTag);
+
+		mockMvc.perform(get("/result").header(HttpHeaders.IF_NONE_MATCH, eTag))
+				.andExpect(status().isNotModified());
+	}
+
+	@Test
+	public void rangesAreServed() throws Exception {
+		mockMvc.perform(get("/result").header(HttpHeaders.RANGE, "bytes=6-10"))
+				.andExpect(status().isPartialContent())
+				.andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 6-10/" + content.length()))
+				.andExpect(content().string(content.substring(6, 11)));
+	}
+
+	@Test
+	public void textIsGzippedForClientsThatAcceptIt() throws Exception {
+		MvcResult started = mockMvc.perform(get("/result").header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		MvcResult result = mockMvc.perform(asyncDispatch(started))
+				.andExpect(status().isOk())
+				.andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+				.andReturn();
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(result.getResponse().getContentAsByteArray()))) {
+			assertEquals(content, StreamUtils.copyToString(in, StandardCharsets.UTF_8));
+		}
+		assertTrue(result.getResponse().getHeader(HttpHeaders.ETAG).endsWith("-gz\""));
+
+		mockMvc.perform(get("/result").header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0"))
+				.andExpect(status().isOk())
+				.andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING));
+	}
+}
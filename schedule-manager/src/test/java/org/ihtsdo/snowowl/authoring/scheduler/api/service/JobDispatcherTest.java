@@ -0,0 +1,169 @@
+package org.ihtsdo.snowowl.authoring.scheduler.api.service;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import javax.jms.Message;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.broker.region.policy.PolicyMap;
+import org.ihtsdo.snowowl.authoring.scheduler.api.mq.ActiveMQConnectionFactoryForAutoscaling;
+import org.ihtsdo.snowowl.authoring.scheduler.api.mq.Transmitter;
+import org.ihtsdo.snowowl.authoring.scheduler.api.service.JobDispatcher.Lane;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.snomed.otf.scheduler.domain.JobRun;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.support.converter.MappingJackson2MessageConverter;
+import org.springframework.jms.support.converter.MessageType;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Runs the dispatcher against an embedded broker, configured as production should be,
+ * with a single simulated worker taking one run at a time.
+ */
+public class JobDispatcherTest {
+
+	private static final String QUEUE = "schedule_manager_request";
+	private static final String BULK_USER = "releaser";
+	private static final int BULK_RUNS = 20;
+
+	private BrokerService broker;
+	private JmsTemplate worker;
+	private JobDispatcher dispatcher;
+
+	@Before
+	public void setUp() throws Exception {
+		broker = new BrokerService();
+		broker.setBrokerName("dispatch-test");
+		broker.setPersistent(false);
+		broker.setUseJmx(false);
+		PolicyEntry policy = new PolicyEntry();
+		policy.setQueue(">");
+		policy.setPrioritizedMessages(true);
+		PolicyMap policyMap = new PolicyMap();
+		policyMap.setDefaultEntry(policy);
+		broker.setDestinationPolicy(policyMap);
+		broker.start();
+
+		ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory("vm://dispatch-test?create=false");
+		//Workers take one message at a time
+		new ActiveMQConnectionFactoryForAutoscaling().customize(connectionFactory);
+		MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+		converter.setTargetType(MessageType.TEXT);
+		converter.setTypeIdPropertyName("_type");
+		JmsTemplate jmsTemplate = new JmsTemplate(connectionFactory);
+		jmsTemplate.setMessageConverter(converter);
+		jmsTemplate.setReceiveTimeout(5000);
+		worker = jmsTemplate;
+
+		Transmitter transmitter = new Transmitter();
+		ReflectionTestUtils.setField(transmitter, "jmsTemplate", jmsTemplate);
+		ReflectionTestUtils.setField(transmitter, "requestQueueName", QUEUE);
+
+		dispatcher = new JobDispatcher();
+		dispatcher.transmitter = transmitter;
+		dispatcher.maxPerUser = 2;
+		dispatcher.inFlightTimeoutMins = 60;
+		dispatcher.bulkJobs = new String[0];
+		dispatcher.bulkCategories = new String[0];
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		broker.stop();
+	}
+
+	@Test
+	public void interactiveRunsAreNotQueuedBehindBulkRuns() {
+		for (int i = 0; i < BULK_RUNS; i++) {
+			dispatcher.dispatch(createRun("Release Validation " + i, BULK_USER), Lane.BULK, null);
+		}
+		assertEquals(BULK_RUNS - 2, dispatcher.getHeldCount());
+
+		//Worker is busy on the first bulk run when the interactive run arrives
+		JobRun first = receive();
+		assertEquals(BULK_USER, first.getUser());
+		JobRun interactive = createRun("Interactive Report", "alice");
+		dispatcher.dispatch(interactive, Lane.INTERACTIVE, null);
+		dispatcher.complete(first.getId());
+
+		//Only the bulk run already waiting could have been taken first, but priority means it isn't
+		JobRun next = receive();
+		assertEquals(interactive.getId(), next.getId());
+		dispatcher.complete(next.getId());
+
+		//Then the bulk runs all follow, in the order requested
+		List<String> bulkOrder = new ArrayList<>();
+		bulkOrder.add(first.getJobName());
+		for (int i = 1; i < BULK_RUNS; i++) {
+			JobRun bulk = receive();
+			bulkOrder.add(bulk.getJobName());
+			dispatcher.complete(bulk.getId());
+		}
+		for (int i = 0; i < BULK_RUNS; i++) {
+			assertEquals("Release Validation " + i, bulkOrder.get(i));
+		}
+		assertEquals(0, dispatcher.getHeldCount());
+		assertNull(worker.receiveAndConvert(QUEUE));
+	}
+
+	@Test
+	public void eachUserHasTheirOwnShare() {
+		for (int i = 0; i < 5; i++) {
+			dispatcher.dispatch(createRun("Bulk " + i, BULK_USER), Lane.BULK, null);
+			dispatcher.dispatch(createRun("Bulk " + i, "bob"), Lane.BULK, null);
+		}
+		//Two each in the queue, so both users' runs are taken before either has a third
+		Set<String> users = new HashSet<>();
+		for (int i = 0; i < 4; i++) {
+			users.add(receive().getUser());
+		}
+		assertEquals(new HashSet<>(Arrays.asList(BULK_USER, "bob")), users);
+		assertEquals(6, dispatcher.getHeldCount());
+	}
+
+	@Test
+	public void heldRunsCanBeWithdrawn() {
+		List<JobRun> runs = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			JobRun run = createRun("Bulk " + i, BULK_USER);
+			runs.add(run);
+			dispatcher.dispatch(run, Lane.BULK, null);
+		}
+		assertFalse(dispatcher.withdraw(runs.get(0).getId()));
+		assertTrue(dispatcher.withdraw(runs.get(2).getId()));
+		assertEquals(0, dispatcher.getHeldCount());
+	}
+
+	@Test
+	public void heldRunsKeepTheirWhiteListVersion() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			dispatcher.dispatch(createRun("Bulk " + i, BULK_USER), Lane.BULK, "version" + i);
+		}
+		for (int i = 0; i < 3; i++) {
+			Message message = worker.receive(QUEUE);
+			assertNotNull("Timed out waiting for a run", message);
+			JobRun run = (JobRun)worker.getMessageConverter().fromMessage(message);
+			assertEquals("version" + i, message.getStringProperty(Transmitter.WHITE_LIST_VERSION));
+			dispatcher.complete(run.getId());
+		}
+	}
+
+	private JobRun receive() {
+		JobRun jobRun = (JobRun)worker.receiveAndConvert(QUEUE);
+		assertNotNull("Timed out waiting for a run", jobRun);
+		return jobRun;
+	}
+
+	private JobRun createRun(String jobName, String user) {
+		JobRun jobRun = JobRun.create(jobName, null);
+		jobRun.setId(UUID.randomUUID());
+		jobRun.setUser(user);
+		return jobRun;
+	}
+}
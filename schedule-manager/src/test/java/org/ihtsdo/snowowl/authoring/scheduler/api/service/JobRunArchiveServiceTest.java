@@ -0,0 +1,119 @@
+package org.ihtsdo.snowowl.authoring.scheduler.api.service;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.ihtsdo.snowowl.authoring.scheduler.api.repository.ArchivedJobRunRepository;
+import org.ihtsdo.snowowl.authoring.scheduler.api.repository.JobRunRepository;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.snomed.otf.scheduler.domain.JobRun;
+import org.snomed.otf.scheduler.domain.JobStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest(properties = {
+		"spring.jpa.hibernate.naming.physical-strategy=org.hibernate.boot.model.naming.PhysicalNamingStrategyStandardImpl",
+		"schedule.manager.retention.enabled=false",
+		"schedule.manager.retention.runs.kept=3",
+		"schedule.manager.retention.batch.size=2"})
+public class JobRunArchiveServiceTest {
+
+	private static final String JOB_NAME = "Test Report";
+
+	@Configuration
+	@EntityScan({"org.snomed.otf.scheduler.domain", "org.ihtsdo.snowowl.authoring.scheduler.api.domain"})
+	@EnableJpaRepositories(basePackageClasses = JobRunRepository.class)
+	@Import(JobRunArchiveService.class)
+	static class TestConfig {
+		@Bean
+		public ObjectMapper objectMapper() {
+			return new ObjectMapper();
+		}
+
+		@Bean
+		public TaskScheduler engineScheduler() {
+			return new ThreadPoolTaskScheduler();
+		}
+	}
+
+	@Autowired
+	JobRunArchiveService jobRunArchiveService;
+
+	@Autowired
+	JobRunRepository jobRunRepository;
+
+	@Autowired
+	ArchivedJobRunRepository archivedJobRunRepository;
+
+	@Test
+	public void onlyTheLatestRunsAreKept() {
+		List<UUID> aliceRuns = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			aliceRuns.add(save("alice", "MAIN", JobStatus.Complete, i));
+		}
+		//Fewer than are kept, so left alone
+		UUID bobRun = save("bob", "MAIN", JobStatus.Complete, 0);
+		//Old, but still running
+		UUID runningRun = save("alice", "MAIN/PROJECT", JobStatus.Running, 0);
+		for (int i = 1; i < 5; i++) {
+			save("alice", "MAIN/PROJECT", JobStatus.Failed, i);
+		}
+
+		assertEquals(5 + 1, jobRunArchiveService.archiveOldRuns());
+
+		for (int i = 0; i < 5; i++) {
+			assertFalse(jobRunRepository.findById(aliceRuns.get(i)).isPresent());
+			assertTrue(archivedJobRunRepository.existsById(aliceRuns.get(i)));
+		}
+		for (int i = 5; i < 8; i++) {
+			assertTrue(jobRunRepository.findById(aliceRuns.get(i)).isPresent());
+		}
+		assertTrue(jobRunRepository.findById(bobRun).isPresent());
+		assertTrue(jobRunRepository.findById(runningRun).isPresent());
+		assertEquals(0, jobRunArchiveService.archiveOldRuns());
+	}
+
+	@Test
+	public void archivedRunsCanBeRetrieved() {
+		UUID oldest = save("alice", "MAIN", JobStatus.Complete, 0);
+		for (int i = 1; i < 4; i++) {
+			save("alice", "MAIN", JobStatus.Complete, i);
+		}
+		assertEquals(1, jobRunArchiveService.archiveOldRuns());
+
+		JobRun archived = jobRunArchiveService.getArchivedJobRun(oldest);
+		assertNotNull(archived);
+		assertEquals(oldest, archived.getId());
+		assertEquals(JOB_NAME, archived.getJobName());
+		assertEquals("alice", archived.getUser());
+		assertEquals(JobStatus.Complete, archived.getStatus());
+		assertNull(archived.getAuthToken());
+
+		assertTrue(jobRunArchiveService.deleteArchivedJobRun(oldest));
+		assertNull(jobRunArchiveService.getArchivedJobRun(oldest));
+		assertFalse(jobRunArchiveService.deleteArchivedJobRun(oldest));
+	}
+
+	private UUID save(String user, String project, JobStatus status, int second) {
+		JobRun jobRun = JobRun.create(JOB_NAME, null);
+		jobRun.setProject(project);
+		jobRun.setUser(user);
+		jobRun.setStatus(status);
+		jobRun.setAuthToken("token");
+		jobRun.setRequestTime(new Date(second * 1000L));
+		return jobRunRepository.save(jobRun).getId();
+	}
+}
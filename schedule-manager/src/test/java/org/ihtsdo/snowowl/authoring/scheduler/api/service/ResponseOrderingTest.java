@@ -0,0 +1,145 @@
+package org.ihtsdo.snowowl.authoring.scheduler.api.service;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.ihtsdo.snowowl.authoring.scheduler.api.repository.JobRunProgressRepository;
+import org.ihtsdo.snowowl.authoring.scheduler.api.repository.JobRunRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.snomed.otf.scheduler.domain.JobRun;
+import org.snomed.otf.scheduler.domain.JobStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Responses for a run can arrive out of order, for example a late progress response
+ * after the final one.  Checks that a run never moves back out of a final status,
+ * whether the late response is still waiting to be saved or arrives after the final one was.
+ */
+public class ResponseOrderingTest {
+
+	private ScheduleServiceImpl service;
+
+	//Status of each run as saved, standing in for the database
+	private final Map<UUID, JobStatus> saved = new ConcurrentHashMap<>();
+	private final List<JobStatus> saveOrder = Collections.synchronizedList(new ArrayList<>());
+	private CountDownLatch gate;
+
+	@Before
+	public void setUp() {
+		JobRunRepository jobRunRepository = mock(JobRunRepository.class);
+		when(jobRunRepository.updateStatusUnlessIn(any(UUID.class), any(JobStatus.class), anyCollection())).thenAnswer(invocation -> {
+			if (gate != null) {
+				gate.await(10, TimeUnit.SECONDS);
+			}
+			UUID id = invocation.getArgument(0);
+			Collection<JobStatus> finalStatuses = invocation.getArgument(2);
+			JobStatus current = saved.get(id);
+			if (current == null || finalStatuses.contains(current)) {
+				return 0;
+			}
+			saved.put(id, invocation.getArgument(1));
+			return 1;
+		});
+		when(jobRunRepository.findById(any(UUID.class))).thenAnswer(invocation -> {
+			JobStatus current = saved.get(invocation.getArgument(0));
+			if (current == null) {
+				return Optional.empty();
+			}
+			JobRun savedRun = JobRun.create("Test Report", null);
+			savedRun.setStatus(current);
+			return Optional.of(savedRun);
+		});
+		when(jobRunRepository.save(any(JobRun.class))).thenAnswer(invocation -> {
+			JobRun jobRun = invocation.getArgument(0);
+			saved.put(jobRun.getId(), jobRun.getStatus());
+			saveOrder.add(jobRun.getStatus());
+			return jobRun;
+		});
+
+		service = new ScheduleServiceImpl();
+		service.jobRunRepository = jobRunRepository;
+		service.jobRunProgressRepository = mock(JobRunProgressRepository.class);
+		service.jobDispatcher = new JobDispatcher();
+		service.responseShutdownTimeoutSeconds = 10;
+		ReflectionTestUtils.setField(service, "transactionTemplate", new TransactionTemplate(mock(PlatformTransactionManager.class)));
+	}
+
+	@Test
+	public void lateResponseWaitingBehindFinalIsDropped() {
+		useLanes(1);
+		JobRun jobRun = createRun(JobStatus.Scheduled);
+		//Hold the lane on the first response, so the others queue up behind it
+		gate = new CountDownLatch(1);
+		service.processResponse(withStatus(jobRun, JobStatus.Running));
+		service.processResponse(withStatus(jobRun, JobStatus.Complete));
+		service.processResponse(withStatus(jobRun, JobStatus.Running));
+		gate.countDown();
+		service.shutdown();
+
+		assertEquals(JobStatus.Complete, saved.get(jobRun.getId()));
+		//The first response may or may not have been superseded before the lane picked it up
+		assertEquals(JobStatus.Complete, saveOrder.get(saveOrder.size() - 1));
+		assertFalse(saveOrder.size() > 2);
+	}
+
+	@Test
+	public void lateResponseAfterFinalIsSavedIsIgnored() {
+		useLanes(1);
+		JobRun jobRun = createRun(JobStatus.Failed);
+		service.processResponse(withStatus(jobRun, JobStatus.Running));
+		service.shutdown();
+
+		assertEquals(JobStatus.Failed, saved.get(jobRun.getId()));
+		assertTrue(saveOrder.isEmpty());
+	}
+
+	@Test
+	public void manyRunsEachEndComplete() {
+		useLanes(4);
+		List<JobRun> jobRuns = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			jobRuns.add(createRun(JobStatus.Scheduled));
+		}
+		for (JobRun jobRun : jobRuns) {
+			service.processResponse(withStatus(jobRun, JobStatus.Running));
+			service.processResponse(withStatus(jobRun, JobStatus.Complete));
+			service.processResponse(withStatus(jobRun, JobStatus.Running));
+		}
+		service.shutdown();
+
+		for (JobRun jobRun : jobRuns) {
+			assertEquals(JobStatus.Complete, saved.get(jobRun.getId()));
+		}
+	}
+
+	private void useLanes(int count) {
+		ExecutorService[] lanes = new ExecutorService[count];
+		for (int i = 0; i < count; i++) {
+			lanes[i] = Executors.newSingleThreadExecutor();
+		}
+		ReflectionTestUtils.setField(service, "responseLanes", lanes);
+	}
+
+	private JobRun createRun(JobStatus status) {
+		JobRun jobRun = JobRun.create("Test Report", "alice");
+		jobRun.setId(UUID.randomUUID());
+		jobRun.setStatus(status);
+		saved.put(jobRun.getId(), status);
+		return jobRun;
+	}
+
+	//Each response is a fresh copy of the run, as it would be when read from the queue
+	private JobRun withStatus(JobRun jobRun, JobStatus status) {
+		JobRun response = JobRun.create(jobRun.getJobName(), jobRun.getUser());
+		response.setId(jobRun.getId());
+		response.setStatus(status);
+		return response;
+	}
+}
@@ -0,0 +1,80 @@
+package org.ihtsdo.snowowl.authoring.scheduler.api.service;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.ihtsdo.snowowl.authoring.scheduler.api.repository.JobRunRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.snomed.otf.scheduler.domain.JobRun;
+import org.snomed.otf.scheduler.domain.JobStatus;
+import org.springframework.scheduling.TaskScheduler;
+
+/**
+ * Runs left as Scheduled when the service stopped were either being deferred, which is
+ * only tracked in memory, or are waiting on the queue.  Checks each is picked up again.
+ */
+public class ScheduledRunRecoveryTest {
+
+	private ScheduleServiceImpl service;
+	private JobRunRepository jobRunRepository;
+	private TaskScheduler engineScheduler;
+
+	@Before
+	public void setUp() {
+		jobRunRepository = mock(JobRunRepository.class);
+		engineScheduler = mock(TaskScheduler.class);
+		service = new ScheduleServiceImpl();
+		service.jobRunRepository = jobRunRepository;
+		service.engineScheduler = engineScheduler;
+		service.orphanMins = 720;
+	}
+
+	@Test
+	public void deferredRunIsResumedStraightAway() {
+		JobRun deferred = createRun(new Date(), ScheduleServiceImpl.DEFERRED + "2 time(s) since then");
+		when(jobRunRepository.findByStatus(JobStatus.Scheduled)).thenReturn(Collections.singletonList(deferred));
+
+		long before = System.currentTimeMillis();
+		service.recoverScheduledRuns();
+
+		ArgumentCaptor<Date> when = ArgumentCaptor.forClass(Date.class);
+		verify(engineScheduler).schedule(any(Runnable.class), when.capture());
+		assertTrue(when.getValue().getTime() - before < TimeUnit.MINUTES.toMillis(1));
+	}
+
+	@Test
+	public void queuedRunIsFailedOnlyIfNeverPickedUp() {
+		Date requested = new Date(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(10));
+		JobRun queued = createRun(requested, null);
+		when(jobRunRepository.findByStatus(JobStatus.Scheduled)).thenReturn(Collections.singletonList(queued));
+
+		service.recoverScheduledRuns();
+
+		ArgumentCaptor<Runnable> check = ArgumentCaptor.forClass(Runnable.class);
+		ArgumentCaptor<Date> when = ArgumentCaptor.forClass(Date.class);
+		verify(engineScheduler).schedule(check.capture(), when.capture());
+		assertEquals(requested.getTime() + TimeUnit.MINUTES.toMillis(720), when.getValue().getTime());
+
+		//A worker has since picked it up, so it's left alone
+		JobRun running = createRun(requested, null);
+		running.setStatus(JobStatus.Running);
+		when(jobRunRepository.findById(queued.getId())).thenReturn(Optional.of(running));
+		check.getValue().run();
+		assertEquals(JobStatus.Running, running.getStatus());
+	}
+
+	private JobRun createRun(Date requested, String debugInfo) {
+		JobRun jobRun = JobRun.create("Test Report", "alice");
+		jobRun.setId(UUID.randomUUID());
+		jobRun.setStatus(JobStatus.Scheduled);
+		jobRun.setRequestTime(requested);
+		jobRun.setDebugInfo(debugInfo);
+		return jobRun;
+	}
+}
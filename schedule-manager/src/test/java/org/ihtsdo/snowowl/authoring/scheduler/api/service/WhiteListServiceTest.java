@@ -0,0 +1,64 @@
+package org.ihtsdo.snowowl.authoring.scheduler.api.service;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.ihtsdo.snowowl.authoring.scheduler.api.repository.WhiteListVersionRepository;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest(properties = {
+		"spring.jpa.hibernate.naming.physical-strategy=org.hibernate.boot.model.naming.PhysicalNamingStrategyStandardImpl"})
+public class WhiteListServiceTest {
+
+	@Configuration
+	@EntityScan({"org.snomed.otf.scheduler.domain", "org.ihtsdo.snowowl.authoring.scheduler.api.domain"})
+	@EnableJpaRepositories(basePackageClasses = WhiteListVersionRepository.class)
+	@Import(WhiteListService.class)
+	static class TestConfig {
+	}
+
+	@Autowired
+	WhiteListService whiteListService;
+
+	@Autowired
+	WhiteListVersionRepository whiteListVersionRepository;
+
+	@Test
+	public void identicalContentSharesAVersion() {
+		String version = whiteListService.saveVersion(concepts("22298006", "38341003", "73211009"));
+		assertEquals(version, whiteListService.saveVersion(concepts("73211009", "22298006", "38341003")));
+		assertEquals(1, whiteListVersionRepository.count());
+
+		String changed = whiteListService.saveVersion(concepts("22298006", "38341003"));
+		assertNotEquals(version, changed);
+		assertEquals(2, whiteListVersionRepository.count());
+	}
+
+	@Test
+	public void versionsCanBeResolved() {
+		String version = whiteListService.saveVersion(concepts("22298006", "38341003"));
+		assertEquals(new HashSet<>(Arrays.asList("22298006", "38341003")), whiteListService.getSctIds(version));
+		assertNull(whiteListService.getSctIds("unknown"));
+	}
+
+	@Test
+	public void emptyWhiteListsHaveNoVersion() {
+		assertNull(whiteListService.saveVersion(null));
+		assertNull(whiteListService.saveVersion(new TreeSet<>()));
+		assertEquals(0, whiteListVersionRepository.count());
+	}
+
+	private SortedSet<String> concepts(String... sctIds) {
+		return new TreeSet<>(Arrays.asList(sctIds));
+	}
+}
@@ -20,6 +20,7 @@ import org.ihtsdo.termserver.scripting.client.TermServerClient.*;
 import org.ihtsdo.termserver.scripting.dao.ArchiveDataLoader;
 import org.ihtsdo.termserver.scripting.domain.*;
 import org.ihtsdo.termserver.scripting.snapshot.SnapshotGenerator;
+import org.ihtsdo.termserver.scripting.snapshot.SnapshotManifest;
 import org.ihtsdo.termserver.scripting.util.ExceptionUtils;
 import org.ihtsdo.termserver.scripting.util.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -230,12 +231,26 @@ public class ArchiveManager implements RF2Constants {
 				}
 			}
 			
+			//Snapshots we've generated ourselves carry a manifest we can check them against
+			SnapshotManifest manifest = null;
+			boolean isGeneratedSnapshot = snapshot.isDirectory() && !loadEditionArchive;
+			//If we generated it in this session, it may still be being written, but we have it in memory anyway
+			boolean isIncomplete = false;
+			if (isGeneratedSnapshot) {
+				try {
+					manifest = SnapshotManifest.read(snapshot);
+				} catch (IOException e) {
+					TermServerScript.warn("Unable to read manifest for " + snapshot + " due to " + e.getMessage());
+				}
+				isIncomplete = manifest == null && !ts.getProject().equals(currentlyHeldInMemory);
+			}
+			
 			Branch branch = null;
 			//Are we lacking data, or is our data out of date?  
 			boolean isStale = false;
 			if (snapshot.exists() && !allowStaleData) {
 				branch = loadBranch(ts.getProject());
-				isStale = checkIsStale(ts, branch, snapshot);
+				isStale = checkIsStale(ts, branch, snapshot, manifest);
 				if (isStale) {
 					TermServerScript.warn(ts.getProject() + " snapshot held locally is stale.  Requesting delta to rebuild...");
 				} else {
@@ -245,6 +260,7 @@ public class ArchiveManager implements RF2Constants {
 
 			if (!snapshot.exists() || 
 					(isStale && !allowStaleData) || 
+					isIncomplete ||
 					(populateReleasedFlag && !releasedFlagPopulated && !loadEditionArchive) ||
 					(populatePreviousTransativeClosure && gl.getPreviousTC() == null)) {
 				
@@ -252,6 +268,8 @@ public class ArchiveManager implements RF2Constants {
 					info("Generating fresh snapshot because 'released' flag must be populated");
 				} else if (populatePreviousTransativeClosure && gl.getPreviousTC() == null) {
 					info("Generating fresh snapshot because previous transative closure must be populated");
+				} else if (isIncomplete) {
+					info("Generating fresh snapshot because " + snapshot + " has no manifest, so may be incomplete");
 				}
 				gl.reset();
 				generateSnapshot (ts.getProject());
@@ -277,6 +295,9 @@ public class ArchiveManager implements RF2Constants {
 						gl.reset();
 						generateSnapshot (ts.getProject());
 						releasedFlagPopulated=true;
+					} else if (manifest != null && !verifySnapshot(snapshot, manifest, branch)) {
+						//Regenerating the damaged files has loaded the project into memory
+						releasedFlagPopulated=true;
 					} else {
 						info ("Loading snapshot archive contents into memory...");
 						try {
@@ -285,7 +306,7 @@ public class ArchiveManager implements RF2Constants {
 							releasedFlagPopulated = loadEditionArchive;
 							//We only know if the components are released when loading an edition archive
 							Boolean isReleased = loadEditionArchive ? true : null;
-							loadArchive(snapshot, fsnOnly, "Snapshot", isReleased);
+							loadArchive(snapshot, fsnOnly, "Snapshot", isReleased, manifest != null);
 						} catch (Exception e) {
 							TermServerScript.error ("Non-viable snapshot encountered (Exception: " + e.getMessage()  +").", e);
 							if (!snapshot.getName().startsWith("releases/")) {
@@ -323,7 +344,39 @@ public class ArchiveManager implements RF2Constants {
 		info ("Snapshot loading complete");
 	}
 	
-	private boolean checkIsStale(TermServerScript ts, Branch branch, File snapshot) throws IOException {
+	/**
+	 * Checks every file of the snapshot against its manifest before anything is loaded.  If any
+	 * are damaged, just those files are regenerated, which loads the project into memory as a 
+	 * side effect.
+	 * @return true if the snapshot is intact and still needs to be loaded
+	 */
+	private boolean verifySnapshot(File snapshot, SnapshotManifest manifest, Branch branch) throws TermServerScriptException, IOException {
+		info ("Verifying " + snapshot + " against manifest");
+		List<String> damagedFiles = manifest.verify(snapshot);
+		if (damagedFiles.isEmpty()) {
+			return true;
+		}
+		TermServerScript.warn(snapshot + " has damaged files: " + damagedFiles);
+		gl.reset();
+		if (branch == null) {
+			branch = loadBranch(ts.getProject());
+		}
+		//The remaining files are only good to keep if the branch hasn't moved on since they were written
+		if (branch != null && manifest.getBranchHeadTimestamp() != null && 
+				manifest.getBranchHeadTimestamp().equals(branch.getHeadTimestamp())) {
+			generateSnapshot(ts.getProject(), manifest, damagedFiles);
+		} else {
+			info("Branch has moved on since " + snapshot + " was generated, regenerating all files");
+			generateSnapshot(ts.getProject());
+		}
+		return false;
+	}
+	
+	private boolean checkIsStale(TermServerScript ts, Branch branch, File snapshot, SnapshotManifest manifest) throws IOException {
+		if (manifest != null && manifest.getBranchHeadTimestamp() != null) {
+			TermServerScript.debug("Comparing branch time: " + branch.getHeadTimestamp() + " to " + snapshot.getName() + " manifest time: " + manifest.getBranchHeadTimestamp());
+			return branch.getHeadTimestamp() > manifest.getBranchHeadTimestamp();
+		}
 		Date branchHeadTime = new Date(branch.getHeadTimestamp());
 		BasicFileAttributes attr = java.nio.file.Files.readAttributes(snapshot.toPath(), BasicFileAttributes.class);
 		LocalDateTime snapshotCreation = LocalDateTime.ofInstant(Instant.ofEpochMilli(attr.creationTime().toMillis()), ZoneId.systemDefault());
@@ -337,15 +390,35 @@ public class ArchiveManager implements RF2Constants {
 	}
 
 	private void generateSnapshot(Project project) throws TermServerScriptException, IOException {
+		generateSnapshot(project, null, null);
+	}
+	
+	/**
+	 * @param damagedFiles if specified, only these files of the existing snapshot will be rewritten
+	 */
+	private void generateSnapshot(Project project, SnapshotManifest manifest, List<String> damagedFiles) throws TermServerScriptException, IOException {
 		File snapshot = getSnapshotPath();
-		//Delete the current snapshot if it exists - will be stale
-		if (snapshot.isDirectory()) {
-			FileUtils.deleteDirectory(snapshot);
+		if (damagedFiles == null) {
+			//Delete the current snapshot if it exists - will be stale
+			if (snapshot.isDirectory()) {
+				FileUtils.deleteDirectory(snapshot);
+			} else {
+				java.nio.file.Files.deleteIfExists(snapshot.toPath());
+			}
 		} else {
-			java.nio.file.Files.deleteIfExists(snapshot.toPath());
+			for (String damagedFile : damagedFiles) {
+				java.nio.file.Files.deleteIfExists(new File(snapshot, damagedFile).toPath());
+			}
 		}
 		
 		ensureProjectMetadataPopulated(project);
+		//Note the time of the branch before we export from it, so the snapshot is at least this recent
+		Long branchHeadTimestamp = null;
+		try {
+			branchHeadTimestamp = ts.getTSClient().getBranch(project.getBranchPath()).getHeadTimestamp();
+		} catch (Exception e) {
+			TermServerScript.warn("Unable to recover head timestamp for " + project.getBranchPath() + " due to " + e.getMessage());
+		}
 	
 		File previous = new File (dataStoreRoot + "releases/"  + project.getMetadata().getPreviousPackage());
 		if (!previous.exists()) {
@@ -369,6 +442,10 @@ public class ArchiveManager implements RF2Constants {
 		snapshotGenerator.setProject(ts.getProject());
 		snapshotGenerator.leaveArchiveUncompressed();
 		snapshotGenerator.setOutputDirName(snapshot.getPath());
+		snapshotGenerator.setSourceHeadTimestamp(branchHeadTimestamp);
+		if (damagedFiles != null) {
+			snapshotGenerator.regenerateFiles(manifest, damagedFiles);
+		}
 		snapshotGenerator.generateSnapshot(dependency, previous, delta, snapshot);
 	}
 	
@@ -385,9 +462,21 @@ public class ArchiveManager implements RF2Constants {
 	}
 
 	public File generateDelta(Project project) throws IOException, TermServerScriptException {
+		File delta = createDeltaFile();
+		ts.getTSClient().export(project.getBranchPath(), null, ExportType.UNPUBLISHED, ExtractType.DELTA, delta);
+		return delta;
+	}
+	
+	/**
+	 * Exports the project's unpublished changes and loads them on top of what is already held
+	 */
+	public File loadUnpublishedDelta(Project project) throws IOException, TermServerScriptException {
+		return loadExportedArchive(project, ExportType.UNPUBLISHED, ExtractType.DELTA, createDeltaFile(), false, false);
+	}
+	
+	private File createDeltaFile() throws IOException {
 		File delta = File.createTempFile("delta_export-", ".zip");
 		delta.deleteOnExit();
-		ts.getTSClient().export(project.getBranchPath(), null, ExportType.UNPUBLISHED, ExtractType.DELTA, delta);
 		return delta;
 	}
 
@@ -412,6 +501,17 @@ public class ArchiveManager implements RF2Constants {
 		}
 	}
 
+	/**
+	 * @return the named release archive, downloaded from S3 if it is not already held locally
+	 */
+	public File getReleaseArchive(String archiveName) throws TermServerScriptException {
+		File archive = new File (dataStoreRoot + "releases/" + archiveName);
+		if (!archive.exists()) {
+			getArchiveDataLoader().download(archive);
+		}
+		return archive;
+	}
+
 	private File getSnapshotPath() {
 		//If the project specifies its a .zip file, that's another way to know we're loading an edition
 		String fileExt = ".zip";
@@ -441,6 +541,14 @@ public class ArchiveManager implements RF2Constants {
 	}
 
 	protected void loadArchive(File archive, boolean fsnOnly, String fileType, Boolean isReleased) throws TermServerScriptException {
+		loadArchive(archive, fsnOnly, fileType, isReleased, false);
+	}
+	
+	/**
+	 * @param isVerified true if the archive has already been checked against its manifest,
+	 * in which case there's no need to check the content makes sense after loading
+	 */
+	private void loadArchive(File archive, boolean fsnOnly, String fileType, Boolean isReleased, boolean isVerified) throws TermServerScriptException {
 		try {
 			boolean isDelta = (fileType.equals(DELTA));
 			//Are we loading an expanded or compressed archive?
@@ -452,37 +560,71 @@ public class ArchiveManager implements RF2Constants {
 			} else {
 				throw new TermServerScriptException("Unrecognised archive : " + archive);
 			}
-			
-			if (gl.getAllConcepts().size() < 300000) {
-				throw new TermServerScriptException("Insufficient number of concepts loaded " + gl.getAllConcepts().size() + " - Snapshot archive damaged?");
-			}
-			
-			if (!fsnOnly) {  
-				//Check that we've got some descriptions to be sure we've not been given
-				//a malformed, or classification style archive.
-				debug("Checking first 100 concepts for integrity");
-				List<Description> first100Descriptions = gl.getAllConcepts()
-						.stream()
-						.limit(100)
-						.flatMap(c -> c.getDescriptions().stream())
-						.collect(Collectors.toList());
-				if (first100Descriptions.size() < 100) {
-					throw new TermServerScriptException("Failed to find sufficient number of descriptions - classification archive used? Deleting snapshot, please retry.");
-				}
-				debug("Integrity check complete");
-			}
-			
-			//Are we generating the transitive closure?
-			if (fileType.equals(SNAPSHOT) && populatePreviousTransativeClosure) {
-				gl.populatePreviousTransativeClosure();
-			}
+			checkArchiveLoaded(fsnOnly, fileType, isVerified);
 		} catch (IOException e) {
 			throw new TermServerScriptException("Failed to extract project state from archive " + archive.getName(), e);
+		} finally {
+			//Conversions made before a failure are still good
+			gl.saveAxiomConversions();
+		}
+	}
+	
+	/**
+	 * Exports the project from the terminology server, loading the archive as it 
+	 * downloads rather than waiting for the whole file to arrive.
+	 * @return the exported archive, as saved to disk
+	 */
+	public File loadExportedArchive(Project project, ExportType exportType, ExtractType extractType, File saveLocation, boolean fsnOnly, Boolean isReleased) throws TermServerScriptException {
+		String fileType = extractType.equals(ExtractType.DELTA) ? DELTA : SNAPSHOT;
+		boolean isDelta = extractType.equals(ExtractType.DELTA);
+		File archive;
+		try {
+			archive = ts.getTSClient().export(project.getBranchPath(), null, exportType, extractType, saveLocation,
+					is -> loadArchiveZip(is, fsnOnly, fileType, isDelta, isReleased));
+		} finally {
+			gl.saveAxiomConversions();
+		}
+		checkArchiveLoaded(fsnOnly, fileType, false);
+		return archive;
+	}
+	
+	private void checkArchiveLoaded(boolean fsnOnly, String fileType, boolean isVerified) throws TermServerScriptException {
+		//A delta can be any size, and may hold concepts with no description changes, so only 
+		//a snapshot can be expected to have all its concepts and their descriptions
+		boolean isSnapshot = fileType.equals(SNAPSHOT);
+		if (isVerified) {
+			debug("Archive verified against manifest, skipping integrity check");
+		} else if (isSnapshot && gl.getAllConcepts().size() < 300000) {
+			throw new TermServerScriptException("Insufficient number of concepts loaded " + gl.getAllConcepts().size() + " - Snapshot archive damaged?");
+		}
+		
+		if (isSnapshot && !fsnOnly && !isVerified) {  
+			//Check that we've got some descriptions to be sure we've not been given
+			//a malformed, or classification style archive.
+			debug("Checking first 100 concepts for integrity");
+			List<Description> first100Descriptions = gl.getAllConcepts()
+					.stream()
+					.limit(100)
+					.flatMap(c -> c.getDescriptions().stream())
+					.collect(Collectors.toList());
+			if (first100Descriptions.size() < 100) {
+				throw new TermServerScriptException("Failed to find sufficient number of descriptions - classification archive used? Deleting snapshot, please retry.");
+			}
+			debug("Integrity check complete");
+		}
+		
+		//Are we generating the transitive closure?
+		if (isSnapshot && populatePreviousTransativeClosure) {
+			gl.populatePreviousTransativeClosure();
 		}
 	}
 
 	private void loadArchiveZip(File archive, boolean fsnOnly, String fileType, boolean isDelta, Boolean isReleased) throws IOException, TermServerScriptException {
-		ZipInputStream zis = new ZipInputStream(new FileInputStream(archive));
+		loadArchiveZip(new FileInputStream(archive), fsnOnly, fileType, isDelta, isReleased);
+	}
+	
+	private void loadArchiveZip(InputStream archive, boolean fsnOnly, String fileType, boolean isDelta, Boolean isReleased) throws IOException, TermServerScriptException {
+		ZipInputStream zis = new ZipInputStream(archive);
 		ZipEntry ze = zis.getNextEntry();
 		try {
 			while (ze != null) {
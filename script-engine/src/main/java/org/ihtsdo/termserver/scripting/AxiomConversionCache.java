@@ -0,0 +1,292 @@
+package org.ihtsdo.termserver.scripting;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang.StringUtils;
+import org.ihtsdo.otf.exception.TermServerScriptException;
+import org.ihtsdo.termserver.scripting.domain.RF2Constants;
+import org.snomed.otf.owltoolkit.conversion.AxiomRelationshipConversionService;
+import org.snomed.otf.owltoolkit.conversion.ConversionException;
+import org.snomed.otf.owltoolkit.domain.AxiomRepresentation;
+import org.snomed.otf.owltoolkit.domain.Relationship;
+
+/**
+ * Converts OWL axioms to their relationship representation, remembering the result
+ * on disk so that unchanged axioms are not parsed again on the next load.
+ * Entries are keyed on the axiom id, effective time and a hash of the OWL expression.
+ * Conversions may run on multiple threads, each of which has its own conversion service.
+ *
+ * The file holds at most MAX_ENTRIES conversions.  When it's saved, those used by the
+ * current load are kept first, so entries only seen in older releases are the ones dropped.
+ */
+public class AxiomConversionCache implements RF2Constants {
+
+	public static String CACHE_FILE = "cache/axiom_conversions.tsv";
+	//Around three releases' worth of International axioms
+	static int MAX_ENTRIES = 1000000;
+	private static final String NO_REPRESENTATION = "-";
+	private static final String FIELD_SEP = "|";
+	private static final String GROUP_SEP = ";";
+	private static final String REL_SEP = ",";
+
+	private static final ThreadLocal<AxiomRelationshipConversionService> axiomServices =
+			ThreadLocal.withInitial(() -> new AxiomRelationshipConversionService (null));
+
+	private final File cacheFile;
+	//Conversions of published axioms, which are the ones saved to the cache file
+	private final Map<String, String> conversions = new ConcurrentHashMap<>();
+	//Keys in the order they were read from the file, which is most recently used first
+	private final List<String> loadedKeys = new ArrayList<>();
+	private final Set<String> usedKeys = ConcurrentHashMap.newKeySet();
+	//Unpublished axioms are likely to change before they're next seen, so are only held in memory
+	private final Map<String, String> unpublishedConversions = new ConcurrentHashMap<>();
+	private volatile boolean isDirty = false;
+
+	private AxiomConversionCache(File cacheFile) {
+		this.cacheFile = cacheFile;
+	}
+
+	public static AxiomConversionCache open() {
+		return open(new File(CACHE_FILE));
+	}
+
+	static AxiomConversionCache open(File cacheFile) {
+		AxiomConversionCache cache = new AxiomConversionCache(cacheFile);
+		cache.load();
+		return cache;
+	}
+
+	private void load() {
+		if (!cacheFile.canRead()) {
+			return;
+		}
+		int skipped = 0;
+		try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(cacheFile), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				String[] items = line.split(TAB, -1);
+				//A line cut short, say by a run being killed mid write, is simply converted again
+				if (items.length != 2 || !isValid(items[1])) {
+					skipped++;
+					continue;
+				}
+				if (conversions.put(items[0], items[1]) == null) {
+					loadedKeys.add(items[0]);
+				}
+			}
+			TermServerScript.debug("Loaded " + conversions.size() + " cached axiom conversions from " + cacheFile);
+		} catch (IOException e) {
+			TermServerScript.warn("Unable to read axiom conversion cache " + cacheFile + " due to " + e.getMessage());
+			conversions.clear();
+		}
+		if (skipped > 0) {
+			TermServerScript.warn("Skipped " + skipped + " unreadable entries in axiom conversion cache " + cacheFile);
+			//Rewrite the file without them
+			isDirty = true;
+		}
+		if (conversions.size() > MAX_ENTRIES) {
+			//Trim it back down
+			isDirty = true;
+		}
+	}
+
+	private static boolean isValid(String encoded) {
+		try {
+			decode(encoded);
+			return true;
+		} catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+			return false;
+		}
+	}
+
+	int size() {
+		return conversions.size();
+	}
+
+	/**
+	 * Convert a batch of axiom rows in parallel.  The results are returned in the
+	 * same order as the rows, with null where the axiom has no relationship representation
+	 */
+	public List<AxiomRepresentation> convertAll(List<String[]> axiomRows) throws TermServerScriptException {
+		try {
+			return axiomRows.parallelStream()
+					.map(this::convertSafely)
+					.collect(Collectors.toList());
+		} catch (IllegalStateException e) {
+			if (e.getCause() instanceof TermServerScriptException) {
+				throw (TermServerScriptException)e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	private AxiomRepresentation convertSafely(String[] lineItems) {
+		try {
+			return convert(lineItems[IDX_ID], lineItems[IDX_EFFECTIVETIME], lineItems[REF_IDX_AXIOM_STR]);
+		} catch (ConversionException e) {
+			TermServerScriptException tsse = new TermServerScriptException("Failed to load axiom: " + String.join(FIELD_DELIMITER, lineItems), e);
+			throw new IllegalStateException(tsse.getMessage(), tsse);
+		}
+	}
+
+	public AxiomRepresentation convert(String axiomId, String effectiveTime, String owlExpression) throws ConversionException {
+		String key = axiomId + "_" + effectiveTime + "_" + owlExpression.hashCode();
+		Map<String, String> cache = StringUtils.isEmpty(effectiveTime) ? unpublishedConversions : conversions;
+		if (cache == conversions) {
+			usedKeys.add(key);
+		}
+		String encoded = cache.get(key);
+		if (encoded != null) {
+			return decode(encoded);
+		}
+
+		AxiomRepresentation axiom = axiomServices.get().convertAxiomToRelationships(owlExpression);
+		cache.put(key, encode(axiom));
+		if (cache == conversions) {
+			isDirty = true;
+		}
+		return axiom;
+	}
+
+	/**
+	 * Write the cache file out again if there are new conversions.  The file is written
+	 * alongside and then swapped in, so a failed run doesn't lose the existing cache.
+	 */
+	public void save() {
+		if (!isDirty) {
+			return;
+		}
+		File dir = cacheFile.getAbsoluteFile().getParentFile();
+		File tmpFile = null;
+		try {
+			dir.mkdirs();
+			//Unique to this process, in case another is saving the same cache
+			tmpFile = File.createTempFile(cacheFile.getName(), ".tmp", dir);
+			int written = 0;
+			try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), StandardCharsets.UTF_8))) {
+				written += write(bw, usedKeys, written);
+				List<String> unusedKeys = new ArrayList<>(loadedKeys);
+				unusedKeys.removeAll(usedKeys);
+				written += write(bw, unusedKeys, written);
+			}
+			Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			if (written < conversions.size()) {
+				TermServerScript.debug("Dropped " + (conversions.size() - written) + " least recently used axiom conversions from " + cacheFile);
+			}
+			isDirty = false;
+		} catch (IOException e) {
+			TermServerScript.warn("Unable to write axiom conversion cache " + cacheFile + " due to " + e.getMessage());
+			if (tmpFile != null) {
+				tmpFile.delete();
+			}
+		}
+	}
+
+	private int write(BufferedWriter bw, Collection<String> keys, int alreadyWritten) throws IOException {
+		int written = 0;
+		for (String key : keys) {
+			if (alreadyWritten + written >= MAX_ENTRIES) {
+				break;
+			}
+			String encoded = conversions.get(key);
+			if (encoded != null) {
+				bw.write(key + TAB + encoded);
+				bw.newLine();
+				written++;
+			}
+		}
+		return written;
+	}
+
+	//lhsConcept|rhsConcept|primitive|lhsRelationships|rhsRelationships
+	static String encode(AxiomRepresentation axiom) {
+		if (axiom == null) {
+			return NO_REPRESENTATION;
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append(axiom.getLeftHandSideNamedConcept() == null ? "" : axiom.getLeftHandSideNamedConcept()).append(FIELD_SEP)
+			.append(axiom.getRightHandSideNamedConcept() == null ? "" : axiom.getRightHandSideNamedConcept()).append(FIELD_SEP)
+			.append(axiom.isPrimitive() ? "1" : "0").append(FIELD_SEP);
+		encode(sb, axiom.getLeftHandSideRelationships());
+		sb.append(FIELD_SEP);
+		encode(sb, axiom.getRightHandSideRelationships());
+		return sb.toString();
+	}
+
+	//group:type=destination,type=destination;group:...
+	private static void encode(StringBuilder sb, Map<Integer, List<Relationship>> relationshipMap) {
+		if (relationshipMap == null) {
+			return;
+		}
+		boolean isFirstGroup = true;
+		for (Map.Entry<Integer, List<Relationship>> entry : relationshipMap.entrySet()) {
+			if (!isFirstGroup) {
+				sb.append(GROUP_SEP);
+			}
+			isFirstGroup = false;
+			sb.append(entry.getKey()).append(":");
+			boolean isFirstRel = true;
+			for (Relationship r : entry.getValue()) {
+				if (!isFirstRel) {
+					sb.append(REL_SEP);
+				}
+				isFirstRel = false;
+				sb.append(r.getTypeId()).append("=").append(r.getDestinationId());
+			}
+		}
+	}
+
+	static AxiomRepresentation decode(String encoded) {
+		if (encoded.equals(NO_REPRESENTATION)) {
+			return null;
+		}
+		String[] fields = encoded.split("\\" + FIELD_SEP, -1);
+		if (fields.length != 5) {
+			throw new IllegalArgumentException("Expected 5 fields in cached axiom conversion, found " + fields.length);
+		}
+		AxiomRepresentation axiom = new AxiomRepresentation();
+		if (!fields[0].isEmpty()) {
+			axiom.setLeftHandSideNamedConcept(Long.parseLong(fields[0]));
+		}
+		if (!fields[1].isEmpty()) {
+			axiom.setRightHandSideNamedConcept(Long.parseLong(fields[1]));
+		}
+		axiom.setPrimitive(fields[2].equals("1"));
+		axiom.setLeftHandSideRelationships(decodeRelationships(fields[3]));
+		axiom.setRightHandSideRelationships(decodeRelationships(fields[4]));
+		return axiom;
+	}
+
+	private static Map<Integer, List<Relationship>> decodeRelationships(String encoded) {
+		//An absent map and an empty one are treated the same way by AxiomUtils
+		Map<Integer, List<Relationship>> relationshipMap = new HashMap<>();
+		if (encoded.isEmpty()) {
+			return relationshipMap;
+		}
+		for (String group : encoded.split(GROUP_SEP)) {
+			int cut = group.indexOf(':');
+			if (cut == NOT_FOUND) {
+				throw new IllegalArgumentException("Relationship group number missing from '" + group + "'");
+			}
+			List<Relationship> relationships = new ArrayList<>();
+			String groupContent = group.substring(cut + 1);
+			if (!groupContent.isEmpty()) {
+				for (String rel : groupContent.split(REL_SEP)) {
+					int eq = rel.indexOf('=');
+					if (eq == NOT_FOUND) {
+						throw new IllegalArgumentException("Relationship type or destination missing from '" + rel + "'");
+					}
+					relationships.add(new Relationship(Long.parseLong(rel.substring(0, eq)), Long.parseLong(rel.substring(eq + 1))));
+				}
+			}
+			relationshipMap.put(Integer.parseInt(group.substring(0, cut)), relationships);
+		}
+		return relationshipMap;
+	}
+}
@@ -19,7 +19,9 @@ import org.snomed.otf.owltoolkit.domain.AxiomRepresentation;
  */
 public class AxiomUtils implements RF2Constants {
 	
-	static AxiomRelationshipConversionService axiomService = new AxiomRelationshipConversionService (new HashSet<>());
+	//The conversion service is not thread safe, and concepts may be output in parallel
+	private static final ThreadLocal<AxiomRelationshipConversionService> axiomServices =
+			ThreadLocal.withInitial(() -> new AxiomRelationshipConversionService (new HashSet<>()));
 
 	public static Set<org.ihtsdo.termserver.scripting.domain.Relationship> getRHSRelationships(Concept c, AxiomRepresentation axiom) throws TermServerScriptException {
 		Set<org.ihtsdo.termserver.scripting.domain.Relationship> relationships = new HashSet<>();
@@ -120,7 +122,7 @@ public class AxiomUtils implements RF2Constants {
 			axiomRep.setLeftHandSideNamedConcept(Long.parseLong(c.getConceptId()));
 			axiomRep.setRightHandSideRelationships(convertRelationshipsToMap(axiom.getRelationships()));
 			axiomRep.setPrimitive(c.getDefinitionStatus().equals(DefinitionStatus.PRIMITIVE));
-			String owl = axiomService.convertRelationshipsToAxiom(axiomRep);
+			String owl = axiomServices.get().convertRelationshipsToAxiom(axiomRep);
 			a.setOwlExpression(owl);
 			a.setDirty();
 			axiomEntries.add(a);
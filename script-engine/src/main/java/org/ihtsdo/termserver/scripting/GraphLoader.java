@@ -3,6 +3,7 @@ package org.ihtsdo.termserver.scripting;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.zip.ZipInputStream;
 
@@ -11,6 +12,7 @@ import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Component;
 import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Component.ComponentType;
 import org.ihtsdo.otf.exception.TermServerScriptException;
 import org.ihtsdo.termserver.scripting.domain.*;
+import org.ihtsdo.termserver.scripting.util.FieldDictionary;
 import org.ihtsdo.termserver.scripting.util.SnomedUtils;
 import org.snomed.otf.owltoolkit.conversion.AxiomRelationshipConversionService;
 import org.snomed.otf.owltoolkit.conversion.ConversionException;
@@ -20,15 +22,26 @@ import org.springframework.util.StringUtils;
 public class GraphLoader implements RF2Constants {
 
 	private static GraphLoader singleton = null;
-	private Map<String, Concept> concepts = new HashMap<String, Concept>();
+	//Concurrent as scripts such as the Rf2Player load concepts on several threads at once
+	private Map<String, Concept> concepts = new ConcurrentHashMap<String, Concept>();
 	private Map<String, Description> descriptions = new HashMap<String, Description>();
 	private Map<String, Component> allComponents = null;
 	private Map<Component, Concept> componentOwnerMap = null;
 	private Map<String, Concept> fsnMap = null;
 	private Set<String> excludedModules;
 	public static int MAX_DEPTH = 1000;
+	private static int AXIOM_BATCH_SIZE = 10000;
 	private Set<Concept> orphanetConcepts;
 	private AxiomRelationshipConversionService axiomService;
+	//Conversions remembered between runs, only held while an archive is being loaded
+	private AxiomConversionCache axiomConversionCache;
+	
+	//Canonical instances of the low cardinality fields held by every component loaded
+	private FieldDictionary effectiveTimes = new FieldDictionary();
+	private FieldDictionary moduleIds = new FieldDictionary();
+	private FieldDictionary refsetIds = new FieldDictionary();
+	private FieldDictionary valueIds = new FieldDictionary();
+	private FieldDictionary languageCodes = new FieldDictionary();
 	
 	private DescendantsCache descendantsCache = DescendantsCache.getDescendentsCache();
 	private AncestorsCache ancestorsCache = AncestorsCache.getAncestorsCache();
@@ -110,7 +123,7 @@ public class GraphLoader implements RF2Constants {
 	
 	public void reset() {
 		TermServerScript.info("Resetting Graph Loader");
-		concepts = new HashMap<String, Concept>();
+		concepts = new ConcurrentHashMap<String, Concept>();
 		descriptions = new HashMap<String, Description>();
 		allComponents = null;
 		componentOwnerMap = null;
@@ -140,6 +153,7 @@ public class GraphLoader implements RF2Constants {
 				if (isExcluded(lineItems[IDX_MODULEID])) {
 					continue;
 				}
+				internCommonFields(lineItems);
 				
 /*				if (lineItems[REL_IDX_ID].equals("16101000172123")) {
 					TermServerScript.debug ("Debug Here");
@@ -171,6 +185,16 @@ public class GraphLoader implements RF2Constants {
 	private boolean isExcluded(String moduleId) {
 		return excludedModules.contains(moduleId);
 	}
+	
+	private void internCommonFields(String[] lineItems) {
+		lineItems[IDX_EFFECTIVETIME] = effectiveTimes.intern(lineItems[IDX_EFFECTIVETIME]);
+		lineItems[IDX_MODULEID] = moduleIds.intern(lineItems[IDX_MODULEID]);
+	}
+	
+	private void internRefsetFields(String[] lineItems) {
+		internCommonFields(lineItems);
+		lineItems[REF_IDX_REFSETID] = refsetIds.intern(lineItems[REF_IDX_REFSETID]);
+	}
 
 	public void loadAxioms(InputStream axiomStream, boolean isDelta, Boolean isReleased) 
 			throws IOException, TermServerScriptException {
@@ -178,6 +202,10 @@ public class GraphLoader implements RF2Constants {
 		String line;
 		boolean isHeaderLine = true;
 		int axiomsLoaded = 0;
+		//Axioms are read and converted in batches, with the OWL conversion running in parallel
+		//and then the results applied to concepts in the order they appeared in the file
+		AxiomConversionCache conversionCache = getAxiomConversionCache();
+		List<String[]> batch = new ArrayList<>();
 		while ((line = br.readLine()) != null) {
 			if (!isHeaderLine) {
 				String[] lineItems = line.split(FIELD_DELIMITER);
@@ -191,88 +219,123 @@ public class GraphLoader implements RF2Constants {
 					continue;
 				}
 				
-				if (!isConcept(lineItems[REF_IDX_REFCOMPID])) {
-					TermServerScript.debug("Axiom " + lineItems[REL_IDX_ID] + " referenced a non concept identifier: " + lineItems[REF_IDX_REFCOMPID]);
+				internRefsetFields(lineItems);
+				batch.add(lineItems);
+				if (batch.size() >= AXIOM_BATCH_SIZE) {
+					axiomsLoaded += loadAxiomBatch(batch, conversionCache, isDelta, isReleased);
+					batch.clear();
 				}
-				
-				Long conceptId = Long.parseLong(lineItems[REF_IDX_REFCOMPID]);
-				Concept c = getConcept(conceptId);
+			} else {
+				isHeaderLine = false;
+			}
+		}
+		axiomsLoaded += loadAxiomBatch(batch, conversionCache, isDelta, isReleased);
+		log.append("\tLoaded " + axiomsLoaded + " axioms");
+	}
+	
+	//Held for the duration of a load, so the cache file is read and written once however many axiom files there are
+	private synchronized AxiomConversionCache getAxiomConversionCache() {
+		if (axiomConversionCache == null) {
+			axiomConversionCache = AxiomConversionCache.open();
+		}
+		return axiomConversionCache;
+	}
+	
+	/**
+	 * Writes out any new axiom conversions once an archive has been loaded
+	 */
+	public synchronized void saveAxiomConversions() {
+		if (axiomConversionCache != null) {
+			axiomConversionCache.save();
+			axiomConversionCache = null;
+		}
+	}
+	
+	private int loadAxiomBatch(List<String[]> batch, AxiomConversionCache conversionCache, boolean isDelta, Boolean isReleased) throws TermServerScriptException {
+		List<AxiomRepresentation> axioms = conversionCache.convertAll(batch);
+		for (int i = 0; i < batch.size(); i++) {
+			loadAxiom(batch.get(i), axioms.get(i), conversionCache, isDelta, isReleased);
+		}
+		return batch.size();
+	}
+	
+	private void loadAxiom(String[] lineItems, AxiomRepresentation axiom, AxiomConversionCache conversionCache, boolean isDelta, Boolean isReleased) throws TermServerScriptException {
+		if (!isConcept(lineItems[REF_IDX_REFCOMPID])) {
+			TermServerScript.debug("Axiom " + lineItems[REL_IDX_ID] + " referenced a non concept identifier: " + lineItems[REF_IDX_REFCOMPID]);
+		}
+		
+		Long conceptId = Long.parseLong(lineItems[REF_IDX_REFCOMPID]);
+		Concept c = getConcept(conceptId);
 
-				/*if (c.getId().equals("108725001")) {
-					TermServerScript.debug ("here");
-				}*/
-				
-				try {
-					boolean isAdditionalAxiom = false;
-					//Also save data in RF2 form so we can build Snapshot
-					AxiomEntry axiomEntry = AxiomEntry.fromRf2(lineItems);
-					//Are we overwriting an existing axiom?
-					if (c.getAxiomEntries().contains(axiomEntry)) {
-						AxiomEntry replacedAxiomEntry = c.getAxiom(axiomEntry.getId());
-						if (detectNoChangeDelta && !isReleased) {
-							detectNoChangeDelta(c, replacedAxiomEntry, lineItems);
-						}
-						c.getAxiomEntries().remove(axiomEntry);
-						//We'll inactivate all these relationships and allow them to be replaced
-						AxiomRepresentation replacedAxiom = axiomService.convertAxiomToRelationships(replacedAxiomEntry.getOwlExpression());
-						//Filter out any additional statements such as TransitiveObjectProperty(:123005000)]
-						if (replacedAxiom != null) {
-							Set<Relationship> replacedRelationships = AxiomUtils.getRHSRelationships(c, replacedAxiom);
-							alignAxiomRelationships(c, replacedRelationships, replacedAxiomEntry, false);
-							for (Relationship r : replacedRelationships) {
-								addRelationshipToConcept(CharacteristicType.STATED_RELATIONSHIP, r, isDelta);
-							}
-						}
-					} else if (c.getAxiomEntries(ActiveState.ACTIVE, false).size() > 0) {
-						isAdditionalAxiom = true;
+		/*if (c.getId().equals("108725001")) {
+			TermServerScript.debug ("here");
+		}*/
+		
+		try {
+			boolean isAdditionalAxiom = false;
+			//Also save data in RF2 form so we can build Snapshot
+			AxiomEntry axiomEntry = AxiomEntry.fromRf2(lineItems);
+			//Are we overwriting an existing axiom?
+			if (c.getAxiomEntries().contains(axiomEntry)) {
+				AxiomEntry replacedAxiomEntry = c.getAxiom(axiomEntry.getId());
+				if (detectNoChangeDelta && !isReleased) {
+					detectNoChangeDelta(c, replacedAxiomEntry, lineItems);
+				}
+				c.getAxiomEntries().remove(axiomEntry);
+				//We'll inactivate all these relationships and allow them to be replaced
+				AxiomRepresentation replacedAxiom = conversionCache.convert(replacedAxiomEntry.getId(), replacedAxiomEntry.getEffectiveTime(), replacedAxiomEntry.getOwlExpression());
+				//Filter out any additional statements such as TransitiveObjectProperty(:123005000)]
+				if (replacedAxiom != null) {
+					Set<Relationship> replacedRelationships = AxiomUtils.getRHSRelationships(c, replacedAxiom);
+					alignAxiomRelationships(c, replacedRelationships, replacedAxiomEntry, false);
+					for (Relationship r : replacedRelationships) {
+						addRelationshipToConcept(CharacteristicType.STATED_RELATIONSHIP, r, isDelta);
 					}
-					c.getAxiomEntries().add(axiomEntry);
-				
-					AxiomRepresentation axiom = axiomService.convertAxiomToRelationships(lineItems[REF_IDX_AXIOM_STR]);
-					//Filter out any additional statements such as TransitiveObjectProperty(:123005000)]
-					if (axiom != null) {
-						Long LHS = axiom.getLeftHandSideNamedConcept();
-						if (LHS == null) {
-							//Is this a CGI?
-							Long RHS = axiom.getRightHandSideNamedConcept();
-							if (!conceptId.equals(RHS)) {
-								throw new IllegalArgumentException("GCI Axiom RHS != RefCompId: " + line);
-							}
-							c.getGciAxioms().add(AxiomUtils.toAxiom(c, axiomEntry, axiom));
-							isAdditionalAxiom = false;
-							axiomEntry.setGCI(true);
-						} else if (!conceptId.equals(LHS)) {
-							throw new IllegalArgumentException("Axiom LHS != RefCompId: " + line);
-						}
-						
-						Set<Relationship> relationships = AxiomUtils.getRHSRelationships(c, axiom);
-						if (relationships.size() == 0) {
-							log.append("Checkhere");
-						}
-						//Now we might need to adjust the active flag if the axiom is being inactivated
-						//Or juggle the groupId, since individual axioms don't know about each other's existence
-						alignAxiomRelationships(c, relationships, axiomEntry, axiomEntry.isActive());
-						for (Relationship r : relationships) {
-							addRelationshipToConcept(CharacteristicType.STATED_RELATIONSHIP, r, isDelta);
-						}
-						
-						if (isAdditionalAxiom) {
-							c.getAdditionalAxioms().add(AxiomUtils.toAxiom(c, axiomEntry, axiom));
-						}
-					} else {
-						//Are we looking at a special axiom: Transitive, Reflexive or RoleChain?
-						if (lineItems[IDX_ACTIVE].equals("1")) {
-							c.mergeObjectPropertyAxiomRepresentation(axiomService.asObjectPropertyAxiom(lineItems[REF_IDX_AXIOM_STR]));
-						}
+				}
+			} else if (c.getAxiomEntries(ActiveState.ACTIVE, false).size() > 0) {
+				isAdditionalAxiom = true;
+			}
+			c.getAxiomEntries().add(axiomEntry);
+		
+			//Filter out any additional statements such as TransitiveObjectProperty(:123005000)]
+			if (axiom != null) {
+				Long LHS = axiom.getLeftHandSideNamedConcept();
+				if (LHS == null) {
+					//Is this a CGI?
+					Long RHS = axiom.getRightHandSideNamedConcept();
+					if (!conceptId.equals(RHS)) {
+						throw new IllegalArgumentException("GCI Axiom RHS != RefCompId: " + String.join(FIELD_DELIMITER, lineItems));
 					}
-				} catch (ConversionException e) {
-					throw new TermServerScriptException("Failed to load axiom: " + line, e);
+					c.getGciAxioms().add(AxiomUtils.toAxiom(c, axiomEntry, axiom));
+					isAdditionalAxiom = false;
+					axiomEntry.setGCI(true);
+				} else if (!conceptId.equals(LHS)) {
+					throw new IllegalArgumentException("Axiom LHS != RefCompId: " + String.join(FIELD_DELIMITER, lineItems));
+				}
+				
+				Set<Relationship> relationships = AxiomUtils.getRHSRelationships(c, axiom);
+				if (relationships.size() == 0) {
+					log.append("Checkhere");
+				}
+				//Now we might need to adjust the active flag if the axiom is being inactivated
+				//Or juggle the groupId, since individual axioms don't know about each other's existence
+				alignAxiomRelationships(c, relationships, axiomEntry, axiomEntry.isActive());
+				for (Relationship r : relationships) {
+					addRelationshipToConcept(CharacteristicType.STATED_RELATIONSHIP, r, isDelta);
+				}
+				
+				if (isAdditionalAxiom) {
+					c.getAdditionalAxioms().add(AxiomUtils.toAxiom(c, axiomEntry, axiom));
 				}
 			} else {
-				isHeaderLine = false;
+				//Are we looking at a special axiom: Transitive, Reflexive or RoleChain?
+				if (lineItems[IDX_ACTIVE].equals("1")) {
+					c.mergeObjectPropertyAxiomRepresentation(axiomService.asObjectPropertyAxiom(lineItems[REF_IDX_AXIOM_STR]));
+				}
 			}
+		} catch (ConversionException e) {
+			throw new TermServerScriptException("Failed to load axiom: " + String.join(FIELD_DELIMITER, lineItems), e);
 		}
-		log.append("\tLoaded " + axiomsLoaded + " axioms");
 	}
 	
 	private void alignAxiomRelationships(Concept c, Set<Relationship> relationships, AxiomEntry axiomEntry, boolean active) {
@@ -454,8 +517,8 @@ public class GraphLoader implements RF2Constants {
 		Concept c = concepts.get(sctId);
 		if (c == null) {
 			if (createIfRequired) {
-				c = new Concept(sctId);
-				concepts.put(sctId, c);
+				//Two threads asking for the same new concept must both get the same one
+				c = concepts.computeIfAbsent(sctId, Concept::new);
 			} else if (validateExists) {
 				throw new TermServerScriptException("Expected Concept '" + sctId + "' has not been loaded from archive");
 			}
@@ -497,6 +560,8 @@ public class GraphLoader implements RF2Constants {
 					continue;
 				}
 				
+				internCommonFields(lineItems);
+				
 				/*if (lineItems[IDX_ID].equals("59748008")) {
 					TermServerScript.debug("here");
 				}*/
@@ -543,6 +608,9 @@ public class GraphLoader implements RF2Constants {
 					continue;
 				}
 				
+				internCommonFields(lineItems);
+				lineItems[DES_IDX_LANGUAGECODE] = languageCodes.intern(lineItems[DES_IDX_LANGUAGECODE]);
+				
 				/*if (lineItems[DES_IDX_ID].equals("3727472012")) {
 					TermServerScript.debug("Debug Here");
 				}*/
@@ -600,7 +668,13 @@ public class GraphLoader implements RF2Constants {
 				if (isExcluded(lineItems[IDX_MODULEID])) {
 					continue;
 				}
+				internRefsetFields(lineItems);
+				lineItems[LANG_IDX_ACCEPTABILITY_ID] = valueIds.intern(lineItems[LANG_IDX_ACCEPTABILITY_ID]);
 				Description d = getDescription(lineItems[LANG_IDX_REFCOMPID]);
+				//Share the description's own copy of its id
+				if (d.getDescriptionId() != null) {
+					lineItems[LANG_IDX_REFCOMPID] = d.getDescriptionId();
+				}
 				LangRefsetEntry langRefsetEntry = LangRefsetEntry.fromRf2(lineItems);
 				
 				/*if (langRefsetEntry.getId().equals("1ee09ebd-f9cc-57f6-9850-ceea87310e68")) {
@@ -741,6 +815,9 @@ public class GraphLoader implements RF2Constants {
 					continue;
 				}
 				
+				internRefsetFields(lineItems);
+				lineItems[INACT_IDX_REASON_ID] = valueIds.intern(lineItems[INACT_IDX_REASON_ID]);
+				
 				String revertEffectiveTime = null;
 				if (detectNoChangeDelta && isReleased != null && !isReleased) {
 					//Recover this entry for the component - concept or description
@@ -802,6 +879,7 @@ public class GraphLoader implements RF2Constants {
 				if (isExcluded(lineItems[IDX_MODULEID])) {
 					continue;
 				}
+				internRefsetFields(lineItems);
 				String referencedComponent = lineItems[INACT_IDX_REFCOMPID];
 				if (isConcept(referencedComponent)) {
 					//TODO Descriptions can also have associations
@@ -1,7 +1,6 @@
 package org.ihtsdo.termserver.scripting;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -10,6 +9,10 @@ import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.validator.routines.checkdigit.CheckDigitException;
@@ -17,26 +20,45 @@ import org.apache.commons.validator.routines.checkdigit.VerhoeffCheckDigit;
 import org.ihtsdo.otf.exception.TermServerScriptException;
 import org.ihtsdo.termserver.scripting.domain.RF2Constants;
 import org.ihtsdo.termserver.scripting.util.SnomedUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * Hands out SCTIDs from a file of available ids.  The file is read and validated once
+ * into memory, and ids are then handed out via an atomic cursor so that any number of
+ * threads may ask for them.  Threads that need many ids can reserve a block of them
+ * at a time, which also keeps the ids they hand out contiguous.
+ *
+ * The cursor is journaled to ID_CONFIG before ids are handed out beyond the position
+ * last recorded, so that if the script fails part way through, the next run will start
+ * after any id which might have been used, rather than re-reading the file to get there.
+ * A journal line cut short by the failure is ignored, in favour of the last complete one.
+ */
 public class IdGenerator implements RF2Constants{
+	static Logger logger = LoggerFactory.getLogger(IdGenerator.class);
+	private static final int JOURNAL_INTERVAL = 1000;
+
 	private String fileName;
-	private BufferedReader availableSctIds;
-	private int dummySequence = 100;
-	private boolean useDummySequence = false;
-	int idsAssigned = 0;
+	private long[] availableSctIds;
+	private final AtomicInteger cursor = new AtomicInteger();
+	private final AtomicInteger dummySequence = new AtomicInteger(100);
+	private volatile boolean useDummySequence = false;
+	private final AtomicInteger idsAssigned = new AtomicInteger();
 	private String namespace = "";
 	private boolean isExtension = false;
 	private PartitionIdentifier partitionIdentifier;
 	private int runForwardCount = 0;
-	
-	static private String ID_CONFIG = "running_id_config.txt";
-	static private boolean configFileReset = false;
-	
+	private volatile int journaledPosition = 0;
+
+	static String ID_CONFIG = "running_id_config.txt";
+	//Generators for each partition may share the config file
+	static private final Object configLock = new Object();
+
 	public static IdGenerator initiateIdGenerator(String sctidFilename, PartitionIdentifier p) throws TermServerScriptException {
 		if (sctidFilename.toLowerCase().equals("dummy")) {
 			return new IdGenerator(p);
 		}
-		
+
 		File sctIdFile = new File (sctidFilename);
 		try {
 			if (sctIdFile.canRead()) {
@@ -45,106 +67,207 @@ public class IdGenerator implements RF2Constants{
 				runForward(idGen);
 				return idGen;
 			}
+		} catch (TermServerScriptException e) {
+			throw e;
 		} catch (Exception e) {}
-		
+
 		throw new TermServerScriptException("Unable to read sctids from " + sctidFilename);
 	}
-	
-	private IdGenerator(File sctidFile, PartitionIdentifier p) throws FileNotFoundException {
+
+	private IdGenerator(File sctidFile, PartitionIdentifier p) throws IOException, TermServerScriptException {
 		fileName = sctidFile.getAbsolutePath();
-		availableSctIds = new BufferedReader(new FileReader(sctidFile));
 		partitionIdentifier = p;
+		availableSctIds = loadSctIds(sctidFile, p);
 	}
-	
+
 	private IdGenerator(PartitionIdentifier p) {
 		partitionIdentifier = p;
 		useDummySequence = true;
 	}
-	
-	private static void runForward (IdGenerator idGen) throws NumberFormatException, IOException {
+
+	private static long[] loadSctIds(File sctIdFile, PartitionIdentifier p) throws IOException, TermServerScriptException {
+		long[] sctIds = new long[1024];
+		int count = 0;
+		try (BufferedReader br = new BufferedReader(new FileReader(sctIdFile))) {
+			String sctId;
+			while ((sctId = br.readLine()) != null && !sctId.isEmpty()) {
+				//Check the SCTID is valid, and belongs to the correct partition
+				SnomedUtils.isValid(sctId, p, true);  //throw exception if not valid
+				if (count == sctIds.length) {
+					sctIds = Arrays.copyOf(sctIds, count * 2);
+				}
+				sctIds[count++] = Long.parseLong(sctId);
+			}
+		}
+		return Arrays.copyOf(sctIds, count);
+	}
+
+	private static void runForward (IdGenerator idGen) throws IOException {
 		//Is there a config file to consider? If not, do nothing.
 		File idConfigFile = new File (ID_CONFIG);
-		if (idConfigFile.canRead()) {
-			for (String line : FileUtils.readLines(idConfigFile)) {
-				String[] lineItems = line.split(TAB);
-				if (lineItems[0].equals(idGen.partitionIdentifier.toString())) {
-					idGen.runForwardCount = Integer.parseInt(lineItems[1]);
-					System.out.println(idGen.partitionIdentifier +" running forward by " + idGen.runForwardCount);
-					for (int i=0; i<idGen.runForwardCount; i++) {
-						idGen.availableSctIds.readLine();
+		synchronized (configLock) {
+			if (idConfigFile.canRead()) {
+				//Only the last entry for each partition counts, so take the opportunity to compact the journal
+				Map<String, String> lastEntries = new LinkedHashMap<>();
+				String journal = FileUtils.readFileToString(idConfigFile, StandardCharsets.UTF_8);
+				//A line without its delimiter was cut short, and could hold a position lower than the real one
+				int complete = journal.lastIndexOf('\n') + 1;
+				if (complete < journal.length()) {
+					logger.warn("Ignoring incomplete entry at end of {}: {}", ID_CONFIG, journal.substring(complete));
+				}
+				for (String line : journal.substring(0, complete).split("\r?\n")) {
+					String[] lineItems = line.split(TAB);
+					if (lineItems.length > 1 && lineItems[1].matches("\\d+")) {
+						lastEntries.put(lineItems[0], lineItems[1]);
 					}
 				}
+				String runForward = lastEntries.get(idGen.partitionIdentifier.toString());
+				if (runForward != null) {
+					idGen.runForwardCount = Integer.parseInt(runForward);
+					logger.info("{} running forward by {}", idGen.partitionIdentifier, idGen.runForwardCount);
+				}
+				File compacted = new File(ID_CONFIG + ".tmp");
+				try (PrintWriter pw = new PrintWriter(new OutputStreamWriter(new FileOutputStream(compacted), StandardCharsets.UTF_8))) {
+					for (Map.Entry<String, String> entry : lastEntries.entrySet()) {
+						pw.write(entry.getKey() + TAB + entry.getValue() + LINE_DELIMITER);
+					}
+				}
+				Files.move(compacted.toPath(), idConfigFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
 			}
 		}
+		idGen.cursor.set(idGen.runForwardCount);
+		idGen.journaledPosition = idGen.runForwardCount;
 	}
-	
+
 	public String getSCTID() throws TermServerScriptException {
-		if (useDummySequence) {
-			idsAssigned++;
-			return getDummySCTID();
+		if (!useDummySequence) {
+			int position = reserve(1);
+			if (position < availableSctIds.length) {
+				idsAssigned.incrementAndGet();
+				return Long.toString(availableSctIds[position]);
+			}
+			switchToDummySequence();
 		}
-		
-		String sctId;
-		try {
-			sctId = availableSctIds.readLine();
-		} catch (IOException e) {
-			throw new RuntimeException("Unable to recover SCTID from file " + fileName, e);
+		idsAssigned.incrementAndGet();
+		return getDummySCTID();
+	}
+
+	/**
+	 * Reserves a contiguous block of ids for the use of a single thread, which can then work
+	 * through them without contending with other threads.  Any ids in the block which are not
+	 * used will not be handed out again.  If the file runs out, the block will be smaller than
+	 * requested, or empty in which case dummy ids will be used.
+	 */
+	public Block reserveBlock(int size) throws TermServerScriptException {
+		if (!useDummySequence && size > 0) {
+			int start = reserve(size);
+			if (start < availableSctIds.length) {
+				return new Block(start, Math.min(start + size, availableSctIds.length));
+			}
+			switchToDummySequence();
+		}
+		return new Block(0, 0);
+	}
+
+	private int reserve(int size) throws TermServerScriptException {
+		int start = cursor.getAndAdd(size);
+		int end = Math.min(start + size, availableSctIds.length);
+		if (end > journaledPosition) {
+			journal(end);
+		}
+		return start;
+	}
+
+	private synchronized void journal(int reservedTo) throws TermServerScriptException {
+		//Record ahead of what's being handed out, so we don't have to do this for every id
+		if (reservedTo > journaledPosition) {
+			int journalTo = Math.min(reservedTo + JOURNAL_INTERVAL, availableSctIds.length);
+			try {
+				appendToConfig(partitionIdentifier + TAB + journalTo);
+			} catch (FileNotFoundException e) {
+				throw new TermServerScriptException("Unable to journal id position to " + ID_CONFIG, e);
+			}
+			journaledPosition = journalTo;
+		}
+	}
+
+	private static void appendToConfig(String dataLine) throws FileNotFoundException {
+		synchronized (configLock) {
+			OutputStreamWriter osw = new OutputStreamWriter(new FileOutputStream(new File(ID_CONFIG), true), StandardCharsets.UTF_8);
+			try (PrintWriter pw = new PrintWriter(osw)) {
+				pw.write(dataLine + LINE_DELIMITER);
+			}
 		}
-		
-		if (sctId == null || sctId.isEmpty()) {
+	}
+
+	private synchronized void switchToDummySequence() {
+		if (!useDummySequence) {
 			//Report switch to use dummy strategy
 			useDummySequence = true;
-			System.out.println("Ran out of ids for partition " + partitionIdentifier  + " at " + idsAssigned + " switching to dummy...");
-			return getSCTID(); 
+			logger.warn("Ran out of ids for partition {} at {} switching to dummy...", partitionIdentifier, idsAssigned);
 		}
-		//Check the SCTID is valid, and belongs to the correct partition
-		SnomedUtils.isValid(sctId, partitionIdentifier, true);  //throw exception if not valid
-		idsAssigned++;
-		return sctId;
 	}
-	
+
 	private String getDummySCTID() throws TermServerScriptException  {
 		try {
-			String sctIdBase = ++dummySequence + namespace + (isExtension?"1":"0") + partitionIdentifier.ordinal();
+			String sctIdBase = dummySequence.incrementAndGet() + namespace + (isExtension?"1":"0") + partitionIdentifier.ordinal();
 			String checkDigit = new VerhoeffCheckDigit().calculate(sctIdBase);
 			return sctIdBase + checkDigit;
 		} catch (CheckDigitException e) {
 			throw new TermServerScriptException ("Failed to generate dummy sctid",e);
 		}
 	}
-	
+
 	public void setNamespace(String namespace) {
 		this.namespace = namespace;
-	}	
-	
+	}
+
 	public String finish() throws FileNotFoundException {
-		try {
-			if (!useDummySequence) {
-				availableSctIds.close();
-			}
-		} catch (Exception e){}
-		//Are we the first generator to write out the final state?  Blitz the file if so, otherwise append.
-		OutputStreamWriter osw; 
-		String dataLine = partitionIdentifier + TAB + (runForwardCount + idsAssigned);
- 		if (!IdGenerator.configFileReset) {
- 			System.out.println("Writing " + dataLine + " to " + ID_CONFIG);
- 			osw = new OutputStreamWriter(new FileOutputStream(new File(ID_CONFIG), false), StandardCharsets.UTF_8);
-			IdGenerator.configFileReset = true;
- 		} else {
-			System.out.println("Appending " + dataLine + " to " + ID_CONFIG);
-			osw = new OutputStreamWriter(new FileOutputStream(new File(ID_CONFIG), true), StandardCharsets.UTF_8);
-		}
-		PrintWriter pw = new PrintWriter(new BufferedWriter(osw));
-		pw.write(dataLine + LINE_DELIMITER);
-		pw.close();
 		String ofWhich = ".";
-		if (dummySequence > 100) {
-			ofWhich = " of which " + (dummySequence - 100) + " were dummy.";
+		if (dummySequence.get() > 100) {
+			ofWhich = " of which " + (dummySequence.get() - 100) + " were dummy.";
 		}
-		return "IdGenerator supplied " + idsAssigned + " " + partitionIdentifier + " sctids" + ofWhich;
+		String summary = "IdGenerator supplied " + idsAssigned + " " + partitionIdentifier + " sctids" + ofWhich;
+		if (availableSctIds == null) {
+			return summary;
+		}
+		//Record exactly how far we got, rather than how far we'd journaled ahead
+		int position = Math.min(cursor.get(), availableSctIds.length);
+		String dataLine = partitionIdentifier + TAB + position;
+		logger.info("Writing {} to {}", dataLine, ID_CONFIG);
+		appendToConfig(dataLine);
+		return summary;
 	}
-	
+
 	public void isExtension(boolean b) {
 		isExtension = b;
 	}
+
+	/**
+	 * A range of ids reserved for use by a single thread
+	 */
+	public class Block {
+		private int next;
+		private final int end;
+
+		private Block(int start, int end) {
+			this.next = start;
+			this.end = end;
+		}
+
+		public boolean hasNext() {
+			return next < end;
+		}
+
+		/**
+		 * @return the next id in the block, or from the generator once the block is exhausted
+		 */
+		public String getSCTID() throws TermServerScriptException {
+			if (hasNext()) {
+				idsAssigned.incrementAndGet();
+				return Long.toString(availableSctIds[next++]);
+			}
+			return IdGenerator.this.getSCTID();
+		}
+	}
 }
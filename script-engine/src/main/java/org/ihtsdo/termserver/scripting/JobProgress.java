@@ -0,0 +1,52 @@
+package org.ihtsdo.termserver.scripting;
+
+/**
+ * A snapshot of how far a running script has got, as published to whoever is listening
+ */
+public class JobProgress {
+
+	private final String phase;
+	private final long itemsProcessed;
+	private final long rowsWritten;
+	private final long elapsedMillis;
+
+	public JobProgress(String phase, long itemsProcessed, long rowsWritten, long elapsedMillis) {
+		this.phase = phase;
+		this.itemsProcessed = itemsProcessed;
+		this.rowsWritten = rowsWritten;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	public String getPhase() {
+		return phase;
+	}
+
+	public long getItemsProcessed() {
+		return itemsProcessed;
+	}
+
+	public long getRowsWritten() {
+		return rowsWritten;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	public double getItemsPerSecond() {
+		return elapsedMillis == 0 ? 0 : itemsProcessed * 1000d / elapsedMillis;
+	}
+
+	public double getRowsPerSecond() {
+		return elapsedMillis == 0 ? 0 : rowsWritten * 1000d / elapsedMillis;
+	}
+
+	@Override
+	public String toString() {
+		return phase + ": " + itemsProcessed + " items processed, " + rowsWritten + " rows written in " + (elapsedMillis / 1000) + "s";
+	}
+
+	public interface Listener {
+		void onProgress(JobProgress progress);
+	}
+}
@@ -2,6 +2,7 @@ package org.ihtsdo.termserver.scripting;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import org.ihtsdo.termserver.scripting.dao.ReportConfiguration;
@@ -59,6 +60,14 @@ public abstract class TermServerScript implements RF2Constants {
 	protected int restartPosition = NOT_SET;
 	protected int processingLimit = NOT_SET;
 	private Date startTime;
+	private volatile boolean cancelled = false;
+	private volatile String phase = "Starting";
+	private long progressStartTime = System.currentTimeMillis();
+	private final AtomicLong itemsProcessed = new AtomicLong();
+	private final AtomicLong rowsWritten = new AtomicLong();
+	private final AtomicLong lastProgressPublished = new AtomicLong();
+	private JobProgress.Listener progressListener;
+	protected long progressIntervalMs = 30 * 1000;
 	private Map<String, Object> summaryDetails = new TreeMap<String, Object>();
 	protected boolean inputFileHasHeaderRow = false;
 	protected boolean runStandAlone = true; //Set to true to avoid loading concepts from Termserver.  Should be used with Dry Run only.
@@ -79,6 +88,7 @@ public abstract class TermServerScript implements RF2Constants {
 	protected String[] excludeHierarchies;
 	
 	protected Set<Concept> whiteListedConcepts = new HashSet<>();
+	private Set<String> whiteListedIds;
 
 	protected GraphLoader gl = GraphLoader.getGraphLoader();
 	private ReportManager reportManager;
@@ -95,6 +105,7 @@ public abstract class TermServerScript implements RF2Constants {
 	public static String CONCEPTS_TO_PROCESS = "Concepts to process";
 	public static String REPORTED_NOT_PROCESSED = "Reported not processed";
 	public static String ISSUE_COUNT = "Issue count";
+	public static String CONCEPTS_CHECKED = "Concepts checked";
 	public static String CRITICAL_ISSUE = "CRITICAL ISSUE";
 	public static String WHITE_LISTED_COUNT = "White Listed Count";
 	public static String inputFileDelimiter = TSV_FIELD_DELIMITER;
@@ -385,7 +396,11 @@ public abstract class TermServerScript implements RF2Constants {
 			}
 		}
 		
-		if (jobRun.getWhiteList() != null) {
+		if (whiteListedIds != null) {
+			whiteListedConcepts = whiteListedIds.stream()
+					.map(gl::getConceptSafely)
+					.collect(Collectors.toSet());
+		} else if (jobRun.getWhiteList() != null) {
 			whiteListedConcepts = jobRun.getWhiteList().stream()
 					.map( w -> gl.getConceptSafely(w.getSctId()))
 					.collect(Collectors.toSet());
@@ -486,15 +501,21 @@ public abstract class TermServerScript implements RF2Constants {
 			debug ("Instantiating " + this.getClass().getName() + " to process request for " + jobRun.getJobName());
 			debug ("Application context has " + (appContext == null?"not " : "") + "been supplied");
 			this.appContext = appContext;
+			progressStartTime = System.currentTimeMillis();
 			preInit();
 			//Are we running locally?
 			if (appContext == null) {
 				checkSettingsWithUser(jobRun);
 			}
+			setPhase("Initialising");
 			init(jobRun);
+			setPhase("Loading snapshot");
 			loadProjectSnapshot(false);  //Load all descriptions
+			setPhase("Preparing report");
 			postInit();
+			setPhase("Running");
 			runJob();
+			setPhase("Finishing");
 			flushFilesWithWait(false);
 			finish();
 			jobRun.setStatus(JobStatus.Complete);
@@ -1098,6 +1119,10 @@ public abstract class TermServerScript implements RF2Constants {
 	public void addSummaryInformation(String item, Object detail) {
 		info(item + ": " + detail);
 		summaryDetails.put(item, detail);
+		if (item.equals(CONCEPTS_CHECKED) && detail instanceof Number) {
+			itemsProcessed.set(((Number)detail).longValue());
+			publishProgressUnchecked();
+		}
 	}
 	
 	public void incrementSummaryInformation(String key) {
@@ -1132,6 +1157,12 @@ public abstract class TermServerScript implements RF2Constants {
 		}
 		int newValue = ((Integer)summaryDetails.get(key)).intValue() + incrementAmount;
 		summaryDetails.put(key, newValue);
+		//Reports count the concepts they've been through this way, so it doubles as their progress,
+		//and as a safe point for reports which check many concepts but write few rows
+		if (key.equals(CONCEPTS_CHECKED)) {
+			itemsProcessed.addAndGet(incrementAmount);
+			publishProgressUnchecked();
+		}
 	}
 	
 	public void flushFilesSoft() throws TermServerScriptException {
@@ -1241,6 +1272,92 @@ public abstract class TermServerScript implements RF2Constants {
 			throw new TermServerScriptException("Attempted to write to report before Report Manager is available. Check postInit() has been called.\n Message was " + line);
 		}
 		getReportManager().writeToReportFile(reportIdx, line);
+		rowsWritten.incrementAndGet();
+		publishProgress(false);
+	}
+	
+	/**
+	 * Scripts can call this as they work through their items, which gives progress reports
+	 * a rate to show, and gives the job a safe point at which it can be cancelled.
+	 * BatchFix calls it for each component processed.
+	 */
+	protected void countProcessed(int count) throws TermServerScriptException {
+		itemsProcessed.addAndGet(count);
+		publishProgress(false);
+	}
+	
+	protected void setPhase(String phase) throws TermServerScriptException {
+		this.phase = phase;
+		debug("Phase: " + phase);
+		publishProgress(true);
+	}
+	
+	public void setProgressListener(JobProgress.Listener progressListener) {
+		this.progressListener = progressListener;
+	}
+	
+	/**
+	 * Supplies the whitelist where the run refers to it by version, rather than carrying it
+	 */
+	public void setWhiteListedIds(Set<String> whiteListedIds) {
+		this.whiteListedIds = whiteListedIds;
+	}
+	
+	public JobProgress getProgress() {
+		return new JobProgress(phase, itemsProcessed.get(), rowsWritten.get(), System.currentTimeMillis() - progressStartTime);
+	}
+	
+	/**
+	 * Asks the job to stop.  It will do so at the next safe point, that is when it next
+	 * changes phase, counts an item processed or concept checked, or writes a row.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+	
+	public boolean isCancelled() {
+		return cancelled;
+	}
+	
+	protected void checkCancelled() throws TermServerScriptException {
+		if (cancelled) {
+			throw new TermServerScriptException("Job cancelled while " + phase.toLowerCase());
+		}
+	}
+	
+	/**
+	 * Progress is published at most once per interval, unless forced
+	 */
+	private void publishProgress(boolean force) throws TermServerScriptException {
+		checkCancelled();
+		if (progressListener == null) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		long last = lastProgressPublished.get();
+		if (!force && now - last < progressIntervalMs) {
+			return;
+		}
+		//Only one thread gets to publish for any one interval
+		if (!lastProgressPublished.compareAndSet(last, now)) {
+			return;
+		}
+		try {
+			progressListener.onProgress(getProgress());
+		} catch (Exception e) {
+			warn("Unable to publish progress: " + e);
+		}
+	}
+	
+	/**
+	 * For callers which don't expect a checked exception, but must still stop if cancelled
+	 */
+	private void publishProgressUnchecked() {
+		try {
+			publishProgress(false);
+		} catch (TermServerScriptException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
 	}
 	
 	protected void writeToReportFile(String line) throws TermServerScriptException {
@@ -1613,6 +1730,10 @@ public abstract class TermServerScript implements RF2Constants {
 	}
 	
 	protected boolean inScope(Component c) {
+		return inScope(c.getModuleId());
+	}
+	
+	protected boolean inScope(String moduleId) {
 		//RP-349 Allow MS customers to run reports against MAIN.
 		//In this case all concepts are "in scope" to allow MS customers to see
 		//what changes to international concepts might affect them
@@ -1621,7 +1742,7 @@ public abstract class TermServerScript implements RF2Constants {
 		}
 		//Do we have a default module id ie for a managed service project?
 		if (project.getMetadata() != null && project.getMetadata().getDefaultModuleId() != null) {
-			return c.getModuleId().equals(project.getMetadata().getDefaultModuleId());
+			return moduleId.equals(project.getMetadata().getDefaultModuleId());
 		}
 		return true;
 	}
@@ -0,0 +1,179 @@
+package org.ihtsdo.termserver.scripting.client;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams a (potentially very large) HTTP resource without holding it in memory.
+ * If the connection drops part way through, the download is resumed from the last
+ * byte received using a range request, so callers just see one continuous stream.
+ */
+public class ResumableDownload extends InputStream {
+
+	private static final Logger logger = LoggerFactory.getLogger(ResumableDownload.class);
+
+	public static final int MAX_RESUMES = 5;
+	private static final long PROGRESS_INTERVAL = 1024 * 1024 * 20;
+	private static final int CONNECT_TIMEOUT = 1000 * 30;
+	private static final int READ_TIMEOUT = 1000 * 60 * 5;
+
+	private final String url;
+	private final Map<String, String> headers;
+
+	private HttpURLConnection connection;
+	private InputStream in;
+	private String eTag;
+	private long contentLength = -1;
+	private long bytesRead = 0;
+	private long nextProgressReport = PROGRESS_INTERVAL;
+	private int resumeCount = 0;
+	private boolean isComplete = false;
+
+	public ResumableDownload(String url, Map<String, String> headers) throws IOException {
+		this.url = url;
+		this.headers = headers;
+		open();
+	}
+
+	private void open() throws IOException {
+		connection = (HttpURLConnection) new URL(url).openConnection();
+		connection.setConnectTimeout(CONNECT_TIMEOUT);
+		connection.setReadTimeout(READ_TIMEOUT);
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			connection.setRequestProperty(header.getKey(), header.getValue());
+		}
+
+		boolean isResume = bytesRead > 0;
+		if (isResume) {
+			connection.setRequestProperty("Range", "bytes=" + bytesRead + "-");
+			if (eTag != null) {
+				//Only give us the remainder if it's still the same archive
+				connection.setRequestProperty("If-Range", eTag);
+			}
+		}
+
+		int status = connection.getResponseCode();
+		if (status == HttpURLConnection.HTTP_PARTIAL && isResume) {
+			logger.info("Resuming download of {} from byte {}", url, bytesRead);
+		} else if (status == HttpURLConnection.HTTP_OK) {
+			if (isResume) {
+				if (eTag != null) {
+					throw new IOException("Archive at " + url + " changed while it was being downloaded");
+				}
+				//Server doesn't support ranges, so skip over what we've already had
+				logger.warn("Server ignored range request for {}, skipping {} bytes already received", url, bytesRead);
+				skipFully(connection.getInputStream(), bytesRead);
+			} else {
+				eTag = connection.getHeaderField("ETag");
+				contentLength = connection.getContentLengthLong();
+			}
+		} else {
+			throw new IOException("Unable to download " + url + ", received HTTP " + status + " " + connection.getResponseMessage());
+		}
+		in = new BufferedInputStream(connection.getInputStream(), 1024 * 64);
+	}
+
+	private void skipFully(InputStream is, long toSkip) throws IOException {
+		while (toSkip > 0) {
+			long skipped = is.skip(toSkip);
+			if (skipped <= 0) {
+				throw new EOFException("Archive at " + url + " is shorter than the part already downloaded");
+			}
+			toSkip -= skipped;
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		int n = read(b, 0, 1);
+		return n == -1 ? -1 : b[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (isComplete) {
+			return -1;
+		}
+		while (true) {
+			try {
+				int n = in.read(b, off, len);
+				if (n == -1) {
+					if (contentLength != -1 && bytesRead < contentLength) {
+						throw new EOFException("Connection closed after " + bytesRead + " of " + contentLength + " bytes");
+					}
+					isComplete = true;
+					logger.info("Download of {} complete, {} bytes received", url, bytesRead);
+					return -1;
+				}
+				bytesRead += n;
+				reportProgress();
+				return n;
+			} catch (IOException e) {
+				resume(e);
+			}
+		}
+	}
+
+	private void resume(IOException cause) throws IOException {
+		while (true) {
+			if (++resumeCount > MAX_RESUMES) {
+				throw new IOException("Download of " + url + " failed after " + MAX_RESUMES + " attempts to resume", cause);
+			}
+			logger.warn("Download of {} interrupted at byte {} due to {}.  Resuming...", url, bytesRead, cause.getMessage());
+			disconnect();
+			sleep(resumeCount);
+			try {
+				open();
+				return;
+			} catch (IOException e) {
+				cause = e;
+			}
+		}
+	}
+
+	private void reportProgress() {
+		if (bytesRead >= nextProgressReport) {
+			if (contentLength > 0) {
+				logger.info("Downloaded {}MB of {}MB ({}%)", bytesRead / (1024 * 1024), contentLength / (1024 * 1024), (bytesRead * 100) / contentLength);
+			} else {
+				logger.info("Downloaded {}MB", bytesRead / (1024 * 1024));
+			}
+			nextProgressReport += PROGRESS_INTERVAL;
+		}
+	}
+
+	private void sleep(int attempt) throws IOException {
+		try {
+			Thread.sleep(1000L * 5 * attempt);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to resume download of " + url);
+		}
+	}
+
+	private void disconnect() {
+		try {
+			in.close();
+		} catch (IOException e) {} //Connection is already broken
+		connection.disconnect();
+	}
+
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	public long getContentLength() {
+		return contentLength;
+	}
+
+	@Override
+	public void close() throws IOException {
+		disconnect();
+	}
+}
@@ -1,10 +1,13 @@
 package org.ihtsdo.termserver.scripting.client;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.NullOutputStream;
 import org.apache.commons.lang.StringUtils;
 import org.ihtsdo.otf.rest.client.ExpressiveErrorHandler;
 import org.ihtsdo.otf.rest.client.Status;
@@ -41,6 +44,13 @@ public class TermServerClient {
 		PUBLISHED, UNPUBLISHED, MIXED;
 	}
 	
+	/**
+	 * Receives an exported archive as it is downloaded
+	 */
+	public interface ArchiveConsumer {
+		void accept(InputStream archive) throws IOException, TermServerScriptException;
+	}
+	
 	public static SimpleDateFormat YYYYMMDD = new SimpleDateFormat("yyyyMMdd");
 	public static final int MAX_TRIES = 3;
 	public static final int retry = 15;
@@ -58,6 +68,7 @@ public class TermServerClient {
 	private final RestTemplate restTemplate;
 	private final HttpHeaders headers;
 	private final String url;
+	private final String cookie;
 	private static final String ALL_CONTENT_TYPE = "*/*";
 	private static final String SNOWOWL_CONTENT_TYPE = "application/json";
 	private final Set<SnowOwlClientEventListener> eventListeners;
@@ -66,6 +77,7 @@ public class TermServerClient {
 
 	public TermServerClient(String serverUrl, String cookie) {
 		this.url = serverUrl;
+		this.cookie = cookie;
 		eventListeners = new HashSet<>();
 		resty = new Resty(new RestyOverrideAccept(ALL_CONTENT_TYPE));
 		resty.withHeader("Cookie", cookie);
@@ -370,10 +382,21 @@ public class TermServerClient {
 
 	public File export(String branchPath, String effectiveDate, ExportType exportType, ExtractType extractType, File saveLocation)
 			throws TermServerScriptException {
+		return export(branchPath, effectiveDate, exportType, extractType, saveLocation, null);
+	}
+	
+	/**
+	 * Export and save the archive to disk, passing the archive to the consumer as it arrives
+	 * so that it can be processed (eg loaded) while the download is still in progress.
+	 * The archive will have been completely saved by the time this method returns, even if 
+	 * the consumer stopped reading early.
+	 */
+	public File export(String branchPath, String effectiveDate, ExportType exportType, ExtractType extractType, File saveLocation, ArchiveConsumer consumer)
+			throws TermServerScriptException {
 		JSONObject jsonObj = prepareExportJSON(branchPath, effectiveDate, exportType, extractType);
 		logger.info ("Initiating export with {}",jsonObj.toString());
 		String exportLocationURL = initiateExport(jsonObj);
-		File recoveredArchive = recoverExportedArchive(exportLocationURL, saveLocation);
+		File recoveredArchive = recoverExportedArchive(exportLocationURL, saveLocation, consumer);
 		return recoveredArchive;
 	}
 	
@@ -436,16 +459,28 @@ public class TermServerClient {
 		}
 	}
 
-	private File recoverExportedArchive(String exportLocationURL, File saveLocation) throws TermServerScriptException {
+	private File recoverExportedArchive(String exportLocationURL, File saveLocation, ArchiveConsumer consumer) throws TermServerScriptException {
 		try {
 			logger.info("Recovering exported archive from {}", exportLocationURL);
-			logger.info("Saving exported archive to {}", saveLocation);
-			resty.withHeader("Accept", ALL_CONTENT_TYPE);
-			BinaryResource archiveResource = resty.bytes(exportLocationURL);
 			if (saveLocation == null) {
 				saveLocation = File.createTempFile("ts-extract", ".zip");
 			}
-			archiveResource.save(saveLocation);
+			logger.info("Saving exported archive to {}", saveLocation);
+			Map<String, String> downloadHeaders = new HashMap<>();
+			downloadHeaders.put("Cookie", cookie);
+			downloadHeaders.put("Accept", ALL_CONTENT_TYPE);
+			//Stream straight to disk rather than holding the whole archive in memory
+			try (InputStream download = new ResumableDownload(exportLocationURL, downloadHeaders);
+					OutputStream os = new BufferedOutputStream(new FileOutputStream(saveLocation), 1024 * 64)) {
+				if (consumer == null) {
+					IOUtils.copyLarge(download, os);
+				} else {
+					InputStream tee = new TeeInputStream(download, os);
+					consumer.accept(new CloseShieldInputStream(tee));
+					//Make sure we have the whole archive on disk, even if the consumer didn't need all of it
+					IOUtils.copyLarge(tee, NullOutputStream.NULL_OUTPUT_STREAM);
+				}
+			}
 			logger.debug("Extract recovery complete");
 			return saveLocation;
 		} catch (IOException e) {
@@ -1,71 +1,147 @@
 package org.ihtsdo.termserver.scripting.dao;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.*;
 
 import org.ihtsdo.otf.exception.TermServerScriptException;
-import org.ihtsdo.termserver.scripting.TermServerScript;
 import org.ihtsdo.termserver.scripting.domain.RF2Constants;
+import org.ihtsdo.termserver.scripting.util.ArchiveBuilder;
 import org.ihtsdo.termserver.scripting.util.SnomedUtils;
 
 public class RF2Manager implements RF2Constants {
-	
+
 	protected File[] reportFiles;
-	protected Map<String, PrintWriter> printWriterMap = new HashMap<>();
+	protected Map<String, RF2Writer> writerMap = new ConcurrentHashMap<>();
 	protected String currentTimeStamp;
-	
-	PrintWriter getPrintWriter(String fileName) throws TermServerScriptException {
+	protected ArchiveBuilder archive;
+	protected String archiveRoot;
+	protected boolean sortById = false;
+	protected boolean writerThreadPerFile = false;
+
+	/**
+	 * Files under the root directory will be written directly into the archive
+	 * as compressed entries, rather than to disk.  Note that an entry cannot be
+	 * appended to once it has been closed.
+	 */
+	public void streamToArchive(ArchiveBuilder archive, String archiveRoot) {
+		this.archive = archive;
+		this.archiveRoot = archiveRoot;
+	}
+
+	/**
+	 * Rows of files opened from now on will be sorted by id when the file is closed.
+	 * The first row written to each file is expected to be its header.
+	 */
+	public void setSortById(boolean sortById) {
+		this.sortById = sortById;
+	}
+
+	/**
+	 * Files opened from now on will each be written out on their own thread
+	 */
+	public void setWriterThreadPerFile(boolean writerThreadPerFile) {
+		this.writerThreadPerFile = writerThreadPerFile;
+	}
+
+	/**
+	 * Different files may be written to from different threads, but each file
+	 * should only be written to from one thread at a time.
+	 */
+	RF2Writer getWriter(String fileName) throws TermServerScriptException {
+		RF2Writer writer = writerMap.get(fileName);
+		if (writer == null) {
+			synchronized (this) {
+				writer = writerMap.get(fileName);
+				if (writer == null) {
+					writer = openWriter(fileName);
+					writerMap.put(fileName, writer);
+				}
+			}
+		}
+		return writer;
+	}
+
+	private RF2Writer openWriter(String fileName) throws TermServerScriptException {
 		try {
-			PrintWriter pw = printWriterMap.get(fileName);
-			if (pw == null) {
-				File file = SnomedUtils.ensureFileExists(fileName);
-				OutputStreamWriter osw = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8);
-				BufferedWriter bw = new BufferedWriter(osw);
-				pw = new PrintWriter(bw);
-				printWriterMap.put(fileName, pw);
+			if (archive != null && fileName.startsWith(archiveRoot)) {
+				OutputStream os = archive.openEntry(fileName.substring(archiveRoot.length()));
+				return RF2Writer.open(fileName, os, sortById, writerThreadPerFile);
 			}
-			return pw;
-		} catch (Exception e) {
+			File file = SnomedUtils.ensureFileExists(fileName);
+			return RF2Writer.open(file, sortById, writerThreadPerFile);
+		} catch (IOException e) {
 			throw new TermServerScriptException("Unable to initialise " + fileName + " due to " + e.getMessage(), e);
 		}
 	}
 
-	public void flushFiles(boolean andClose) {
-		for (PrintWriter pw : printWriterMap.values()) {
+	public void flushFiles(boolean andClose) throws TermServerScriptException {
+		if (andClose) {
+			closeFiles();
+			return;
+		}
+		TermServerScriptException firstFailure = null;
+		for (RF2Writer writer : writerMap.values()) {
 			try {
-				pw.flush();
-				if (andClose) {
-					pw.close();
+				writer.flush();
+			} catch (IOException e) {
+				//Carry on so that the other files are still flushed, but make sure the caller knows
+				if (firstFailure == null) {
+					firstFailure = new TermServerScriptException("Failed to write " + writer.getName(), e);
 				}
-			} catch (Exception e) {}
+			}
 		}
-		if (andClose) {
-			printWriterMap = new HashMap<>();
+		if (firstFailure != null) {
+			throw firstFailure;
 		}
 	}
 
-	public void writeToRF2File(String fileName, Object[] columns) throws TermServerScriptException {
-		PrintWriter out = getPrintWriter(fileName);
+	/**
+	 * Closing a writer can mean sorting and compressing its whole file, so each is closed
+	 * on its own thread, and the files are finished in parallel.
+	 */
+	private void closeFiles() throws TermServerScriptException {
+		List<RF2Writer> writers = new ArrayList<>(writerMap.values());
+		writerMap = new ConcurrentHashMap<>();
+		if (writers.isEmpty()) {
+			return;
+		}
+		ExecutorService closers = Executors.newFixedThreadPool(writers.size());
 		try {
-			StringBuffer line = new StringBuffer();
-			for (int x=0; x<columns.length; x++) {
-				if (x > 0) {
-					line.append(TSV_FIELD_DELIMITER);
+			List<Future<?>> closing = new ArrayList<>();
+			for (RF2Writer writer : writers) {
+				closing.add(closers.submit(() -> {
+					writer.close();
+					return null;
+				}));
+			}
+			TermServerScriptException firstFailure = null;
+			for (int i = 0; i < writers.size(); i++) {
+				try {
+					closing.get(i).get();
+				} catch (ExecutionException e) {
+					//Carry on so that the other files are still closed, but make sure the caller knows
+					if (firstFailure == null) {
+						firstFailure = new TermServerScriptException("Failed to write " + writers.get(i).getName(), e.getCause());
+					}
 				}
-				line.append(columns[x]==null?"":columns[x]);
 			}
-			out.print(line.toString() + LINE_DELIMITER);
-		} catch (Exception e) {
-			TermServerScript.info ("Unable to output report rf2 line due to " + e.getMessage());
+			if (firstFailure != null) {
+				throw firstFailure;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TermServerScriptException("Interrupted while closing RF2 files", e);
+		} finally {
+			closers.shutdown();
 		}
 	}
-	
-	public Map<String, PrintWriter> getPrintWriterMap() {
-		return printWriterMap;
-	}
 
-	public void setPrintWriterMap(Map<String, PrintWriter> printWriterMap) {
-		this.printWriterMap = printWriterMap;
+	public void writeToRF2File(String fileName, Object[] columns) throws TermServerScriptException {
+		try {
+			getWriter(fileName).writeRow(columns);
+		} catch (IOException e) {
+			throw new TermServerScriptException("Unable to output rf2 line to " + fileName, e);
+		}
 	}
 }
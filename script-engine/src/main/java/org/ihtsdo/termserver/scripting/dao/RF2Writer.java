@@ -0,0 +1,287 @@
+package org.ihtsdo.termserver.scripting.dao;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.*;
+
+import org.ihtsdo.termserver.scripting.domain.RF2Constants;
+import org.ihtsdo.termserver.scripting.util.Rf2Sorter;
+
+/**
+ * Writes the rows of a single RF2 file.  Columns are encoded straight into a byte
+ * buffer, so ids, effective times and any other ASCII values are written without
+ * creating intermediate Strings, and the buffer is written to the channel once full.
+ *
+ * Optionally, the full buffers can be handed to a thread dedicated to this file, so
+ * that the caller can carry on encoding while the previous buffer is written out
+ * (and compressed, if the channel is an archive entry).
+ *
+ * Optionally the rows can be sorted by id, numerically for SCTIDs.  In that case the
+ * first row written is taken to be the header, and the remaining rows are spilled to
+ * disk and sorted when the writer is closed.
+ */
+public class RF2Writer implements Closeable, RF2Constants {
+
+	public static final int BUFFER_SIZE = 1024 * 256;
+	private static final int MAX_BUFFERS_IN_FLIGHT = 2;
+	private static final byte TAB_BYTE = '\t';
+	private static final byte[] LINE_DELIMITER_BYTES = LINE_DELIMITER.getBytes(StandardCharsets.US_ASCII);
+
+	private final String name;
+	private WritableByteChannel channel;
+	private final WritableByteChannel target;
+	private File unsorted;
+
+	private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private final byte[] digits = new byte[20];
+
+	private ExecutorService writerThread;
+	private BlockingQueue<ByteBuffer> freeBuffers;
+	private volatile IOException failure;
+	private boolean isClosed = false;
+
+	public RF2Writer(String name, WritableByteChannel channel, boolean sortById, boolean useWriterThread) throws IOException {
+		this.name = name;
+		this.target = channel;
+		if (sortById) {
+			unsorted = File.createTempFile("rf2_unsorted-", ".txt");
+			unsorted.deleteOnExit();
+			this.channel = FileChannel.open(unsorted.toPath(), StandardOpenOption.WRITE);
+		} else {
+			this.channel = channel;
+		}
+		if (useWriterThread) {
+			writerThread = Executors.newSingleThreadExecutor(r -> {
+				Thread t = new Thread(r, "rf2-writer-" + new File(name).getName());
+				t.setDaemon(true);
+				return t;
+			});
+			freeBuffers = new ArrayBlockingQueue<>(MAX_BUFFERS_IN_FLIGHT);
+			for (int i = 0; i < MAX_BUFFERS_IN_FLIGHT; i++) {
+				freeBuffers.add(ByteBuffer.allocate(BUFFER_SIZE));
+			}
+		}
+	}
+
+	/**
+	 * Appends to the file, creating it if required
+	 */
+	public static RF2Writer open(File file, boolean sortById, boolean useWriterThread) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		return new RF2Writer(file.getPath(), channel, sortById, useWriterThread);
+	}
+
+	public static RF2Writer open(String name, OutputStream os, boolean sortById, boolean useWriterThread) throws IOException {
+		return new RF2Writer(name, Channels.newChannel(os), sortById, useWriterThread);
+	}
+
+	public void writeRow(Object[] columns) throws IOException {
+		checkFailure();
+		for (int i = 0; i < columns.length; i++) {
+			if (i > 0) {
+				put(TAB_BYTE);
+			}
+			encode(columns[i]);
+		}
+		put(LINE_DELIMITER_BYTES, 0, LINE_DELIMITER_BYTES.length);
+	}
+
+	private void encode(Object column) throws IOException {
+		if (column == null) {
+			return;
+		} else if (column instanceof String) {
+			encode((String)column);
+		} else if (column instanceof Long || column instanceof Integer) {
+			encode(((Number)column).longValue());
+		} else {
+			encode(column.toString());
+		}
+	}
+
+	private void encode(String value) throws IOException {
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			char ch = value.charAt(i);
+			if (ch >= 0x80) {
+				//Only the rarer non-ASCII terms need to go through the charset encoder
+				byte[] bytes = value.substring(i).getBytes(StandardCharsets.UTF_8);
+				put(bytes, 0, bytes.length);
+				return;
+			}
+			put((byte)ch);
+		}
+	}
+
+	private void encode(long value) throws IOException {
+		if (value == Long.MIN_VALUE) {
+			encode(Long.toString(value));
+			return;
+		}
+		if (value < 0) {
+			put((byte)'-');
+			value = -value;
+		}
+		int pos = digits.length;
+		do {
+			digits[--pos] = (byte)('0' + (value % 10));
+			value /= 10;
+		} while (value > 0);
+		put(digits, pos, digits.length - pos);
+	}
+
+	private void put(byte b) throws IOException {
+		if (!buffer.hasRemaining()) {
+			writeBuffer();
+		}
+		buffer.put(b);
+	}
+
+	private void put(byte[] bytes, int offset, int length) throws IOException {
+		while (length > 0) {
+			if (!buffer.hasRemaining()) {
+				writeBuffer();
+			}
+			int chunk = Math.min(length, buffer.remaining());
+			buffer.put(bytes, offset, chunk);
+			offset += chunk;
+			length -= chunk;
+		}
+	}
+
+	/**
+	 * Writes out whatever has been buffered so far, waiting for the writer thread
+	 * (if any) to catch up.
+	 */
+	public void flush() throws IOException {
+		checkFailure();
+		if (buffer.position() > 0) {
+			writeBuffer();
+		}
+		if (writerThread != null && !writerThread.isShutdown()) {
+			try {
+				//Tasks run in order, so once this one has run, everything before it has been written
+				writerThread.submit(() -> {}).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting to write " + name);
+			} catch (ExecutionException e) {
+				throw new IOException("Failed to write " + name, e.getCause());
+			}
+		}
+		checkFailure();
+	}
+
+	private void writeBuffer() throws IOException {
+		buffer.flip();
+		if (writerThread == null) {
+			writeFully(channel, buffer);
+			buffer.clear();
+			return;
+		}
+
+		ByteBuffer full = buffer;
+		WritableByteChannel destination = channel;
+		try {
+			buffer = freeBuffers.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to write " + name);
+		}
+		writerThread.execute(() -> {
+			try {
+				if (failure == null) {
+					writeFully(destination, full);
+				}
+			} catch (IOException e) {
+				failure = e;
+			} finally {
+				full.clear();
+				freeBuffers.add(full);
+			}
+		});
+		checkFailure();
+	}
+
+	private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private void checkFailure() throws IOException {
+		if (failure != null) {
+			throw new IOException("Failed to write " + name, failure);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (isClosed) {
+			return;
+		}
+		isClosed = true;
+		try {
+			flush();
+			awaitWriterThread();
+			checkFailure();
+			if (unsorted != null) {
+				channel.close();
+				writeSorted();
+			}
+		} finally {
+			if (writerThread != null) {
+				writerThread.shutdownNow();
+			}
+			if (unsorted != null) {
+				channel.close();
+				unsorted.delete();
+			}
+			target.close();
+		}
+	}
+
+	private void awaitWriterThread() throws IOException {
+		if (writerThread == null) {
+			return;
+		}
+		writerThread.shutdown();
+		try {
+			writerThread.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to finish writing " + name);
+		}
+	}
+
+	private void writeSorted() throws IOException {
+		File sorted = File.createTempFile("rf2_sorted-", ".txt");
+		try {
+			String header;
+			try (InputStream is = new FileInputStream(unsorted)) {
+				header = Rf2Sorter.sort(is, sorted, Rf2Sorter.DEFAULT_CHUNK_SIZE, Rf2Sorter.RELEASE_ORDER_COMPARATOR);
+			}
+			if (header != null) {
+				ByteBuffer headerBytes = ByteBuffer.wrap((header + LINE_DELIMITER).getBytes(StandardCharsets.UTF_8));
+				writeFully(target, headerBytes);
+			}
+			try (FileChannel sortedChannel = FileChannel.open(sorted.toPath(), StandardOpenOption.READ)) {
+				long position = 0;
+				long size = sortedChannel.size();
+				while (position < size) {
+					position += sortedChannel.transferTo(position, size - position, target);
+				}
+			}
+		} finally {
+			sorted.delete();
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+}
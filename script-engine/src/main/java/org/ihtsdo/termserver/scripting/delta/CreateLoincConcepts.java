@@ -13,6 +13,7 @@ import java.util.UUID;
 
 import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Component;
 import org.ihtsdo.otf.exception.TermServerScriptException;
+import org.ihtsdo.termserver.scripting.IdGenerator;
 import org.ihtsdo.termserver.scripting.domain.Concept;
 import org.ihtsdo.termserver.scripting.domain.Description;
 import org.ihtsdo.termserver.scripting.domain.LangRefsetEntry;
@@ -21,6 +22,9 @@ import org.ihtsdo.termserver.scripting.util.SnomedUtils;
 
 public class CreateLoincConcepts extends DeltaGenerator {
 	
+	//FSN, PT and the correlation and unique id synonyms
+	private static final int DESCRIPTIONS_PER_CONCEPT = 4;
+
 	DefinitionStatus defStatus = DefinitionStatus.FULLY_DEFINED;
 	Map<LoincElement, Concept> loincAttributes;
 	Relationship isAObservable;
@@ -134,20 +138,23 @@ public class CreateLoincConcepts extends DeltaGenerator {
 			throws TermServerScriptException {
 		if (lineItems.length > 3) {
 			Concept concept = new Concept(conIdGenerator.getSCTID());
+			//Keep each concept's descriptions and relationships together in their id ranges
+			IdGenerator.Block descIds = descIdGenerator.reserveBlock(DESCRIPTIONS_PER_CONCEPT);
+			IdGenerator.Block relIds = relIdGenerator.reserveBlock(loincAttributes.size() + 1);
 			concept.setModuleId(moduleId);
 			concept.setDirty();
 			if (is99_2) {
-				addFsnAndPT(concept, lineItems[LoincElement.LOINC_FSN_99_2.geIdx()]);
-				addSyn(concept, "Correlation ID:", lineItems[LoincElement.Correlation_ID_99_2.geIdx()]);
-				addSyn(concept, "LOINC Unique ID:", lineItems[LoincElement.LOINC_Unique_ID_99_2.geIdx()]);
+				addFsnAndPT(concept, lineItems[LoincElement.LOINC_FSN_99_2.geIdx()], descIds);
+				addSyn(concept, "Correlation ID:", lineItems[LoincElement.Correlation_ID_99_2.geIdx()], descIds);
+				addSyn(concept, "LOINC Unique ID:", lineItems[LoincElement.LOINC_Unique_ID_99_2.geIdx()], descIds);
 			} else {
-				addFsnAndPT(concept, lineItems[LoincElement.LOINC_FSN_99_1.geIdx()]);
-				addSyn(concept, "Correlation ID:", lineItems[LoincElement.Correlation_ID_99_1.geIdx()]);
-				addSyn(concept, "LOINC Unique ID:", lineItems[LoincElement.LOINC_Unique_ID_99_1.geIdx()]);
+				addFsnAndPT(concept, lineItems[LoincElement.LOINC_FSN_99_1.geIdx()], descIds);
+				addSyn(concept, "Correlation ID:", lineItems[LoincElement.Correlation_ID_99_1.geIdx()], descIds);
+				addSyn(concept, "LOINC Unique ID:", lineItems[LoincElement.LOINC_Unique_ID_99_1.geIdx()], descIds);
 			}
-			addAttributes(concept, lineItems);
+			addAttributes(concept, lineItems, relIds);
 			concept.setDefinitionStatus(defStatus);
-			Relationship parent = isAObservable.clone(relIdGenerator.getSCTID());
+			Relationship parent = isAObservable.clone(relIds.getSCTID());
 			parent.setSourceId(concept.getId());
 			concept.addRelationship(parent);
 			return Collections.singletonList(concept);
@@ -155,8 +162,8 @@ public class CreateLoincConcepts extends DeltaGenerator {
 		return null;
 	}
 
-	private void addFsnAndPT(Concept concept, String term) throws TermServerScriptException {
-		Description pt = new Description(descIdGenerator.getSCTID());
+	private void addFsnAndPT(Concept concept, String term, IdGenerator.Block descIds) throws TermServerScriptException {
+		Description pt = new Description(descIds.getSCTID());
 		pt.setTerm(term);
 		pt.setActive(true);
 		pt.setLang(languageCode);
@@ -167,15 +174,15 @@ public class CreateLoincConcepts extends DeltaGenerator {
 		pt.setDirty();
 		addLangRefsetEntry(pt, SCTID_PREFERRED_TERM);
 		concept.addDescription(pt);
-		Description fsn = pt.clone(descIdGenerator.getSCTID());
+		Description fsn = pt.clone(descIds.getSCTID());
 		fsn.setType(DescriptionType.FSN);
 		fsn.setTerm(term + " (observable entity)");
 		concept.setFsn(fsn.getTerm());
 		concept.addDescription(fsn);
 	}
 	
-	private void addSyn(Concept concept, String prefix, String data) throws TermServerScriptException {
-		Description syn = new Description(descIdGenerator.getSCTID());
+	private void addSyn(Concept concept, String prefix, String data, IdGenerator.Block descIds) throws TermServerScriptException {
+		Description syn = new Description(descIds.getSCTID());
 		syn.setTerm(prefix + data);
 		syn.setActive(true);
 		syn.setModuleId(moduleId);
@@ -189,7 +196,7 @@ public class CreateLoincConcepts extends DeltaGenerator {
 	}
 	
 
-	private void addAttributes(Concept concept, String[] lineItems) throws TermServerScriptException {
+	private void addAttributes(Concept concept, String[] lineItems, IdGenerator.Block relIds) throws TermServerScriptException {
 		//Work through the attribute map and create stated relationships of the appropriate type
 		for (Map.Entry<LoincElement, Concept> entry : loincAttributes.entrySet()) {
 			Concept source = concept;
@@ -197,7 +204,7 @@ public class CreateLoincConcepts extends DeltaGenerator {
 			String targetSctid = lineItems[entry.getKey().geIdx()];
 			Concept target = gl.getConcept(targetSctid);
 			Relationship rel = new Relationship (source, type, target, UNGROUPED);
-			rel.setRelationshipId(relIdGenerator.getSCTID());
+			rel.setRelationshipId(relIds.getSCTID());
 			rel.setModuleId(moduleId);
 			rel.setActive(true);
 			rel.setCharacteristicType(CharacteristicType.STATED_RELATIONSHIP);
@@ -4,6 +4,8 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.apache.commons.lang.NotImplementedException;
 import org.apache.commons.lang.StringUtils;
@@ -57,6 +59,13 @@ public abstract class DeltaGenerator extends TermServerScript {
 	
 	protected Map<ComponentType, String> fileMap = new HashMap<ComponentType, String>();
 	
+	protected int conceptsPerOutputRange = 5000;
+	protected boolean outputRangesInParallel = true;
+	//Rows written by outputModifiedComponents are held per thread, until all concepts have been output
+	private final ThreadLocal<Map<String, List<Object[]>>> rowBuffer = new ThreadLocal<>();
+	//Ids for any new relationships in the range being output, reserved up front so ranges don't contend for them
+	private final ThreadLocal<IdGenerator.Block> relIdBlock = new ThreadLocal<>();
+	
 	protected void init (String[] args) throws TermServerScriptException {
 		
 		for (int x=0; x<args.length; x++) {
@@ -221,17 +230,108 @@ public abstract class DeltaGenerator extends TermServerScript {
 		writeToRF2File(assocDeltaFilename, assocHeader);
 	}
 	
+	/**
+	 * Concepts are split into ranges which are output in parallel, with each range's rows
+	 * buffered separately.  The buffers are then merged and each file's rows written out
+	 * sorted by id, so that the same changes always produce the same delta.  New relationships
+	 * which have not yet been given an id take one from a block reserved for their range.
+	 */
 	protected void outputModifiedComponents(boolean alwaysCheckSubComponents) throws TermServerScriptException {
 		info ("Outputting to RF2...");
-		for (Concept thisConcept : gl.getAllConcepts()) {
-			try {
-				outputRF2((Concept)thisConcept, alwaysCheckSubComponents);  //Don't check desc/rels if concept not modified.
-			} catch (TermServerScriptException e) {
-				report ((Concept)thisConcept, null, Severity.CRITICAL, ReportActionType.API_ERROR, "Exception while processing: " + e.getMessage() + " : " + SnomedUtils.getStackTrace(e));
+		List<Concept> concepts = new ArrayList<>(gl.getAllConcepts());
+		concepts.sort(Comparator.comparing(Concept::getConceptId));
+		List<List<Concept>> ranges = new ArrayList<>();
+		for (int i = 0; i < concepts.size(); i += conceptsPerOutputRange) {
+			ranges.add(concepts.subList(i, Math.min(i + conceptsPerOutputRange, concepts.size())));
+		}
+		
+		List<Map<String, List<Object[]>>> rangeRows;
+		try {
+			IntStream rangeIdxs = IntStream.range(0, ranges.size());
+			if (outputRangesInParallel) {
+				rangeIdxs = rangeIdxs.parallel();
+			}
+			rangeRows = rangeIdxs
+					.mapToObj(i -> outputRange(ranges.get(i), alwaysCheckSubComponents))
+					.collect(Collectors.toList());
+		} catch (IllegalStateException e) {
+			if (e.getCause() instanceof TermServerScriptException) {
+				throw (TermServerScriptException)e.getCause();
+			}
+			throw e;
+		}
+		
+		Map<String, List<Object[]>> fileRows = new LinkedHashMap<>();
+		for (Map<String, List<Object[]>> rows : rangeRows) {
+			for (Map.Entry<String, List<Object[]>> entry : rows.entrySet()) {
+				fileRows.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).addAll(entry.getValue());
+			}
+		}
+		for (Map.Entry<String, List<Object[]>> entry : fileRows.entrySet()) {
+			List<Object[]> rows = entry.getValue();
+			//Stable sort, so any rows for the same id stay in concept order
+			rows.sort(Comparator.comparing(row -> Objects.toString(row[IDX_ID], "")));
+			for (Object[] row : rows) {
+				super.writeToRF2File(entry.getKey(), row);
 			}
 		}
 	}
 	
+	private Map<String, List<Object[]>> outputRange(List<Concept> range, boolean alwaysCheckSubComponents) {
+		Map<String, List<Object[]>> rows = new HashMap<>();
+		rowBuffer.set(rows);
+		try {
+			if (relIdGenerator != null) {
+				relIdBlock.set(relIdGenerator.reserveBlock(countRelationshipsNeedingIds(range, alwaysCheckSubComponents)));
+			}
+			for (Concept thisConcept : range) {
+				try {
+					outputRF2((Concept)thisConcept, alwaysCheckSubComponents);  //Don't check desc/rels if concept not modified.
+				} catch (TermServerScriptException e) {
+					synchronized (this) {
+						report ((Concept)thisConcept, null, Severity.CRITICAL, ReportActionType.API_ERROR, "Exception while processing: " + e.getMessage() + " : " + SnomedUtils.getStackTrace(e));
+					}
+				}
+			}
+		} catch (TermServerScriptException e) {
+			throw new IllegalStateException("Failed to output concepts from " + range.get(0) + ": " + e.getMessage(), e);
+		} finally {
+			rowBuffer.remove();
+			relIdBlock.remove();
+		}
+		return rows;
+	}
+	
+	//Follows the same path as outputRF2(Concept, boolean), so that no reserved id goes unused
+	private int countRelationshipsNeedingIds(List<Concept> range, boolean alwaysCheckSubComponents) {
+		int count = 0;
+		for (Concept c : range) {
+			if ((!c.isDirty() && !alwaysCheckSubComponents) || hasDirtyNotFromAxiomRelationships(c)) {
+				continue;
+			}
+			for (Relationship r : c.getRelationships()) {
+				if (!r.fromAxiom() && needsId(r)) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+	
+	private boolean needsId(Relationship r) {
+		return r.isDirty() && StringUtils.isEmpty(r.getRelationshipId());
+	}
+	
+	@Override
+	protected void writeToRF2File(String fileName, Object[] columns) throws TermServerScriptException {
+		Map<String, List<Object[]>> rows = rowBuffer.get();
+		if (rows == null) {
+			super.writeToRF2File(fileName, columns);
+		} else {
+			rows.computeIfAbsent(fileName, k -> new ArrayList<>()).add(columns);
+		}
+	}
+	
 	protected void outputRF2(ComponentType componentType, String[] columns) throws TermServerScriptException {
 		String fileName = fileMap.get(componentType);
 		writeToRF2File(fileName, columns);
@@ -254,6 +354,13 @@ public abstract class DeltaGenerator extends TermServerScript {
 	}
 
 	protected void outputRF2(Relationship r) throws TermServerScriptException {
+		IdGenerator.Block block = relIdBlock.get();
+		if (block != null && needsId(r)) {
+			//The id forms part of the relationship's hash, so give it to a copy rather than
+			//changing a relationship that's held in its concept's set
+			Relationship withId = r.clone(block.getSCTID());
+			r = withId;
+		}
 		if (r.isDirty()) {
 			switch (r.getCharacteristicType()) {
 				case STATED_RELATIONSHIP : writeToRF2File(sRelDeltaFilename, r.toRF2());
@@ -1,19 +1,16 @@
 package org.ihtsdo.termserver.scripting.delta;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
+import java.util.*;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Component;
 import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Component.ComponentType;
@@ -21,17 +18,24 @@ import org.ihtsdo.otf.exception.TermServerScriptException;
 import org.ihtsdo.termserver.scripting.FlatFileLoader;
 import org.ihtsdo.termserver.scripting.domain.Rf2File;
 import org.ihtsdo.termserver.scripting.domain.Concept;
+import org.ihtsdo.termserver.scripting.util.Rf2Sorter;
 import org.ihtsdo.termserver.scripting.util.SnomedUtils;
 /**
  *ISRS-317
  *Script to compare a current delta with some earlier fix delta
  *to determine which fields have been changed and produce a merged view.
  *With the current delta taking "trump" if a change conflicts.
+ *
+ *If the snapshot at the point of versioning is supplied with -s, the merge is 
+ *done by streaming each file type of the three archives sorted by id and 
+ *merge-joining them, so the component graph is never loaded.  File types
+ *are merged in parallel.
  */
 public class MergeDeltas extends DeltaGenerator {
 	
 	FlatFileLoader currentDelta = new FlatFileLoader();
 	File fixDeltaFile;
+	File alphaSnapshotFile;
 	Long publishedEffectiveTime = 20180131L;
 	
 	public static void main(String[] args) throws TermServerScriptException, IOException, InterruptedException {
@@ -41,10 +45,15 @@ public class MergeDeltas extends DeltaGenerator {
 			app.runStandAlone = true;
 			app.additionalReportColumns="ComponentType, ComponentId, Info, Data";
 			app.init(args);
-			//Recover the current project state from TS (or local cached archive) to allow quick searching of all concepts
-			app.loadProjectSnapshot(false);  //Not just FSN, load all terms with lang refset also
-			app.startTimer();
-			app.doMerge();
+			if (app.alphaSnapshotFile == null) {
+				//Recover the current project state from TS (or local cached archive) to allow quick searching of all concepts
+				app.loadProjectSnapshot(false);  //Not just FSN, load all terms with lang refset also
+				app.startTimer();
+				app.doMerge();
+			} else {
+				app.startTimer();
+				app.doStreamingMerge();
+			}
 			app.flushFiles(false, true); //Need to flush files before zipping
 			SnomedUtils.createArchive(new File(app.outputDirName));
 		} finally {
@@ -63,6 +72,8 @@ public class MergeDeltas extends DeltaGenerator {
 		for (int x=0; x<args.length; x++) {
 			if (args[x].equals("-f2")) {
 				fixDeltaFile = new File(args[++x]);
+			} else if (args[x].equals("-s")) {
+				alphaSnapshotFile = new File(args[++x]);
 			}
 		}
 	}
@@ -113,7 +124,9 @@ public class MergeDeltas extends DeltaGenerator {
 			if (!isHeader) {
 				String[] lineItems = line.split(FIELD_DELIMITER);
 				String[] output = processFixDeltaLine(componentType, lineItems);
-				outputRF2(componentType, output);
+				if (output != null) {
+					outputRF2(componentType, output);
+				}
 			} else {
 				isHeader = false;
 			}
@@ -121,45 +134,170 @@ public class MergeDeltas extends DeltaGenerator {
 	}
 
 	private String[] processFixDeltaLine(ComponentType componentType, String[] fixLineItems) throws TermServerScriptException {
+		String id = fixLineItems[IDX_ID];
+		String[] alphaFields = null;
+		Component alphaComponent = gl.getComponent(id);
+		if (alphaComponent != null) {
+			try {
+				alphaFields = alphaComponent.toRF2();
+			} catch (Exception e) {
+				throw new TermServerScriptException("Unable to express alphaComponent in RF2",e);
+			}
+		}
+		return processFixDeltaLine(componentType, fixLineItems, currentDelta.get(id), alphaFields, gl.getComponentOwner(id));
+	}
+	
+	void doStreamingMerge() throws TermServerScriptException {
+		File workingDir = null;
+		try (ZipFile fixArchive = new ZipFile(fixDeltaFile);
+				ZipFile currentArchive = new ZipFile(inputFile);
+				ZipFile alphaArchive = new ZipFile(alphaSnapshotFile)) {
+			File sortDir = Files.createTempDirectory("merge_deltas").toFile();
+			workingDir = sortDir;
+			Map<ComponentType, List<ZipEntry>> fixEntries = getEntriesByType(fixArchive, FileType.DELTA);
+			Map<ComponentType, List<ZipEntry>> currentEntries = getEntriesByType(currentArchive, FileType.DELTA);
+			Map<ComponentType, List<ZipEntry>> alphaEntries = getEntriesByType(alphaArchive, FileType.SNAPSHOT);
+			
+			//Each file type is written to its own output file, so they can be merged independently
+			new ArrayList<>(fixEntries.keySet()).parallelStream().forEach(componentType -> {
+				try {
+					info ("Merging " + componentType);
+					File fix = sortById(fixArchive, fixEntries.get(componentType), sortDir);
+					File current = sortById(currentArchive, currentEntries.get(componentType), sortDir);
+					File alpha = sortById(alphaArchive, alphaEntries.get(componentType), sortDir);
+					mergeSorted(componentType, fix, current, alpha);
+				} catch (IOException | TermServerScriptException e) {
+					throw new IllegalStateException("Failed to merge " + componentType + ": " + e.getMessage(), e);
+				}
+			});
+		} catch (IllegalStateException e) {
+			if (e.getCause() instanceof TermServerScriptException) {
+				throw (TermServerScriptException)e.getCause();
+			}
+			throw new TermServerScriptException(e.getMessage(), e.getCause());
+		} catch (IOException e) {
+			throw new TermServerScriptException("Failed to merge fix delta " + fixDeltaFile.getName(), e);
+		} finally {
+			FileUtils.deleteQuietly(workingDir);
+		}
+	}
+	
+	private Map<ComponentType, List<ZipEntry>> getEntriesByType(ZipFile archive, FileType fileType) {
+		Map<ComponentType, List<ZipEntry>> entriesByType = new HashMap<>();
+		Enumeration<? extends ZipEntry> entries = archive.entries();
+		while (entries.hasMoreElements()) {
+			ZipEntry ze = entries.nextElement();
+			if (!ze.isDirectory()) {
+				String fileName = Paths.get(ze.getName()).getFileName().toString();
+				ComponentType componentType = Rf2File.getComponentType(fileName, fileType);
+				if (componentType != null && !fileName.startsWith("._")) {
+					entriesByType.computeIfAbsent(componentType, k -> new ArrayList<>()).add(ze);
+				}
+			}
+		}
+		return entriesByType;
+	}
+	
+	/**
+	 * @return a single file containing the rows of all the entries sorted by id, without
+	 * a header, or null if there are no entries
+	 */
+	private File sortById(ZipFile archive, List<ZipEntry> entries, File sortDir) throws IOException {
+		if (entries == null) {
+			return null;
+		}
+		List<File> sortedFiles = new ArrayList<>();
+		for (ZipEntry ze : entries) {
+			File sorted = File.createTempFile("sorted-", ".txt", sortDir);
+			try (InputStream is = archive.getInputStream(ze)) {
+				//Sorted on id alone, so that rows for the same component stay in the order they were read
+				Rf2Sorter.sort(is, sorted, Rf2Sorter.DEFAULT_CHUNK_SIZE, Rf2Sorter.ID_COMPARATOR);
+			}
+			sortedFiles.add(sorted);
+		}
+		if (sortedFiles.size() == 1) {
+			return sortedFiles.get(0);
+		}
+		File merged = File.createTempFile("merged-", ".txt", sortDir);
+		Rf2Sorter.merge(sortedFiles, merged, Rf2Sorter.ID_COMPARATOR);
+		return merged;
+	}
+	
+	private void mergeSorted(ComponentType componentType, File fix, File current, File alpha) throws IOException, TermServerScriptException {
+		String fileName = fileMap.get(componentType);
+		if (fileName == null) {
+			warn ("No output file configured for " + componentType + ", skipping");
+			return;
+		}
+		try (BufferedReader fixReader = Rf2Sorter.newReader(fix);
+				SortedRowCursor currentRows = new SortedRowCursor(current);
+				SortedRowCursor alphaRows = new SortedRowCursor(alpha)) {
+			String line;
+			while ((line = fixReader.readLine()) != null) {
+				String[] fixLineItems = line.split(FIELD_DELIMITER, -1);
+				String id = fixLineItems[IDX_ID];
+				String[] output = processFixDeltaLine(componentType, fixLineItems, currentRows.seek(id), alphaRows.seek(id), getOwningConcept(componentType, fixLineItems));
+				if (output != null) {
+					writeToRF2File(fileName, output);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Without the graph, the owning concept is only known where the row names it, so
+	 * refset members for descriptions are reported against no concept, with just their own id.
+	 * @return a concept holding only the id, for reporting
+	 */
+	private Concept getOwningConcept(ComponentType componentType, String[] lineItems) {
+		String conceptId = getOwningConceptId(componentType, lineItems);
+		return SnomedUtils.isConceptSctid(conceptId) ? new Concept(conceptId) : null;
+	}
+	
+	private String getOwningConceptId(ComponentType componentType, String[] lineItems) {
+		switch (componentType) {
+			case CONCEPT : return lineItems[IDX_ID];
+			case DESCRIPTION :
+			case TEXT_DEFINITION : return lineItems[DES_IDX_CONCEPTID];
+			case INFERRED_RELATIONSHIP :
+			case STATED_RELATIONSHIP : return lineItems[REL_IDX_SOURCEID];
+			default : return lineItems.length > REF_IDX_REFCOMPID ? lineItems[REF_IDX_REFCOMPID] : null;
+		}
+	}
+	
+	private synchronized void reportMerge(Concept relevantComponent, Object... details) throws TermServerScriptException {
+		report (relevantComponent, details);
+	}
+
+	private String[] processFixDeltaLine(ComponentType componentType, String[] fixLineItems, String[] currentFields, String[] alphaFields, Concept relevantComponent) throws TermServerScriptException {
 		String id = fixLineItems[IDX_ID];
 		String fixEffectiveTime = fixLineItems[IDX_EFFECTIVETIME];
-		String[] alphaFields;
-		String[] currentFields = currentDelta.get(id);
 		String[] output = new String[fixLineItems.length];
-		Concept relevantComponent = gl.getComponentOwner(id);
 		
 		//If the current delta does not know about this component, then it's not changed at all since release, so we should use the fix
 		if (currentFields==null) {
 			String msg = "Fixed component has not been changed since versioning.  Using fix version";
-			report (relevantComponent, null, Severity.LOW, ReportActionType.INFO,componentType.toString(), id, msg, StringUtils.join(fixLineItems, "|"));
+			reportMerge (relevantComponent, null, Severity.LOW, ReportActionType.INFO,componentType.toString(), id, msg, StringUtils.join(fixLineItems, "|"));
 			return fixLineItems;			
 		}
 		String currentEffectiveTime = currentFields[IDX_EFFECTIVETIME];
 		
 		//Is this fix a reversion?  We'll either take the whole thing, or ignore the whole thing.
-		if (fixEffectiveTime != "" && Long.parseLong(fixEffectiveTime) < publishedEffectiveTime) {
+		if (!fixEffectiveTime.isEmpty() && Long.parseLong(fixEffectiveTime) < publishedEffectiveTime) {
 			//If the current version has not changed since we versioned, then we'll apply the fix.
 			//Otherwise, apply the current state
-			if (currentEffectiveTime == "") {
+			if (currentEffectiveTime.isEmpty()) {
 				String msg = "Current state has changed since versioning.  Ignoring reversion.";
-				report (relevantComponent, null, Severity.HIGH, ReportActionType.INFO, componentType.toString(), id, msg, StringUtils.join(fixLineItems, "|"));
+				reportMerge (relevantComponent, null, Severity.HIGH, ReportActionType.INFO, componentType.toString(), id, msg, StringUtils.join(fixLineItems, "|"));
 				return null;
 			}
 		}
 		
 		//Otherwise, we'll work on a field by field basis to form merge of the two.
 		
-		//Get the alpha fields for this component
-		Component alphaComponent = gl.getComponent(id);
-		if (alphaComponent == null) {
+		if (alphaFields == null) {
 			//This is a new component since the release
 			alphaFields = new String[fixLineItems.length];
-		} else {
-			try {
-				alphaFields = alphaComponent.toRF2();
-			} catch (Exception e) {
-				throw new TermServerScriptException("Unable to express alphaComponent in RF2",e);
-			}
 		}
 		
 		//Check each field to see if it has changed since versioning.
@@ -167,14 +305,14 @@ public class MergeDeltas extends DeltaGenerator {
 		String dataComparisons = "";		
 		for (int i=0; i < alphaFields.length; i++ ) {
 			//If the current has changed, that takes priority.  Otherwise, take the fix
-			if (!alphaFields[i].equals(currentFields[i])) {
+			if (!StringUtils.equals(alphaFields[i], currentFields[i])) {
 				fieldsChanged += fieldsChanged.isEmpty()?i:"," +i;
 				dataComparisons += dataComparisons.isEmpty()?"":", ";
 				dataComparisons += "current '" + currentFields[i] + "' vs fix '" + fixLineItems[i] + "'";
 				output[i] = currentFields[i];
 			} else {
 				output[i] = fixLineItems[i];
-				if (!alphaFields[i].equals(fixLineItems[i])) {
+				if (!StringUtils.equals(alphaFields[i], fixLineItems[i])) {
 					dataComparisons += dataComparisons.isEmpty()?"":", ";
 					dataComparisons += " taking fix '" + fixLineItems[i] + "'";
 				}
@@ -183,11 +321,11 @@ public class MergeDeltas extends DeltaGenerator {
 		//HOWEVER, if the ONLY field to be different to the fix is the effective date, then we actually want to reset that component back to being alpha, ie use the fix line
 		if (differsOnlyInEffectiveTime(output, fixLineItems)) {
 			String msg = "Current rows shows as unpublished, but is otherwise the same as the published fix.  Resetting to fix row to prevent no-change delta in next release.";
-			report (relevantComponent, null, Severity.HIGH, ReportActionType.INFO,componentType.toString(), id, msg,  StringUtils.join(fixLineItems, "|"));	
+			reportMerge (relevantComponent, null, Severity.HIGH, ReportActionType.INFO,componentType.toString(), id, msg,  StringUtils.join(fixLineItems, "|"));	
 			output = fixLineItems;
 		} else {
 			String msg = "Using fields " + fieldsChanged + ", modified since versioning: " + dataComparisons;
-			report (relevantComponent, null, Severity.MEDIUM, ReportActionType.INFO,componentType.toString(), id, msg);
+			reportMerge (relevantComponent, null, Severity.MEDIUM, ReportActionType.INFO,componentType.toString(), id, msg);
 		}
 		return output;
 	}
@@ -213,4 +351,64 @@ public class MergeDeltas extends DeltaGenerator {
 	protected List<Component> loadLine(String[] lineItems) throws TermServerScriptException {
 		return null;
 	}
+	
+	/**
+	 * Walks forward through a file sorted by id, finding the row for each id asked for.
+	 * Ids must be asked for in the same order the file is sorted in, and rows sharing an
+	 * id must be in the order they were read from the archive.
+	 */
+	private static class SortedRowCursor implements Closeable {
+		private final BufferedReader br;
+		private String[] current;
+		//The fix delta may hold more than one row for an id, so remember what we found for the last
+		private String lastId;
+		private String[] lastMatch;
+		
+		SortedRowCursor(File sorted) throws IOException {
+			br = sorted == null ? null : Rf2Sorter.newReader(sorted);
+			advance();
+		}
+		
+		private void advance() throws IOException {
+			String line = br == null ? null : br.readLine();
+			current = line == null ? null : line.split(FIELD_DELIMITER, -1);
+		}
+		
+		String[] seek(String id) throws IOException {
+			if (id.equals(lastId)) {
+				return lastMatch;
+			}
+			while (current != null && current[IDX_ID].compareTo(id) < 0) {
+				advance();
+			}
+			String[] match = null;
+			//Where a component appears more than once, the row with the latest effective time
+			//wins, unpublished being latest of all, and then the last of those read
+			while (current != null && current[IDX_ID].equals(id)) {
+				if (match == null || compareEffectiveTimes(current, match) >= 0) {
+					match = current;
+				}
+				advance();
+			}
+			lastId = id;
+			lastMatch = match;
+			return match;
+		}
+		
+		private static int compareEffectiveTimes(String[] a, String[] b) {
+			String aTime = a[IDX_EFFECTIVETIME];
+			String bTime = b[IDX_EFFECTIVETIME];
+			if (aTime.isEmpty() || bTime.isEmpty()) {
+				return Boolean.compare(aTime.isEmpty(), bTime.isEmpty());
+			}
+			return aTime.compareTo(bTime);
+		}
+		
+		@Override
+		public void close() throws IOException {
+			if (br != null) {
+				br.close();
+			}
+		}
+	}
 }
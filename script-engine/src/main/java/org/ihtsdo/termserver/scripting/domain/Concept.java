@@ -50,7 +50,7 @@ public class Concept extends Component implements RF2Constants, Comparable<Conce
 	
 	@SerializedName("relationships")
 	@Expose
-	private Set<Relationship> relationships = new HashSet<Relationship>();
+	private Set<Relationship> relationships = new RelationshipIndex.RelationshipSet();
 	
 	@SerializedName("isLeafStated")
 	@Expose
@@ -106,12 +106,15 @@ public class Concept extends Component implements RF2Constants, Comparable<Conce
 	Collection<RelationshipGroup> statedRelationshipGroups;
 	Collection<RelationshipGroup> inferredRelationshipGroups;
 	
+	private transient volatile RelationshipIndex relationshipIndex;
+	
 	public void reset() {
 		assertionFailures = new ArrayList<String>();
 		statedRelationshipGroups = null;
 		inferredRelationshipGroups = null;
+		relationshipIndex = null;
 		descriptions = new ArrayList<Description>();
-		relationships = new HashSet<Relationship>();
+		relationships = new RelationshipIndex.RelationshipSet();
 		statedParents = new HashSet<>();
 		inferredParents = new HashSet<>();
 		statedChildren = new HashSet<>();
@@ -286,10 +289,87 @@ public class Concept extends Component implements RF2Constants, Comparable<Conce
 	}
 
 	public Set<Relationship> getRelationships() {
+		ensureIndexable();
 		return relationships;
 	}
 	
+	/**
+	 * Concepts deserialised by Gson are given a plain set, which can't tell the index when
+	 * it has changed, so swap it for one that can before anyone takes hold of it.
+	 */
+	private void ensureIndexable() {
+		if (relationships != null && !(relationships instanceof RelationshipIndex.RelationshipSet)) {
+			synchronized (this) {
+				if (!(relationships instanceof RelationshipIndex.RelationshipSet)) {
+					relationships = new RelationshipIndex.RelationshipSet(relationships);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return the index of this concept's relationships, rebuilt if anything has changed 
+	 * since it was last used, or null if the relationships cannot be indexed.
+	 */
+	private RelationshipIndex getRelationshipIndex() {
+		ensureIndexable();
+		RelationshipIndex index = relationshipIndex;
+		if (index == null || !index.isCurrent(relationships)) {
+			index = RelationshipIndex.build(relationships);
+			relationshipIndex = index;
+			//Any cached groups may now be out of date.  Where there's no index to rebuild,
+			//groups are only cleared by the changes that call recalculateGroups()
+			if (index != null) {
+				recalculateGroups();
+			}
+		}
+		return index;
+	}
+	
+	/**
+	 * Read only view of the relationships of the given characteristic type and active state.
+	 * No copy is made, so the view should not be held on to if the concept is being modified.
+	 */
+	public List<Relationship> getRelationshipView(CharacteristicType characteristicType, ActiveState state) {
+		RelationshipIndex index = getRelationshipIndex();
+		if (index == null) {
+			return new ArrayList<>(scanRelationships(characteristicType, state, null));
+		}
+		return index.getRelationships(characteristicType, state);
+	}
+	
+	/**
+	 * Read only view of the active relationships of the given characteristic type in the given group.
+	 */
+	public List<Relationship> getRelationshipView(CharacteristicType characteristicType, int groupId) {
+		RelationshipIndex index = getRelationshipIndex();
+		if (index == null) {
+			return scanRelationships(characteristicType, ActiveState.ACTIVE, null).stream()
+					.filter(r -> r.getGroupId() == groupId)
+					.collect(Collectors.toList());
+		}
+		return index.getGroup(characteristicType, groupId);
+	}
+	
 	public Set<Relationship> getRelationships(CharacteristicType characteristicType, ActiveState state, String effectiveTime) {
+		RelationshipIndex index = getRelationshipIndex();
+		if (index == null) {
+			return scanRelationships(characteristicType, state, effectiveTime);
+		}
+		if (effectiveTime == null) {
+			return index.getRelationshipSet(characteristicType, state);
+		}
+		List<Relationship> candidates = index.getRelationships(characteristicType, state);
+		Set<Relationship> matches = new HashSet<Relationship>();
+		for (Relationship r : candidates) {
+			if (effectiveTime.equals(r.getEffectiveTime())) {
+				matches.add(r);
+			}
+		}
+		return matches;
+	}
+	
+	private Set<Relationship> scanRelationships(CharacteristicType characteristicType, ActiveState state, String effectiveTime) {
 		Set<Relationship> matches = new HashSet<Relationship>();
 		for (Relationship r : relationships) {
 			if (effectiveTime == null || r.getEffectiveTime().equals(effectiveTime)) {
@@ -341,14 +421,7 @@ public class Concept extends Component implements RF2Constants, Comparable<Conce
 	}
 	
 	public Set<Relationship> getRelationships(CharacteristicType characteristicType, Concept type, ActiveState activeState) {
-		Set<Relationship> potentialMatches = getRelationships(characteristicType, activeState);
-		Set<Relationship> matches = new HashSet<Relationship>();
-		for (Relationship r : potentialMatches) {
-			if (type == null || r.getType().equals(type)) {
-				matches.add(r);
-			}
-		}
-		return matches;
+		return getRelationships(characteristicType, type, null, NOT_SET, activeState);
 	}
 
 	public Set<Relationship> getRelationships(CharacteristicType charType, Concept[] targets, ActiveState state) {
@@ -360,21 +433,18 @@ public class Concept extends Component implements RF2Constants, Comparable<Conce
 	}
 	
 	public Set<Relationship> getRelationships(CharacteristicType characteristicType, Concept type, Concept target, ActiveState activeState) {
-		Set<Relationship> potentialMatches = getRelationships(characteristicType, type, activeState);
-		Set<Relationship> matches = new HashSet<Relationship>();
-		for (Relationship r : potentialMatches) {
-			if (target == null || r.getTarget().equals(target)) {
-				matches.add(r);
-			}
-		}
-		return matches;
+		return getRelationships(characteristicType, type, target, NOT_SET, activeState);
 	}
 
 	public Set<Relationship> getRelationships(CharacteristicType characteristicType, Concept type, Concept target, int groupId, ActiveState activeState) {
-		Set<Relationship> potentialMatches = getRelationships(characteristicType, type, target, activeState);
+		//Active relationships in a known group can be taken straight from that group's range
+		List<Relationship> candidates = groupId != NOT_SET && activeState.equals(ActiveState.ACTIVE) ?
+				getRelationshipView(characteristicType, groupId) : getRelationshipView(characteristicType, activeState);
 		Set<Relationship> matches = new HashSet<Relationship>();
-		for (Relationship r : potentialMatches) {
-			if (groupId == NOT_SET || r.getGroupId() == groupId) {
+		for (Relationship r : candidates) {
+			if ((type == null || r.getType().equals(type)) &&
+				(target == null || r.getTarget().equals(target)) &&
+				(groupId == NOT_SET || r.getGroupId() == groupId)) {
 				matches.add(r);
 			}
 		}
@@ -382,14 +452,7 @@ public class Concept extends Component implements RF2Constants, Comparable<Conce
 	}
 	
 	public Set<Relationship> getRelationships(CharacteristicType characteristicType, Concept type, int groupId) {
-		Set<Relationship> potentialMatches = getRelationships(characteristicType, type, ActiveState.ACTIVE);
-		Set<Relationship> matches = new HashSet<Relationship>();
-		for (Relationship r : potentialMatches) {
-			if (r.getGroupId() == groupId) {
-				matches.add(r);
-			}
-		}
-		return matches;
+		return getRelationships(characteristicType, type, null, groupId, ActiveState.ACTIVE);
 	}
 
 	public Relationship getRelationship(String id) {
@@ -402,7 +465,8 @@ public class Concept extends Component implements RF2Constants, Comparable<Conce
 	}
 
 	public void setRelationships(Set<Relationship> relationships) {
-		this.relationships = relationships;
+		this.relationships = relationships == null || relationships instanceof RelationshipIndex.RelationshipSet ?
+				relationships : new RelationshipIndex.RelationshipSet(relationships);
 	}
 	
 	public void removeRelationship(Relationship r) {
@@ -1242,31 +1306,59 @@ public class Concept extends Component implements RF2Constants, Comparable<Conce
 	}
 	
 	public Collection<RelationshipGroup> getRelationshipGroups(CharacteristicType characteristicType, boolean includeIsA) {
+		RelationshipIndex index = getRelationshipIndex();
 		Collection<RelationshipGroup> relationshipGroups = characteristicType.equals(CharacteristicType.STATED_RELATIONSHIP) ? statedRelationshipGroups : inferredRelationshipGroups;
 		if (relationshipGroups == null) {
-			Map<Integer, RelationshipGroup> groups = new HashMap<>();
-			//If we're including group 0, always add that in any event
-			for (Relationship r : getRelationships(characteristicType, ActiveState.ACTIVE)) {
+			if (index == null) {
+				relationshipGroups = collectRelationshipGroups(characteristicType, includeIsA);
+			} else {
+				relationshipGroups = collectRelationshipGroups(index, characteristicType, includeIsA);
+			}
+			if (characteristicType.equals(CharacteristicType.STATED_RELATIONSHIP)) {
+				statedRelationshipGroups = relationshipGroups;
+			} else {
+				inferredRelationshipGroups = relationshipGroups;
+			}
+		}
+		return relationshipGroups;
+	}
+	
+	private Collection<RelationshipGroup> collectRelationshipGroups(CharacteristicType characteristicType, boolean includeIsA) {
+		Map<Integer, RelationshipGroup> groups = new HashMap<>();
+		for (Relationship r : getRelationships(characteristicType, ActiveState.ACTIVE)) {
+			if (!includeIsA && r.getType().equals(IS_A)) {
+				continue;
+			}
+			//Do we know about this Relationship Group yet?
+			RelationshipGroup group = groups.get(r.getGroupId());
+			if (group == null) {
+				group = new RelationshipGroup(r.getGroupId() , r);
+				groups.put(r.getGroupId(), group);
+			} else {
+				group.getRelationships().add(r);
+			}
+		}
+		return groups.values();
+	}
+	
+	private Collection<RelationshipGroup> collectRelationshipGroups(RelationshipIndex index, CharacteristicType characteristicType, boolean includeIsA) {
+		//The index already holds the active relationships sorted by group
+		List<RelationshipGroup> groups = new ArrayList<>();
+		for (int groupId : index.getGroupIds(characteristicType)) {
+			RelationshipGroup group = null;
+			for (Relationship r : index.getGroup(characteristicType, groupId)) {
 				if (!includeIsA && r.getType().equals(IS_A)) {
 					continue;
 				}
-				//Do we know about this Relationship Group yet?
-				RelationshipGroup group = groups.get(r.getGroupId());
 				if (group == null) {
-					group = new RelationshipGroup(r.getGroupId() , r);
-					groups.put(r.getGroupId(), group);
+					group = new RelationshipGroup(groupId, r);
+					groups.add(group);
 				} else {
 					group.getRelationships().add(r);
 				}
 			}
-			relationshipGroups = groups.values();
-			if (characteristicType.equals(CharacteristicType.STATED_RELATIONSHIP)) {
-				statedRelationshipGroups = relationshipGroups;
-			} else {
-				inferredRelationshipGroups = relationshipGroups;
-			}
 		}
-		return relationshipGroups;
+		return groups;
 	}
 
 	public int addRelationshipGroup(RelationshipGroup group, Set<Relationship> availableForReuse) {
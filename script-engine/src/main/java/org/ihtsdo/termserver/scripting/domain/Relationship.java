@@ -59,6 +59,9 @@ public class Relationship extends Component implements IRelationshipTemplate, RF
 	
 	private String deletionEffectiveTime;
 	
+	//The set holding this relationship, whose index needs rebuilding when it changes
+	transient RelationshipIndex.RelationshipSet indexOwner;
+	
 	public static final String[] rf2Header = new String[] {"id","effectiveTime","active","moduleId","sourceId","destinationId",
 															"relationshipGroup","typeId","characteristicTypeId","modifierId"};
 
@@ -127,8 +130,15 @@ public class Relationship extends Component implements IRelationshipTemplate, RF
 			this.effectiveTime = null;
 			setDirty();
 		}
+		if (this.active == null || this.active != newActiveState) {
+			RelationshipIndex.relationshipChanged(this);
+		}
 		this.active = newActiveState;
 	}
+	
+	boolean hasActiveState() {
+		return active != null;
+	}
 
 	public String getRelationshipId() {
 		return relationshipId;
@@ -143,6 +153,9 @@ public class Relationship extends Component implements IRelationshipTemplate, RF
 	}
 
 	public void setType(Concept type) {
+		if (this.type != type) {
+			RelationshipIndex.relationshipChanged(this);
+		}
 		this.type = type;
 	}
 
@@ -167,6 +180,9 @@ public class Relationship extends Component implements IRelationshipTemplate, RF
 	}
 
 	public void setGroupId(int groupId) {
+		if (this.groupId != groupId) {
+			RelationshipIndex.relationshipChanged(this);
+		}
 		this.groupId = groupId;
 	}
 
@@ -175,6 +191,9 @@ public class Relationship extends Component implements IRelationshipTemplate, RF
 	}
 
 	public void setCharacteristicType(CharacteristicType characteristicType) {
+		if (this.characteristicType != characteristicType) {
+			RelationshipIndex.relationshipChanged(this);
+		}
 		this.characteristicType = characteristicType;
 	}
 
@@ -0,0 +1,360 @@
+package org.ihtsdo.termserver.scripting.domain;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read optimised snapshot of a concept's relationships.  Each characteristic type
+ * has a single array holding the active relationships followed by the inactive ones,
+ * each sorted by group, so that asking for (say) the active stated relationships in
+ * group 2 is a range of that array rather than a scan of every relationship.
+ *
+ * The index is only valid while neither the concept's relationship set nor the
+ * state of any relationship in it has changed since it was built.  Each relationship
+ * knows the set it was added to, and counts a change against that set, so only the
+ * concept that was modified rebuilds its index.  A relationship object added to more
+ * than one set can't tell which concepts it affects, so its changes fall back to a
+ * global count which invalidates every index.
+ *
+ * The index holds each relationship twice, once for its characteristic type and once
+ * for ALL, which is two array slots per relationship on top of the set.  The set is
+ * kept because callers add and remove relationships through the concept's Set.
+ */
+class RelationshipIndex implements RF2Constants {
+
+	//Changes to relationships held in more than one set
+	private static final AtomicLong sharedRelationshipVersion = new AtomicLong();
+	
+	//Owner of relationships that have been added to more than one set
+	private static final RelationshipSet SHARED = new RelationshipSet();
+
+	private static final Comparator<Relationship> PARTITION_ORDER =
+			Comparator.comparing((Relationship r) -> !r.isActive())
+			.thenComparingInt(Relationship::getGroupId);
+
+	private final RelationshipSet source;
+	private final int sourceModCount;
+	private final long version;
+
+	//Indexed by CharacteristicType ordinal, including ALL
+	private final Partition[] partitions;
+
+	private RelationshipIndex(RelationshipSet source, int sourceModCount, long version, Partition[] partitions) {
+		this.source = source;
+		this.sourceModCount = sourceModCount;
+		this.version = version;
+		this.partitions = partitions;
+	}
+
+	/**
+	 * Called whenever an attribute that the index is partitioned on changes
+	 */
+	static void relationshipChanged(Relationship r) {
+		RelationshipSet owner = r.indexOwner;
+		if (owner == SHARED) {
+			sharedRelationshipVersion.incrementAndGet();
+		} else if (owner != null) {
+			owner.modCount++;
+		}
+	}
+
+	/**
+	 * @return an index of the relationships or null if they cannot be indexed, in
+	 * which case the caller should fall back to scanning the relationships directly.
+	 */
+	static RelationshipIndex build(Set<Relationship> relationships) {
+		if (!(relationships instanceof RelationshipSet)) {
+			return null;
+		}
+		RelationshipSet source = (RelationshipSet)relationships;
+		//Take the version before reading, so that any change made during the build invalidates it
+		long version = sharedRelationshipVersion.get();
+		int sourceModCount = source.modCount;
+
+		CharacteristicType[] charTypes = CharacteristicType.values();
+		List<List<Relationship>> byCharType = new ArrayList<>(charTypes.length);
+		for (int i = 0; i < charTypes.length; i++) {
+			byCharType.add(new ArrayList<>());
+		}
+		List<Relationship> all = byCharType.get(CharacteristicType.ALL.ordinal());
+		for (Relationship r : source) {
+			if (!r.hasActiveState()) {
+				return null;
+			}
+			all.add(r);
+			if (r.getCharacteristicType() != null && r.getCharacteristicType() != CharacteristicType.ALL) {
+				byCharType.get(r.getCharacteristicType().ordinal()).add(r);
+			}
+		}
+
+		Partition[] partitions = new Partition[charTypes.length];
+		for (int i = 0; i < charTypes.length; i++) {
+			partitions[i] = new Partition(byCharType.get(i));
+		}
+		return new RelationshipIndex(source, sourceModCount, version, partitions);
+	}
+
+	boolean isCurrent(Set<Relationship> relationships) {
+		return relationships == source
+				&& source.modCount == sourceModCount
+				&& version == sharedRelationshipVersion.get();
+	}
+
+	List<Relationship> getRelationships(CharacteristicType charType, ActiveState activeState) {
+		Partition p = partitions[charType.ordinal()];
+		switch (activeState) {
+			case ACTIVE : return p.active;
+			case INACTIVE : return p.inactive;
+			default : return p.all;
+		}
+	}
+
+	/**
+	 * @return the active relationships of the given characteristic type in the given group
+	 */
+	List<Relationship> getGroup(CharacteristicType charType, int groupId) {
+		Partition p = partitions[charType.ordinal()];
+		int idx = Arrays.binarySearch(p.groupIds, groupId);
+		return idx < 0 ? Collections.emptyList() : p.groups[idx];
+	}
+
+	/**
+	 * @return the distinct group numbers of the active relationships, in ascending order
+	 */
+	int[] getGroupIds(CharacteristicType charType) {
+		return partitions[charType.ordinal()].groupIds;
+	}
+
+	private static class Partition {
+		final List<Relationship> all;
+		final List<Relationship> active;
+		final List<Relationship> inactive;
+		final int[] groupIds;
+		final List<Relationship>[] groups;
+
+		@SuppressWarnings("unchecked")
+		Partition(List<Relationship> relationships) {
+			Relationship[] members = relationships.toArray(new Relationship[relationships.size()]);
+			Arrays.sort(members, PARTITION_ORDER);
+			int activeCount = 0;
+			int groupCount = 0;
+			while (activeCount < members.length && members[activeCount].isActive()) {
+				if (activeCount == 0 || members[activeCount].getGroupId() != members[activeCount - 1].getGroupId()) {
+					groupCount++;
+				}
+				activeCount++;
+			}
+			all = new ArrayView(members, 0, members.length);
+			active = new ArrayView(members, 0, activeCount);
+			inactive = new ArrayView(members, activeCount, members.length);
+
+			groupIds = new int[groupCount];
+			groups = new List[groupCount];
+			int groupStart = 0;
+			for (int g = 0; g < groupCount; g++) {
+				int groupEnd = groupStart + 1;
+				while (groupEnd < activeCount && members[groupEnd].getGroupId() == members[groupStart].getGroupId()) {
+					groupEnd++;
+				}
+				groupIds[g] = members[groupStart].getGroupId();
+				groups[g] = new ArrayView(members, groupStart, groupEnd);
+				groupStart = groupEnd;
+			}
+		}
+	}
+
+	/**
+	 * @return a set of the relationships of the given characteristic type and active state.
+	 * The set reads straight from the index, and only copies the relationships into a set of
+	 * its own if the caller modifies it, so callers that only read it don't pay for a copy.
+	 */
+	Set<Relationship> getRelationshipSet(CharacteristicType charType, ActiveState activeState) {
+		return new CopyOnWriteSet(getRelationships(charType, activeState));
+	}
+
+	private static class CopyOnWriteSet extends AbstractSet<Relationship> {
+		//Taken from a set, so holds no duplicates
+		private final List<Relationship> members;
+		private Set<Relationship> copy;
+
+		CopyOnWriteSet(List<Relationship> members) {
+			this.members = members;
+		}
+
+		private Set<Relationship> writable() {
+			if (copy == null) {
+				copy = new HashSet<>(members);
+			}
+			return copy;
+		}
+
+		@Override
+		public Iterator<Relationship> iterator() {
+			if (copy != null) {
+				return copy.iterator();
+			}
+			Iterator<Relationship> it = members.iterator();
+			return new Iterator<Relationship>() {
+				private Relationship last;
+
+				@Override
+				public boolean hasNext() {
+					return it.hasNext();
+				}
+
+				@Override
+				public Relationship next() {
+					last = it.next();
+					return last;
+				}
+
+				@Override
+				public void remove() {
+					if (last == null) {
+						throw new IllegalStateException();
+					}
+					writable().remove(last);
+					last = null;
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return copy == null ? members.size() : copy.size();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return copy == null ? members.contains(o) : copy.contains(o);
+		}
+
+		@Override
+		public boolean add(Relationship r) {
+			return writable().add(r);
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			return writable().remove(o);
+		}
+
+		@Override
+		public void clear() {
+			writable().clear();
+		}
+	}
+
+	/**
+	 * Unmodifiable view of a range of the partition array, allocated once when the index is built
+	 */
+	private static class ArrayView extends AbstractList<Relationship> implements RandomAccess {
+		private final Relationship[] members;
+		private final int from;
+		private final int to;
+
+		ArrayView(Relationship[] members, int from, int to) {
+			this.members = members;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public Relationship get(int index) {
+			if (index < 0 || index >= to - from) {
+				throw new IndexOutOfBoundsException("Index " + index + " of " + size());
+			}
+			return members[from + index];
+		}
+
+		@Override
+		public int size() {
+			return to - from;
+		}
+	}
+
+	/**
+	 * HashSet which counts its own modifications so that an index built from it
+	 * can tell when it has gone stale.
+	 */
+	static class RelationshipSet extends HashSet<Relationship> {
+		private static final long serialVersionUID = 1L;
+
+		private transient volatile int modCount = 0;
+
+		RelationshipSet() {
+			super();
+		}
+
+		RelationshipSet(Collection<Relationship> relationships) {
+			super(relationships);
+		}
+
+		@Override
+		public boolean add(Relationship r) {
+			modCount++;
+			boolean added = super.add(r);
+			//If an equal relationship is already held, this object isn't part of the set
+			if (added && r != null && this != SHARED) {
+				if (r.indexOwner == null) {
+					r.indexOwner = this;
+				} else if (r.indexOwner != this) {
+					r.indexOwner = SHARED;
+				}
+			}
+			return added;
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			modCount++;
+			boolean removed = super.remove(o);
+			if (removed) {
+				released(o);
+			}
+			return removed;
+		}
+
+		@Override
+		public void clear() {
+			modCount++;
+			for (Relationship r : this) {
+				released(r);
+			}
+			super.clear();
+		}
+
+		//Changes to a relationship no longer in this set need not invalidate its index
+		private void released(Object o) {
+			if (o instanceof Relationship && ((Relationship)o).indexOwner == this) {
+				((Relationship)o).indexOwner = null;
+			}
+		}
+
+		@Override
+		public Iterator<Relationship> iterator() {
+			Iterator<Relationship> it = super.iterator();
+			return new Iterator<Relationship>() {
+				private Relationship last;
+
+				@Override
+				public boolean hasNext() {
+					return it.hasNext();
+				}
+
+				@Override
+				public Relationship next() {
+					last = it.next();
+					return last;
+				}
+
+				@Override
+				public void remove() {
+					modCount++;
+					it.remove();
+					released(last);
+				}
+			};
+		}
+	}
+}
@@ -2,6 +2,7 @@ package org.ihtsdo.termserver.scripting.fixes;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import javax.mail.*;
@@ -27,8 +28,9 @@ public abstract class BatchFix extends TermServerScript implements RF2Constants
 	
 	protected int taskSize = 10;
 	protected int wiggleRoom = 5;
-	protected int failureCount = 0;
-	protected int validationCount = 0;
+	//Components may be processed on several threads
+	protected final AtomicInteger failureCount = new AtomicInteger();
+	protected final AtomicInteger validationCount = new AtomicInteger();
 	protected int taskThrottle = 5;
 	protected int restartFromTask = NOT_SET;
 	protected int conceptThrottle = 2;
@@ -49,6 +51,7 @@ public abstract class BatchFix extends TermServerScript implements RF2Constants
 	protected List<Component> priorityComponents = new ArrayList<>();
 	protected int priorityBatchSize = 10;
 	private boolean firstTaskCreated = false;
+	private final Object taskCreationLock = new Object();
 	public static String DEFAULT_TASK_DESCRIPTION = "Batch Updates - see spreadsheet for details";
 	
 	protected BatchFix (BatchFix clone) {
@@ -210,30 +213,7 @@ public abstract class BatchFix extends TermServerScript implements RF2Constants
 					flushFilesSoft();  //Soft flush is optional
 				}
 				
-				if (!dryRun) {
-					populateEditPanel(task);
-					updateTask(task);
-					
-					Classification classification = null;
-					if (classifyTasks) {
-						info ("Classifying " + task);
-						classification = scaClient.classify(task.getKey());
-						debug(classification);
-					}
-					if (validateTasks) {
-						info ("Validating " + task);
-						Status status = scaClient.validate(task.getKey());
-						debug(status);
-					}
-					
-					if (classification != null) {
-						try {
-							tsClient.waitForCompletion(task.getBranchPath(), classification);
-						} catch (Exception e) {
-							error("Failed to wait for classification " + classification, e);
-						}
-					}
-				}
+				completeTask(task);
 			} catch (Exception e) {
 				throw new TermServerScriptException("Failed to process batch " + task.getSummary() + " on task " + task.getKey(), e);
 			}
@@ -248,8 +228,46 @@ public abstract class BatchFix extends TermServerScript implements RF2Constants
 	protected void onNewTask(Task task) {
 		// Override to do some processing for each new task;
 	}
+	
+	/**
+	 * Hand the task over to its author once all its components have been processed,
+	 * classifying and validating if required
+	 */
+	protected void completeTask(Task task) throws Exception {
+		if (!dryRun) {
+			populateEditPanel(task);
+			updateTask(task);
+			
+			Classification classification = null;
+			if (classifyTasks) {
+				info ("Classifying " + task);
+				classification = scaClient.classify(task.getKey());
+				debug(classification);
+			}
+			if (validateTasks) {
+				info ("Validating " + task);
+				Status status = scaClient.validate(task.getKey());
+				debug(status);
+			}
+			
+			if (classification != null) {
+				try {
+					tsClient.waitForCompletion(task.getBranchPath(), classification);
+				} catch (Exception e) {
+					error("Failed to wait for classification " + classification, e);
+				}
+			}
+		}
+	}
+
+	protected void createTask(Task task) throws TermServerScriptException, InterruptedException {
+		//Tasks may be created from several threads, but one at a time so the throttle still applies
+		synchronized (taskCreationLock) {
+			createTaskInTurn(task);
+		}
+	}
 
-	private void createTask(Task task) throws TermServerScriptException, InterruptedException {
+	private void createTaskInTurn(Task task) throws TermServerScriptException, InterruptedException {
 		if (!dryRun) {
 			if (firstTaskCreated) {
 				debug ("Letting TS catch up - " + taskThrottle + "s nap.");
@@ -293,7 +311,7 @@ public abstract class BatchFix extends TermServerScript implements RF2Constants
 		}
 	}
 
-	private void processComponent(Task task, Component component, int conceptInTask, String xOfY) throws TermServerScriptException {
+	protected void processComponent(Task task, Component component, int conceptInTask, String xOfY) throws TermServerScriptException {
 		try {
 			if (!dryRun && task.getComponents().indexOf(component) != 0) {
 				Thread.sleep(conceptThrottle * 1000);
@@ -311,15 +329,30 @@ public abstract class BatchFix extends TermServerScript implements RF2Constants
 			}
 			incrementSummaryInformation("Total changes made", changesMade);
 		} catch (ValidationFailure f) {
-			if (++validationCount > maxFailures) { 
-				warn ("Validation failures now " + validationCount);
+			int validations = validationCount.incrementAndGet();
+			if (validations > maxFailures) { 
+				warn ("Validation failures now " + validations);
 			}
 			report (f);
-		} catch (InterruptedException | TermServerScriptException e) {
-			report(task, component, Severity.CRITICAL, ReportActionType.API_ERROR, getMessage(e));
-			if (++failureCount >= maxFailures) {
-				throw new TermServerScriptException ("Failure count exceeded " + maxFailures, e);
-			}
+		} catch (InterruptedException e) {
+			//Keep the interrupt, so whoever is waiting on this thread knows to stop
+			Thread.currentThread().interrupt();
+			throw new TermServerScriptException("Interrupted while processing " + component, e);
+		} catch (TermServerScriptException e) {
+			componentFailed(task, component, e);
+		}
+		//Outside the try, so that a cancellation isn't reported as a failure of this component
+		countProcessed(1);
+	}
+	
+	/**
+	 * Records the failure of a single component.  By default the task carries on with
+	 * its remaining components, until maxFailures is reached.
+	 */
+	protected void componentFailed(Task task, Component component, Exception e) throws TermServerScriptException {
+		report(task, component, Severity.CRITICAL, ReportActionType.API_ERROR, getMessage(e));
+		if (failureCount.incrementAndGet() >= maxFailures) {
+			throw new TermServerScriptException ("Failure count exceeded " + maxFailures, e);
 		}
 	}
 
@@ -10,6 +10,8 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -25,10 +27,22 @@ import org.ihtsdo.termserver.scripting.util.SnomedUtils;
  * Reads from an RF2 Archive and uses the changes indicated to drive the 
  * TermServer browser API, with tasks grouped by criteria specified by 
  * the concrete class (or just randomly if run directly)
+ * 
+ * Changing concepts are played back in waves, such that the parents and 
+ * attribute targets of a concept are played before the concept itself.  The 
+ * tasks within a wave are independent of each other, so are played concurrently.
  */
 public class Rf2Player extends BatchFix {
 	
+	private static final int MAX_TASK_ATTEMPTS = 3;
+	
 	protected Map<String, ConceptChange> changingConcepts = new HashMap<String, ConceptChange>();
+	//Changing concepts referenced as parents or attribute values by each changing concept
+	protected Map<String, Set<String>> dependencies = new HashMap<String, Set<String>>();
+	protected List<List<Task>> taskWaves = new ArrayList<>();
+	protected int taskConcurrency = 3;
+	//Concepts saved to their task branch, so a retried task knows not to save them again
+	protected Set<String> savedConcepts = ConcurrentHashMap.newKeySet();
 	protected Map<String, Description> changingDescriptions = new HashMap<String, Description>();
 	protected Set<Concept> deltaModifications = new HashSet<Concept>();
 	protected List<String[]> langRefsetStorage = new ArrayList<String[]>();
@@ -48,6 +62,15 @@ public class Rf2Player extends BatchFix {
 		return processName;
 	}
 	
+	protected void init (String[] args) throws TermServerScriptException {
+		for (int i = 0; i < args.length - 1; i++) {
+			if (args[i].equals("-tc")) {
+				taskConcurrency = Integer.parseInt(args[i + 1]);
+			}
+		}
+		super.init(args);
+	}
+	
 	protected void playRf2Archive(String[] args) throws TermServerScriptException, FileNotFoundException {
 		try {
 			selfDetermining = true;
@@ -168,6 +191,9 @@ public class Rf2Player extends BatchFix {
 		}
 		CharacteristicType cType = isStated ? CharacteristicType.STATED_RELATIONSHIP : CharacteristicType.INFERRED_RELATIONSHIP;
 		gl.addRelationshipToConcept(cType, lineItems, true, null);
+		if (lineItems[REL_IDX_ACTIVE].equals("1")) {
+			dependencies.computeIfAbsent(sourceId, k -> new HashSet<>()).add(lineItems[REL_IDX_DESTINATIONID]);
+		}
 	}
 
 	private void processDescription(String[] lineItems) throws TermServerScriptException {
@@ -229,11 +255,329 @@ public class Rf2Player extends BatchFix {
 	}*/
 	
 
+	/**
+	 * Tasks are scheduled in the wave of their first concept.  A part filled task is topped
+	 * up from the next wave, as long as everything the added concept depends on will already
+	 * be in place, either earlier in the same task or in a wave that completes before it.
+	 */
+	@Override
+	protected Batch formIntoBatch (List<Component> allComponents) throws TermServerScriptException {
+		Batch batch = new Batch(getScriptName());
+		taskWaves.clear();
+		Map<String, Task> taskOf = new HashMap<>();
+		Map<Task, Integer> waveOf = new IdentityHashMap<>();
+		Task task = null;
+		for (List<Component> wave : formWaves(allComponents)) {
+			int waveNum = taskWaves.size();
+			List<Task> waveTasks = new ArrayList<>();
+			for (Component component : wave) {
+				if (task == null || task.size() >= taskSize 
+						|| (waveOf.get(task) < waveNum && !canTopUp(task, component, taskOf, waveOf))) {
+					task = batch.addNewTask(author_reviewer);
+					waveTasks.add(task);
+					waveOf.put(task, waveNum);
+				}
+				task.add(component);
+				taskOf.put(component.getId(), task);
+			}
+			if (!waveTasks.isEmpty()) {
+				taskWaves.add(waveTasks);
+			}
+		}
+		addSummaryInformation("Waves scheduled", taskWaves.size());
+		addSummaryInformation("Tasks scheduled", batch.getTasks().size());
+		addSummaryInformation(CONCEPTS_TO_PROCESS, allComponents.size());
+		return batch;
+	}
+	
+	private boolean canTopUp(Task task, Component component, Map<String, Task> taskOf, Map<Task, Integer> waveOf) {
+		for (String dependency : dependencies.getOrDefault(component.getId(), Collections.emptySet())) {
+			Task dependencyTask = taskOf.get(dependency);
+			if (dependencyTask != null && dependencyTask != task && waveOf.get(dependencyTask) >= waveOf.get(task)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Orders the changing concepts into waves, where every concept in a wave only
+	 * depends on changing concepts in earlier waves.  Concepts caught up in a cycle
+	 * are played together in a final wave.
+	 */
+	protected List<List<Component>> formWaves(List<Component> components) {
+		Map<String, Component> componentMap = new LinkedHashMap<>();
+		for (Component c : components) {
+			componentMap.put(c.getId(), c);
+		}
+		
+		Map<String, Integer> outstanding = new HashMap<>();
+		Map<String, List<String>> dependents = new HashMap<>();
+		for (String id : componentMap.keySet()) {
+			int count = 0;
+			for (String dependency : dependencies.getOrDefault(id, Collections.emptySet())) {
+				if (!dependency.equals(id) && componentMap.containsKey(dependency)) {
+					dependents.computeIfAbsent(dependency, k -> new ArrayList<>()).add(id);
+					count++;
+				}
+			}
+			outstanding.put(id, count);
+		}
+		
+		List<List<Component>> waves = new ArrayList<>();
+		List<String> ready = new ArrayList<>();
+		for (String id : componentMap.keySet()) {
+			if (outstanding.get(id) == 0) {
+				ready.add(id);
+			}
+		}
+		int placed = 0;
+		while (!ready.isEmpty()) {
+			List<Component> wave = new ArrayList<>();
+			List<String> nextReady = new ArrayList<>();
+			for (String id : ready) {
+				wave.add(componentMap.get(id));
+				for (String dependent : dependents.getOrDefault(id, Collections.emptyList())) {
+					if (outstanding.merge(dependent, -1, Integer::sum) == 0) {
+						nextReady.add(dependent);
+					}
+				}
+			}
+			waves.add(wave);
+			placed += wave.size();
+			ready = nextReady;
+		}
+		
+		if (placed < componentMap.size()) {
+			List<Component> cyclic = new ArrayList<>();
+			for (Map.Entry<String, Integer> entry : outstanding.entrySet()) {
+				if (entry.getValue() > 0) {
+					cyclic.add(componentMap.get(entry.getKey()));
+				}
+			}
+			warn(cyclic.size() + " concepts have circular dependencies and will be played in a final wave");
+			waves.add(cyclic);
+		}
+		return waves;
+	}
+	
+	@Override
+	protected void batchProcess(Batch batch) throws TermServerScriptException {
+		if (taskWaves.isEmpty()) {
+			//Batch was formed some other way, so we've no dependency information
+			super.batchProcess(batch);
+			return;
+		}
+		AtomicInteger threadCount = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(taskConcurrency, r -> new Thread(r, "rf2-player-" + threadCount.incrementAndGet()));
+		int tasksStarted = 0;
+		try {
+			for (int waveNum = 0; waveNum < taskWaves.size(); waveNum++) {
+				List<Task> wave = taskWaves.get(waveNum);
+				info ("Playing wave " + (waveNum + 1) + " of " + taskWaves.size() + " with " + wave.size() + " tasks");
+				Map<Task, Future<?>> playing = new LinkedHashMap<>();
+				for (Task task : wave) {
+					int taskNum = batch.getTasks().indexOf(task) + 1;
+					if (task.size() == 0) {
+						info ("Skipping Task " + task.getSummary() + " - no concepts to process");
+						continue;
+					} else if (selfDetermining && restartPosition > 1 && taskNum < restartPosition) {
+						//For self determining projects we'll restart based on a task count, rather than the line number in the input file
+						info ("Skipping Task " + task.getSummary() + " - restarting from task " + restartPosition);
+						continue;
+					} else if (restartFromTask != NOT_SET && taskNum < restartFromTask) {
+						info ("Skipping Task " + task.getSummary() + " - restarting from task " + restartFromTask);
+						continue;
+					} else if (task.size() > (taskSize + wiggleRoom)) {
+						warn (task + " contains " + task.size() + " concepts");
+					}
+					if (processingLimit > NOT_SET && tasksStarted >= processingLimit) {
+						info ("Processing limit of " + processingLimit + " tasks reached.  Stopping");
+						break;
+					}
+					tasksStarted++;
+					String xOfY = taskNum + " of " + batch.getTasks().size();
+					playing.put(task, executor.submit(() -> { playTask(task, xOfY); return null; }));
+				}
+				
+				//Later waves depend on this one, so wait for it to complete before moving on
+				List<String> failedTasks = new ArrayList<>();
+				for (Map.Entry<Task, Future<?>> entry : playing.entrySet()) {
+					try {
+						entry.getValue().get();
+					} catch (ExecutionException e) {
+						error("Failed to play " + entry.getKey().getSummary(), e.getCause());
+						failedTasks.add(entry.getKey().getSummary());
+					}
+				}
+				if (!failedTasks.isEmpty()) {
+					throw new TermServerScriptException("Stopping after wave " + (waveNum + 1) + " due to failed tasks: " + failedTasks);
+				}
+				if (processingLimit > NOT_SET && tasksStarted >= processingLimit) {
+					break;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TermServerScriptException("Interrupted while playing RF2 archive", e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Plays the task, retrying if it fails part way through.  Concepts that were 
+	 * saved on an earlier attempt are skipped.
+	 */
+	private void playTask(Task task, String xOfY) throws TermServerScriptException, InterruptedException {
+		for (int attempt = 1; ; attempt++) {
+			try {
+				onNewTask(task);
+				//A task whose branch was never created is remade from scratch
+				if (task.getKey() == null || task.getBranchPath() == null) {
+					createTask(task);
+					info ( (dryRun?"Dry Run " : "Created ") + "task (" + xOfY + "): " + task.getBranchPath());
+					incrementSummaryInformation("Tasks created",1);
+				}
+				int conceptInTask = 0;
+				for (Component component : new ArrayList<>(task.getComponents())) {
+					processComponent(task, component, ++conceptInTask, xOfY);
+				}
+				completeTask(task);
+				flushFilesSoft();
+				return;
+			} catch (InterruptedException e) {
+				throw e;
+			} catch (Exception e) {
+				//Cancelled rather than failed, so don't try again
+				if (Thread.currentThread().isInterrupted()) {
+					throw new InterruptedException("Interrupted while playing task " + task.getSummary());
+				}
+				if (attempt >= MAX_TASK_ATTEMPTS) {
+					throw new TermServerScriptException("Failed to play task " + task.getSummary() + " after " + attempt + " attempts", e);
+				}
+				warn ("Task " + task.getSummary() + " failed (" + e.getMessage() + "), retrying...");
+				Thread.sleep(taskThrottle * 1000L * attempt);
+			}
+		}
+	}
+	
+	//Tasks are played on multiple threads, but report rows and totals are shared
+	@Override
+	public synchronized void report(Task task, Component component, Severity severity, ReportActionType actionType, Object... details) throws TermServerScriptException {
+		super.report(task, component, severity, actionType, details);
+	}
+	
+	@Override
+	public synchronized void incrementSummaryInformation(String key, int incrementAmount) {
+		super.incrementSummaryInformation(key, incrementAmount);
+	}
+	
+	@Override
+	public synchronized void flushFilesSoft() throws TermServerScriptException {
+		super.flushFilesSoft();
+	}
+	
+	/**
+	 * A concept that couldn't be played fails its task, so that the task is retried rather
+	 * than later waves being played against a missing change.
+	 */
+	@Override
+	protected void componentFailed(Task task, Component component, Exception e) throws TermServerScriptException {
+		super.componentFailed(task, component, e);
+		throw new TermServerScriptException("Failed to play " + component + " in task " + task.getSummary(), e);
+	}
+	
+	/**
+	 * @return true if the changes for this concept are already present, for example
+	 * because a previous run was interrupted after this concept was saved
+	 */
+	boolean isAtTargetState(Concept loadedConcept, ConceptChange conceptChanges) throws TermServerScriptException {
+		if (conceptChanges.isModified()) {
+			if (loadedConcept.isActive() != conceptChanges.isActive() 
+					|| !loadedConcept.getDefinitionStatus().equals(conceptChanges.getDefinitionStatus())) {
+				return false;
+			}
+			//We don't hold the inactivation indicator and associations that should go with an 
+			//inactivation, so can't tell if they're in place.  Only a recorded save will do.
+			if (!conceptChanges.isActive()) {
+				return false;
+			}
+		}
+		for (Description d : conceptChanges.getDescriptions()) {
+			if (!isAtTargetState(loadedConcept, d)) {
+				return false;
+			}
+		}
+		for (Relationship r : conceptChanges.getRelationships()) {
+			if (!isAtTargetState(loadedConcept, r)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private boolean isAtTargetState(Concept loadedConcept, Description d) throws TermServerScriptException {
+		if (d.isActive()) {
+			Description loadedDescription = getMatchingDescription(loadedConcept, d);
+			return loadedDescription != null 
+					&& loadedDescription.getCaseSignificance() == d.getCaseSignificance()
+					&& hasTargetAcceptability(loadedDescription, d);
+		}
+		Description loadedDescription = loadedConcept.getDescription(d.getDescriptionId());
+		return loadedDescription == null || (!loadedDescription.isActive() 
+				&& (d.getInactivationIndicator() == null || d.getInactivationIndicator().equals(loadedDescription.getInactivationIndicator())));
+	}
+	
+	/**
+	 * @return the active description with the same term, type and language as the 
+	 * target description, ignoring case significance and acceptability, which may change 
+	 */
+	private Description getMatchingDescription(Concept loadedConcept, Description d) {
+		for (Description loadedDescription : loadedConcept.getDescriptions(ActiveState.ACTIVE)) {
+			if (loadedDescription.getTerm().equals(d.getTerm())
+					&& loadedDescription.getType() == d.getType()
+					&& d.getLang().equals(loadedDescription.getLang())) {
+				return loadedDescription;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @return true if the loaded description has the acceptability given by each of the
+	 * langrefset rows in the delta for the target description
+	 */
+	private boolean hasTargetAcceptability(Description loadedDescription, Description d) throws TermServerScriptException {
+		for (LangRefsetEntry lang : d.getLangRefsetEntries()) {
+			if (d.getAcceptability(lang.getRefsetId()) != loadedDescription.getAcceptability(lang.getRefsetId())) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private boolean isAtTargetState(Concept loadedConcept, Relationship r) {
+		if (r.isActive()) {
+			return !loadedConcept.getRelationships(r.getCharacteristicType(), r.getType(), r.getTarget(), r.getGroupId(), ActiveState.ACTIVE).isEmpty();
+		}
+		Relationship loadedRelationship = r.getRelationshipId() == null ? null : loadedConcept.getRelationship(r.getRelationshipId());
+		return loadedRelationship == null || !loadedRelationship.isActive();
+	}
+
 	@Override
 	public int doFix(Task t, Concept concept, String info) throws TermServerScriptException {
 		Concept loadedConcept = null;
+		if (savedConcepts.contains(concept.getConceptId())) {
+			report (t, concept, Severity.LOW, ReportActionType.SKIPPING, "Concept saved by an earlier attempt at this task");
+			return 0;
+		}
 		try{
 			loadedConcept = loadConcept(concept, t.getBranchPath());
+			if (isAtTargetState(loadedConcept, (ConceptChange)concept)) {
+				report (t, loadedConcept, Severity.LOW, ReportActionType.SKIPPING, "Concept already at target state");
+				return 0;
+			}
 			if (hasUnpublishedRelationships(loadedConcept, CharacteristicType.STATED_RELATIONSHIP)) {
 				report (t, loadedConcept, Severity.HIGH, ReportActionType.VALIDATION_CHECK, "Recent stated relationship edits detected on this concept");
 				if (!allowRecentChanges) {
@@ -256,12 +600,12 @@ public class Rf2Player extends BatchFix {
 			if (e.getCause() != null && e.getCause().getCause() != null) {
 				additionalInfo = " - " + e.getCause().getCause().getMessage().replaceAll(COMMA, " ").replaceAll(QUOTE, "'");
 			} 
-			report(t, concept, Severity.CRITICAL, ReportActionType.API_ERROR, "Failed to make changes to concept " + concept.toString() + ": " + e.getClass().getSimpleName()  + " - " + additionalInfo);
-			e.printStackTrace();
-			return 0;
+			//Reported by componentFailed, which will have the task retried
+			throw new TermServerScriptException("Failed to make changes to concept " + concept.toString() + ": " + e.getClass().getSimpleName()  + additionalInfo, e);
 		}
 		
 		updateConcept(t, loadedConcept, info);
+		savedConcepts.add(concept.getConceptId());
 		return CHANGE_MADE;
 	}
 
@@ -277,8 +621,26 @@ public class Rf2Player extends BatchFix {
 	private void fixDescriptions(Task task, Concept loadedConcept, List<Description> descriptions) throws TermServerScriptException {
 		for (Description d : descriptions) {
 			//Are we adding or deleting a description?
+			if (isAtTargetState(loadedConcept, d)) {
+				//Already applied, perhaps by an earlier attempt at this task
+				continue;
+			}
 			if (d.isActive()) {
-				//TODO Check description doesn't already exist
+				Description loadedDescription = getMatchingDescription(loadedConcept, d);
+				if (loadedDescription != null) {
+					//Already present, but with a different case significance or acceptability
+					loadedDescription.setCaseSignificance(d.getCaseSignificance());
+					for (LangRefsetEntry lang : d.getLangRefsetEntries()) {
+						Acceptability acceptability = d.getAcceptability(lang.getRefsetId());
+						if (acceptability == null) {
+							loadedDescription.removeAcceptability(lang.getRefsetId());
+						} else {
+							loadedDescription.setAcceptablity(lang.getRefsetId(), acceptability);
+						}
+					}
+					report (task, loadedConcept, Severity.LOW, ReportActionType.DESCRIPTION_CHANGE_MADE, loadedDescription.toString());
+					continue;
+				}
 				//Remove the sctid so that the TS notices it has a new description
 				d.setDescriptionId(null);
 				d.setEffectiveTime(null);
@@ -302,8 +664,10 @@ public class Rf2Player extends BatchFix {
 	private void fixRelationships(Task task, Concept loadedConcept, Set<Relationship> relationships) throws TermServerScriptException {
 		for (Relationship r : relationships) {
 			//Are we adding or deleting a Relationship?
+			if (isAtTargetState(loadedConcept, r)) {
+				continue;
+			}
 			if (r.isActive()) {
-				//TODO Check relationship doesn't already exist
 				//Remove the sctid so that the TS notices it has a new relationship
 				r.setRelationshipId(null);
 				r.setEffectiveTime(null);
@@ -1,11 +1,9 @@
 package org.ihtsdo.termserver.scripting.refset;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 import org.apache.commons.lang.ArrayUtils;
-import org.apache.commons.lang.StringUtils;
 import org.ihtsdo.otf.exception.TermServerScriptException;
 import org.ihtsdo.termserver.scripting.TermServerScript;
 import org.ihtsdo.termserver.scripting.domain.*;
@@ -69,30 +67,21 @@ public abstract class RefsetGenerator extends TermServerScript {
 	abstract void generateMembers() throws TermServerScriptException;
 
 	protected void outputRefset () throws TermServerScriptException {
-		try(	OutputStreamWriter osw = new OutputStreamWriter(new FileOutputStream(outputName, true), StandardCharsets.UTF_8);
-				BufferedWriter bw = new BufferedWriter(osw);
-				PrintWriter out = new PrintWriter(bw))
-		{
-			int columnCount = REF_IDX_REFCOMPID + additionalColumnsCount + 2;  //Count is one higher than max index, plus 1 for line ending.
-			for (RefsetMember member : refsetMembers) {
-				
-				String [] columns = new String[columnCount];
-				columns[REF_IDX_ID] = UUID.randomUUID().toString();
-				columns[REF_IDX_EFFECTIVETIME] = effectiveDate;
-				columns[REF_IDX_ACTIVE] = "1";
-				columns[REF_IDX_MODULEID] = moduleId;
-				columns[REF_IDX_REFSETID] = member.getRefsetId();
-				columns[REF_IDX_REFCOMPID] = member.getReferencedComponentId().getConceptId();
-				for (int i = 0; i < additionalColumnsCount ; i++) {
-					columns [REF_IDX_FIRST_ADDITIONAL + i] = member.getAdditionalValues()[i];
-				}
-				columns[columnCount -1] = LINE_DELIMITER;
-				String line = StringUtils.join(columns, TSV_FIELD_DELIMITER);
-				out.print(line);
+		int columnCount = REF_IDX_REFCOMPID + additionalColumnsCount + 1;  //Count is one higher than max index
+		for (RefsetMember member : refsetMembers) {
+			Object[] columns = new Object[columnCount];
+			columns[REF_IDX_ID] = UUID.randomUUID().toString();
+			columns[REF_IDX_EFFECTIVETIME] = effectiveDate;
+			columns[REF_IDX_ACTIVE] = "1";
+			columns[REF_IDX_MODULEID] = moduleId;
+			columns[REF_IDX_REFSETID] = member.getRefsetId();
+			columns[REF_IDX_REFCOMPID] = member.getReferencedComponentId().getConceptId();
+			for (int i = 0; i < additionalColumnsCount ; i++) {
+				columns [REF_IDX_FIRST_ADDITIONAL + i] = member.getAdditionalValues()[i];
 			}
-		} catch (Exception e) {
-			throw new TermServerScriptException("Unable to output refset due to " + e.getClass().getName() + ": " + e.getMessage(), e);
+			writeToRF2File(outputName, columns);
 		}
+		getRF2Manager().flushFiles(true);
 	}
 
 	public String[] getAdditionalHeaders() {
@@ -89,7 +89,7 @@ public class AttributeDetails extends TermServerReport implements ReportClass {
 				countIssue(c);
 			} else {
 				String characteristicStr = "";
-				for (Relationship r : c.getRelationships(CharacteristicType.INFERRED_RELATIONSHIP, ActiveState.ACTIVE)) {
+				for (Relationship r : c.getRelationshipView(CharacteristicType.INFERRED_RELATIONSHIP, ActiveState.ACTIVE)) {
 					if (r.getType().equals(IS_A)) {
 						continue;
 					}
@@ -100,7 +100,7 @@ public class AttributeDetails extends TermServerReport implements ReportClass {
 					report (c, r, defStatus, characteristicStr);
 				}
 				//Are there any relationships which are only stated?
-				for (Relationship r : c.getRelationships(CharacteristicType.STATED_RELATIONSHIP, ActiveState.ACTIVE)) {
+				for (Relationship r : c.getRelationshipView(CharacteristicType.STATED_RELATIONSHIP, ActiveState.ACTIVE)) {
 					if (r.getType().equals(IS_A)) {
 						continue;
 					}
@@ -1,14 +1,20 @@
 package org.ihtsdo.termserver.scripting.reports;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
 
 import org.ihtsdo.otf.exception.TermServerScriptException;
+import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Component.ComponentType;
+import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Project;
 import org.ihtsdo.termserver.scripting.ReportClass;
 import org.ihtsdo.termserver.scripting.dao.ReportSheetManager;
 import org.ihtsdo.termserver.scripting.domain.*;
 import org.ihtsdo.termserver.scripting.service.TraceabilityService;
+import org.ihtsdo.termserver.scripting.snapshot.SnapshotChange;
+import org.ihtsdo.termserver.scripting.snapshot.SnapshotChange.ChangeType;
+import org.ihtsdo.termserver.scripting.snapshot.SnapshotDiffer;
 import org.ihtsdo.termserver.scripting.util.SnomedUtils;
 import org.ihtsdo.termserver.scripting.util.StringUtils;
 import org.snomed.otf.scheduler.domain.*;
@@ -16,6 +22,9 @@ import org.snomed.otf.scheduler.domain.Job.ProductionStatus;
 
 public class ConceptChanged extends TermServerReport implements ReportClass {
 	
+	public static final String PREV_RELEASE = "Previous Release";
+	public static final String THIS_RELEASE = "This Release";
+	
 	private Set<Concept> newConcepts = new HashSet<>();
 	private Set<Concept> inactivatedConcepts = new HashSet<>();
 	private Set<Concept> defStatusChanged = new HashSet<>();
@@ -34,6 +43,9 @@ public class ConceptChanged extends TermServerReport implements ReportClass {
 	private Set<Concept> wasTargetOfLostInferredRelationship = new HashSet<>();
 	
 	TraceabilityService traceability;
+	String prevRelease;
+	String thisRelease;
+	Set<Concept> conceptsOfInterest;
 	
 	public static void main(String[] args) throws TermServerScriptException, IOException {
 		Map<String, String> params = new HashMap<>();
@@ -45,9 +57,28 @@ public class ConceptChanged extends TermServerReport implements ReportClass {
 		ReportSheetManager.setMaxColumns(18);
 		getArchiveManager().setPopulateReleasedFlag(true);
 		subHierarchyECL = run.getParamValue(ECL);
+		prevRelease = run.getParamValue(PREV_RELEASE);
+		thisRelease = run.getParamValue(THIS_RELEASE);
+		if (StringUtils.isEmpty(prevRelease) != StringUtils.isEmpty(thisRelease)) {
+			throw new TermServerScriptException("Previous and this release must either both be specified, or neither");
+		}
 		super.init(run);
 	}
 	
+	private boolean isReleaseComparison() {
+		return !StringUtils.isEmpty(thisRelease);
+	}
+	
+	@Override
+	protected void loadProjectSnapshot(boolean fsnOnly) throws TermServerScriptException, InterruptedException, IOException {
+		if (isReleaseComparison()) {
+			//Only the current release needs to be held in memory, the previous one is streamed from disk
+			setProject(new Project(thisRelease));
+			getArchiveManager().setLoadEditionArchive(true);
+		}
+		super.loadProjectSnapshot(fsnOnly);
+	}
+	
 	public void postInit() throws TermServerScriptException {
 		String[] columnHeadings = new String[] {
 				"Id, FSN, SemTag, Active, DefStatusChanged, Author, Task, Creation Date",
@@ -71,11 +102,15 @@ public class ConceptChanged extends TermServerReport implements ReportClass {
 	public Job getJob() {
 		JobParameters params = new JobParameters()
 				.add(ECL).withType(JobParameter.Type.ECL).withDefaultValue("<< " + ROOT_CONCEPT)
+				.add(PREV_RELEASE).withType(JobParameter.Type.STRING)
+				.add(THIS_RELEASE).withType(JobParameter.Type.STRING)
 				.build();
 		return new Job()
 				.withCategory(new JobCategory(JobType.REPORT, JobCategory.RELEASE_STATS))
 				.withName("Concepts Changed")
-				.withDescription("This report lists all concepts changed in the current release cycle, optionally restricted to a subset defined by an ECL expression.  The issue count here is the total number of concepts featuring one change or another.")
+				.withDescription("This report lists all concepts changed in the current release cycle, optionally restricted to a subset defined by an ECL expression.  " +
+						"Alternatively, specify two releases stored in S3 (eg SnomedCT_InternationalRF2_PRODUCTION_20200131T120000Z.zip) to list the concepts changed between them.  " +
+						"The issue count here is the total number of concepts featuring one change or another.")
 				.withProductionStatus(ProductionStatus.PROD_READY)
 				.withParameters(params)
 				.withTag(INT)
@@ -84,7 +119,11 @@ public class ConceptChanged extends TermServerReport implements ReportClass {
 	}
 	
 	public void runJob() throws TermServerScriptException {
-		examineConcepts();
+		if (isReleaseComparison()) {
+			compareReleases();
+		} else {
+			examineConcepts();
+		}
 		reportConceptsChanged();
 		determineUniqueCountAndTraceability();
 		traceability.flush();
@@ -191,6 +230,131 @@ public class ConceptChanged extends TermServerReport implements ReportClass {
 		}
 	}
 	
+	private void compareReleases() throws TermServerScriptException {
+		if (subHierarchyECL != null && !subHierarchyECL.isEmpty()) {
+			conceptsOfInterest = new HashSet<>(findConcepts(subHierarchyECL));
+		}
+		File previous = getArchiveManager().getReleaseArchive(prevRelease);
+		File current = getArchiveManager().getReleaseArchive(thisRelease);
+		new SnapshotDiffer().addListener(this::recordChange).compare(previous, current);
+		
+		//As when examining the delta, we don't report changes on brand new concepts
+		for (Set<Concept> changed : Arrays.asList(defStatusChanged, hasNewStatedRelationships, hasNewInferredRelationships,
+				hasLostStatedRelationships, hasLostInferredRelationships, hasNewDescriptions, hasChangedDescriptions,
+				hasLostDescriptions, hasChangedAssociations, hasChangedInactivationIndicators)) {
+			changed.removeAll(newConcepts);
+		}
+	}
+	
+	private void recordChange(SnapshotChange change) throws TermServerScriptException {
+		ComponentType componentType = change.getComponentType();
+		ChangeType changeType = change.getChangeType();
+		if (componentType == null || changeType == ChangeType.MISSING) {
+			return;
+		}
+		String[] row = change.getCurrent();
+		if (!inScope(row[IDX_MODULEID])) {
+			return;
+		}
+		
+		switch (componentType) {
+			case CONCEPT :
+				Concept c = getConceptOfInterest(row[IDX_ID]);
+				if (c == null) {
+					return;
+				} else if (changeType == ChangeType.NEW) {
+					newConcepts.add(c);
+				} else if (changeType == ChangeType.INACTIVATED) {
+					inactivatedConcepts.add(c);
+				} else if (changeType == ChangeType.ATTRIBUTE_CHANGED && c.isActive()) {
+					defStatusChanged.add(c);
+				}
+				break;
+			case DESCRIPTION :
+			case TEXT_DEFINITION :
+				recordDescriptionChange(changeType, row);
+				break;
+			case STATED_RELATIONSHIP :
+				recordRelationshipChange(changeType, row, hasNewStatedRelationships, isTargetOfNewStatedRelationship,
+						hasLostStatedRelationships, wasTargetOfLostStatedRelationship);
+				break;
+			case INFERRED_RELATIONSHIP :
+				recordRelationshipChange(changeType, row, hasNewInferredRelationships, isTargetOfNewInferredRelationship,
+						hasLostInferredRelationships, wasTargetOfLostInferredRelationship);
+				break;
+			case AXIOM :
+				Concept axiomConcept = getConceptOfInterest(row[REF_IDX_REFCOMPID]);
+				if (axiomConcept != null) {
+					if (changeType == ChangeType.INACTIVATED) {
+						hasLostStatedRelationships.add(axiomConcept);
+					} else if (changeType != ChangeType.MODULE_MOVED) {
+						hasNewStatedRelationships.add(axiomConcept);
+					}
+				}
+				break;
+			case ATTRIBUTE_VALUE :
+				addIfOfInterest(hasChangedInactivationIndicators, row[REF_IDX_REFCOMPID]);
+				break;
+			case HISTORICAL_ASSOCIATION :
+				addIfOfInterest(hasChangedAssociations, row[REF_IDX_REFCOMPID]);
+				break;
+			default :
+				//Language refset changes are not reported here
+				break;
+		}
+	}
+	
+	private void recordDescriptionChange(ChangeType changeType, String[] row) throws TermServerScriptException {
+		Concept c = getConceptOfInterest(row[DES_IDX_CONCEPTID]);
+		if (c == null || changeType == ChangeType.MODULE_MOVED) {
+			return;
+		}
+		boolean isNew = changeType == ChangeType.NEW;
+		boolean wasInactivated = changeType == ChangeType.INACTIVATED;
+		if (isNew) {
+			hasNewDescriptions.add(c);
+		} else if (wasInactivated) {
+			hasLostDescriptions.add(c);
+		} else {
+			hasChangedDescriptions.add(c);
+		}
+		//Only changes on previously released concepts are detailed
+		if (!newConcepts.contains(c)) {
+			Description d = gl.getDescription(row[IDX_ID], false, false);
+			report (SENARY_REPORT, c, d == null ? row[IDX_ID] : d, isNew, !isNew && !wasInactivated, wasInactivated);
+		}
+	}
+	
+	private void recordRelationshipChange(ChangeType changeType, String[] row, Set<Concept> hasNew, Set<Concept> isTargetOfNew,
+			Set<Concept> hasLost, Set<Concept> wasTargetOfLost) throws TermServerScriptException {
+		if (changeType == ChangeType.NEW || changeType == ChangeType.REACTIVATED) {
+			addIfOfInterest(hasNew, row[REL_IDX_SOURCEID]);
+			addIfOfInterest(isTargetOfNew, row[REL_IDX_DESTINATIONID]);
+		} else if (changeType == ChangeType.INACTIVATED) {
+			addIfOfInterest(hasLost, row[REL_IDX_SOURCEID]);
+			addIfOfInterest(wasTargetOfLost, row[REL_IDX_DESTINATIONID]);
+		}
+	}
+	
+	private void addIfOfInterest(Set<Concept> changed, String conceptId) throws TermServerScriptException {
+		Concept c = getConceptOfInterest(conceptId);
+		if (c != null) {
+			changed.add(c);
+		}
+	}
+	
+	private Concept getConceptOfInterest(String conceptId) throws TermServerScriptException {
+		//Refset members may refer to descriptions, which we're not interested in here
+		if (!SnomedUtils.isConceptSctid(conceptId)) {
+			return null;
+		}
+		Concept c = gl.getConcept(conceptId, false, false);
+		if (c == null || (conceptsOfInterest != null && !conceptsOfInterest.contains(c))) {
+			return null;
+		}
+		return c;
+	}
+	
 	private void reportConceptsChanged() throws TermServerScriptException {
 		HashSet<Concept> superSet = new HashSet<>();
 		superSet.addAll(newConcepts);
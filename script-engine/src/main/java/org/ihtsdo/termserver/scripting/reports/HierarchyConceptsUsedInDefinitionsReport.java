@@ -69,7 +69,7 @@ public class HierarchyConceptsUsedInDefinitionsReport extends TermServerScript{
 			if (sourceConcepts.contains(thisConcept) || !thisConcept.isActive()) {
 				continue;
 			}
-			for (Relationship thisRelationship : thisConcept.getRelationships(CharacteristicType.INFERRED_RELATIONSHIP, ActiveState.ACTIVE)){
+			for (Relationship thisRelationship : thisConcept.getRelationshipView(CharacteristicType.INFERRED_RELATIONSHIP, ActiveState.ACTIVE)){
 				//Does this relationship use one of our source concepts as a target?
 				if (sourceConcepts.contains(thisRelationship.getTarget())) {
 					//Only report each source / hierarchy / attribute combination once
@@ -292,7 +292,7 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 		String issueStr = "Unexpected Stated Rel Module";
 		initialiseSummary(issueStr);
 		for (Concept c : allActiveConcepts) {
-			for (Relationship r : c.getRelationships(CharacteristicType.STATED_RELATIONSHIP, ActiveState.BOTH)) {
+			for (Relationship r : c.getRelationshipView(CharacteristicType.STATED_RELATIONSHIP, ActiveState.BOTH)) {
 				if (!r.getModuleId().equals(c.getModuleId())) {
 					String msg = "Concept module " + c.getModuleId() + " vs Rel module " + r.getModuleId();
 					report(c, issueStr, isLegacy(r), isActive(c,r), msg, r);
@@ -310,7 +310,7 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 		String issueStr = "Unexpected extension stated rel module";
 		initialiseSummary(issueStr);
 		for (Concept c : allActiveConcepts) {
-			for (Relationship r : c.getRelationships(CharacteristicType.STATED_RELATIONSHIP, ActiveState.BOTH)) {
+			for (Relationship r : c.getRelationshipView(CharacteristicType.STATED_RELATIONSHIP, ActiveState.BOTH)) {
 				if (StringUtils.isEmpty(r.getEffectiveTime()) && !r.getModuleId().equals(defaultModule)) {
 					String msg = "Default module " + defaultModule + " vs Rel module " + r.getModuleId();
 					report(c, issueStr, isLegacy(r), isActive(c,r), msg, r);
@@ -431,7 +431,7 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 				}
 				//We won't check inferred modelling since that can change without an author
 				//touching the concept
-				for (Relationship r : c.getRelationships(CharacteristicType.STATED_RELATIONSHIP, ActiveState.BOTH)) {
+				for (Relationship r : c.getRelationshipView(CharacteristicType.STATED_RELATIONSHIP, ActiveState.BOTH)) {
 					if (StringUtils.isEmpty(r.getEffectiveTime())) {
 						recentlyTouched.add(c);
 						continue nextConcept;
@@ -691,7 +691,7 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 		for (Concept c : allActiveConcepts) {
 			if (c.isActive() && inScope(c)) {
 				//Check all RHS relationships are active
-				for (Relationship r : c.getRelationships(CharacteristicType.STATED_RELATIONSHIP, ActiveState.ACTIVE)) {
+				for (Relationship r : c.getRelationshipView(CharacteristicType.STATED_RELATIONSHIP, ActiveState.ACTIVE)) {
 					String legacy = isLegacy(r);
 					if (!r.getType().isActive()) {
 						report(c, issueStr, legacy, isActive(c,r), r);
@@ -739,7 +739,7 @@ public class ReleaseIssuesReport extends TermServerReport implements ReportClass
 		//Check no active relationship is non-axiom
 		for (Concept c : allActiveConcepts) {
 			if (c.isActive() && inScope(c)) {
-				for (Relationship r : c.getRelationships(CharacteristicType.STATED_RELATIONSHIP, ActiveState.ACTIVE)) {
+				for (Relationship r : c.getRelationshipView(CharacteristicType.STATED_RELATIONSHIP, ActiveState.ACTIVE)) {
 					String legacy = isLegacy(r);
 					if (!r.fromAxiom()) {
 						report(c, issueStr, legacy, isActive(c,r), r);
@@ -136,8 +136,8 @@ public class SummaryComponentStats extends TermServerReport implements ReportCla
 			//Now we can carry on an add the delta on top
 			getArchiveManager().setLoadEditionArchive(false);
 			getProject().setKey(projectKey);
-			File delta = getArchiveManager().generateDelta(project);
-			loadArchive(delta, false, "Delta", false);
+			//Loaded as it downloads
+			getArchiveManager().loadUnpublishedDelta(project);
 		}
 	};
 	
@@ -187,48 +187,100 @@ public class SummaryComponentStats extends TermServerReport implements ReportCla
 
 	private void analyzeConcepts() throws TermServerScriptException {
 		TransitiveClosure tc = gl.generateTransativeClosure();
+		Map<String, Concept> prevHierarchies = resolvePreviousHierarchies();
 		info ("Analysing concepts");
+		//Each thread works through its own range of concepts, accumulating into its own
+		//summary data, and the partial results are then summed.  prevData is not modified
+		//after loading, so it can be read freely from all threads.
+		try {
+			summaryDataMap = gl.getAllConcepts().parallelStream()
+					.collect(HashMap::new, 
+							(summaryData, c) -> analyzeConceptSafely(tc, prevHierarchies, c, summaryData), 
+							SummaryComponentStats::mergeSummaryData);
+		} catch (IllegalStateException e) {
+			if (e.getCause() instanceof TermServerScriptException) {
+				throw (TermServerScriptException)e.getCause();
+			}
+			throw e;
+		}
+	}
+	
+	/**
+	 * Resolve the hierarchies recorded in the previous release up front, so that 
+	 * the parallel analysis never needs to create concepts in the GraphLoader
+	 */
+	private Map<String, Concept> resolvePreviousHierarchies() throws TermServerScriptException {
+		Map<String, Concept> prevHierarchies = new HashMap<>();
+		for (Datum datum : prevData.values()) {
+			if (!prevHierarchies.containsKey(datum.hierarchy)) {
+				prevHierarchies.put(datum.hierarchy, gl.getConcept(datum.hierarchy));
+			}
+		}
+		return prevHierarchies;
+	}
+	
+	private void analyzeConceptSafely(TransitiveClosure tc, Map<String, Concept> prevHierarchies, Concept c, Map<Concept, int[][]> summaryDataMap) {
+		try {
+			analyzeConceptAndComponents(tc, prevHierarchies, c, summaryDataMap);
+		} catch (TermServerScriptException e) {
+			throw new IllegalStateException("Failed to analyse " + c, e);
+		}
+	}
+	
+	private void analyzeConceptAndComponents(TransitiveClosure tc, Map<String, Concept> prevHierarchies, Concept c, Map<Concept, int[][]> summaryDataMap) throws TermServerScriptException {
 		Concept topLevel;
-		for (Concept c : gl.getAllConcepts()) {
-			if (c.isActive()) {	
-				topLevel = getHierarchy(tc, c);
+		Datum datum = prevData.get(c.getConceptId());
+		if (c.isActive()) {	
+			topLevel = getHierarchy(tc, c);
+		} else {
+			//Was it active in the previous release?
+			if (datum != null) {
+				topLevel = prevHierarchies.get(datum.hierarchy);
 			} else {
-				//Was it active in the previous release?
-				if (prevData.containsKey(c.getConceptId())) {
-					topLevel = gl.getConcept(prevData.get(c.getConceptId()).hierarchy);
-				} else {
-					//If not, it's been inactive for a while, nothing more to say
-					warn("Unexpected data state, failure to retrieve top level: " + c);
-					break;
-				}
+				//If not, it's been inactive for a while, nothing more to say
+				warn("Unexpected data state, failure to retrieve top level: " + c);
+				return;
 			}
-			//Have we seen this hierarchy before?
-			int[][] summaryData = summaryDataMap.get(topLevel);
+		}
+		//Have we seen this hierarchy before?
+		int[][] summaryData = summaryDataMap.get(topLevel);
+		if (summaryData == null) {
+			summaryData = new int[COMPONENT_COUNT][DATA_WIDTH];
+			summaryDataMap.put(topLevel, summaryData);
+		}
+		
+		boolean isNewConcept = datum==null;
+		Boolean wasSD = datum==null?null:datum.isSD;
+		Boolean wasActive = datum==null?null:datum.isActive;
+		analyzeConcept(c, wasSD, wasActive, summaryData[TAB_CONCEPTS]);
+		//Component changes
+		analyzeComponents(isNewConcept, (datum==null?null:datum.descIds), (datum==null?null:datum.descIdsInact), summaryData[TAB_DESCS], c.getDescriptions(ActiveState.BOTH, NOT_TEXT_DEFN));
+		analyzeComponents(isNewConcept, (datum==null?null:datum.descIds), (datum==null?null:datum.descIdsInact), summaryData[TAB_TEXT_DEFN], c.getDescriptions(ActiveState.BOTH, TEXT_DEFN));
+		analyzeComponents(isNewConcept, (datum==null?null:datum.relIds), (datum==null?null:datum.relIdsInact), summaryData[TAB_RELS], c.getRelationships(CharacteristicType.INFERRED_RELATIONSHIP, ActiveState.BOTH));
+		analyzeComponents(isNewConcept, (datum==null?null:datum.axiomIds), (datum==null?null:datum.axiomIdsInact), summaryData[TAB_AXIOMS], c.getAxiomEntries());
+		analyzeComponents(isNewConcept, (datum==null?null:datum.inactivationIds), (datum==null?null:datum.inactivationIdsInact), summaryData[TAB_INACT_IND], c.getInactivationIndicatorEntries());
+		analyzeComponents(isNewConcept, (datum==null?null:datum.histAssocIds), (datum==null?null:datum.histAssocIdsInact), summaryData[TAB_HIST], c.getAssociations(ActiveState.BOTH, true));
+		List<LangRefsetEntry> langRefsetEntries = c.getDescriptions().stream()
+				.flatMap(d -> d.getLangRefsetEntries().stream())
+				.collect(Collectors.toList());
+		analyzeComponents(isNewConcept, (datum==null?null:datum.langRefsetIds), (datum==null?null:datum.langRefsetIdsInact), summaryData[TAB_LANG], langRefsetEntries);
+	}
+	
+	private static void mergeSummaryData(Map<Concept, int[][]> target, Map<Concept, int[][]> partial) {
+		for (Map.Entry<Concept, int[][]> entry : partial.entrySet()) {
+			int[][] summaryData = target.get(entry.getKey());
 			if (summaryData == null) {
-				summaryData = new int[COMPONENT_COUNT][DATA_WIDTH];
-				summaryDataMap.put(topLevel, summaryData);
+				target.put(entry.getKey(), entry.getValue());
+				continue;
+			}
+			for (int idxTab = 0; idxTab < COMPONENT_COUNT; idxTab++) {
+				for (int idxMovement = 0; idxMovement < DATA_WIDTH; idxMovement++) {
+					summaryData[idxTab][idxMovement] += entry.getValue()[idxTab][idxMovement];
+				}
 			}
-			
-			Datum datum = prevData.get(c.getConceptId());
-			boolean isNewConcept = datum==null;
-			Boolean wasSD = datum==null?null:datum.isSD;
-			Boolean wasActive = datum==null?null:datum.isActive;
-			analyzeConcept(c, wasSD, wasActive, summaryData[TAB_CONCEPTS]);
-			//Component changes
-			analyzeComponents(isNewConcept, (datum==null?null:datum.descIds), (datum==null?null:datum.descIdsInact), summaryData[TAB_DESCS], c.getDescriptions(ActiveState.BOTH, NOT_TEXT_DEFN));
-			analyzeComponents(isNewConcept, (datum==null?null:datum.descIds), (datum==null?null:datum.descIdsInact), summaryData[TAB_TEXT_DEFN], c.getDescriptions(ActiveState.BOTH, TEXT_DEFN));
-			analyzeComponents(isNewConcept, (datum==null?null:datum.relIds), (datum==null?null:datum.relIdsInact), summaryData[TAB_RELS], c.getRelationships(CharacteristicType.INFERRED_RELATIONSHIP, ActiveState.BOTH));
-			analyzeComponents(isNewConcept, (datum==null?null:datum.axiomIds), (datum==null?null:datum.axiomIdsInact), summaryData[TAB_AXIOMS], c.getAxiomEntries());
-			analyzeComponents(isNewConcept, (datum==null?null:datum.inactivationIds), (datum==null?null:datum.inactivationIdsInact), summaryData[TAB_INACT_IND], c.getInactivationIndicatorEntries());
-			analyzeComponents(isNewConcept, (datum==null?null:datum.histAssocIds), (datum==null?null:datum.histAssocIdsInact), summaryData[TAB_HIST], c.getAssociations(ActiveState.BOTH, true));
-			List<LangRefsetEntry> langRefsetEntries = c.getDescriptions().stream()
-					.flatMap(d -> d.getLangRefsetEntries().stream())
-					.collect(Collectors.toList());
-			analyzeComponents(isNewConcept, (datum==null?null:datum.langRefsetIds), (datum==null?null:datum.langRefsetIdsInact), summaryData[TAB_LANG], langRefsetEntries);
 		}
 	}
 	
-	
 	private void analyzeConcept(Concept c, Boolean wasSD, Boolean wasActive, int[] counts) throws TermServerScriptException {
 		//If we have no previous data, then the concept is new
 		boolean conceptIsNew = (wasSD == null);
@@ -252,7 +304,7 @@ public class SummaryComponentStats extends TermServerReport implements ReportCla
 					counts[IDX_CHANGED]++;
 				}
 			}
-		} else if (prevData.containsKey(c.getConceptId()) && prevData.get(c.getConceptId()).isActive) {
+		} else if (wasActive != null && wasActive) {
 			//If we had it last time active, then it's been inactivated in this release
 			counts[IDX_INACT]++;
 		}
@@ -313,7 +365,7 @@ public class SummaryComponentStats extends TermServerReport implements ReportCla
 		}
 	}
 
-	private void debugToFile(Component c, String statType) throws TermServerScriptException {
+	private synchronized void debugToFile(Component c, String statType) throws TermServerScriptException {
 
 		// Only debug if we enable it (for testing really).
 		if (!debugToFile) {
@@ -0,0 +1,19 @@
+package org.ihtsdo.termserver.scripting.service;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Somewhere that traceability activity can be requested from, normally the 
+ * traceability service itself.  Implementations must be safe to call from
+ * several threads at once.
+ */
+public interface ActivitySource {
+	
+	/**
+	 * @param since if given, only changes committed after this date are wanted
+	 * @return an entry for each change to any of the given concepts whose commit comment 
+	 * matches the area of interest.  A concept may have several entries, or none.
+	 */
+	List<ConceptActivity> getConceptActivity(List<Long> conceptIds, String areaOfInterest, Date since);
+}
@@ -0,0 +1,58 @@
+package org.ihtsdo.termserver.scripting.service;
+
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ * The most recent change made to a concept, as reported by traceability
+ */
+public class ConceptActivity {
+	
+	private final Long conceptId;
+	private final String username;
+	private final String branchPath;
+	private final Date commitDate;
+	
+	public ConceptActivity(Long conceptId, String username, String branchPath, Date commitDate) {
+		this.conceptId = conceptId;
+		this.username = username;
+		this.branchPath = branchPath;
+		this.commitDate = commitDate;
+	}
+
+	public Long getConceptId() {
+		return conceptId;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public String getBranchPath() {
+		return branchPath;
+	}
+
+	public Date getCommitDate() {
+		return commitDate;
+	}
+	
+	/**
+	 * @return Author, Task and Date as reported alongside the concept
+	 */
+	public String[] toTraceabilityInfo() {
+		String[] info = new String[3];
+		info[0] = username;
+		info[1] = branchPath;
+		info[2] = commitDate.toInstant().atZone(ZoneId.systemDefault()).toString();
+		return info;
+	}
+	
+	public static ConceptActivity latest(ConceptActivity a, ConceptActivity b) {
+		return b.getCommitDate().after(a.getCommitDate()) ? b : a;
+	}
+	
+	@Override
+	public String toString() {
+		return conceptId + " " + username + " " + branchPath + " " + commitDate;
+	}
+}
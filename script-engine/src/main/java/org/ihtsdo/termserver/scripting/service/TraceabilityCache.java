@@ -0,0 +1,172 @@
+package org.ihtsdo.termserver.scripting.service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local record of the latest known activity for each concept, so that repeated 
+ * runs of a report only need to ask traceability about activity committed since
+ * then.  Where two activities are known for a concept, the one with the later
+ * commit date is kept.  Lookups that found nothing, or failed, are also recorded
+ * so that the concept isn't asked about again until a while later.
+ */
+public class TraceabilityCache {
+	
+	static Logger logger = LoggerFactory.getLogger(TraceabilityCache.class);
+	
+	public static String CACHE_DIR = "cache/traceability";
+	//How long to wait before asking again about a concept for which nothing was found
+	public static long EMPTY_RETRY = TimeUnit.HOURS.toMillis(1);
+	//How long to wait before asking again about a concept whose lookup failed
+	public static long FAILED_RETRY = TimeUnit.MINUTES.toMillis(5);
+	private static final String TAB = "\t";
+	
+	private final File cacheFile;
+	private final Map<Long, CachedActivity> entries = new ConcurrentHashMap<>();
+	private volatile boolean isDirty = false;
+	
+	private TraceabilityCache(File cacheFile) {
+		this.cacheFile = cacheFile;
+	}
+	
+	/**
+	 * Open the cache held for the given server and area of interest, since the same concept
+	 * may have different activity depending on where we're looking and what we're looking for
+	 */
+	public static TraceabilityCache open(String serverUrl, String areaOfInterest) {
+		String cacheName = "traceability_" + Integer.toHexString(Objects.hash(serverUrl, areaOfInterest)) + ".tsv";
+		return open(new File(CACHE_DIR, cacheName));
+	}
+	
+	public static TraceabilityCache open(File cacheFile) {
+		TraceabilityCache cache = new TraceabilityCache(cacheFile);
+		cache.load();
+		return cache;
+	}
+	
+	//conceptId, commitDate, checkedAt, username, branchPath, retryAfter
+	//The commitDate, username and branchPath are empty where no activity is known
+	private void load() {
+		if (!cacheFile.canRead()) {
+			return;
+		}
+		try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(cacheFile), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				String[] items = line.split(TAB, -1);
+				if (items.length == 5 || items.length == 6) {
+					Long conceptId = Long.parseLong(items[0]);
+					ConceptActivity activity = items[1].isEmpty() ? null : new ConceptActivity(conceptId, items[3], items[4], new Date(Long.parseLong(items[1])));
+					long retryAfter = items.length == 6 ? Long.parseLong(items[5]) : 0;
+					entries.put(conceptId, new CachedActivity(activity, retryAfter));
+				}
+			}
+			logger.debug("Loaded {} cached traceability entries from {}", entries.size(), cacheFile);
+		} catch (IOException | NumberFormatException e) {
+			logger.warn("Unable to read traceability cache {} due to {}", cacheFile, e.getMessage());
+			entries.clear();
+		}
+	}
+	
+	/**
+	 * @return the latest activity known for the concept, or null if there is none.
+	 * Traceability should still be asked about anything committed since.
+	 */
+	public ConceptActivity get(Long conceptId) {
+		CachedActivity cached = entries.get(conceptId);
+		return cached == null ? null : cached.activity;
+	}
+	
+	/**
+	 * @return true if a recent lookup for the concept found nothing, or failed, 
+	 * so it's not worth asking again yet
+	 */
+	public boolean isRecentlyChecked(Long conceptId) {
+		CachedActivity cached = entries.get(conceptId);
+		return cached != null && cached.retryAfter > System.currentTimeMillis();
+	}
+	
+	public void put(ConceptActivity activity) {
+		CachedActivity fetched = new CachedActivity(activity, 0);
+		entries.merge(activity.getConceptId(), fetched, (existing, latest) -> 
+			new CachedActivity(existing.activity == null ? latest.activity : ConceptActivity.latest(existing.activity, latest.activity), 0));
+		isDirty = true;
+	}
+	
+	/**
+	 * Record that traceability knows of no activity for the concept
+	 */
+	public void putEmpty(Long conceptId) {
+		retryLater(conceptId, EMPTY_RETRY);
+	}
+	
+	/**
+	 * Record that traceability could not be asked about the concept, keeping whatever was known
+	 */
+	public void putFailed(Long conceptId) {
+		retryLater(conceptId, FAILED_RETRY);
+	}
+	
+	private void retryLater(Long conceptId, long delay) {
+		long retryAfter = System.currentTimeMillis() + delay;
+		entries.compute(conceptId, (k, existing) -> new CachedActivity(existing == null ? null : existing.activity, retryAfter));
+		isDirty = true;
+	}
+	
+	public int size() {
+		return entries.size();
+	}
+	
+	public void save() {
+		if (!isDirty) {
+			return;
+		}
+		try {
+			if (cacheFile.getParentFile() != null) {
+				cacheFile.getParentFile().mkdirs();
+			}
+			//Write alongside and then swap, so that a failed run doesn't lose the existing cache
+			File tmpFile = new File(cacheFile.getPath() + ".tmp");
+			long now = System.currentTimeMillis();
+			try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), StandardCharsets.UTF_8))) {
+				for (Map.Entry<Long, CachedActivity> entry : entries.entrySet()) {
+					CachedActivity cached = entry.getValue();
+					ConceptActivity a = cached.activity;
+					if (a == null && cached.retryAfter <= now) {
+						//Nothing worth keeping
+						continue;
+					}
+					bw.write(entry.getKey() + TAB 
+							+ (a == null ? "" : a.getCommitDate().getTime()) + TAB 
+							+ now + TAB 
+							+ (a == null ? "" : a.getUsername()) + TAB 
+							+ (a == null ? "" : a.getBranchPath()) + TAB 
+							+ cached.retryAfter);
+					bw.newLine();
+				}
+			}
+			Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			isDirty = false;
+		} catch (IOException e) {
+			logger.warn("Unable to write traceability cache {} due to {}", cacheFile, e.getMessage());
+		}
+	}
+	
+	private static class CachedActivity {
+		final ConceptActivity activity;
+		//Until when the concept need not be looked up again, 0 if it should always be refreshed
+		final long retryAfter;
+		
+		CachedActivity(ConceptActivity activity, long retryAfter) {
+			this.activity = activity;
+			this.retryAfter = retryAfter;
+		}
+	}
+}
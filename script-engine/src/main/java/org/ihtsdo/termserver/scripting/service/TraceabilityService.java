@@ -1,8 +1,8 @@
 package org.ihtsdo.termserver.scripting.service;
 
-import java.time.ZoneId;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.ihtsdo.otf.exception.TermServerScriptException;
 import org.ihtsdo.otf.rest.client.traceability.TraceabilityServiceClient;
@@ -15,72 +15,212 @@ import org.snomed.otf.traceability.domain.Activity;
 import org.snomed.otf.traceability.domain.ActivityType;
 import org.snomed.otf.traceability.domain.ConceptChange;
 
+/**
+ * Adds Author, Task and Date to report rows.  Rows are batched up and the calls to
+ * traceability are made in the background, with several batches in flight at once,
+ * while the report carries on.  Rows are written to the report in the order they
+ * were given to us, on the report's own thread.
+ */
 public class TraceabilityService {
-	
+
 	static Logger logger = LoggerFactory.getLogger(TraceabilityService.class);
 
-	TraceabilityServiceClient client;
-	TermServerScript ts;
 	private static int BATCH_SIZE = 100;
-	Map<Long, ReportRow> batchedReportRowMap = new LinkedHashMap<>();
+	private static int MAX_IN_FLIGHT = 4;
+
+	ActivitySource source;
+	TermServerScript ts;
 	String areaOfInterest;
-	
+	TraceabilityCache cache;
+
+	List<ReportRow> currentBatch = new ArrayList<>();
+	Deque<PendingBatch> pendingBatches = new ArrayDeque<>();
+	ExecutorService executor;
+
 	public TraceabilityService(JobRun jobRun, TermServerScript ts, String areaOfInterest) {
-		this.client = new TraceabilityServiceClient(jobRun.getTerminologyServerUrl(), jobRun.getAuthToken());
+		this(fromClient(new TraceabilityServiceClient(jobRun.getTerminologyServerUrl(), jobRun.getAuthToken())),
+				ts, areaOfInterest, TraceabilityCache.open(jobRun.getTerminologyServerUrl(), areaOfInterest));
+	}
+
+	/**
+	 * @param cache may be null if every concept should be looked up afresh
+	 */
+	public TraceabilityService(ActivitySource source, TermServerScript ts, String areaOfInterest, TraceabilityCache cache) {
+		this.source = source;
 		this.ts = ts;
 		this.areaOfInterest = areaOfInterest;
+		this.cache = cache;
+	}
+
+	static ActivitySource fromClient(TraceabilityServiceClient client) {
+		return (conceptIds, areaOfInterest, since) -> {
+			Set<Long> conceptsOfInterest = new HashSet<>(conceptIds);
+			List<ConceptActivity> conceptActivity = new ArrayList<>();
+			for (Activity activity : client.getConceptActivity(conceptIds, areaOfInterest, ActivityType.CONTENT_CHANGE)) {
+				//The client can't filter by date, so anything we already know about is dropped here
+				if (since != null && !activity.getCommitDate().after(since)) {
+					continue;
+				}
+				for (ConceptChange change : activity.getConceptChanges()) {
+					//If the data coming back wasn't about a concept we're interested in, ignore it
+					if (change.getConceptId() != null && conceptsOfInterest.contains(change.getConceptId())) {
+						conceptActivity.add(new ConceptActivity(change.getConceptId(),
+								activity.getUser().getUsername(),
+								activity.getBranch().getBranchPath(),
+								activity.getCommitDate()));
+					}
+				}
+			}
+			return conceptActivity;
+		};
 	}
-	
+
 	public void populateTraceabilityAndReport(int reportTabIdx, Concept c, Object... details) throws TermServerScriptException {
 		//We'll cache this row until we have enough to be worth making a call to traceability
-		Long conceptId = Long.parseLong(c.getConceptId());
-		batchedReportRowMap.put(conceptId, new ReportRow(reportTabIdx, c, details));
-		if (batchedReportRowMap.size() >= BATCH_SIZE) {
-			flush();
+		currentBatch.add(new ReportRow(reportTabIdx, c, details));
+		if (currentBatch.size() >= BATCH_SIZE) {
+			submitCurrentBatch();
 		}
+		reportCompletedBatches(false);
 	}
-	
+
 	public void flush() throws TermServerScriptException {
-		populateReportRowsWithTraceabilityInfo();
-		report();
-		batchedReportRowMap.clear();
+		try {
+			submitCurrentBatch();
+			reportCompletedBatches(true);
+		} finally {
+			if (executor != null) {
+				executor.shutdownNow();
+				executor = null;
+			}
+			if (cache != null) {
+				cache.save();
+			}
+		}
 	}
 
-	private void populateReportRowsWithTraceabilityInfo() {
-		List<Long> conceptIds = batchedReportRowMap.values().stream()
-				.map(r -> Long.parseLong(r.c.getConceptId()))
-				.collect(Collectors.toList());
-		List<Activity> traceabilityInfo = client.getConceptActivity(conceptIds, areaOfInterest, ActivityType.CONTENT_CHANGE);
-		if (traceabilityInfo.size() == 0) {
-			logger.warn("Failed to recover any traceability information for {} concepts", conceptIds.size());
+	private void submitCurrentBatch() throws TermServerScriptException {
+		if (currentBatch.isEmpty()) {
+			return;
 		}
-		for (Activity activity : traceabilityInfo) {
-			String[] info = new String[3];
-			info[0] = activity.getUser().getUsername();
-			info[1] = activity.getBranch().getBranchPath();
-			info[2] = activity.getCommitDate().toInstant().atZone(ZoneId.systemDefault()).toString();
-			//TODO Check for multiple rows for single concept
-			batchedReportRowMap.get(getConceptId(activity, conceptIds)).traceabilityInfo = info;
+		List<ReportRow> rows = currentBatch;
+		currentBatch = new ArrayList<>();
+
+		//Concepts we already know about need only be asked about activity since the latest we know of,
+		//and those recently found to have none, or whose lookup failed, are left alone for now
+		Map<Long, ConceptActivity> known = new HashMap<>();
+		Set<Long> unknown = new LinkedHashSet<>();
+		Set<Long> toRefresh = new LinkedHashSet<>();
+		Date since = null;
+		for (ReportRow row : rows) {
+			ConceptActivity cached = cache == null ? null : cache.get(row.conceptId);
+			if (cached != null) {
+				known.put(row.conceptId, cached);
+			}
+			if (cache != null && cache.isRecentlyChecked(row.conceptId)) {
+				continue;
+			} else if (cached != null) {
+				toRefresh.add(row.conceptId);
+				if (since == null || cached.getCommitDate().before(since)) {
+					since = cached.getCommitDate();
+				}
+			} else {
+				unknown.add(row.conceptId);
+			}
+		}
+
+		Future<Map<Long, ConceptActivity>> activity;
+		if (unknown.isEmpty() && toRefresh.isEmpty()) {
+			activity = CompletableFuture.completedFuture(known);
+		} else {
+			//Don't let requests pile up too far ahead of the report
+			while (pendingBatches.size() >= MAX_IN_FLIGHT) {
+				report(pendingBatches.poll());
+			}
+			List<Long> unknownIds = new ArrayList<>(unknown);
+			List<Long> refreshIds = new ArrayList<>(toRefresh);
+			Date refreshSince = since;
+			activity = getExecutor().submit(() -> fetchActivity(unknownIds, refreshIds, refreshSince, known));
 		}
+		pendingBatches.add(new PendingBatch(rows, activity));
 	}
-	
-	private Long getConceptId(Activity activity, List<Long> conceptsOfInterest) {
-		Long conceptId = null;
-		for (ConceptChange change : activity.getConceptChanges()) {
-			//If the data coming back wasn't about a concept we're interested in, ignore it
-			if (change.getConceptId() != null && conceptsOfInterest.contains(change.getConceptId())) {
-				conceptId = change.getConceptId(); 
+
+	private Map<Long, ConceptActivity> fetchActivity(List<Long> unknownIds, List<Long> refreshIds, Date since, Map<Long, ConceptActivity> known) {
+		Map<Long, ConceptActivity> activityMap = new HashMap<>(known);
+		List<ConceptActivity> traceabilityInfo = new ArrayList<>();
+		try {
+			if (!unknownIds.isEmpty()) {
+				traceabilityInfo.addAll(source.getConceptActivity(unknownIds, areaOfInterest, null));
+			}
+			if (!refreshIds.isEmpty()) {
+				traceabilityInfo.addAll(source.getConceptActivity(refreshIds, areaOfInterest, since));
 			}
+		} catch (RuntimeException e) {
+			//Rows for these concepts are reported with whatever we already knew
+			logger.warn("Failed to recover traceability information for {} concepts due to {}", unknownIds.size() + refreshIds.size(), e.getMessage());
+			if (cache != null) {
+				unknownIds.forEach(cache::putFailed);
+				refreshIds.forEach(cache::putFailed);
+			}
+			return activityMap;
+		}
+		if (traceabilityInfo.size() == 0 && !unknownIds.isEmpty()) {
+			logger.warn("Failed to recover any traceability information for {} concepts", unknownIds.size());
+		}
+		for (ConceptActivity conceptActivity : traceabilityInfo) {
+			//Where a concept has been changed more than once, report the latest
+			activityMap.merge(conceptActivity.getConceptId(), conceptActivity, ConceptActivity::latest);
+			if (cache != null) {
+				cache.put(conceptActivity);
+			}
+		}
+		if (cache != null) {
+			for (Long conceptId : unknownIds) {
+				if (!activityMap.containsKey(conceptId)) {
+					cache.putEmpty(conceptId);
+				}
+			}
+		}
+		return activityMap;
+	}
+
+	private ExecutorService getExecutor() {
+		if (executor == null) {
+			AtomicInteger threadCount = new AtomicInteger();
+			executor = Executors.newFixedThreadPool(MAX_IN_FLIGHT, r -> {
+				Thread t = new Thread(r, "traceability-" + threadCount.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return executor;
+	}
+
+	private void reportCompletedBatches(boolean waitForAll) throws TermServerScriptException {
+		//Batches are reported strictly in the order they were submitted
+		while (!pendingBatches.isEmpty() && (waitForAll || pendingBatches.peek().activity.isDone())) {
+			report(pendingBatches.poll());
 		}
-		return conceptId;
 	}
 
-	private void report() throws TermServerScriptException {
-		for (ReportRow row : batchedReportRowMap.values()) {
+	private void report(PendingBatch batch) throws TermServerScriptException {
+		Map<Long, ConceptActivity> activityMap;
+		try {
+			activityMap = batch.activity.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TermServerScriptException("Interrupted while waiting for traceability", e);
+		} catch (ExecutionException e) {
+			throw new TermServerScriptException("Failed to recover traceability information", e.getCause());
+		}
+
+		for (ReportRow row : batch.rows) {
+			ConceptActivity conceptActivity = activityMap.get(row.conceptId);
+			Object[] traceabilityInfo = conceptActivity == null ? null : conceptActivity.toTraceabilityInfo();
 			if (row.details == null) {
-				ts.report(row.reportTabIdx, row.c, row.traceabilityInfo);
+				ts.report(row.reportTabIdx, row.c, traceabilityInfo);
 			} else {
-				ts.report(row.reportTabIdx, row.c, row.details, row.traceabilityInfo);
+				ts.report(row.reportTabIdx, row.c, row.details, traceabilityInfo);
 			}
 		}
 	}
@@ -88,13 +228,24 @@ public class TraceabilityService {
 	class ReportRow {
 		int reportTabIdx;
 		Concept c;
+		Long conceptId;
 		Object[] details;
-		Object[] traceabilityInfo;
-		
+
 		ReportRow(int reportTabIdx, Concept c, Object[] details) {
 			this.reportTabIdx = reportTabIdx;
 			this.c = c;
+			this.conceptId = Long.parseLong(c.getConceptId());
 			this.details = details;
 		}
 	}
+
+	class PendingBatch {
+		List<ReportRow> rows;
+		Future<Map<Long, ConceptActivity>> activity;
+
+		PendingBatch(List<ReportRow> rows, Future<Map<Long, ConceptActivity>> activity) {
+			this.rows = rows;
+			this.activity = activity;
+		}
+	}
 }
@@ -4,15 +4,14 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Path;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
+import org.apache.commons.io.FileUtils;
 import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Component;
 import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Component.ComponentType;
 import org.ihtsdo.otf.exception.TermServerScriptException;
@@ -23,6 +22,7 @@ import org.ihtsdo.termserver.scripting.client.TermServerClient.ExtractType;
 import org.ihtsdo.termserver.scripting.dao.ReportSheetManager;
 import org.ihtsdo.termserver.scripting.domain.*;
 import org.ihtsdo.termserver.scripting.reports.TermServerReport;
+import org.ihtsdo.termserver.scripting.util.Rf2Sorter;
 import org.ihtsdo.termserver.scripting.util.SnomedUtils;
 import org.snomed.otf.scheduler.domain.*;
 import org.snomed.otf.scheduler.domain.Job.ProductionStatus;
@@ -32,9 +32,8 @@ import org.snomed.otf.scheduler.domain.Job.ProductionStatus;
  */
 public class ReconcileSnapshot extends TermServerReport implements ReportClass {
 	
-	Map<String, Component> remainingComponents;
-	int componentsChecked = 0;
-	int totalToCheck = 0;
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
 	
 	public static void main(String[] args) throws TermServerScriptException, IOException {
 		Map<String, String> params = new HashMap<>();
@@ -83,14 +82,42 @@ public class ReconcileSnapshot extends TermServerReport implements ReportClass {
 			info ("Loading snapshot " + exportedSnapshot);
 		}
 		
-		info("Generating local map of components");
-		remainingComponents = gl.getComponentMap();
-		totalToCheck = remainingComponents.size();
-		info(totalToCheck + " components mapped");
+		File workingDir;
+		try {
+			workingDir = Files.createTempDirectory("snapshot_reconcile-").toFile();
+		} catch (IOException e) {
+			throw new TermServerScriptException("Unable to create working directory", e);
+		}
 		
-		info("Validating " + exportedSnapshot);
-		validateArchiveZip(exportedSnapshot);
-		reportRemainder();
+		try {
+			info("Sorting " + exportedSnapshot);
+			Map<ComponentType, List<File>> sortedFiles = sortArchiveZip(exportedSnapshot, workingDir);
+			
+			//Each type of component is reconciled independently, and reported in a fixed order
+			info("Reconciling " + sortedFiles.keySet());
+			Map<ComponentType, List<Discrepancy>> discrepancies = sortedFiles.entrySet().parallelStream()
+					.collect(Collectors.toMap(Map.Entry::getKey, e -> reconcileSafely(e.getKey(), e.getValue(), workingDir)));
+			for (ComponentType componentType : sortedFiles.keySet()) {
+				List<Discrepancy> discrepanciesForType = discrepancies.get(componentType);
+				info (componentType + " reconciliation detected " + discrepanciesForType.size() + " issues");
+				for (Discrepancy d : discrepanciesForType) {
+					if (d.isIssue) {
+						countIssue(d.owner);
+					}
+					report (componentType.ordinal(), d.owner, d.details);
+				}
+				flushFilesSoft();
+			}
+		} catch (IOException e) {
+			throw new TermServerScriptException("Unable to reconcile " + exportedSnapshot, e);
+		} catch (IllegalStateException e) {
+			if (e.getCause() instanceof TermServerScriptException) {
+				throw (TermServerScriptException)e.getCause();
+			}
+			throw e;
+		} finally {
+			FileUtils.deleteQuietly(workingDir);
+		}
 	}
 
 	private File getSnapshot() throws TermServerScriptException {
@@ -106,132 +133,229 @@ public class ReconcileSnapshot extends TermServerReport implements ReportClass {
 		return snapshot;
 	}
 	
-	private void validateArchiveZip(File archive) throws TermServerScriptException {
-		try {
-			ZipInputStream zis = new ZipInputStream(new FileInputStream(archive));
+	/**
+	 * Sorts each snapshot file we know how to reconcile into the working directory
+	 * @return the sorted files, grouped by the type of component they hold
+	 */
+	private Map<ComponentType, List<File>> sortArchiveZip(File archive, File workingDir) throws IOException {
+		Map<ComponentType, List<File>> sortedFiles = new TreeMap<>();
+		try (ZipInputStream zis = new ZipInputStream(new FileInputStream(archive))) {
 			ZipEntry ze = zis.getNextEntry();
-			try {
-				while (ze != null) {
-					if (!ze.isDirectory()) {
-						Path path = Paths.get(ze.getName());
-						validateFile(path, zis);
+			while (ze != null) {
+				if (!ze.isDirectory()) {
+					String fileName = Paths.get(ze.getName()).getFileName().toString();
+					ComponentType componentType = getComponentType(fileName);
+					if (componentType != null) {
+						info("Sorting " + componentType + " file: " + fileName);
+						File sorted = new File(workingDir, fileName);
+						Rf2Sorter.sort(zis, sorted);
+						sortedFiles.computeIfAbsent(componentType, k -> new ArrayList<>()).add(sorted);
 					}
-					ze = zis.getNextEntry();
 				}
-			} finally {
-				try{
-					zis.closeEntry();
-					zis.close();
-				} catch (Exception e){} //Well, we tried.
+				ze = zis.getNextEntry();
 			}
-		}catch (IOException e) {
-			throw new TermServerScriptException("Unable to load " + archive,e);
 		}
+		return sortedFiles;
+	}
+	
+	private ComponentType getComponentType(String fileName) {
+		if (!fileName.contains(SNAPSHOT)) {
+			return null;
+		}
+		if (fileName.contains("sct2_Concept_" )) {
+			return ComponentType.CONCEPT;
+		/*} else if (fileName.contains("StatedRelationship_" )) {
+			return ComponentType.STATED_RELATIONSHIP;
+		} else if (fileName.contains("Relationship_" )) {
+			return ComponentType.INFERRED_RELATIONSHIP; */
+		} else if (fileName.contains("sct2_sRefset_OWLExpression" ) ||
+				   fileName.contains("sct2_sRefset_OWLAxiom" )) {
+			return ComponentType.AXIOM;
+		} else if (fileName.contains("sct2_Description_" )) {
+			return ComponentType.DESCRIPTION;
+		} else if (fileName.contains("sct2_TextDefinition_" )) {
+			return ComponentType.TEXT_DEFINITION;
+		} else if (fileName.contains("der2_cRefset_ConceptInactivationIndicatorReferenceSet" ) ||
+				fileName.contains("der2_cRefset_DescriptionInactivationIndicatorReferenceSet" ) ||
+				fileName.contains("der2_cRefset_AttributeValue" )) {
+			return ComponentType.ATTRIBUTE_VALUE;
+		} else if (fileName.contains("Association" ) || fileName.contains("AssociationReferenceSet" )) {
+			return ComponentType.HISTORICAL_ASSOCIATION;
+		} else if (fileName.contains("Language")) {
+			return ComponentType.LANGREFSET;
+		}
+		return null;
 	}
 	
-	private void validateFile(Path path, InputStream is)  {
-		String fileType = "Snapshot";
+	private List<Discrepancy> reconcileSafely(ComponentType componentType, List<File> sortedFiles, File workingDir) {
 		try {
-			String fileName = path.getFileName().toString();
-			if (fileName.contains(fileType)) {
-				if (fileName.contains("sct2_Concept_" )) {
-					info("Validating Concept " + fileType + " file: " + fileName);
-					validateComponentFile(is, ComponentType.CONCEPT);
-/*				} else if (fileName.contains("StatedRelationship_" )) {
-					info("Validating " + fileName);
-					validateComponentFile(is, ComponentType.STATED_RELATIONSHIP);
-				} else if (fileName.contains("Relationship_" )) {
-					info("Validating " + fileName);
-					validateComponentFile(is, ComponentType.INFERRED_RELATIONSHIP); */
-				} else if (fileName.contains("sct2_sRefset_OWLExpression" ) ||
-						   fileName.contains("sct2_sRefset_OWLAxiom" )) {
-					info("Validating Axiom " + fileType + " refset file: " + fileName);
-					validateComponentFile(is, ComponentType.AXIOM);
-				} else if (fileName.contains("sct2_Description_" )) {
-					info("Validating Description " + fileType + " file: " + fileName);
-					validateComponentFile(is, ComponentType.DESCRIPTION);
-				} else if (fileName.contains("sct2_TextDefinition_" )) {
-					info("Validating Text Definition " + fileType + " file: " + fileName);
-					validateComponentFile(is, ComponentType.TEXT_DEFINITION);
-				} else if (fileName.contains("der2_cRefset_ConceptInactivationIndicatorReferenceSet" )) {
-					info("Validating Concept Inactivation Indicator " + fileType + " file: " + fileName);
-					validateComponentFile(is, ComponentType.ATTRIBUTE_VALUE);
-				} else if (fileName.contains("der2_cRefset_DescriptionInactivationIndicatorReferenceSet" )) {
-					info("Validating Description Inactivation Indicator " + fileType + " file: " + fileName);
-					validateComponentFile(is, ComponentType.ATTRIBUTE_VALUE);
-				} else if (fileName.contains("der2_cRefset_AttributeValue" )) {
-					info("Validating Concept/Description Inactivation Indicators " + fileType + " file: " + fileName);
-					validateComponentFile(is, ComponentType.ATTRIBUTE_VALUE);
-				} else if (fileName.contains("Association" ) || fileName.contains("AssociationReferenceSet" )) {
-					info("Validating Historical Association File: " + fileName);
-					validateComponentFile(is, ComponentType.HISTORICAL_ASSOCIATION);
-				} else if (fileName.contains("Language")) {
-					info("Validating " + fileType + " Language Reference Set File - " + fileName);
-					validateComponentFile(is, ComponentType.LANGREFSET);
-				}
-			}
-			flushFilesWithWait(false);
-		} catch (TermServerScriptException | IOException  e) {
-			throw new IllegalStateException("Unable to validate " + path + " due to " + e.getMessage(), e);
+			return reconcile(componentType, sortedFiles, workingDir);
+		} catch (TermServerScriptException | IOException e) {
+			TermServerScriptException tsse = new TermServerScriptException("Unable to reconcile " + componentType, e);
+			throw new IllegalStateException(tsse.getMessage(), tsse);
 		}
 	}
 	
-	public void validateComponentFile(InputStream is, ComponentType componentType) throws IOException, TermServerScriptException {
-		//Not putting this in a try resource block otherwise it will close the stream on completion and we've got more to read!
-		BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
-		String line;
-		boolean isHeaderLine = true;
-		int issueCount = 0;
-		int reportTabIdx = componentType.ordinal();
-		while ((line = br.readLine()) != null) {
-			if (!isHeaderLine) {
-				String[] lineItems = line.split(FIELD_DELIMITER);
-				issueCount += validate(reportTabIdx, createComponent(componentType, lineItems));
-				if (++componentsChecked % 100000 == 0) {
-					debug("Checked " + componentsChecked + " / " + totalToCheck);
+	/**
+	 * Walks the exported rows and our own components together in id order.  Rows are 
+	 * compared by digest, and components are only created from the exported rows where 
+	 * the digests don't match, so that we can report which fields differ.
+	 */
+	private List<Discrepancy> reconcile(ComponentType componentType, List<File> sortedFiles, File workingDir) throws TermServerScriptException, IOException {
+		File exported = sortedFiles.get(0);
+		if (sortedFiles.size() > 1) {
+			exported = new File(workingDir, componentType + "_merged.txt");
+			Rf2Sorter.merge(sortedFiles, exported);
+		}
+		
+		List<Component> generated = getGeneratedComponents(componentType);
+		List<Discrepancy> discrepancies = new ArrayList<>();
+		int idx = 0;
+		int rowsChecked = 0;
+		try (BufferedReader br = Rf2Sorter.newReader(exported)) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				String id = Rf2Sorter.getId(line);
+				//Anything we hold that sorts before this row was not exported
+				while (idx < generated.size() && generated.get(idx).getId().compareTo(id) < 0) {
+					reportRemainder(generated.get(idx++), discrepancies);
+				}
+				if (idx < generated.size() && generated.get(idx).getId().equals(id)) {
+					Component ours = generated.get(idx++);
+					if (digest(line) != digest(toRF2(ours))) {
+						Component theirs = createComponent(componentType, line.split(FIELD_DELIMITER));
+						Concept owner = getOwner(componentType, ours);
+						for (String issue : theirs.fieldComparison(ours)) {
+							discrepancies.add(new Discrepancy(owner, true, theirs.getId(), theirs.isActive(), issue));
+						}
+					}
+				} else {
+					Component theirs = createComponent(componentType, line.split(FIELD_DELIMITER));
+					discrepancies.add(new Discrepancy(getOwner(componentType, theirs), true, theirs.getId(), theirs.isActive(), 
+							theirs.getComponentType() + " from export not present in generated snapshot", theirs));
+				}
+				if (++rowsChecked % 100000 == 0) {
+					debug("Checked " + rowsChecked + " " + componentType + " rows");
 				}
-			} else {
-				isHeaderLine = false;
 			}
 		}
-		info (componentType + " reconciliation detected " + issueCount + " issues");
-		flushFilesSoft();
+		while (idx < generated.size()) {
+			reportRemainder(generated.get(idx++), discrepancies);
+		}
+		return discrepancies;
+	}
+
+	private void reportRemainder(Component c, List<Discrepancy> discrepancies) throws TermServerScriptException {
+		discrepancies.add(new Discrepancy(getOwner(c.getComponentType(), c), false, c.getId(), "Component from generated snapshot not present in export", c));
 	}
 	
-	private int validate(int reportTabIdx, Component c) throws TermServerScriptException {
-		//What does our generated snapshot hold for this component?
-		Component other = gl.getComponent(c.getId());
-		if (other == null) {
-			if (!c.isActive() && 
-					(c.getComponentType().equals(ComponentType.STATED_RELATIONSHIP) ||
-					c.getComponentType().equals(ComponentType.INFERRED_RELATIONSHIP))) {
-				//TODO Investigate here. I think we're replacing duplicate triples when importing
-				//perhaps we can stop doing that.
-				return NO_CHANGES_MADE;
+	/**
+	 * @return our own components of the given type, sorted by id in the same way as the exported rows
+	 */
+	private List<Component> getGeneratedComponents(ComponentType componentType) {
+		List<Component> generated = new ArrayList<>();
+		for (Concept c : gl.getAllConcepts()) {
+			switch (componentType) {
+				case CONCEPT : generated.add(c);
+								break;
+				case DESCRIPTION : 
+				case TEXT_DEFINITION : for (Description d : c.getDescriptions()) {
+											boolean isTextDefn = d.getType().equals(DescriptionType.TEXT_DEFINITION);
+											if (isTextDefn == componentType.equals(ComponentType.TEXT_DEFINITION)) {
+												generated.add(d);
+											}
+										}
+										break;
+				case LANGREFSET : for (Description d : c.getDescriptions()) {
+										generated.addAll(d.getLangRefsetEntries());
+									}
+									break;
+				case ATTRIBUTE_VALUE : generated.addAll(c.getInactivationIndicatorEntries());
+										for (Description d : c.getDescriptions()) {
+											generated.addAll(d.getInactivationIndicatorEntries());
+										}
+										break;
+				case HISTORICAL_ASSOCIATION : generated.addAll(c.getAssociationEntries());
+												for (Description d : c.getDescriptions()) {
+													generated.addAll(d.getAssociationEntries());
+												}
+												break;
+				case AXIOM : generated.addAll(c.getAxiomEntries());
+								break;
+				default : //Other component types are not currently reconciled
 			}
-			Concept owner = gl.getComponentOwner(c.getId());	
-			report (reportTabIdx, owner, c.getId(), c.isActive(), c.getComponentType() + " from export not present in generated snapshot", c);
-			countIssue(null);
-			return 1;
 		}
-		List<String> issues = c.fieldComparison(other);
-		Concept owner = gl.getComponentOwner(c.getId());
-		for (String issue : issues) {
-			countIssue(owner);
-			report (reportTabIdx, owner, c.getId(), c.isActive(), issue);
+		generated.removeIf(component -> component.getId() == null);
+		generated.sort(Comparator.comparing(Component::getId));
+		return generated;
+	}
+	
+	/**
+	 * Work out the owning concept without resorting to the GraphLoader's map of all components
+	 */
+	private Concept getOwner(ComponentType componentType, Component c) throws TermServerScriptException {
+		switch (componentType) {
+			case CONCEPT : return gl.getConcept(c.getId(), false, false);
+			case DESCRIPTION :
+			case TEXT_DEFINITION : return gl.getConcept(((Description)c).getConceptId(), false, false);
+			default : String referencedComponentId = getReferencedComponentId(c);
+						if (referencedComponentId == null) {
+							return null;
+						} else if (SnomedUtils.getComponentType(referencedComponentId).equals(ComponentType.DESCRIPTION)) {
+							Description d = gl.getDescription(referencedComponentId, false, false);
+							return d == null ? null : gl.getConcept(d.getConceptId(), false, false);
+						}
+						return gl.getConcept(referencedComponentId, false, false);
 		}
-		remainingComponents.remove(c.getId());
-		return issues.size();
 	}
 	
+	private String getReferencedComponentId(Component c) {
+		if (c instanceof RefsetMember) {
+			return ((RefsetMember)c).getReferencedComponentId();
+		} else if (c instanceof LangRefsetEntry) {
+			return ((LangRefsetEntry)c).getReferencedComponentId();
+		} else if (c instanceof AxiomEntry) {
+			return ((AxiomEntry)c).getReferencedComponentId();
+		}
+		return null;
+	}
 	
-	private void reportRemainder() throws TermServerScriptException {
-		for (Map.Entry<String, Component> entry : remainingComponents.entrySet()) {
-			Concept owner = gl.getComponentOwner(entry.getValue().getId());
-			int reportTabIdx = entry.getValue().getComponentType().ordinal();
-			report (reportTabIdx, owner, entry.getKey(), "Component from generated snapshot not present in export", entry.getValue());
+	private String[] toRF2(Component c) throws TermServerScriptException {
+		try {
+			return c.toRF2();
+		} catch (Exception e) {
+			throw new TermServerScriptException("Unable to express " + c + " in RF2", e);
 		}
-		
+	}
+	
+	/**
+	 * 64 bit FNV-1a hash of an RF2 row, treating a null field the same as an empty one
+	 */
+	static long digest(String line) {
+		long hash = FNV_OFFSET_BASIS;
+		for (int i = 0; i < line.length(); i++) {
+			hash ^= line.charAt(i);
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+	
+	static long digest(String[] fields) {
+		long hash = FNV_OFFSET_BASIS;
+		for (int f = 0; f < fields.length; f++) {
+			if (f > 0) {
+				hash ^= '\t';
+				hash *= FNV_PRIME;
+			}
+			String field = fields[f];
+			if (field != null) {
+				for (int i = 0; i < field.length(); i++) {
+					hash ^= field.charAt(i);
+					hash *= FNV_PRIME;
+				}
+			}
+		}
+		return hash;
 	}
 
 	public Component createComponent(ComponentType componentType, String[] lineItems) throws TermServerScriptException {
@@ -275,4 +399,16 @@ public class ReconcileSnapshot extends TermServerReport implements ReportClass {
 		r.setModuleId(lineItems[REL_IDX_MODULEID]);
 		return r;
 	}
+	
+	class Discrepancy {
+		Concept owner;
+		boolean isIssue;
+		Object[] details;
+		
+		Discrepancy(Concept owner, boolean isIssue, Object... details) {
+			this.owner = owner;
+			this.isIssue = isIssue;
+			this.details = details;
+		}
+	}
 }
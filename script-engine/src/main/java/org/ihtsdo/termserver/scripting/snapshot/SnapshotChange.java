@@ -0,0 +1,70 @@
+package org.ihtsdo.termserver.scripting.snapshot;
+
+import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Component.ComponentType;
+import org.ihtsdo.termserver.scripting.domain.RF2Constants;
+
+/**
+ * A single difference detected for a component between two RF2 snapshots.
+ * The rows are held as split RF2 lines, so no component objects are created
+ * unless the listener chooses to build them.
+ */
+public class SnapshotChange implements RF2Constants {
+	
+	public enum ChangeType { NEW, INACTIVATED, REACTIVATED, MODULE_MOVED, ATTRIBUTE_CHANGED, MISSING }
+	
+	private final ChangeType changeType;
+	private final ComponentType componentType;
+	private final String fileKey;
+	private final String[] previous;
+	private final String[] current;
+	
+	public SnapshotChange(ChangeType changeType, ComponentType componentType, String fileKey, String[] previous, String[] current) {
+		this.changeType = changeType;
+		this.componentType = componentType;
+		this.fileKey = fileKey;
+		this.previous = previous;
+		this.current = current;
+	}
+
+	public ChangeType getChangeType() {
+		return changeType;
+	}
+
+	/**
+	 * @return the type of component, or null if the file was not recognised
+	 * as one of the component types we load
+	 */
+	public ComponentType getComponentType() {
+		return componentType;
+	}
+
+	/**
+	 * @return the name of the RF2 file the change was found in, with its date removed
+	 */
+	public String getFileKey() {
+		return fileKey;
+	}
+	
+	public String getId() {
+		return current == null ? previous[IDX_ID] : current[IDX_ID];
+	}
+
+	/**
+	 * @return the row as it was in the previous snapshot, or null if the component is new
+	 */
+	public String[] getPrevious() {
+		return previous;
+	}
+
+	/**
+	 * @return the row as it is in the current snapshot, or null if the component is missing
+	 */
+	public String[] getCurrent() {
+		return current;
+	}
+	
+	@Override
+	public String toString() {
+		return changeType + " " + fileKey + " " + getId();
+	}
+}
@@ -0,0 +1,9 @@
+package org.ihtsdo.termserver.scripting.snapshot;
+
+import org.ihtsdo.otf.exception.TermServerScriptException;
+
+public interface SnapshotChangeListener {
+	
+	public void onChange(SnapshotChange change) throws TermServerScriptException;
+	
+}
@@ -0,0 +1,239 @@
+package org.ihtsdo.termserver.scripting.snapshot;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.ihtsdo.otf.exception.TermServerScriptException;
+import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Component.ComponentType;
+import org.ihtsdo.termserver.scripting.TermServerScript;
+import org.ihtsdo.termserver.scripting.domain.RF2Constants;
+import org.ihtsdo.termserver.scripting.snapshot.SnapshotChange.ChangeType;
+import org.ihtsdo.termserver.scripting.util.Rf2Sorter;
+
+/**
+ * Compares two RF2 snapshots (zip or expanded directory) without loading either
+ * into the GraphLoader.  Each snapshot file is sorted by id on disk, and then
+ * the matching files from the two releases are merge-joined row by row, with
+ * any differences passed to the registered listeners.
+ */
+public class SnapshotDiffer implements RF2Constants {
+
+	private static final String FILE_EXT = ".txt";
+
+	private List<SnapshotChangeListener> listeners = new ArrayList<>();
+	private int chunkSize = Rf2Sorter.DEFAULT_CHUNK_SIZE;
+
+	public SnapshotDiffer addListener(SnapshotChangeListener listener) {
+		listeners.add(listener);
+		return this;
+	}
+
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * @return the number of changes detected, per type of change
+	 */
+	public Map<ChangeType, Integer> compare(File previous, File current) throws TermServerScriptException {
+		File workingDir = null;
+		try {
+			workingDir = Files.createTempDirectory("snapshot_diff-").toFile();
+			TermServerScript.info("Sorting snapshot files in " + previous);
+			Map<String, File> previousFiles = sortArchive(previous, new File(workingDir, "previous"));
+			TermServerScript.info("Sorting snapshot files in " + current);
+			Map<String, File> currentFiles = sortArchive(current, new File(workingDir, "current"));
+
+			Map<ChangeType, Integer> changeCounts = new EnumMap<>(ChangeType.class);
+			for (Map.Entry<String, File> entry : currentFiles.entrySet()) {
+				String fileKey = entry.getKey();
+				File previousFile = previousFiles.remove(fileKey);
+				TermServerScript.info("Comparing " + fileKey);
+				compareFile(fileKey, previousFile, entry.getValue(), changeCounts);
+				entry.getValue().delete();
+				if (previousFile != null) {
+					previousFile.delete();
+				}
+			}
+
+			for (Map.Entry<String, File> entry : previousFiles.entrySet()) {
+				String fileKey = entry.getKey();
+				TermServerScript.warn(fileKey + " exists in " + previous.getName() + " but not in " + current.getName());
+				reportMissingFile(fileKey, entry.getValue(), changeCounts);
+				entry.getValue().delete();
+			}
+			TermServerScript.info("Snapshot comparison complete: " + changeCounts);
+			return changeCounts;
+		} catch (IOException e) {
+			throw new TermServerScriptException("Unable to compare " + previous + " to " + current, e);
+		} finally {
+			FileUtils.deleteQuietly(workingDir);
+		}
+	}
+
+	private Map<String, File> sortArchive(File archive, File targetDir) throws IOException, TermServerScriptException {
+		targetDir.mkdirs();
+		Map<String, File> sortedFiles = new TreeMap<>();
+		if (archive.isDirectory()) {
+			List<Path> paths;
+			try (Stream<Path> walk = Files.walk(archive.toPath())) {
+				paths = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+			}
+			for (Path path : paths) {
+				if (isSnapshotFile(path)) {
+					try (InputStream is = new BufferedInputStream(Files.newInputStream(path))) {
+						sortFile(path, is, targetDir, sortedFiles);
+					}
+				}
+			}
+		} else if (archive.getName().endsWith(".zip")) {
+			try (ZipInputStream zis = new ZipInputStream(new FileInputStream(archive))) {
+				ZipEntry ze = zis.getNextEntry();
+				while (ze != null) {
+					Path path = Paths.get(ze.getName());
+					if (!ze.isDirectory() && isSnapshotFile(path)) {
+						sortFile(path, zis, targetDir, sortedFiles);
+					}
+					ze = zis.getNextEntry();
+				}
+			}
+		} else {
+			throw new TermServerScriptException("Unrecognised archive : " + archive);
+		}
+		return sortedFiles;
+	}
+
+	private boolean isSnapshotFile(Path path) {
+		String fileName = path.getFileName().toString();
+		return fileName.contains(SNAPSHOT) && fileName.endsWith(FILE_EXT);
+	}
+
+	private void sortFile(Path path, InputStream is, File targetDir, Map<String, File> sortedFiles) throws IOException {
+		String fileKey = getFileKey(path.getFileName().toString());
+		File sorted = new File(targetDir, fileKey + FILE_EXT);
+		Rf2Sorter.sort(is, sorted, chunkSize);
+		sortedFiles.put(fileKey, sorted);
+	}
+
+	/**
+	 * The file key is the file name without its date, so that the same file
+	 * can be matched up across two releases eg sct2_Concept_Snapshot_INT
+	 */
+	public static String getFileKey(String fileName) {
+		return fileName.replaceAll("_\\d{8}\\.txt$", "")
+				.replace(FILE_EXT, "");
+	}
+
+	public static ComponentType getComponentType(String fileKey) {
+		if (fileKey.contains("sct2_Concept_")) {
+			return ComponentType.CONCEPT;
+		} else if (fileKey.contains("sct2_StatedRelationship_")) {
+			return ComponentType.STATED_RELATIONSHIP;
+		} else if (fileKey.contains("sct2_Relationship_")) {
+			return ComponentType.INFERRED_RELATIONSHIP;
+		} else if (fileKey.contains("sct2_sRefset_OWLExpression") || fileKey.contains("sct2_sRefset_OWLAxiom")) {
+			return ComponentType.AXIOM;
+		} else if (fileKey.contains("sct2_Description_")) {
+			return ComponentType.DESCRIPTION;
+		} else if (fileKey.contains("sct2_TextDefinition_")) {
+			return ComponentType.TEXT_DEFINITION;
+		} else if (fileKey.contains("InactivationIndicatorReferenceSet") || fileKey.contains("der2_cRefset_AttributeValue")) {
+			return ComponentType.ATTRIBUTE_VALUE;
+		} else if (fileKey.contains("Association")) {
+			return ComponentType.HISTORICAL_ASSOCIATION;
+		} else if (fileKey.contains("Language")) {
+			return ComponentType.LANGREFSET;
+		}
+		return null;
+	}
+
+	private void compareFile(String fileKey, File previousFile, File currentFile, Map<ChangeType, Integer> changeCounts) throws IOException, TermServerScriptException {
+		ComponentType componentType = getComponentType(fileKey);
+		BufferedReader previousReader = previousFile == null ? null : Rf2Sorter.newReader(previousFile);
+		try (BufferedReader currentReader = Rf2Sorter.newReader(currentFile)) {
+			String previousRow = previousReader == null ? null : previousReader.readLine();
+			String currentRow = currentReader.readLine();
+			while (currentRow != null) {
+				int cmp = previousRow == null ? 1 : Rf2Sorter.getId(previousRow).compareTo(Rf2Sorter.getId(currentRow));
+				if (cmp < 0) {
+					notifyMissing(componentType, fileKey, previousRow, changeCounts);
+					previousRow = previousReader.readLine();
+				} else if (cmp > 0) {
+					notify(ChangeType.NEW, componentType, fileKey, null, currentRow.split(FIELD_DELIMITER, -1), changeCounts);
+					currentRow = currentReader.readLine();
+				} else {
+					//Same id, either identical or changed
+					if (!previousRow.equals(currentRow)) {
+						compareRows(componentType, fileKey, previousRow.split(FIELD_DELIMITER, -1), currentRow.split(FIELD_DELIMITER, -1), changeCounts);
+					}
+					previousRow = previousReader.readLine();
+					currentRow = currentReader.readLine();
+				}
+			}
+			//Anything left sorts after the last current row, so is also missing
+			while (previousRow != null) {
+				notifyMissing(componentType, fileKey, previousRow, changeCounts);
+				previousRow = previousReader.readLine();
+			}
+		} finally {
+			if (previousReader != null) {
+				previousReader.close();
+			}
+		}
+	}
+
+	private void reportMissingFile(String fileKey, File previousFile, Map<ChangeType, Integer> changeCounts) throws IOException, TermServerScriptException {
+		//Already warned about the file as a whole, so no need to do so for every row
+		ComponentType componentType = getComponentType(fileKey);
+		try (BufferedReader previousReader = Rf2Sorter.newReader(previousFile)) {
+			String previousRow = previousReader.readLine();
+			while (previousRow != null) {
+				notify(ChangeType.MISSING, componentType, fileKey, previousRow.split(FIELD_DELIMITER, -1), null, changeCounts);
+				previousRow = previousReader.readLine();
+			}
+		}
+	}
+
+	private void notifyMissing(ComponentType componentType, String fileKey, String previousRow, Map<ChangeType, Integer> changeCounts) throws TermServerScriptException {
+		//RF2 components are never deleted, so this is unexpected
+		TermServerScript.warn(fileKey + " component " + Rf2Sorter.getId(previousRow) + " missing from current release");
+		notify(ChangeType.MISSING, componentType, fileKey, previousRow.split(FIELD_DELIMITER, -1), null, changeCounts);
+	}
+
+	private void compareRows(ComponentType componentType, String fileKey, String[] previous, String[] current, Map<ChangeType, Integer> changeCounts) throws TermServerScriptException {
+		boolean wasActive = previous[IDX_ACTIVE].equals("1");
+		boolean isActive = current[IDX_ACTIVE].equals("1");
+		if (wasActive && !isActive) {
+			notify(ChangeType.INACTIVATED, componentType, fileKey, previous, current, changeCounts);
+		} else if (!wasActive && isActive) {
+			notify(ChangeType.REACTIVATED, componentType, fileKey, previous, current, changeCounts);
+		}
+
+		if (!previous[IDX_MODULEID].equals(current[IDX_MODULEID])) {
+			notify(ChangeType.MODULE_MOVED, componentType, fileKey, previous, current, changeCounts);
+		}
+
+		//Any field after the moduleId counts as an attribute of the component
+		boolean attributeChanged = previous.length != current.length;
+		for (int i = IDX_MODULEID + 1; !attributeChanged && i < current.length; i++) {
+			attributeChanged = !previous[i].equals(current[i]);
+		}
+		if (attributeChanged) {
+			notify(ChangeType.ATTRIBUTE_CHANGED, componentType, fileKey, previous, current, changeCounts);
+		}
+	}
+
+	private void notify(ChangeType changeType, ComponentType componentType, String fileKey, String[] previous, String[] current, Map<ChangeType, Integer> changeCounts) throws TermServerScriptException {
+		changeCounts.merge(changeType, 1, Integer::sum);
+		SnapshotChange change = new SnapshotChange(changeType, componentType, fileKey, previous, current);
+		for (SnapshotChangeListener listener : listeners) {
+			listener.onChange(change);
+		}
+	}
+}
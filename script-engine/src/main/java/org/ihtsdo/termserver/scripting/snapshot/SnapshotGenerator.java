@@ -8,6 +8,7 @@ import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Project;
 import org.ihtsdo.otf.exception.TermServerScriptException;
 import org.ihtsdo.termserver.scripting.TermServerScript;
 import org.ihtsdo.termserver.scripting.domain.*;
+import org.ihtsdo.termserver.scripting.util.ArchiveBuilder;
 import org.ihtsdo.termserver.scripting.util.SnomedUtils;
 
 public class SnapshotGenerator extends TermServerScript {
@@ -26,6 +27,10 @@ public class SnapshotGenerator extends TermServerScript {
 	protected String langSnapshotFilename;
 	protected String edition = "INT";
 	protected boolean leaveArchiveUncompressed = false;
+	protected ArchiveBuilder archive;
+	protected Long sourceHeadTimestamp;
+	protected SnapshotManifest manifest;
+	protected Set<String> filesToRegenerate;
 	
 	protected String languageCode = "en";
 	protected boolean isExtension = false;
@@ -56,7 +61,7 @@ public class SnapshotGenerator extends TermServerScript {
 			snapGen.outputRF2();
 			snapGen.flushFiles(false, false);
 			if (!snapGen.leaveArchiveUncompressed) {	
-				SnomedUtils.createArchive(new File(snapGen.outputDirName));
+				snapGen.finishArchive();
 			}
 		} finally {
 			snapGen.finish();
@@ -86,7 +91,8 @@ public class SnapshotGenerator extends TermServerScript {
 	protected void init (File newLocation, boolean addTodaysDate) throws TermServerScriptException {
 		File outputDir = new File (outputDirName);
 		int increment = 0;
-		while (outputDir.exists()) {
+		//When regenerating files, we're writing back into the existing snapshot
+		while (outputDir.exists() && filesToRegenerate == null) {
 			String proposedOutputDirName = outputDirName + "_" + (++increment) ;
 			outputDir = new File(proposedOutputDirName);
 		}
@@ -101,8 +107,19 @@ public class SnapshotGenerator extends TermServerScript {
 			outputDirName = outputDir.getName();
 			packageRoot = outputDirName + File.separator + newLocation;
 			packageDir = packageRoot + (addTodaysDate?today:"") + File.separator;
+			//Stream the RF2 straight into the archive rather than writing the files out first
+			try {
+				archive = new ArchiveBuilder(SnomedUtils.getArchiveFile(new File(packageDir).getName()));
+			} catch (IOException e) {
+				throw new TermServerScriptException("Unable to create archive for " + packageDir, e);
+			}
+			getRF2Manager().streamToArchive(archive, outputDirName + File.separator);
 		}
 		info ("Outputting data to " + packageDir);
+		//Each file is written (and compressed) on its own thread while we encode the rows
+		getRF2Manager().setWriterThreadPerFile(true);
+		//Concepts come out of the graph in no particular order, so sort each file by id as a release would be
+		getRF2Manager().setSortById(true);
 		initialiseFileHeaders();
 	}
 	
@@ -136,6 +153,39 @@ public class SnapshotGenerator extends TermServerScript {
 		getRF2Manager().flushFiles(false);
 	}
 	
+	/**
+	 * When only some files are being regenerated, rows for the other files are discarded
+	 */
+	@Override
+	protected void writeToRF2File(String fileName, Object[] columns) throws TermServerScriptException {
+		if (filesToRegenerate == null || filesToRegenerate.contains(getSnapshotPath(fileName))) {
+			super.writeToRF2File(fileName, columns);
+		}
+	}
+	
+	private String getSnapshotPath(String fileName) {
+		return fileName.substring(packageDir.length()).replace(File.separatorChar, '/');
+	}
+	
+	/**
+	 * Records the row counts and checksums of the uncompressed snapshot so that it can be
+	 * verified before it is next loaded.  Only the regenerated files are re-examined if
+	 * the rest of the snapshot is being kept.
+	 */
+	protected void writeManifest() throws TermServerScriptException {
+		File snapshotDir = new File(packageDir);
+		try {
+			if (manifest != null && filesToRegenerate != null) {
+				manifest.refresh(snapshotDir, filesToRegenerate);
+			} else {
+				manifest = SnapshotManifest.build(snapshotDir, sourceHeadTimestamp, today);
+			}
+			manifest.write(snapshotDir);
+		} catch (IOException e) {
+			throw new TermServerScriptException("Failed to write manifest for " + snapshotDir, e);
+		}
+	}
+	
 	private void outputRF2() throws TermServerScriptException {
 		//Create new collection in case some other process looks at a new concept
 		Set<Concept> allConcepts = new HashSet<>(gl.getAllConcepts());
@@ -198,9 +248,41 @@ public class SnapshotGenerator extends TermServerScript {
 		}
 	}
 	
+	protected File finishArchive() throws TermServerScriptException {
+		getRF2Manager().flushFiles(true);
+		try {
+			File archiveFile = archive.finish();
+			info("Created archive: " + archiveFile);
+			return archiveFile;
+		} catch (IOException e) {
+			throw new TermServerScriptException("Failed to create archive from " + packageDir, e);
+		} finally {
+			archive.close();
+		}
+	}
+	
 	public void leaveArchiveUncompressed() {
 		leaveArchiveUncompressed = true;
 	}
+	
+	/**
+	 * The time of the last commit on the branch the snapshot is being generated from
+	 */
+	public void setSourceHeadTimestamp(Long sourceHeadTimestamp) {
+		this.sourceHeadTimestamp = sourceHeadTimestamp;
+	}
+	
+	/**
+	 * Write only the given files back into an existing uncompressed snapshot, with
+	 * the same names as before, and update its manifest to match.
+	 */
+	public void regenerateFiles(SnapshotManifest manifest, Collection<String> paths) {
+		this.manifest = manifest;
+		this.filesToRegenerate = new HashSet<>(paths);
+		if (manifest.getFileDate() != null) {
+			today = manifest.getFileDate();
+		}
+	}
 
 	public String getOutputDirName() {
 		return outputDirName;
@@ -221,7 +303,9 @@ public class SnapshotGenerator extends TermServerScript {
 				outputRF2();
 				getRF2Manager().flushFiles(true);
 				if (!leaveArchiveUncompressed) {	
-					SnomedUtils.createArchive(new File(outputDirName));
+					finishArchive();
+				} else {
+					writeManifest();
 				}
 				debug("Completed writing RF2 Snapshot to disk");
 			} catch (Exception e) {
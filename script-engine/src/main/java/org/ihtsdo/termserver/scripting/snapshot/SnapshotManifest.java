@@ -0,0 +1,250 @@
+package org.ihtsdo.termserver.scripting.snapshot;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.ihtsdo.termserver.scripting.domain.RF2Constants;
+
+/**
+ * Records the row count, size and SHA-256 of every file in a snapshot directory, along
+ * with the time of the last commit on the branch it was generated from.  This allows a
+ * snapshot held on disk to be verified before any time is spent loading it, and any
+ * damaged files to be identified individually.
+ */
+public class SnapshotManifest implements RF2Constants {
+
+	public static final String MANIFEST_FILENAME = "snapshot_manifest.txt";
+	private static final String BRANCH_HEAD_TIMESTAMP = "branchHeadTimestamp";
+	private static final String FILE_DATE = "fileDate";
+	private static final String[] FILE_HEADER = new String[] {"path", "rows", "bytes", "sha256"};
+	private static final int BUFFER_SIZE = 1024 * 256;
+
+	private Long branchHeadTimestamp;
+	private String fileDate;
+	private final Map<String, FileEntry> files = new TreeMap<>();
+
+	public SnapshotManifest(Long branchHeadTimestamp, String fileDate) {
+		this.branchHeadTimestamp = branchHeadTimestamp;
+		this.fileDate = fileDate;
+	}
+
+	/**
+	 * Describe every file currently in the snapshot directory, working on the files in parallel
+	 */
+	public static SnapshotManifest build(File snapshotDir, Long branchHeadTimestamp, String fileDate) throws IOException {
+		SnapshotManifest manifest = new SnapshotManifest(branchHeadTimestamp, fileDate);
+		manifest.refresh(snapshotDir, listFiles(snapshotDir));
+		return manifest;
+	}
+
+	/**
+	 * Re-describe the named files, for example once they have been regenerated.
+	 * Files which no longer exist are dropped from the manifest.
+	 */
+	public void refresh(File snapshotDir, Collection<String> paths) throws IOException {
+		List<String> existing = new ArrayList<>();
+		for (String path : paths) {
+			if (new File(snapshotDir, path).isFile()) {
+				existing.add(path);
+			} else {
+				files.remove(path);
+			}
+		}
+		files.putAll(runInParallel(existing, path -> describe(new File(snapshotDir, path))));
+	}
+
+	/**
+	 * @return the manifest held in the snapshot directory, or null if there is none
+	 */
+	public static SnapshotManifest read(File snapshotDir) throws IOException {
+		File manifestFile = new File(snapshotDir, MANIFEST_FILENAME);
+		if (!manifestFile.canRead()) {
+			return null;
+		}
+		SnapshotManifest manifest = new SnapshotManifest(null, null);
+		try (BufferedReader br = Files.newBufferedReader(manifestFile.toPath(), StandardCharsets.UTF_8)) {
+			String line;
+			boolean inFiles = false;
+			while ((line = br.readLine()) != null) {
+				String[] lineItems = line.split(FIELD_DELIMITER);
+				if (!inFiles) {
+					if (lineItems[0].equals(FILE_HEADER[0])) {
+						inFiles = true;
+					} else if (lineItems[0].equals(BRANCH_HEAD_TIMESTAMP) && lineItems.length > 1) {
+						manifest.branchHeadTimestamp = Long.parseLong(lineItems[1]);
+					} else if (lineItems[0].equals(FILE_DATE) && lineItems.length > 1) {
+						manifest.fileDate = lineItems[1];
+					}
+				} else if (lineItems.length == FILE_HEADER.length) {
+					manifest.files.put(lineItems[0], new FileEntry(Long.parseLong(lineItems[1]), Long.parseLong(lineItems[2]), lineItems[3]));
+				} else {
+					throw new IOException("Malformed line in " + manifestFile + ": " + line);
+				}
+			}
+		} catch (NumberFormatException e) {
+			throw new IOException("Malformed " + manifestFile, e);
+		}
+		return manifest;
+	}
+
+	/**
+	 * The manifest is written to a temporary file first, so that an interrupted write
+	 * never leaves a manifest which describes a partial snapshot.
+	 */
+	public void write(File snapshotDir) throws IOException {
+		File manifestFile = new File(snapshotDir, MANIFEST_FILENAME);
+		File tmp = new File(snapshotDir, MANIFEST_FILENAME + ".tmp");
+		try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8))) {
+			if (branchHeadTimestamp != null) {
+				pw.print(BRANCH_HEAD_TIMESTAMP + FIELD_DELIMITER + branchHeadTimestamp + LINE_DELIMITER);
+			}
+			if (fileDate != null) {
+				pw.print(FILE_DATE + FIELD_DELIMITER + fileDate + LINE_DELIMITER);
+			}
+			pw.print(String.join(FIELD_DELIMITER, FILE_HEADER) + LINE_DELIMITER);
+			for (Map.Entry<String, FileEntry> entry : files.entrySet()) {
+				FileEntry file = entry.getValue();
+				pw.print(entry.getKey() + FIELD_DELIMITER + file.rows + FIELD_DELIMITER + file.bytes + FIELD_DELIMITER + file.sha256 + LINE_DELIMITER);
+			}
+			if (pw.checkError()) {
+				throw new IOException("Failed to write " + tmp);
+			}
+		}
+		Files.move(tmp.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Checks every file in parallel.  Sizes are compared before anything is read, so
+	 * truncated files are found without hashing them.
+	 * @return the paths of any files which are missing or do not match the manifest
+	 */
+	public List<String> verify(File snapshotDir) throws IOException {
+		Map<String, Boolean> intact = runInParallel(files.keySet(), path -> {
+			File file = new File(snapshotDir, path);
+			FileEntry expected = files.get(path);
+			if (!file.isFile() || file.length() != expected.bytes) {
+				return false;
+			}
+			try {
+				return expected.equals(describe(file));
+			} catch (IOException e) {
+				return false;
+			}
+		});
+		return intact.entrySet().stream()
+				.filter(e -> !e.getValue())
+				.map(Map.Entry::getKey)
+				.sorted()
+				.collect(Collectors.toList());
+	}
+
+	public Long getBranchHeadTimestamp() {
+		return branchHeadTimestamp;
+	}
+
+	public String getFileDate() {
+		return fileDate;
+	}
+
+	public Set<String> getPaths() {
+		return files.keySet();
+	}
+
+	private static List<String> listFiles(File snapshotDir) throws IOException {
+		Path root = snapshotDir.toPath();
+		try (Stream<Path> paths = Files.walk(root)) {
+			return paths.filter(Files::isRegularFile)
+					.map(p -> root.relativize(p).toString().replace(File.separatorChar, '/'))
+					.filter(p -> !p.startsWith(MANIFEST_FILENAME))
+					.collect(Collectors.toList());
+		}
+	}
+
+	private static FileEntry describe(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		long rows = 0;
+		long bytes = 0;
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try (InputStream is = new FileInputStream(file)) {
+			int read;
+			while ((read = is.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+				bytes += read;
+				for (int i = 0; i < read; i++) {
+					if (buffer[i] == '\n') {
+						rows++;
+					}
+				}
+			}
+		}
+		return new FileEntry(rows, bytes, toHex(digest.digest()));
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+
+	private interface FileTask<T> {
+		T apply(String path) throws IOException;
+	}
+
+	private static <T> Map<String, T> runInParallel(Collection<String> paths, FileTask<T> task) throws IOException {
+		try {
+			return paths.parallelStream().collect(Collectors.toMap(p -> p, p -> {
+				try {
+					return task.apply(p);
+				} catch (IOException e) {
+					throw new IllegalStateException("Unable to read " + p + ": " + e.getMessage(), e);
+				}
+			}));
+		} catch (IllegalStateException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException)e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	private static class FileEntry {
+		final long rows;
+		final long bytes;
+		final String sha256;
+
+		FileEntry(long rows, long bytes, String sha256) {
+			this.rows = rows;
+			this.bytes = bytes;
+			this.sha256 = sha256;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof FileEntry)) {
+				return false;
+			}
+			FileEntry o = (FileEntry)other;
+			return rows == o.rows && bytes == o.bytes && sha256.equals(o.sha256);
+		}
+
+		@Override
+		public int hashCode() {
+			return sha256.hashCode();
+		}
+	}
+}
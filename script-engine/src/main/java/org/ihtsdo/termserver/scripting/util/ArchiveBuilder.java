@@ -0,0 +1,316 @@
+package org.ihtsdo.termserver.scripting.util;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.ihtsdo.termserver.scripting.TermServerScript;
+
+/**
+ * Builds a zip archive where each entry is compressed independently, so that entries
+ * can be written (and compressed) on as many threads as there are entries.  Each entry
+ * is deflated as it is written into a spill file alongside the archive, and the archive
+ * itself is assembled from the already compressed spill files by finish().
+ *
+ * Entries can be streamed to row by row via openEntry(), so content need never be
+ * written out uncompressed, or added from existing files via addFile() / addDirectory().
+ */
+public class ArchiveBuilder implements Closeable {
+
+	public static final int BUFFER_SIZE = 1024 * 256;
+
+	private static final int LOCAL_HEADER_SIG = 0x04034b50;
+	private static final int CENTRAL_HEADER_SIG = 0x02014b50;
+	private static final int END_OF_CENTRAL_DIR_SIG = 0x06054b50;
+	private static final int ZIP_VERSION = 20;
+	private static final int UTF8_FLAG = 0x0800;
+	private static final int DEFLATED = 8;
+	private static final long MAX_SIZE = 0xFFFFFFFFL;
+	private static final int MAX_ENTRIES = 0xFFFF;
+
+	private final File outputFile;
+	private final File spillDir;
+	private final Map<String, Entry> entries = new TreeMap<>();
+	private final int dosTime;
+	private final int dosDate;
+	private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+	private boolean isFinished = false;
+
+	public ArchiveBuilder(File outputFile) throws IOException {
+		this.outputFile = outputFile;
+		File parent = outputFile.getAbsoluteFile().getParentFile();
+		this.spillDir = Files.createTempDirectory(parent.toPath(), outputFile.getName() + "_").toFile();
+		LocalDateTime now = LocalDateTime.now();
+		dosTime = (now.getHour() << 11) | (now.getMinute() << 5) | (now.getSecond() >> 1);
+		dosDate = ((now.getYear() - 1980) << 9) | (now.getMonthValue() << 5) | now.getDayOfMonth();
+	}
+
+	public void setCompressionLevel(int compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+
+	/**
+	 * @return a stream which compresses whatever is written to it into the named entry.
+	 * Different entries may be written concurrently, but any one entry must only be
+	 * written to from one thread.  The stream must be closed before finish() is called.
+	 */
+	public OutputStream openEntry(String name) throws IOException {
+		name = name.replace(File.separatorChar, '/');
+		Entry entry;
+		synchronized (entries) {
+			if (isFinished) {
+				throw new IOException("Archive " + outputFile + " has already been finished");
+			}
+			if (entries.containsKey(name)) {
+				throw new IOException("Archive " + outputFile + " already contains " + name);
+			}
+			if (entries.size() >= MAX_ENTRIES) {
+				throw new IOException("Archive " + outputFile + " cannot hold more than " + MAX_ENTRIES + " entries");
+			}
+			entry = new Entry(name, new File(spillDir, entries.size() + ".deflate"));
+			entries.put(name, entry);
+		}
+		return new EntryOutputStream(entry);
+	}
+
+	public void addFile(String name, File file) throws IOException {
+		try (InputStream in = new FileInputStream(file);
+				OutputStream out = openEntry(name)) {
+			IOUtils.copyLarge(in, out, new byte[BUFFER_SIZE]);
+		}
+	}
+
+	/**
+	 * Add every file under the directory, named by its path relative to that directory,
+	 * compressing the files in parallel.
+	 */
+	public void addDirectory(File dir) throws IOException {
+		Path root = dir.toPath();
+		List<Path> files;
+		try (Stream<Path> paths = Files.walk(root)) {
+			files = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+		}
+		try {
+			files.parallelStream().forEach(file -> {
+				String relativePath = root.relativize(file).toString();
+				TermServerScript.debug(" Adding: " + relativePath);
+				try {
+					addFile(relativePath, file.toFile());
+				} catch (IOException e) {
+					throw new IllegalStateException(e.getMessage(), e);
+				}
+			});
+		} catch (IllegalStateException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException)e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Assemble the compressed entries into the final archive.  No further entries may be added.
+	 */
+	public File finish() throws IOException {
+		List<Entry> toWrite;
+		synchronized (entries) {
+			isFinished = true;
+			toWrite = new ArrayList<>(entries.values());
+		}
+		for (Entry entry : toWrite) {
+			if (!entry.isClosed) {
+				throw new IOException("Entry " + entry.name + " was not closed before archive " + outputFile + " was finished");
+			}
+		}
+
+		try (CountingOutputStream out = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile), BUFFER_SIZE))) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			for (Entry entry : toWrite) {
+				entry.offset = out.count;
+				checkSize(entry.offset, "Archive");
+				writeLocalHeader(out, entry);
+				try (InputStream in = new FileInputStream(entry.spillFile)) {
+					IOUtils.copyLarge(in, out, buffer);
+				}
+				entry.spillFile.delete();
+			}
+
+			long centralDirOffset = out.count;
+			checkSize(centralDirOffset, "Archive");
+			for (Entry entry : toWrite) {
+				writeCentralHeader(out, entry);
+			}
+			long centralDirSize = out.count - centralDirOffset;
+
+			writeInt(out, END_OF_CENTRAL_DIR_SIG);
+			writeShort(out, 0);  //This disk
+			writeShort(out, 0);  //Disk with central directory
+			writeShort(out, toWrite.size());
+			writeShort(out, toWrite.size());
+			writeInt(out, centralDirSize);
+			writeInt(out, centralDirOffset);
+			writeShort(out, 0);  //Comment length
+		} finally {
+			FileUtils.deleteQuietly(spillDir);
+		}
+		return outputFile;
+	}
+
+	/**
+	 * Discards any spill files.  Does not remove an archive that has already been finished.
+	 */
+	@Override
+	public void close() {
+		FileUtils.deleteQuietly(spillDir);
+	}
+
+	private void writeLocalHeader(OutputStream out, Entry entry) throws IOException {
+		writeInt(out, LOCAL_HEADER_SIG);
+		writeShort(out, ZIP_VERSION);
+		writeCommonFields(out, entry);
+		writeShort(out, 0);  //Extra field length
+		out.write(entry.nameBytes);
+	}
+
+	private void writeCentralHeader(OutputStream out, Entry entry) throws IOException {
+		writeInt(out, CENTRAL_HEADER_SIG);
+		writeShort(out, ZIP_VERSION);  //Made by
+		writeShort(out, ZIP_VERSION);  //Needed to extract
+		writeCommonFields(out, entry);
+		writeShort(out, 0);  //Extra field length
+		writeShort(out, 0);  //Comment length
+		writeShort(out, 0);  //Disk number start
+		writeShort(out, 0);  //Internal attributes
+		writeInt(out, 0);    //External attributes
+		writeInt(out, entry.offset);
+		out.write(entry.nameBytes);
+	}
+
+	//flags, method, time, date, crc, compressed size, size, name length
+	private void writeCommonFields(OutputStream out, Entry entry) throws IOException {
+		writeShort(out, UTF8_FLAG);
+		writeShort(out, DEFLATED);
+		writeShort(out, dosTime);
+		writeShort(out, dosDate);
+		writeInt(out, entry.crc);
+		writeInt(out, entry.compressedSize);
+		writeInt(out, entry.size);
+		writeShort(out, entry.nameBytes.length);
+	}
+
+	private void checkSize(long size, String what) throws IOException {
+		if (size > MAX_SIZE) {
+			throw new IOException(what + " exceeds 4GB, which would require Zip64: " + outputFile);
+		}
+	}
+
+	private static void writeShort(OutputStream out, int value) throws IOException {
+		out.write(value & 0xFF);
+		out.write((value >>> 8) & 0xFF);
+	}
+
+	private static void writeInt(OutputStream out, long value) throws IOException {
+		writeShort(out, (int)(value & 0xFFFF));
+		writeShort(out, (int)((value >>> 16) & 0xFFFF));
+	}
+
+	private class Entry {
+		final String name;
+		final byte[] nameBytes;
+		final File spillFile;
+		long crc;
+		long size;
+		long compressedSize;
+		long offset;
+		volatile boolean isClosed = false;
+
+		Entry(String name, File spillFile) {
+			this.name = name;
+			this.nameBytes = name.getBytes(StandardCharsets.UTF_8);
+			this.spillFile = spillFile;
+		}
+	}
+
+	/**
+	 * Deflates into the entry's spill file, keeping track of the checksum and sizes the
+	 * zip headers will need.
+	 */
+	private class EntryOutputStream extends OutputStream {
+		private final Entry entry;
+		private final Deflater deflater;
+		private final DeflaterOutputStream out;
+		private final CRC32 crc = new CRC32();
+		private long size = 0;
+		private boolean isClosed = false;
+
+		EntryOutputStream(Entry entry) throws IOException {
+			this.entry = entry;
+			//Raw deflate stream, since the zip headers are written separately
+			this.deflater = new Deflater(compressionLevel, true);
+			OutputStream spill = new BufferedOutputStream(new FileOutputStream(entry.spillFile), BUFFER_SIZE);
+			this.out = new DeflaterOutputStream(spill, deflater, BUFFER_SIZE);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte)b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			crc.update(b, off, len);
+			size += len;
+			out.write(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (isClosed) {
+				return;
+			}
+			isClosed = true;
+			try {
+				out.finish();
+				entry.compressedSize = deflater.getBytesWritten();
+				out.close();
+			} finally {
+				deflater.end();
+			}
+			entry.crc = crc.getValue();
+			entry.size = size;
+			checkSize(entry.size, "Entry " + entry.name);
+			checkSize(entry.compressedSize, "Entry " + entry.name);
+			entry.isClosed = true;
+		}
+	}
+
+	private static class CountingOutputStream extends FilterOutputStream {
+		long count = 0;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package org.ihtsdo.termserver.scripting.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds one canonical instance of each distinct value seen for an RF2 field, so 
+ * that the millions of components loaded can share a few thousand String objects
+ * for fields such as moduleId and effectiveTime.
+ */
+public class FieldDictionary {
+	
+	private final Map<String, String> values = new ConcurrentHashMap<>();
+	
+	public String intern(String value) {
+		if (value == null) {
+			return null;
+		}
+		String canonical = values.putIfAbsent(value, value);
+		return canonical == null ? value : canonical;
+	}
+	
+	public int size() {
+		return values.size();
+	}
+}
@@ -0,0 +1,177 @@
+package org.ihtsdo.termserver.scripting.util;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import org.ihtsdo.termserver.scripting.domain.RF2Constants;
+
+/**
+ * Sorts the rows of an RF2 file by id (the first column) without holding the
+ * whole file in memory.  Rows are sorted in chunks which are spilled to disk
+ * and then merged back together into a single sorted file.
+ */
+public class Rf2Sorter implements RF2Constants {
+
+	public static final int DEFAULT_CHUNK_SIZE = 500000;
+
+	public static final Comparator<String> ROW_COMPARATOR = Comparator.comparing(Rf2Sorter::getId)
+			.thenComparing(Comparator.naturalOrder());
+
+	//Orders SCTIDs numerically, as they would be in a release, as a shorter id is always the smaller.
+	//UUIDs are all the same length, so are still ordered as strings
+	public static final Comparator<String> RELEASE_ORDER_COMPARATOR = Comparator.comparing((String row) -> getId(row).length())
+			.thenComparing(ROW_COMPARATOR);
+
+	//Compares on id alone, so rows sharing an id are kept in the order they were read
+	public static final Comparator<String> ID_COMPARATOR = Comparator.comparing(Rf2Sorter::getId);
+
+	/**
+	 * @return the header row of the file sorted
+	 */
+	public static String sort(InputStream is, File output) throws IOException {
+		return sort(is, output, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Sorts the rows read from the input stream into the output file.  The stream
+	 * is not closed, so that it can be an entry in a zip file.
+	 * @return the header row of the file sorted
+	 */
+	public static String sort(InputStream is, File output, int chunkSize) throws IOException {
+		return sort(is, output, chunkSize, ROW_COMPARATOR);
+	}
+
+	/**
+	 * As above, ordering rows with the comparator given.  Rows that compare equal are
+	 * left in the order they were read.
+	 * @return the header row of the file sorted
+	 */
+	public static String sort(InputStream is, File output, int chunkSize, Comparator<String> comparator) throws IOException {
+		BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+		String header = br.readLine();
+		List<File> chunks = new ArrayList<>();
+		List<String> rows = new ArrayList<>();
+		try {
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (line.isEmpty()) {
+					continue;
+				}
+				rows.add(line);
+				if (rows.size() >= chunkSize) {
+					chunks.add(writeChunk(rows, null, comparator));
+					rows.clear();
+				}
+			}
+
+			if (chunks.isEmpty()) {
+				//Everything fitted into a single chunk, so no merge needed
+				writeChunk(rows, output, comparator);
+			} else {
+				if (!rows.isEmpty()) {
+					chunks.add(writeChunk(rows, null, comparator));
+				}
+				rows = null;
+				merge(chunks, output, comparator);
+			}
+		} finally {
+			for (File chunk : chunks) {
+				chunk.delete();
+			}
+		}
+		return header;
+	}
+
+	private static File writeChunk(List<String> rows, File output, Comparator<String> comparator) throws IOException {
+		if (output == null) {
+			output = File.createTempFile("rf2_sort_chunk-", ".txt");
+			output.deleteOnExit();
+		}
+		rows.sort(comparator);
+		try (BufferedWriter bw = newWriter(output)) {
+			for (String row : rows) {
+				bw.write(row);
+				bw.write(LINE_DELIMITER);
+			}
+		}
+		return output;
+	}
+
+	/**
+	 * Merges files which are each already sorted by id into a single sorted file.
+	 * The files should not have header rows.
+	 */
+	public static void merge(List<File> sortedFiles, File output) throws IOException {
+		merge(sortedFiles, output, ROW_COMPARATOR);
+	}
+
+	/**
+	 * As above, for files sorted with the comparator given.  Rows that compare equal
+	 * are written in the order of the files they came from.
+	 */
+	public static void merge(List<File> sortedFiles, File output, Comparator<String> comparator) throws IOException {
+		PriorityQueue<ChunkReader> queue = new PriorityQueue<>((a, b) -> {
+			int cmp = comparator.compare(a.current, b.current);
+			return cmp != 0 ? cmp : Integer.compare(a.order, b.order);
+		});
+		try (BufferedWriter bw = newWriter(output)) {
+			for (int order = 0; order < sortedFiles.size(); order++) {
+				ChunkReader reader = new ChunkReader(sortedFiles.get(order), order);
+				if (reader.advance()) {
+					queue.add(reader);
+				}
+			}
+			while (!queue.isEmpty()) {
+				ChunkReader reader = queue.poll();
+				bw.write(reader.current);
+				bw.write(LINE_DELIMITER);
+				if (reader.advance()) {
+					queue.add(reader);
+				}
+			}
+		} finally {
+			for (ChunkReader reader : queue) {
+				reader.close();
+			}
+		}
+	}
+
+	public static BufferedReader newReader(File file) throws IOException {
+		return new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), 1024 * 64);
+	}
+
+	private static BufferedWriter newWriter(File file) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1024 * 64);
+	}
+
+	public static String getId(String row) {
+		int cut = row.indexOf('\t');
+		return cut == NOT_FOUND ? row : row.substring(0, cut);
+	}
+
+	private static class ChunkReader implements Closeable {
+		BufferedReader br;
+		String current;
+		final int order;
+
+		ChunkReader(File chunk, int order) throws IOException {
+			br = newReader(chunk);
+			this.order = order;
+		}
+
+		boolean advance() throws IOException {
+			current = br.readLine();
+			if (current == null) {
+				close();
+				return false;
+			}
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			br.close();
+		}
+	}
+}
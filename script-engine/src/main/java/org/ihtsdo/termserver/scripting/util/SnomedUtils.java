@@ -7,7 +7,6 @@ import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.zip.*;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
@@ -264,21 +263,11 @@ public class SnomedUtils implements RF2Constants {
 	}
 	
 	public static File createArchive(File dirToZip) throws TermServerScriptException {
-		File outputFile;
-		try {
-			// The zip filename will be the name of the first thing in the zip location
-			// ie in this case the directory SnomedCT_RF1Release_INT_20150731
-			String zipFileName = dirToZip.listFiles()[0].getName() + ".zip";
-			int fileNameModifier = 1;
-			while (new File(zipFileName).exists()) {
-				zipFileName = dirToZip.listFiles()[0].getName() + "_" + fileNameModifier++ + ".zip";
-			}
-			outputFile = new File(zipFileName);
-			ZipOutputStream out = new ZipOutputStream(new FileOutputStream(outputFile));
-			String rootLocation = dirToZip.getAbsolutePath() + File.separator;
-			TermServerScript.info("Creating archive : " + zipFileName + " from files found in " + rootLocation);
-			addDir(rootLocation, dirToZip, out);
-			out.close();
+		File outputFile = getArchiveFile(dirToZip);
+		try (ArchiveBuilder archive = new ArchiveBuilder(outputFile)) {
+			TermServerScript.info("Creating archive : " + outputFile + " from files found in " + dirToZip.getAbsolutePath());
+			archive.addDirectory(dirToZip);
+			archive.finish();
 		} catch (IOException e) {
 			throw new TermServerScriptException("Failed to create archive from " + dirToZip, e);
 		} finally {
@@ -291,26 +280,21 @@ public class SnomedUtils implements RF2Constants {
 		return outputFile;
 	}
 	
-	public static void addDir(String rootLocation, File dirObj, ZipOutputStream out) throws IOException {
-		File[] files = dirObj.listFiles();
-		byte[] tmpBuf = new byte[1024];
-
-		for (int i = 0; i < files.length; i++) {
-			if (files[i].isDirectory()) {
-				addDir(rootLocation, files[i], out);
-				continue;
-			}
-			FileInputStream in = new FileInputStream(files[i].getAbsolutePath());
-			String relativePath = files[i].getAbsolutePath().substring(rootLocation.length());
-			TermServerScript.debug(" Adding: " + relativePath);
-			out.putNextEntry(new ZipEntry(relativePath));
-			int len;
-			while ((len = in.read(tmpBuf)) > 0) {
-				out.write(tmpBuf, 0, len);
-			}
-			out.closeEntry();
-			in.close();
+	/**
+	 * The zip filename will be the name of the first thing in the zip location
+	 * ie the directory SnomedCT_RF1Release_INT_20150731
+	 */
+	public static File getArchiveFile(File dirToZip) {
+		return getArchiveFile(dirToZip.listFiles()[0].getName());
+	}
+	
+	public static File getArchiveFile(String packageName) {
+		String zipFileName = packageName + ".zip";
+		int fileNameModifier = 1;
+		while (new File(zipFileName).exists()) {
+			zipFileName = packageName + "_" + fileNameModifier++ + ".zip";
 		}
+		return new File(zipFileName);
 	}
 	
 	public static boolean conceptHasActiveState(Concept c, ActiveState a) {
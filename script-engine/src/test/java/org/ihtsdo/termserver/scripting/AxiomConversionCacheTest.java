@@ -0,0 +1,96 @@
+package org.ihtsdo.termserver.scripting;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+import org.apache.commons.io.FileUtils;
+import org.ihtsdo.termserver.scripting.domain.RF2Constants;
+import org.junit.*;
+import org.snomed.otf.owltoolkit.domain.AxiomRepresentation;
+import org.snomed.otf.owltoolkit.domain.Relationship;
+
+public class AxiomConversionCacheTest implements RF2Constants {
+
+	private static final String OWL = "SubClassOf(:100 ObjectIntersectionOf(:138875005 ObjectSomeValuesFrom(:609096000 ObjectSomeValuesFrom(:116680003 :138875005))))";
+
+	private File tempDir;
+	private File cacheFile;
+
+	@Before
+	public void setup() throws Exception {
+		tempDir = Files.createTempDirectory("axiom-cache-test").toFile();
+		cacheFile = new File(tempDir, "axiom_conversions.tsv");
+	}
+
+	@After
+	public void tearDown() {
+		AxiomConversionCache.MAX_ENTRIES = 1000000;
+		FileUtils.deleteQuietly(tempDir);
+	}
+
+	@Test
+	public void skipsUnreadableEntriesAndRewritesWithoutThem() throws Exception {
+		AxiomRepresentation axiom = new AxiomRepresentation();
+		axiom.setLeftHandSideNamedConcept(100L);
+		axiom.setPrimitive(true);
+		Map<Integer, List<Relationship>> rhs = new HashMap<>();
+		rhs.put(0, Collections.singletonList(new Relationship(116680003L, 138875005L)));
+		axiom.setRightHandSideRelationships(rhs);
+		String validKey = "200_20200131_" + OWL.hashCode();
+
+		List<String> lines = Arrays.asList(
+				validKey + TAB + AxiomConversionCache.encode(axiom),
+				"300_20200131_1" + TAB + "100|",
+				"400_20200131_1" + TAB + "100||1||0:abc=138875005",
+				"500_20200131_1" + TAB + "100||1||116680003=138875005",
+				"600_20200131_1");
+		Files.write(cacheFile.toPath(), lines, StandardCharsets.UTF_8);
+
+		AxiomConversionCache cache = AxiomConversionCache.open(cacheFile);
+		assertEquals(1, cache.size());
+		//Served from the cache, so never parsed
+		AxiomRepresentation cached = cache.convert("200", "20200131", OWL);
+		assertEquals(Long.valueOf(100L), cached.getLeftHandSideNamedConcept());
+		assertTrue(cached.isPrimitive());
+		assertEquals(1, cached.getRightHandSideRelationships().get(0).size());
+
+		cache.save();
+		List<String> saved = Files.readAllLines(cacheFile.toPath(), StandardCharsets.UTF_8);
+		assertEquals(Collections.singletonList(lines.get(0)), saved);
+		//Nothing left behind from the swap
+		assertArrayEquals(new File[] { cacheFile }, tempDir.listFiles());
+		assertEquals(1, AxiomConversionCache.open(cacheFile).size());
+	}
+
+	@Test
+	public void leavesCleanFileAlone() throws Exception {
+		//An axiom with no relationship representation
+		Files.write(cacheFile.toPath(), Collections.singletonList("200_20200131_" + OWL.hashCode() + TAB + "-"), StandardCharsets.UTF_8);
+		long lastModified = cacheFile.lastModified();
+		AxiomConversionCache cache = AxiomConversionCache.open(cacheFile);
+		assertEquals(1, cache.size());
+		assertNull(cache.convert("200", "20200131", OWL));
+		cache.save();
+		assertEquals(lastModified, cacheFile.lastModified());
+	}
+
+	@Test
+	public void dropsEntriesNotUsedByThisLoadWhenFull() throws Exception {
+		AxiomConversionCache.MAX_ENTRIES = 2;
+		String usedKey = "300_20200131_" + OWL.hashCode();
+		Files.write(cacheFile.toPath(), Arrays.asList(
+				"100_20190731_1" + TAB + "-",
+				"200_20190731_1" + TAB + "-",
+				usedKey + TAB + "-"), StandardCharsets.UTF_8);
+
+		AxiomConversionCache cache = AxiomConversionCache.open(cacheFile);
+		assertNull(cache.convert("300", "20200131", OWL));
+		cache.save();
+		assertEquals(Arrays.asList(usedKey + TAB + "-", "100_20190731_1" + TAB + "-"),
+				Files.readAllLines(cacheFile.toPath(), StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,78 @@
+package org.ihtsdo.termserver.scripting;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.validator.routines.checkdigit.VerhoeffCheckDigit;
+import org.ihtsdo.termserver.scripting.domain.RF2Constants;
+import org.junit.*;
+
+public class IdGeneratorTest implements RF2Constants {
+
+	private static final int IDS = 3000;
+
+	private File tempDir;
+	private File sctIdFile;
+	private String originalConfig;
+
+	@Before
+	public void setup() throws Exception {
+		tempDir = Files.createTempDirectory("id-generator-test").toFile();
+		sctIdFile = new File(tempDir, "sctids.txt");
+		VerhoeffCheckDigit verhoeff = new VerhoeffCheckDigit();
+		List<String> sctIds = new ArrayList<>();
+		for (int i = 0; i < IDS; i++) {
+			String id = (100000 + i) + "00";
+			sctIds.add(id + verhoeff.calculate(id));
+		}
+		Files.write(sctIdFile.toPath(), sctIds, StandardCharsets.UTF_8);
+		originalConfig = IdGenerator.ID_CONFIG;
+		IdGenerator.ID_CONFIG = new File(tempDir, "running_id_config.txt").getPath();
+	}
+
+	@After
+	public void tearDown() {
+		IdGenerator.ID_CONFIG = originalConfig;
+		FileUtils.deleteQuietly(tempDir);
+	}
+
+	@Test
+	public void reloadAfterPartialJournalWriteDoesNotReuseIds() throws Exception {
+		Set<String> handedOut = new HashSet<>();
+		IdGenerator first = IdGenerator.initiateIdGenerator(sctIdFile.getPath(), PartitionIdentifier.CONCEPT);
+		for (int i = 0; i < 5; i++) {
+			assertTrue(handedOut.add(first.getSCTID()));
+		}
+		//The run dies part way through writing the next journal entry, so never finishes
+		Files.write(new File(IdGenerator.ID_CONFIG).toPath(), (PartitionIdentifier.CONCEPT + TAB + "2").getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+		IdGenerator second = IdGenerator.initiateIdGenerator(sctIdFile.getPath(), PartitionIdentifier.CONCEPT);
+		for (int i = 0; i < 5; i++) {
+			assertTrue(handedOut.add(second.getSCTID()));
+		}
+		//The incomplete entry is dropped when the journal is compacted
+		List<String> journal = Files.readAllLines(new File(IdGenerator.ID_CONFIG).toPath(), StandardCharsets.UTF_8);
+		assertFalse(journal.contains(PartitionIdentifier.CONCEPT + TAB + "2"));
+	}
+
+	@Test
+	public void blocksAreContiguousAndNotHandedOutAgain() throws Exception {
+		IdGenerator idGen = IdGenerator.initiateIdGenerator(sctIdFile.getPath(), PartitionIdentifier.CONCEPT);
+		List<String> sctIds = Files.readAllLines(sctIdFile.toPath(), StandardCharsets.UTF_8);
+		IdGenerator.Block block = idGen.reserveBlock(3);
+		String afterBlock = idGen.getSCTID();
+		for (int i = 0; i < 3; i++) {
+			assertEquals(sctIds.get(i), block.getSCTID());
+		}
+		assertFalse(block.hasNext());
+		assertEquals(sctIds.get(3), afterBlock);
+		//Once exhausted, the block falls back to the generator
+		assertEquals(sctIds.get(4), block.getSCTID());
+	}
+}
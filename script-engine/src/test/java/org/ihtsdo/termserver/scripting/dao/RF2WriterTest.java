@@ -0,0 +1,80 @@
+package org.ihtsdo.termserver.scripting.dao;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RF2WriterTest {
+
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("rf2_writer_test-", ".txt");
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void columnsAreEncoded() throws IOException {
+		try (RF2Writer writer = RF2Writer.open(file, false, false)) {
+			writer.writeRow(new Object[] {"id", "effectiveTime", "active", "term"});
+			writer.writeRow(new Object[] {900000000000207008L, 20200131, null, "Sj\u00f6gren's syndrome"});
+			writer.writeRow(new Object[] {-1, "", Boolean.TRUE, "ascii only"});
+		}
+		String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+		assertEquals("id\teffectiveTime\tactive\tterm\r\n"
+				+ "900000000000207008\t20200131\t\tSj\u00f6gren's syndrome\r\n"
+				+ "-1\t\ttrue\tascii only\r\n", content);
+	}
+
+	@Test
+	public void rowsAreSortedByIdAfterTheHeader() throws IOException {
+		try (RF2Writer writer = RF2Writer.open(file, true, false)) {
+			writer.writeRow(new Object[] {"id", "effectiveTime"});
+			writer.writeRow(new Object[] {"300", "20200131"});
+			writer.writeRow(new Object[] {"100", "20200131"});
+			writer.writeRow(new Object[] {"200", "20200131"});
+		}
+		List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+		assertEquals(Arrays.asList("id\teffectiveTime", "100\t20200131",
+				"200\t20200131", "300\t20200131"), lines);
+	}
+
+	@Test
+	public void sctidsAreSortedNumerically() throws IOException {
+		try (RF2Writer writer = RF2Writer.open(file, true, false)) {
+			writer.writeRow(new Object[] {"id", "effectiveTime"});
+			writer.writeRow(new Object[] {"1000", "20200131"});
+			writer.writeRow(new Object[] {"900", "20200131"});
+		}
+		List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+		assertEquals(Arrays.asList("id\teffectiveTime", "900\t20200131", "1000\t20200131"), lines);
+	}
+
+	@Test
+	public void writerThreadPreservesOrderAcrossBuffers() throws IOException {
+		int rowCount = 200000;  //Several times the buffer size
+		try (RF2Writer writer = RF2Writer.open(file, false, true)) {
+			for (long i = 0; i < rowCount; i++) {
+				writer.writeRow(new Object[] {i, "20200131", "1"});
+			}
+			writer.flush();
+			assertEquals(rowCount, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size());
+		}
+		List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+		for (int i = 0; i < rowCount; i++) {
+			assertEquals(i + "\t20200131\t1", lines.get(i));
+		}
+	}
+}
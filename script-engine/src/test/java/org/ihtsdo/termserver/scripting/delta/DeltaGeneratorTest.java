@@ -0,0 +1,89 @@
+package org.ihtsdo.termserver.scripting.delta;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.apache.commons.validator.routines.checkdigit.VerhoeffCheckDigit;
+import org.ihtsdo.termserver.scripting.GraphLoader;
+import org.ihtsdo.termserver.scripting.dao.RF2Manager;
+import org.ihtsdo.termserver.scripting.domain.*;
+import org.junit.Test;
+
+public class DeltaGeneratorTest implements RF2Constants {
+
+	private static final int CONCEPTS = 2000;
+
+	GraphLoader gl = GraphLoader.getGraphLoader();
+
+	@Test
+	public void parallelOutputMatchesSerialOutput() throws Exception {
+		List<String> serial = generate(false);
+		List<String> parallel = generate(true);
+		//Every concept, plus the axiom made from its stated relationships
+		assertEquals(CONCEPTS * 2, serial.size());
+		assertEquals(serial, parallel);
+	}
+
+	private List<String> generate(boolean inParallel) throws Exception {
+		gl.reset();
+		VerhoeffCheckDigit verhoeff = new VerhoeffCheckDigit();
+		for (int i = 0; i < CONCEPTS; i++) {
+			String id = (100000 + i) + "00";
+			Concept c = Concept.withDefaults(id + verhoeff.calculate(id));
+			c.setDirty();
+			Relationship isA = new Relationship(c, IS_A, CLINICAL_FINDING, UNGROUPED);
+			isA.setDirty();
+			c.addRelationship(isA);
+			Relationship site = new Relationship(c, FINDING_SITE, BODY_STRUCTURE, 1 + i % 3);
+			site.setDirty();
+			c.addRelationship(site);
+			gl.registerConcept(c);
+		}
+
+		CapturingDeltaGenerator generator = new CapturingDeltaGenerator();
+		generator.conceptsPerOutputRange = 50;
+		generator.outputRangesInParallel = inParallel;
+		generator.outputModifiedComponents(true);
+		return generator.getRows();
+	}
+
+	static class CapturingDeltaGenerator extends DeltaGenerator {
+
+		private final List<String> rows = new ArrayList<>();
+
+		private final RF2Manager rf2Manager = new RF2Manager() {
+			@Override
+			public void writeToRF2File(String fileName, Object[] columns) {
+				String[] row = Arrays.stream(columns).map(String::valueOf).toArray(String[]::new);
+				//Axiom ids are random, so can't be compared between runs
+				if (fileName.equals(owlDeltaFilename)) {
+					row[IDX_ID] = "";
+				}
+				rows.add(fileName + TAB + String.join(TAB, row));
+			}
+		};
+
+		CapturingDeltaGenerator() {
+			conDeltaFilename = "concept";
+			relDeltaFilename = "relationship";
+			sRelDeltaFilename = "statedRelationship";
+			owlDeltaFilename = "owl";
+			descDeltaFilename = "description";
+			langDeltaFilename = "language";
+			attribValDeltaFilename = "attributeValue";
+			assocDeltaFilename = "association";
+		}
+
+		@Override
+		public RF2Manager getRF2Manager() {
+			return rf2Manager;
+		}
+
+		List<String> getRows() {
+			List<String> sorted = new ArrayList<>(rows);
+			Collections.sort(sorted);
+			return sorted;
+		}
+	}
+}
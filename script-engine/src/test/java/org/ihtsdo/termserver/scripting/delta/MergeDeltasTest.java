@@ -0,0 +1,149 @@
+package org.ihtsdo.termserver.scripting.delta;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Component.ComponentType;
+import org.ihtsdo.termserver.scripting.dao.RF2Manager;
+import org.ihtsdo.termserver.scripting.domain.Concept;
+import org.ihtsdo.termserver.scripting.domain.RF2Constants;
+import org.junit.*;
+
+public class MergeDeltasTest implements RF2Constants {
+
+	private static final String CONCEPT_HEADER = "id\teffectiveTime\tactive\tmoduleId\tdefinitionStatusId";
+	private static final String DESC_HEADER = "id\teffectiveTime\tactive\tmoduleId\tconceptId\tlanguageCode\ttypeId\tterm\tcaseSignificanceId";
+	private static final String DESC_ROW = "101013\t20180131\t1\tM\t100005\ten\tT\tSome term\tC";
+
+	private File tempDir;
+
+	@Before
+	public void setup() throws Exception {
+		tempDir = Files.createTempDirectory("merge-deltas-test").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		FileUtils.deleteQuietly(tempDir);
+	}
+
+	@Test
+	public void streamingMergeUsesLatestRowOfEachComponent() throws Exception {
+		//Rows for the same component are deliberately not in effective time order
+		File alpha = zip("alpha.zip",
+				"sct2_Concept_Snapshot_INT_20180131.txt", CONCEPT_HEADER,
+				"100005\t20180131\t1\tM\tP",
+				"100005\t20170731\t0\tM\tP");
+		File current = zip("current.zip",
+				"sct2_Concept_Delta_INT_20180731.txt", CONCEPT_HEADER,
+				"100005\t\t1\tM\tFD",
+				"100005\t20180131\t1\tM\tP");
+		File fix = zip("fix.zip",
+				"sct2_Concept_Delta_INT_20180131.txt", CONCEPT_HEADER,
+				"100005\t20180131\t0\tM\tP",
+				"sct2_Description_Delta-en_INT_20180131.txt", DESC_HEADER,
+				DESC_ROW);
+
+		CapturingMergeDeltas merger = new CapturingMergeDeltas(fix, current, alpha);
+		merger.doStreamingMerge();
+
+		//The inactivation comes from the fix, the definition status from the unpublished current row
+		assertEquals(Arrays.asList(
+				"concept\t100005\t\t0\tM\tFD",
+				"description\t" + DESC_ROW), merger.getRows());
+		//Reports name the owning concept, even though the graph was never loaded
+		assertEquals(Arrays.asList(
+				"100005\t" + ComponentType.CONCEPT + "\t100005",
+				"100005\t" + ComponentType.DESCRIPTION + "\t101013"), merger.getReports());
+	}
+
+	@Test
+	public void repeatedFixRowIsMergedAgainstTheSameRows() throws Exception {
+		File alpha = zip("alpha.zip",
+				"sct2_Concept_Snapshot_INT_20180131.txt", CONCEPT_HEADER,
+				"100005\t20180131\t1\tM\tP");
+		File current = zip("current.zip",
+				"sct2_Concept_Delta_INT_20180731.txt", CONCEPT_HEADER,
+				"100005\t\t1\tM\tFD");
+		File fix = zip("fix.zip",
+				"sct2_Concept_Delta_INT_20180131.txt", CONCEPT_HEADER,
+				"100005\t20180131\t0\tM\tP",
+				"100005\t20180131\t1\tM2\tP");
+
+		CapturingMergeDeltas merger = new CapturingMergeDeltas(fix, current, alpha);
+		merger.doStreamingMerge();
+
+		//Both fix rows see the current change to the definition status
+		assertEquals(Arrays.asList(
+				"concept\t100005\t\t0\tM\tFD",
+				"concept\t100005\t\t1\tM2\tFD"), merger.getRows());
+	}
+
+	private File zip(String name, String... entriesAndRows) throws Exception {
+		File zip = new File(tempDir, name);
+		try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zip))) {
+			for (int i = 0; i < entriesAndRows.length; i++) {
+				String entry = entriesAndRows[i];
+				StringBuilder content = new StringBuilder();
+				while (i + 1 < entriesAndRows.length && !entriesAndRows[i + 1].endsWith(".txt")) {
+					content.append(entriesAndRows[++i]).append(LINE_DELIMITER);
+				}
+				zos.putNextEntry(new ZipEntry("SnomedCT/Terminology/" + entry));
+				zos.write(content.toString().getBytes(StandardCharsets.UTF_8));
+				zos.closeEntry();
+			}
+		}
+		return zip;
+	}
+
+	static class CapturingMergeDeltas extends MergeDeltas {
+
+		private final List<String> rows = Collections.synchronizedList(new ArrayList<>());
+		private final List<String> reports = Collections.synchronizedList(new ArrayList<>());
+
+		private final RF2Manager rf2Manager = new RF2Manager() {
+			@Override
+			public void writeToRF2File(String fileName, Object[] columns) {
+				rows.add(fileName + TAB + String.join(TAB, Arrays.stream(columns).map(String::valueOf).toArray(String[]::new)));
+			}
+		};
+
+		CapturingMergeDeltas(File fix, File current, File alpha) {
+			fixDeltaFile = fix;
+			inputFile = current;
+			alphaSnapshotFile = alpha;
+			fileMap.put(ComponentType.CONCEPT, "concept");
+			fileMap.put(ComponentType.DESCRIPTION, "description");
+		}
+
+		@Override
+		public RF2Manager getRF2Manager() {
+			return rf2Manager;
+		}
+
+		@Override
+		public void report(int reportIdx, Concept c, Object... details) {
+			reports.add((c == null ? "" : c.getConceptId()) + TAB + details[3] + TAB + details[4]);
+		}
+
+		List<String> getRows() {
+			List<String> sorted = new ArrayList<>(rows);
+			Collections.sort(sorted);
+			return sorted;
+		}
+
+		List<String> getReports() {
+			List<String> sorted = new ArrayList<>(reports);
+			Collections.sort(sorted);
+			return sorted;
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package org.ihtsdo.termserver.scripting.domain;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+public class RelationshipIndexTest implements RF2Constants {
+
+	@Test
+	public void changeOnlyRebuildsItsOwnConcept() {
+		Concept changing = Concept.withDefaults("100000101");
+		Relationship changingRel = addRelationship(changing);
+		Concept untouched = Concept.withDefaults("100000200");
+		addRelationship(untouched);
+
+		List<Relationship> untouchedView = untouched.getRelationshipView(CharacteristicType.STATED_RELATIONSHIP, ActiveState.ACTIVE);
+		assertEquals(1, changing.getRelationshipView(CharacteristicType.STATED_RELATIONSHIP, ActiveState.ACTIVE).size());
+
+		changingRel.setActive(false);
+		assertEquals(0, changing.getRelationshipView(CharacteristicType.STATED_RELATIONSHIP, ActiveState.ACTIVE).size());
+		assertEquals(1, changing.getRelationshipView(CharacteristicType.STATED_RELATIONSHIP, ActiveState.INACTIVE).size());
+		//Still the same index, as nothing about this concept changed
+		assertSame(untouchedView, untouched.getRelationshipView(CharacteristicType.STATED_RELATIONSHIP, ActiveState.ACTIVE));
+	}
+
+	@Test
+	public void changeToSharedRelationshipRebuildsEveryHolder() {
+		Concept first = Concept.withDefaults("100000101");
+		Relationship shared = addRelationship(first);
+		Concept second = Concept.withDefaults("100000200");
+		second.addRelationship(shared);
+
+		assertEquals(1, first.getRelationshipView(CharacteristicType.STATED_RELATIONSHIP, 0).size());
+		assertEquals(1, second.getRelationshipView(CharacteristicType.STATED_RELATIONSHIP, 0).size());
+
+		shared.setGroupId(1);
+		assertEquals(0, first.getRelationshipView(CharacteristicType.STATED_RELATIONSHIP, 0).size());
+		assertEquals(1, first.getRelationshipView(CharacteristicType.STATED_RELATIONSHIP, 1).size());
+		assertEquals(1, second.getRelationshipView(CharacteristicType.STATED_RELATIONSHIP, 1).size());
+	}
+
+	@Test
+	public void removedRelationshipNoLongerStalesTheIndex() {
+		Concept c = Concept.withDefaults("100000101");
+		Relationship r = addRelationship(c);
+		c.getRelationships().remove(r);
+		List<Relationship> view = c.getRelationshipView(CharacteristicType.STATED_RELATIONSHIP, ActiveState.INACTIVE);
+
+		r.setActive(false);
+		assertSame(view, c.getRelationshipView(CharacteristicType.STATED_RELATIONSHIP, ActiveState.INACTIVE));
+		assertNull(r.indexOwner);
+	}
+
+	@Test
+	public void duplicateAddDoesNotTakeOwnership() {
+		Concept first = Concept.withDefaults("100000101");
+		Relationship r = addRelationship(first);
+		Concept second = Concept.withDefaults("100000200");
+		Relationship equal = addRelationship(second);
+		first.getRelationships().add(equal);
+
+		//Only the original is held by the first concept, so the copy still belongs to the second alone
+		assertSame(second.getRelationships(), equal.indexOwner);
+	}
+
+	@Test
+	public void plainSetIsMadeIndexable() {
+		Concept c = Concept.withDefaults("100000101");
+		c.setRelationships(new LinkedHashSet<>());
+		addRelationship(c);
+		assertTrue(c.getRelationships() instanceof RelationshipIndex.RelationshipSet);
+		assertEquals(1, c.getRelationshipView(CharacteristicType.STATED_RELATIONSHIP, ActiveState.ACTIVE).size());
+	}
+
+	@Test
+	public void modifyingReturnedSetLeavesConceptAlone() {
+		Concept c = Concept.withDefaults("100000101");
+		Relationship r = addRelationship(c);
+		Set<Relationship> rels = c.getRelationships(CharacteristicType.STATED_RELATIONSHIP, ActiveState.ACTIVE);
+		assertTrue(rels.contains(r));
+		assertTrue(rels.remove(r));
+		assertTrue(rels.isEmpty());
+		assertEquals(1, c.getRelationshipView(CharacteristicType.STATED_RELATIONSHIP, ActiveState.ACTIVE).size());
+	}
+
+	private Relationship addRelationship(Concept c) {
+		Relationship r = new Relationship(c, IS_A, CLINICAL_FINDING, UNGROUPED);
+		r.setCharacteristicType(CharacteristicType.STATED_RELATIONSHIP);
+		r.setActive(true);
+		c.addRelationship(r);
+		return r;
+	}
+}
@@ -0,0 +1,132 @@
+package org.ihtsdo.termserver.scripting.fixes.rf2Player;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Component;
+import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Task;
+import org.ihtsdo.termserver.scripting.domain.*;
+import org.junit.*;
+
+public class Rf2PlayerTest implements RF2Constants {
+
+	private TestPlayer player;
+
+	@Before
+	public void setup() {
+		player = new TestPlayer();
+	}
+
+	@Test
+	public void conceptsArePlayedAfterWhatTheyDependOn() {
+		//3 is a child of 2, which is a child of 1.  5 and 6 depend on each other
+		dependsOn("3", "2");
+		dependsOn("2", "1");
+		dependsOn("5", "6");
+		dependsOn("6", "5");
+		//Dependencies on concepts that aren't changing don't hold anything back
+		dependsOn("4", "100000101");
+
+		List<List<Component>> waves = player.formWaves(changes("3", "2", "1", "4", "5", "6"));
+		assertEquals(Arrays.asList(
+				Arrays.asList("1", "4"),
+				Arrays.asList("2"),
+				Arrays.asList("3"),
+				Arrays.asList("5", "6")), waveIds(waves));
+	}
+
+	@Test
+	public void partFilledTaskIsToppedUpFromTheNextWave() throws Exception {
+		player.setTaskSize(3);
+		dependsOn("2", "1");
+
+		Batch batch = player.formIntoBatch(changes("1", "3", "2"));
+		assertEquals(1, batch.getTasks().size());
+		assertEquals(1, player.taskWaves.size());
+		assertEquals(Arrays.asList("1", "3", "2"), ids(batch.getTasks().get(0).getComponents()));
+	}
+
+	@Test
+	public void taskIsNotToppedUpWithConceptsDependingOnOtherTasks() throws Exception {
+		player.setTaskSize(2);
+		dependsOn("2", "1");
+
+		Batch batch = player.formIntoBatch(changes("1", "3", "5", "2"));
+		assertEquals(3, batch.getTasks().size());
+		assertEquals(2, player.taskWaves.size());
+		List<Task> secondWave = player.taskWaves.get(1);
+		assertEquals(1, secondWave.size());
+		assertEquals(Arrays.asList("2"), ids(secondWave.get(0).getComponents()));
+	}
+
+	@Test
+	public void conceptWithChangesInPlaceIsAtTargetState() throws Exception {
+		Concept loaded = Concept.withDefaults("100000101");
+		loaded.addRelationship(statedIsA(loaded));
+		ConceptChange change = new ConceptChange("100000101");
+		change.addRelationship(statedIsA(change));
+		assertTrue(player.isAtTargetState(loaded, change));
+
+		change.setModified();
+		change.setActive(true);
+		change.setDefinitionStatus(DefinitionStatus.FULLY_DEFINED);
+		assertFalse(player.isAtTargetState(loaded, change));
+	}
+
+	@Test
+	public void conceptMissingARelationshipIsNotAtTargetState() throws Exception {
+		Concept loaded = Concept.withDefaults("100000101");
+		ConceptChange change = new ConceptChange("100000101");
+		change.addRelationship(statedIsA(change));
+		assertFalse(player.isAtTargetState(loaded, change));
+
+		//An inactivation is in place if the relationship is gone altogether
+		Relationship inactivated = statedIsA(change);
+		inactivated.setRelationshipId("100000121");
+		inactivated.setActive(false);
+		ConceptChange inactivation = new ConceptChange("100000101");
+		inactivation.addRelationship(inactivated);
+		assertTrue(player.isAtTargetState(loaded, inactivation));
+	}
+
+	private void dependsOn(String id, String dependency) {
+		player.dependencies.computeIfAbsent(id, k -> new HashSet<>()).add(dependency);
+	}
+
+	private List<Component> changes(String... ids) {
+		List<Component> changes = new ArrayList<>();
+		for (String id : ids) {
+			changes.add(new ConceptChange(id));
+		}
+		return changes;
+	}
+
+	private Relationship statedIsA(Concept c) {
+		Relationship r = new Relationship(c, IS_A, CLINICAL_FINDING, UNGROUPED);
+		r.setCharacteristicType(CharacteristicType.STATED_RELATIONSHIP);
+		r.setActive(true);
+		return r;
+	}
+
+	private List<List<String>> waveIds(List<List<Component>> waves) {
+		return waves.stream().map(this::ids).collect(Collectors.toList());
+	}
+
+	private List<String> ids(Collection<? extends Component> components) {
+		return components.stream().map(Component::getId).collect(Collectors.toList());
+	}
+
+	static class TestPlayer extends Rf2Player {
+
+		TestPlayer() {
+			super(null);
+			author_reviewer = new String[] { "author", "reviewer" };
+		}
+
+		void setTaskSize(int taskSize) {
+			this.taskSize = taskSize;
+		}
+	}
+}
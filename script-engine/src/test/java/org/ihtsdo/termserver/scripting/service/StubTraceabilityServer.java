@@ -0,0 +1,83 @@
+package org.ihtsdo.termserver.scripting.service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stands in for the traceability service so that TraceabilityService can be exercised
+ * offline.  Serves whatever activity it has been given, after an optional delay, and
+ * records how it was called.
+ */
+public class StubTraceabilityServer implements ActivitySource {
+	
+	private final Map<Long, List<ConceptActivity>> activityByConcept = new ConcurrentHashMap<>();
+	private final AtomicInteger requestCount = new AtomicInteger();
+	private final AtomicInteger conceptsRequested = new AtomicInteger();
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger maxInFlight = new AtomicInteger();
+	private final AtomicInteger activityReturned = new AtomicInteger();
+	private long latency = 0;
+	private volatile boolean isFailing = false;
+	
+	public StubTraceabilityServer addActivity(long conceptId, String username, String branchPath, Date commitDate) {
+		activityByConcept.computeIfAbsent(conceptId, k -> Collections.synchronizedList(new ArrayList<>()))
+			.add(new ConceptActivity(conceptId, username, branchPath, commitDate));
+		return this;
+	}
+	
+	public StubTraceabilityServer withLatency(long latency) {
+		this.latency = latency;
+		return this;
+	}
+	
+	public void setFailing(boolean isFailing) {
+		this.isFailing = isFailing;
+	}
+
+	@Override
+	public List<ConceptActivity> getConceptActivity(List<Long> conceptIds, String areaOfInterest, Date since) {
+		requestCount.incrementAndGet();
+		conceptsRequested.addAndGet(conceptIds.size());
+		maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+		try {
+			if (latency > 0) {
+				Thread.sleep(latency);
+			}
+			if (isFailing) {
+				throw new IllegalStateException("Traceability unavailable");
+			}
+			List<ConceptActivity> activity = new ArrayList<>();
+			for (Long conceptId : conceptIds) {
+				for (ConceptActivity conceptActivity : activityByConcept.getOrDefault(conceptId, Collections.emptyList())) {
+					if (since == null || conceptActivity.getCommitDate().after(since)) {
+						activity.add(conceptActivity);
+					}
+				}
+			}
+			activityReturned.addAndGet(activity.size());
+			return activity;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} finally {
+			inFlight.decrementAndGet();
+		}
+	}
+	
+	public int getRequestCount() {
+		return requestCount.get();
+	}
+	
+	public int getConceptsRequested() {
+		return conceptsRequested.get();
+	}
+	
+	public int getActivityReturned() {
+		return activityReturned.get();
+	}
+	
+	public int getMaxInFlight() {
+		return maxInFlight.get();
+	}
+}
@@ -0,0 +1,114 @@
+package org.ihtsdo.termserver.scripting.service;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+
+import org.apache.commons.io.FileUtils;
+import org.ihtsdo.otf.exception.TermServerScriptException;
+import org.ihtsdo.termserver.scripting.creation.DummyScript;
+import org.ihtsdo.termserver.scripting.domain.Concept;
+import org.junit.*;
+
+public class TraceabilityServiceTest {
+	
+	private static final int CONCEPT_COUNT = 450;
+	private static final long FIRST_ID = 1000000L;
+	
+	private File tempDir;
+	private StubTraceabilityServer server;
+	private List<String[]> reported;
+	private DummyScript script;
+	
+	@Before
+	public void setup() throws Exception {
+		tempDir = Files.createTempDirectory("traceability-test").toFile();
+		server = new StubTraceabilityServer().withLatency(50);
+		for (long id = FIRST_ID; id < FIRST_ID + CONCEPT_COUNT; id++) {
+			server.addActivity(id, "author", "MAIN/TASK-" + id, new Date(1000));
+			if (id % 10 == 0) {
+				server.addActivity(id, "later", "MAIN/TASK-" + id, new Date(2000));
+			}
+		}
+		reported = new ArrayList<>();
+		script = new DummyScript() {
+			@Override
+			public void report (int reportIdx, Concept c, Object...details) throws TermServerScriptException {
+				reported.add(new String[] { c.getConceptId(), details == null || details.length == 0 ? null : (String)details[0] });
+			}
+		};
+	}
+	
+	@After
+	public void tearDown() {
+		FileUtils.deleteQuietly(tempDir);
+	}
+	
+	@Test
+	public void reportsRowsInOrderWithLatestActivity() throws TermServerScriptException {
+		TraceabilityService service = new TraceabilityService(server, script, "pdat", null);
+		runReport(service);
+		
+		assertEquals(CONCEPT_COUNT, reported.size());
+		for (int i = 0; i < CONCEPT_COUNT; i++) {
+			long id = FIRST_ID + i;
+			assertEquals(Long.toString(id), reported.get(i)[0]);
+			assertEquals(id % 10 == 0 ? "later" : "author", reported.get(i)[1]);
+		}
+		assertEquals(5, server.getRequestCount());
+		assertTrue("Expected requests to overlap", server.getMaxInFlight() > 1);
+	}
+	
+	@Test
+	public void secondRunOnlyPicksUpNewActivity() throws TermServerScriptException {
+		File cacheFile = new File(tempDir, "traceability.tsv");
+		runReport(new TraceabilityService(server, script, "pdat", TraceabilityCache.open(cacheFile)));
+		int activityReturned = server.getActivityReturned();
+		
+		server.addActivity(FIRST_ID + 1, "newer", "MAIN/TASK-NEW", new Date(3000));
+		reported.clear();
+		runReport(new TraceabilityService(server, script, "pdat", TraceabilityCache.open(cacheFile)));
+		//Each batch asks for anything since the earliest activity it knows of, so the original
+		//changes aren't sent again, but the later ones to every tenth concept are
+		assertEquals(activityReturned + (CONCEPT_COUNT / 10) + 1, server.getActivityReturned());
+		assertEquals(CONCEPT_COUNT, reported.size());
+		assertEquals("later", reported.get(0)[1]);
+		assertEquals("newer", reported.get(1)[1]);
+		assertEquals("author", reported.get(2)[1]);
+	}
+	
+	@Test
+	public void conceptsWithoutActivityAreNotAskedAboutAgainStraightAway() throws TermServerScriptException {
+		File cacheFile = new File(tempDir, "traceability.tsv");
+		StubTraceabilityServer emptyServer = new StubTraceabilityServer();
+		runReport(new TraceabilityService(emptyServer, script, "pdat", TraceabilityCache.open(cacheFile)));
+		assertEquals(CONCEPT_COUNT, emptyServer.getConceptsRequested());
+		
+		runReport(new TraceabilityService(emptyServer, script, "pdat", TraceabilityCache.open(cacheFile)));
+		assertEquals(CONCEPT_COUNT, emptyServer.getConceptsRequested());
+		assertEquals(CONCEPT_COUNT * 2, reported.size());
+	}
+	
+	@Test
+	public void failedLookupIsReportedWithoutActivityAndNotRetriedStraightAway() throws TermServerScriptException {
+		File cacheFile = new File(tempDir, "traceability.tsv");
+		server.setFailing(true);
+		runReport(new TraceabilityService(server, script, "pdat", TraceabilityCache.open(cacheFile)));
+		assertEquals(CONCEPT_COUNT, reported.size());
+		assertNull(reported.get(0)[1]);
+		int requested = server.getConceptsRequested();
+		
+		server.setFailing(false);
+		runReport(new TraceabilityService(server, script, "pdat", TraceabilityCache.open(cacheFile)));
+		assertEquals(requested, server.getConceptsRequested());
+	}
+	
+	private void runReport(TraceabilityService service) throws TermServerScriptException {
+		for (long id = FIRST_ID; id < FIRST_ID + CONCEPT_COUNT; id++) {
+			service.populateTraceabilityAndReport(0, new Concept(Long.toString(id)), (Object[])null);
+		}
+		service.flush();
+	}
+}
@@ -0,0 +1,124 @@
+package org.ihtsdo.termserver.scripting.snapshot;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import org.apache.commons.io.FileUtils;
+import org.ihtsdo.termserver.scripting.snapshot.SnapshotChange.ChangeType;
+import org.junit.*;
+
+public class SnapshotDifferTest {
+	
+	private static final String HEADER = "id\teffectiveTime\tactive\tmoduleId\tdefinitionStatusId\r\n";
+
+	private List<Path> tempDirs = new ArrayList<>();
+
+	@After
+	public void tearDown() {
+		for (Path tempDir : tempDirs) {
+			FileUtils.deleteQuietly(tempDir.toFile());
+		}
+	}
+
+	@Test
+	public void compareTest() throws Exception {
+		Path previous = createTempDir("previous");
+		Path current = createTempDir("current");
+		write(previous, "sct2_Concept_Snapshot_INT_20200131.txt", 
+				"3\t20190731\t1\tM1\tP",
+				"1\t20190731\t1\tM1\tP",
+				"2\t20190731\t0\tM1\tP",
+				"5\t20190731\t1\tM1\tP");
+		write(current, "sct2_Concept_Snapshot_INT_20200731.txt", 
+				"4\t20200731\t1\tM1\tP",
+				"1\t20200731\t0\tM1\tP",
+				"2\t20200731\t1\tM1\tP",
+				"3\t20200731\t1\tM2\tSD",
+				"5\t20190731\t1\tM1\tP");
+		
+		Map<String, ChangeType> changes = new HashMap<>();
+		SnapshotDiffer differ = new SnapshotDiffer();
+		differ.setChunkSize(2);  //Force the sort to spill to disk
+		differ.addListener(c -> changes.merge(c.getId(), c.getChangeType(), (a,b) -> b));
+		Map<ChangeType, Integer> counts = differ.compare(previous.toFile(), current.toFile());
+		
+		assertEquals(ChangeType.INACTIVATED, changes.get("1"));
+		assertEquals(ChangeType.REACTIVATED, changes.get("2"));
+		assertEquals(ChangeType.ATTRIBUTE_CHANGED, changes.get("3"));
+		assertEquals(ChangeType.NEW, changes.get("4"));
+		assertFalse(changes.containsKey("5"));
+		assertEquals(Integer.valueOf(1), counts.get(ChangeType.MODULE_MOVED));
+	}
+	
+	@Test
+	public void missingAfterLastCurrentRowTest() throws Exception {
+		Path previous = createTempDir("previous");
+		Path current = createTempDir("current");
+		write(previous, "sct2_Concept_Snapshot_INT_20200131.txt",
+				"1\t20190731\t1\tM1\tP",
+				"3\t20190731\t1\tM1\tP",
+				"8\t20190731\t1\tM1\tP",
+				"9\t20190731\t1\tM1\tP");
+		write(current, "sct2_Concept_Snapshot_INT_20200731.txt",
+				"1\t20190731\t1\tM1\tP",
+				"3\t20190731\t1\tM1\tP");
+
+		Map<String, ChangeType> changes = new HashMap<>();
+		SnapshotDiffer differ = new SnapshotDiffer();
+		differ.addListener(c -> changes.put(c.getId(), c.getChangeType()));
+		Map<ChangeType, Integer> counts = differ.compare(previous.toFile(), current.toFile());
+
+		assertEquals(ChangeType.MISSING, changes.get("8"));
+		assertEquals(ChangeType.MISSING, changes.get("9"));
+		assertEquals(2, changes.size());
+		assertEquals(Integer.valueOf(2), counts.get(ChangeType.MISSING));
+	}
+
+	@Test
+	public void fileMissingFromCurrentTest() throws Exception {
+		Path previous = createTempDir("previous");
+		Path current = createTempDir("current");
+		write(previous, "sct2_Concept_Snapshot_INT_20200131.txt",
+				"1\t20190731\t1\tM1\tP");
+		write(previous, "sct2_TextDefinition_Snapshot-en_INT_20200131.txt",
+				"11\t20190731\t1\tM1\tP",
+				"12\t20190731\t1\tM1\tP");
+		write(current, "sct2_Concept_Snapshot_INT_20200731.txt",
+				"1\t20190731\t1\tM1\tP");
+
+		List<SnapshotChange> changes = new ArrayList<>();
+		SnapshotDiffer differ = new SnapshotDiffer();
+		differ.addListener(changes::add);
+		Map<ChangeType, Integer> counts = differ.compare(previous.toFile(), current.toFile());
+
+		assertEquals(2, changes.size());
+		for (SnapshotChange change : changes) {
+			assertEquals(ChangeType.MISSING, change.getChangeType());
+			assertEquals("sct2_TextDefinition_Snapshot-en_INT", change.getFileKey());
+			assertNull(change.getCurrent());
+		}
+		assertEquals(Integer.valueOf(2), counts.get(ChangeType.MISSING));
+	}
+
+	@Test
+	public void fileKeyTest() {
+		assertEquals("sct2_Concept_Snapshot_INT", SnapshotDiffer.getFileKey("sct2_Concept_Snapshot_INT_20200731.txt"));
+		assertEquals("der2_cRefset_LanguageSnapshot-en_INT", SnapshotDiffer.getFileKey("der2_cRefset_LanguageSnapshot-en_INT_20200731.txt"));
+	}
+	
+	private Path createTempDir(String prefix) throws Exception {
+		Path tempDir = Files.createTempDirectory(prefix);
+		tempDirs.add(tempDir);
+		return tempDir;
+	}
+
+	private void write(Path dir, String fileName, String... rows) throws Exception {
+		String content = HEADER + String.join("\r\n", rows) + "\r\n";
+		Files.write(new File(dir.toFile(), fileName).toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,69 @@
+package org.ihtsdo.termserver.scripting.snapshot;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SnapshotManifestTest {
+
+	private static final String CONCEPTS = "Snapshot/Terminology/sct2_Concept_Snapshot_INT_20200131.txt";
+	private static final String DESCRIPTIONS = "Snapshot/Terminology/sct2_Description_Snapshot-en_INT_20200131.txt";
+
+	private File snapshotDir;
+
+	@Before
+	public void setUp() throws IOException {
+		snapshotDir = Files.createTempDirectory("snapshot-manifest").toFile();
+		write(CONCEPTS, "id\teffectiveTime\r\n100\t20200131\r\n200\t20200131\r\n");
+		write(DESCRIPTIONS, "id\tterm\r\n300\tHeart\r\n");
+	}
+
+	@After
+	public void tearDown() {
+		FileUtils.deleteQuietly(snapshotDir);
+	}
+
+	@Test
+	public void manifestSurvivesRoundTrip() throws IOException {
+		SnapshotManifest.build(snapshotDir, 1580428800000L, "20200131").write(snapshotDir);
+
+		SnapshotManifest manifest = SnapshotManifest.read(snapshotDir);
+		assertNotNull(manifest);
+		assertEquals(Long.valueOf(1580428800000L), manifest.getBranchHeadTimestamp());
+		assertEquals("20200131", manifest.getFileDate());
+		assertEquals(new HashSet<>(Arrays.asList(CONCEPTS, DESCRIPTIONS)), manifest.getPaths());
+		assertEquals(Collections.emptyList(), manifest.verify(snapshotDir));
+	}
+
+	@Test
+	public void damagedFilesAreIdentified() throws IOException {
+		SnapshotManifest.build(snapshotDir, null, null).write(snapshotDir);
+		//Same size, different content
+		write(CONCEPTS, "id\teffectiveTime\r\n100\t20200131\r\n201\t20200131\r\n");
+		new File(snapshotDir, DESCRIPTIONS).delete();
+
+		SnapshotManifest manifest = SnapshotManifest.read(snapshotDir);
+		assertEquals(Arrays.asList(CONCEPTS, DESCRIPTIONS), manifest.verify(snapshotDir));
+
+		write(DESCRIPTIONS, "id\tterm\r\n300\tHeart\r\n");
+		manifest.refresh(snapshotDir, Arrays.asList(CONCEPTS));
+		assertEquals(Collections.emptyList(), manifest.verify(snapshotDir));
+	}
+
+	@Test
+	public void missingManifestIsNull() throws IOException {
+		assertNull(SnapshotManifest.read(snapshotDir));
+	}
+
+	private void write(String path, String content) throws IOException {
+		FileUtils.writeStringToFile(new File(snapshotDir, path), content, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,99 @@
+package org.ihtsdo.termserver.scripting.util;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ArchiveBuilderTest {
+
+	private File workingDir;
+
+	@Before
+	public void setUp() throws IOException {
+		workingDir = Files.createTempDirectory("archive-builder").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		FileUtils.deleteQuietly(workingDir);
+	}
+
+	@Test
+	public void entriesCanBeReadBackWithZipFile() throws IOException {
+		File archiveFile = new File(workingDir, "test.zip");
+		StringBuilder large = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			large.append(i).append("\t20200131\t1\t900000000000207008\n");
+		}
+		try (ArchiveBuilder archive = new ArchiveBuilder(archiveFile)) {
+			try (OutputStream os = archive.openEntry("pkg/Snapshot/Terminology/sct2_Concept_Snapshot_INT.txt")) {
+				os.write(large.toString().getBytes(StandardCharsets.UTF_8));
+			}
+			try (OutputStream os = archive.openEntry("pkg/Snapshot/Refset/empty.txt")) {
+			}
+			archive.finish();
+		}
+
+		try (ZipFile zip = new ZipFile(archiveFile)) {
+			assertEquals(2, zip.size());
+			assertEquals(large.toString(), read(zip, "pkg/Snapshot/Terminology/sct2_Concept_Snapshot_INT.txt"));
+			assertEquals("", read(zip, "pkg/Snapshot/Refset/empty.txt"));
+		}
+		//Only the archive itself should remain
+		assertEquals(1, workingDir.listFiles().length);
+	}
+
+	@Test
+	public void directoryIsAddedWithRelativePaths() throws IOException {
+		File dir = new File(workingDir, "output");
+		File termDir = new File(dir, "pkg/Delta/Terminology");
+		termDir.mkdirs();
+		Map<String, String> expected = new HashMap<>();
+		for (int i = 0; i < 10; i++) {
+			String name = "pkg/Delta/Terminology/file" + i + ".txt";
+			String content = "id\teffectiveTime\n" + i + "\t20200131\n";
+			FileUtils.writeStringToFile(new File(dir, name), content, StandardCharsets.UTF_8);
+			expected.put(name, content);
+		}
+
+		File archiveFile = new File(workingDir, "dir.zip");
+		try (ArchiveBuilder archive = new ArchiveBuilder(archiveFile)) {
+			archive.addDirectory(dir);
+			archive.finish();
+		}
+
+		try (ZipFile zip = new ZipFile(archiveFile)) {
+			assertEquals(expected.size(), zip.size());
+			for (Map.Entry<String, String> entry : expected.entrySet()) {
+				assertEquals(entry.getValue(), read(zip, entry.getKey()));
+			}
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void unclosedEntryIsRejected() throws IOException {
+		try (ArchiveBuilder archive = new ArchiveBuilder(new File(workingDir, "unclosed.zip"))) {
+			archive.openEntry("open.txt").write(1);
+			archive.finish();
+		}
+	}
+
+	private String read(ZipFile zip, String name) throws IOException {
+		ZipEntry entry = zip.getEntry(name);
+		assertNotNull("Missing entry " + name, entry);
+		try (InputStream is = zip.getInputStream(entry)) {
+			return IOUtils.toString(is, StandardCharsets.UTF_8);
+		}
+	}
+}